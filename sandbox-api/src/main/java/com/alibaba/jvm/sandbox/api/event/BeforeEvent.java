@@ -37,6 +37,13 @@ public class BeforeEvent extends InvokeEvent {
      */
     public final Object[] argumentArray;
 
+    /**
+     * 获取触发调用事件的行为信息，可能为null
+     *
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public final BehaviorInfo behaviorInfo;
+
     /**
      * 构造调用BEFORE事件
      *
@@ -57,6 +64,32 @@ public class BeforeEvent extends InvokeEvent {
                        final String javaMethodDesc,
                        final Object target,
                        final Object[] argumentArray) {
+        this(processId, invokeId, javaClassLoader, javaClassName, javaMethodName, javaMethodDesc, target, argumentArray, null);
+    }
+
+    /**
+     * 构造调用BEFORE事件
+     *
+     * @param processId       调用过程ID
+     * @param invokeId        调用ID
+     * @param javaClassLoader 触发调用事件的ClassLoader
+     * @param javaClassName   触发调用事件的类名称
+     * @param javaMethodName  触发调用事件的方法名称
+     * @param javaMethodDesc  触发调用事件的方法签名
+     * @param target          触发调用事件的对象(静态方法为null)
+     * @param argumentArray   触发调用事件的方法参数
+     * @param behaviorInfo    触发调用事件的行为信息
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public BeforeEvent(final int processId,
+                       final int invokeId,
+                       final ClassLoader javaClassLoader,
+                       final String javaClassName,
+                       final String javaMethodName,
+                       final String javaMethodDesc,
+                       final Object target,
+                       final Object[] argumentArray,
+                       final BehaviorInfo behaviorInfo) {
         super(processId, invokeId, Type.BEFORE);
         this.javaClassLoader = javaClassLoader;
         this.javaClassName = javaClassName;
@@ -64,6 +97,7 @@ public class BeforeEvent extends InvokeEvent {
         this.javaMethodDesc = javaMethodDesc;
         this.target = target;
         this.argumentArray = argumentArray;
+        this.behaviorInfo = behaviorInfo;
     }
 
     /**
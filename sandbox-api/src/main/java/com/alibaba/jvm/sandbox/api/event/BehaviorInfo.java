@@ -0,0 +1,73 @@
+package com.alibaba.jvm.sandbox.api.event;
+
+import com.alibaba.jvm.sandbox.api.listener.ext.Behavior;
+
+import java.lang.reflect.AccessibleObject;
+
+/**
+ * 行为信息
+ * <p>
+ * 容器在代码增强时为每个被增强的行为分配一个行为ID并登记行为信息，织入的代码只携带行为ID，
+ * 事件发生时通过行为ID直接拿到行为信息，不需要再根据类名、方法名和方法签名查找
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public interface BehaviorInfo {
+
+    /**
+     * 获取行为ID
+     *
+     * @return 行为ID
+     */
+    int getId();
+
+    /**
+     * 获取行为所在类的ClassLoader
+     *
+     * @return 行为所在类的ClassLoader，来自BootstrapClassLoader的类返回null
+     */
+    ClassLoader getJavaClassLoader();
+
+    /**
+     * 获取行为所在类的类名
+     *
+     * @return 类名
+     */
+    String getJavaClassName();
+
+    /**
+     * 获取行为名称
+     *
+     * @return 行为名称，构造函数为{@code <init>}
+     */
+    String getJavaMethodName();
+
+    /**
+     * 获取行为签名
+     *
+     * @return 行为签名
+     */
+    String getJavaMethodDesc();
+
+    /**
+     * 获取行为
+     * <p>第一次获取时才会进行解析，之后直接返回解析结果</p>
+     *
+     * @return 行为
+     * @throws ClassNotFoundException 行为所在的类已经无法加载
+     * @throws NoSuchMethodException  类中找不到对应的行为
+     */
+    Behavior getBehavior() throws ClassNotFoundException, NoSuchMethodException;
+
+    /**
+     * 获取行为对应的反射对象
+     * <p>第一次获取时才会进行解析，之后直接返回解析结果</p>
+     *
+     * @return 方法返回{@link java.lang.reflect.Method}，构造函数返回{@link java.lang.reflect.Constructor}
+     * @throws ClassNotFoundException 行为所在的类已经无法加载
+     * @throws NoSuchMethodException  类中找不到对应的行为
+     */
+    AccessibleObject getJavaBehavior() throws ClassNotFoundException, NoSuchMethodException;
+
+}
@@ -17,6 +17,24 @@ public abstract class InvokeEvent extends Event {
      */
     public final int invokeId;
 
+    /**
+     * 64位调用过程ID
+     * <p>
+     * {@link #processId}为32位，长时间运行且大量跟踪的进程中会发生回绕；64位的ID在进程生命周期内不会重复
+     * </p>
+     *
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public final long longProcessId;
+
+    /**
+     * 64位调用ID
+     *
+     * @see #longProcessId
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public final long longInvokeId;
+
     /**
      * 构造调用事件
      *
@@ -28,6 +46,8 @@ public abstract class InvokeEvent extends Event {
         super(type);
         this.processId = processId;
         this.invokeId = invokeId;
+        this.longProcessId = processId;
+        this.longInvokeId = invokeId;
     }
 
 }
@@ -2,7 +2,6 @@ package com.alibaba.jvm.sandbox.api.listener.ext;
 
 import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.event.InvokeEvent;
-import com.alibaba.jvm.sandbox.api.util.LazyGet;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -11,52 +10,85 @@ import java.util.Set;
 
 /**
  * 行为通知
+ * <p>
+ * 通知对象会被回收复用：行为的{@link AdviceListener#after(Advice)}回调结束（或流程被立即返回、立即抛出）之后，
+ * 通知即被回收，之后通知的内容会被新的调用覆盖。
+ * 如果事件监听器需要在这之后继续持有通知，必须先调用{@link #retain()}保留通知
+ * </p>
  *
  * @author luanjia@taobao.com
  * @since {@code sandbox-api:1.0.10}
  */
-public class Advice implements Attachment {
+public abstract class Advice implements Attachment {
 
-    private final int processId;
-    private final int invokeId;
+    private int processId;
+    private int invokeId;
+    private long longProcessId;
+    private long longInvokeId;
 
-    private final ClassLoader loader;
-    private final LazyGet<Behavior> behaviorLazyGet;
-    private final Object[] parameterArray;
-    private final Object target;
+    private ClassLoader loader;
+    private Object[] parameterArray;
+    private Object target;
 
     private Object returnObj;
     private Throwable throwable;
 
     private Object attachment;
-    private final Set<String> marks = new HashSet<String>();
+
+    // 大部分通知不会被标记，用到时才创建
+    private Set<String> marks;
 
     private Advice top = this;
     private Advice parent = this;
     private Event.Type state = Event.Type.BEFORE;
 
+    // 是否被事件监听器保留，被保留的通知不会被回收复用
+    private boolean isRetained = false;
+
+    /**
+     * 构造通知，通知的内容由{@link #applyInvoke(InvokeEvent, ClassLoader, Object[], Object)}填充
+     */
+    Advice() {
+    }
+
     /**
-     * 构造通知
+     * 应用调用信息
      *
-     * @param processId       {@link InvokeEvent#processId}
-     * @param invokeId        {@link InvokeEvent#invokeId}
-     * @param behaviorLazyGet 触发事件的行为(懒加载)
-     * @param loader          触发事件的行为所在ClassLoader
-     * @param parameterArray  触发事件的行为入参
-     * @param target          触发事件所归属的对象实例
+     * @param invokeEvent    调用事件，提供调用过程ID和调用ID
+     * @param loader         触发事件的行为所在ClassLoader
+     * @param parameterArray 触发事件的行为入参
+     * @param target         触发事件所归属的对象实例
+     * @return this
      */
-    Advice(final int processId,
-           final int invokeId,
-           final LazyGet<Behavior> behaviorLazyGet,
-           final ClassLoader loader,
-           final Object[] parameterArray,
-           final Object target) {
-        this.processId = processId;
-        this.invokeId = invokeId;
-        this.behaviorLazyGet = behaviorLazyGet;
+    Advice applyInvoke(final InvokeEvent invokeEvent,
+                       final ClassLoader loader,
+                       final Object[] parameterArray,
+                       final Object target) {
+        this.processId = invokeEvent.processId;
+        this.invokeId = invokeEvent.invokeId;
+        this.longProcessId = invokeEvent.longProcessId;
+        this.longInvokeId = invokeEvent.longInvokeId;
         this.loader = loader;
         this.parameterArray = parameterArray;
         this.target = target;
+        return this;
+    }
+
+    /**
+     * 回收通知，清理掉通知所持有的引用，回收后的通知可以重新应用调用信息
+     */
+    void recycle() {
+        loader = null;
+        parameterArray = null;
+        target = null;
+        returnObj = null;
+        throwable = null;
+        attachment = null;
+        if (null != marks) {
+            marks.clear();
+        }
+        top = parent = this;
+        state = Event.Type.BEFORE;
     }
 
     /**
@@ -133,6 +165,22 @@ public class Advice implements Attachment {
         return invokeId;
     }
 
+    /**
+     * @return InvokeEvent#longProcessId
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public long getLongProcessId() {
+        return longProcessId;
+    }
+
+    /**
+     * @return InvokeEvent#longInvokeId
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public long getLongInvokeId() {
+        return longInvokeId;
+    }
+
     /**
      * 获取触发事件的行为
      * <p>
@@ -141,9 +189,7 @@ public class Advice implements Attachment {
      *
      * @return 触发事件的行为
      */
-    public Behavior getBehavior() {
-        return behaviorLazyGet.get();
-    }
+    public abstract Behavior getBehavior();
 
     /**
      * 获取触发事件的行为所在的ClassLoader
@@ -228,6 +274,9 @@ public class Advice implements Attachment {
      * @param mark 标记
      */
     public void mark(final String mark) {
+        if (null == marks) {
+            marks = new HashSet<String>();
+        }
         marks.add(mark);
     }
 
@@ -238,7 +287,8 @@ public class Advice implements Attachment {
      * @return TRUE:拥有;FALSE:不拥有
      */
     public boolean hasMark(final String exceptMark) {
-        return marks.contains(exceptMark);
+        return null != marks
+                && marks.contains(exceptMark);
     }
 
     /**
@@ -248,7 +298,8 @@ public class Advice implements Attachment {
      * @return TRUE:标记曾经存在，现已删；FALSE：标记从未存在，现已删；
      */
     public boolean unMark(final String mark) {
-        return marks.remove(mark);
+        return null != marks
+                && marks.remove(mark);
     }
 
     /**
@@ -263,6 +314,34 @@ public class Advice implements Attachment {
         mark(mark);
     }
 
+    /**
+     * 保留通知
+     * <p>
+     * 被保留的通知不会被回收复用，事件监听器可以在{@link AdviceListener#after(Advice)}之后继续持有。
+     * 调用链路上的上层通知也会被一并保留，保证{@link #getProcessTop()}和{@link #listHasMarkOnChain(String)}依旧有效
+     * </p>
+     *
+     * @return this
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public Advice retain() {
+        isRetained = true;
+        if (!isProcessTop()) {
+            parent.retain();
+        }
+        return this;
+    }
+
+    /**
+     * 通知是否被保留
+     *
+     * @return TRUE:被保留，不会被回收复用;FALSE:未被保留
+     * @since {@code sandbox-api:1.4.0}
+     */
+    public boolean isRetained() {
+        return isRetained;
+    }
+
     /**
      * 是否整个递进调用过程中的顶层通知
      *
@@ -2,14 +2,9 @@ package com.alibaba.jvm.sandbox.api.listener.ext;
 
 import com.alibaba.jvm.sandbox.api.event.*;
 import com.alibaba.jvm.sandbox.api.listener.EventListener;
-import com.alibaba.jvm.sandbox.api.util.BehaviorDescriptor;
-import com.alibaba.jvm.sandbox.api.util.CacheGet;
 import com.alibaba.jvm.sandbox.api.util.GaStringUtils;
-import com.alibaba.jvm.sandbox.api.util.LazyGet;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.util.Stack;
+import java.lang.ref.WeakReference;
 
 /**
  * 通知监听器
@@ -25,22 +20,44 @@ public class AdviceAdapterListener implements EventListener {
         this.adviceListener = adviceListener;
     }
 
-    private final ThreadLocal<OpStack> opStackRef = new ThreadLocal<OpStack>() {
-        @Override
-        protected OpStack initialValue() {
-            return new OpStack();
+    // 调用过程中的通知操作堆栈
+    private final ThreadLocal<OpStack> opStackRef = new ThreadLocal<OpStack>();
+
+    // 空闲的通知操作堆栈，连同其中回收的通知一起留给线程的下一次调用过程复用
+    // 空闲时只保留弱引用，不会因为线程长期存活而阻止模块被卸载
+    private final ThreadLocal<WeakReference<OpStack>> idleOpStackRef = new ThreadLocal<WeakReference<OpStack>>();
+
+    private OpStack getOpStack() {
+        final OpStack opStack = opStackRef.get();
+        if (null != opStack) {
+            return opStack;
         }
-    };
+        final WeakReference<OpStack> idleRef = idleOpStackRef.get();
+        final OpStack idleOpStack = null == idleRef
+                ? null
+                : idleRef.get();
+        if (null != idleOpStack) {
+            return idleOpStack;
+        }
+        final OpStack newOpStack = new OpStack();
+        idleOpStackRef.set(new WeakReference<OpStack>(newOpStack));
+        return newOpStack;
+    }
 
     @Override
     final public void onEvent(final Event event) throws Throwable {
-        final OpStack opStack = opStackRef.get();
+        final OpStack opStack = getOpStack();
+        final boolean isEmptyBefore = opStack.isEmpty();
         try {
             switchEvent(opStack, event);
         } finally {
-            // 如果执行到TOP的最后一个事件，则需要主动清理占用的资源
-            if (opStack.isEmpty()) {
+            // 如果执行到TOP的最后一个事件，则需要主动清理占用的资源，堆栈转为空闲
+            // 调用过程进行中需要强引用住堆栈
+            final boolean isEmptyAfter = opStack.isEmpty();
+            if (isEmptyAfter && !isEmptyBefore) {
                 opStackRef.remove();
+            } else if (!isEmptyAfter && isEmptyBefore) {
+                opStackRef.set(opStack);
             }
         }
 
@@ -54,30 +71,7 @@ public class AdviceAdapterListener implements EventListener {
         switch (event.type) {
             case BEFORE: {
                 final BeforeEvent bEvent = (BeforeEvent) event;
-                final ClassLoader loader = toClassLoader(bEvent.javaClassLoader);
-                final Advice advice = new Advice(
-                        bEvent.processId,
-                        bEvent.invokeId,
-                        new LazyGet<Behavior>() {
-
-                            private final ClassLoader _loader = loader;
-                            private final String _javaClassName = bEvent.javaClassName;
-                            private final String _javaMethodName = bEvent.javaMethodName;
-                            private final String _javaMethodDesc = bEvent.javaMethodDesc;
-
-                            @Override
-                            protected Behavior initialValue() throws Throwable {
-                                return toBehavior(
-                                        toClass(_loader, _javaClassName),
-                                        _javaMethodName,
-                                        _javaMethodDesc
-                                );
-                            }
-                        },
-                        loader,
-                        bEvent.argumentArray,
-                        bEvent.target
-                );
+                final PooledAdvice advice = opStack.borrow().applyBeforeEvent(bEvent, toClassLoader(bEvent.javaClassLoader));
 
                 final Advice top;
                 final Advice parent;
@@ -89,13 +83,13 @@ public class AdviceAdapterListener implements EventListener {
 
                 // 非顶层
                 else {
-                    parent = opStack.peek().advice;
+                    parent = opStack.peek();
                     top = parent.getProcessTop();
                 }
 
                 advice.applyBefore(top, parent);
 
-                opStackRef.get().pushForBegin(advice);
+                opStack.push(advice);
                 adviceListener.before(advice);
                 break;
             }
@@ -104,33 +98,41 @@ public class AdviceAdapterListener implements EventListener {
             case IMMEDIATELY_THROWS:
             case IMMEDIATELY_RETURN: {
                 final InvokeEvent invokeEvent = (InvokeEvent) event;
-                opStack.popByExpectInvokeId(invokeEvent.invokeId);
+                opStack.recycle(opStack.popByExpectInvokeId(invokeEvent.invokeId));
                 // 修复#123
                 break;
             }
 
             case RETURN: {
                 final ReturnEvent rEvent = (ReturnEvent) event;
-                final WrapAdvice wrapAdvice = opStack.popByExpectInvokeId(rEvent.invokeId);
-                if (null != wrapAdvice) {
-                    Advice advice = wrapAdvice.advice.applyReturn(rEvent.object);
+                final PooledAdvice advice = opStack.popByExpectInvokeId(rEvent.invokeId);
+                if (null != advice) {
+                    advice.applyReturn(rEvent.object);
                     try {
                         adviceListener.afterReturning(advice);
                     } finally {
-                        adviceListener.after(advice);
+                        try {
+                            adviceListener.after(advice);
+                        } finally {
+                            opStack.recycle(advice);
+                        }
                     }
                 }
                 break;
             }
             case THROWS: {
                 final ThrowsEvent tEvent = (ThrowsEvent) event;
-                final WrapAdvice wrapAdvice = opStack.popByExpectInvokeId(tEvent.invokeId);
-                if (null != wrapAdvice) {
-                    Advice advice = wrapAdvice.advice.applyThrows(tEvent.throwable);
+                final PooledAdvice advice = opStack.popByExpectInvokeId(tEvent.invokeId);
+                if (null != advice) {
+                    advice.applyThrows(tEvent.throwable);
                     try {
                         adviceListener.afterThrowing(advice);
                     } finally {
-                        adviceListener.after(advice);
+                        try {
+                            adviceListener.after(advice);
+                        } finally {
+                            opStack.recycle(advice);
+                        }
                     }
                 }
                 break;
@@ -138,19 +140,18 @@ public class AdviceAdapterListener implements EventListener {
 
             case CALL_BEFORE: {
                 final CallBeforeEvent cbEvent = (CallBeforeEvent) event;
-                final WrapAdvice wrapAdvice = opStack.peekByExpectInvokeId(cbEvent.invokeId);
-                if (null == wrapAdvice) {
+                final PooledAdvice advice = opStack.peekByExpectInvokeId(cbEvent.invokeId);
+                if (null == advice) {
                     return;
                 }
-                final CallTarget target;
-                wrapAdvice.attach(target = new CallTarget(
+                final CallTarget target = advice.attachCallTarget(
                         cbEvent.lineNumber,
                         toJavaClassName(cbEvent.owner),
                         cbEvent.name,
                         cbEvent.desc
-                ));
+                );
                 adviceListener.beforeCall(
-                        wrapAdvice.advice,
+                        advice,
                         target.callLineNum,
                         target.callJavaClassName,
                         target.callJavaMethodName,
@@ -161,18 +162,18 @@ public class AdviceAdapterListener implements EventListener {
 
             case CALL_RETURN: {
                 final CallReturnEvent crEvent = (CallReturnEvent) event;
-                final WrapAdvice wrapAdvice = opStack.peekByExpectInvokeId(crEvent.invokeId);
-                if (null == wrapAdvice) {
+                final PooledAdvice advice = opStack.peekByExpectInvokeId(crEvent.invokeId);
+                if (null == advice) {
                     return;
                 }
-                final CallTarget target = wrapAdvice.attachment();
+                final CallTarget target = advice.callTarget();
                 if (null == target) {
                     // 这里做一个容灾保护，防止在callBefore()中发生什么异常导致beforeCall()之前失败
                     return;
                 }
                 try {
                     adviceListener.afterCallReturning(
-                            wrapAdvice.advice,
+                            advice,
                             target.callLineNum,
                             target.callJavaClassName,
                             target.callJavaMethodName,
@@ -180,7 +181,7 @@ public class AdviceAdapterListener implements EventListener {
                     );
                 } finally {
                     adviceListener.afterCall(
-                            wrapAdvice.advice,
+                            advice,
                             target.callLineNum,
                             target.callJavaClassName,
                             target.callJavaMethodName,
@@ -193,18 +194,18 @@ public class AdviceAdapterListener implements EventListener {
 
             case CALL_THROWS: {
                 final CallThrowsEvent ctEvent = (CallThrowsEvent) event;
-                final WrapAdvice wrapAdvice = opStack.peekByExpectInvokeId(ctEvent.invokeId);
-                if (null == wrapAdvice) {
+                final PooledAdvice advice = opStack.peekByExpectInvokeId(ctEvent.invokeId);
+                if (null == advice) {
                     return;
                 }
-                final CallTarget target = wrapAdvice.attachment();
+                final CallTarget target = advice.callTarget();
                 if (null == target) {
                     // 这里做一个容灾保护，防止在callBefore()中发生什么异常导致beforeCall()之前失败
                     return;
                 }
                 try {
                     adviceListener.afterCallThrowing(
-                            wrapAdvice.advice,
+                            advice,
                             target.callLineNum,
                             target.callJavaClassName,
                             target.callJavaMethodName,
@@ -213,7 +214,7 @@ public class AdviceAdapterListener implements EventListener {
                     );
                 } finally {
                     adviceListener.afterCall(
-                            wrapAdvice.advice,
+                            advice,
                             target.callLineNum,
                             target.callJavaClassName,
                             target.callJavaMethodName,
@@ -226,11 +227,11 @@ public class AdviceAdapterListener implements EventListener {
 
             case LINE: {
                 final LineEvent lEvent = (LineEvent) event;
-                final WrapAdvice wrapAdvice = opStack.peekByExpectInvokeId(lEvent.invokeId);
-                if (null == wrapAdvice) {
+                final PooledAdvice advice = opStack.peekByExpectInvokeId(lEvent.invokeId);
+                if (null == advice) {
                     return;
                 }
-                adviceListener.beforeLine(wrapAdvice.advice, lEvent.lineNumber);
+                adviceListener.beforeLine(advice, lEvent.lineNumber);
                 break;
             }
 
@@ -245,21 +246,36 @@ public class AdviceAdapterListener implements EventListener {
 
     /**
      * 通知操作堆栈
+     * <p>
+     * 堆栈只会被当前线程访问，不需要同步；通知出栈并完成回调后被回收到堆栈的缓存池中，供后续的调用复用
+     * </p>
      */
-    private static class OpStack {
+    private class OpStack {
+
+        // 缓存池中最多缓存的通知数量
+        private static final int MAX_POOL_SIZE = 64;
+
+        private PooledAdvice[] adviceStack = new PooledAdvice[16];
+        private int size = 0;
 
-        private final Stack<WrapAdvice> adviceStack = new Stack<WrapAdvice>();
+        private final PooledAdvice[] pool = new PooledAdvice[MAX_POOL_SIZE];
+        private int poolSize = 0;
 
         boolean isEmpty() {
-            return adviceStack.isEmpty();
+            return size == 0;
         }
 
-        WrapAdvice peek() {
-            return adviceStack.peek();
+        PooledAdvice peek() {
+            return adviceStack[size - 1];
         }
 
-        void pushForBegin(final Advice advice) {
-            adviceStack.push(new WrapAdvice(advice));
+        void push(final PooledAdvice advice) {
+            if (size == adviceStack.length) {
+                final PooledAdvice[] newAdviceStack = new PooledAdvice[size << 1];
+                System.arraycopy(adviceStack, 0, newAdviceStack, 0, size);
+                adviceStack = newAdviceStack;
+            }
+            adviceStack[size++] = advice;
         }
 
         /**
@@ -271,20 +287,45 @@ public class AdviceAdapterListener implements EventListener {
          *                       必须要求和BEFORE的invokeId配对
          * @return 如果invokeId配对成功，则返回对应的Advice，否则返回null
          */
-        WrapAdvice popByExpectInvokeId(final int expectInvokeId) {
-            return !adviceStack.isEmpty()
-                    && adviceStack.peek().advice.getInvokeId() == expectInvokeId
-                    ? adviceStack.pop()
-                    : null;
+        PooledAdvice popByExpectInvokeId(final int expectInvokeId) {
+            if (size > 0
+                    && adviceStack[size - 1].getInvokeId() == expectInvokeId) {
+                final PooledAdvice advice = adviceStack[--size];
+                adviceStack[size] = null;
+                return advice;
+            }
+            return null;
         }
 
-        WrapAdvice peekByExpectInvokeId(final int expectInvokeId) {
-            return !adviceStack.isEmpty()
-                    && adviceStack.peek().advice.getInvokeId() == expectInvokeId
-                    ? adviceStack.peek()
+        PooledAdvice peekByExpectInvokeId(final int expectInvokeId) {
+            return size > 0
+                    && adviceStack[size - 1].getInvokeId() == expectInvokeId
+                    ? adviceStack[size - 1]
                     : null;
         }
 
+        // 从缓存池中借出一个通知，缓存池为空时创建新的通知
+        PooledAdvice borrow() {
+            if (poolSize == 0) {
+                return new PooledAdvice();
+            }
+            final PooledAdvice advice = pool[--poolSize];
+            pool[poolSize] = null;
+            return advice;
+        }
+
+        // 回收通知，被事件监听器保留的通知不再复用
+        void recycle(final PooledAdvice advice) {
+            if (null == advice
+                    || advice.isRetained()) {
+                return;
+            }
+            advice.recycle();
+            if (poolSize < MAX_POOL_SIZE) {
+                pool[poolSize++] = advice;
+            }
+        }
+
     }
 
     // change internalClassName to javaClassName
@@ -315,123 +356,96 @@ public class AdviceAdapterListener implements EventListener {
 
 
     /**
-     * 行为缓存KEY对象
+     * CALL目标对象，随通知一起复用
      */
-    private static class BehaviorCacheKey {
-        private final Class<?> clazz;
-        private final String javaMethodName;
-        private final String javaMethodDesc;
-
-        private BehaviorCacheKey(final Class<?> clazz,
-                                 final String javaMethodName,
-                                 final String javaMethodDesc) {
-            this.clazz = clazz;
-            this.javaMethodName = javaMethodName;
-            this.javaMethodDesc = javaMethodDesc;
-        }
+    private static class CallTarget {
 
-        @Override
-        public int hashCode() {
-            return clazz.hashCode()
-                    + javaMethodName.hashCode()
-                    + javaMethodDesc.hashCode();
+        int callLineNum;
+        String callJavaClassName;
+        String callJavaMethodName;
+        String callJavaMethodDesc;
+
+    }
+
+    /**
+     * 可回收复用的通知，同时承载BEFORE事件中用来解析行为的信息和CALL目标对象
+     */
+    private class PooledAdvice extends Advice {
+
+        private BehaviorInfo behaviorInfo;
+        private String javaClassName;
+        private String javaMethodName;
+        private String javaMethodDesc;
+
+        // 已经解析的行为
+        private Behavior behavior;
+
+        private final CallTarget callTarget = new CallTarget();
+        private boolean isCallTargetAttached = false;
+
+        PooledAdvice applyBeforeEvent(final BeforeEvent bEvent,
+                                      final ClassLoader loader) {
+            applyInvoke(bEvent, loader, bEvent.argumentArray, bEvent.target);
+            this.behaviorInfo = bEvent.behaviorInfo;
+            this.javaClassName = bEvent.javaClassName;
+            this.javaMethodName = bEvent.javaMethodName;
+            this.javaMethodDesc = bEvent.javaMethodDesc;
+            return this;
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (!(o instanceof BehaviorCacheKey)) {
-                return false;
-            }
-            final BehaviorCacheKey key = (BehaviorCacheKey) o;
-            return clazz.equals(key.clazz)
-                    && javaMethodName.equals(key.javaMethodName)
-                    && javaMethodDesc.equals(key.javaMethodDesc);
+        void recycle() {
+            super.recycle();
+            behaviorInfo = null;
+            javaClassName = null;
+            javaMethodName = null;
+            javaMethodDesc = null;
+            behavior = null;
+            callTarget.callJavaClassName = null;
+            callTarget.callJavaMethodName = null;
+            callTarget.callJavaMethodDesc = null;
+            isCallTargetAttached = false;
         }
 
-    }
-
-    // 行为缓存，为了增加性能，不要每次都从class通过反射获取行为
-    private final CacheGet<BehaviorCacheKey, Behavior> toBehaviorCacheGet
-            = new CacheGet<BehaviorCacheKey, Behavior>() {
         @Override
-        protected Behavior load(BehaviorCacheKey key) {
-            if ("<init>".equals(key.javaMethodName)) {
-                for (final Constructor<?> constructor : key.clazz.getDeclaredConstructors()) {
-                    if (key.javaMethodDesc.equals(new BehaviorDescriptor(constructor).getDescriptor())) {
-                        return new Behavior.ConstructorImpl(constructor);
-                    }
-                }
-            } else {
-                for (final Method method : key.clazz.getDeclaredMethods()) {
-                    if (key.javaMethodName.equals(method.getName())
-                            && key.javaMethodDesc.equals(new BehaviorDescriptor(method).getDescriptor())) {
-                        return new Behavior.MethodImpl(method);
-                    }
+        public Behavior getBehavior() {
+            if (null == behavior) {
+                try {
+                    behavior = null != behaviorInfo
+                            // 容器已经登记并解析了行为，直接使用，不再查找
+                            ? behaviorInfo.getBehavior()
+                            : BehaviorCache.getSingleton().getBehavior(toClass(getLoader(), javaClassName), javaMethodName, javaMethodDesc);
+                } catch (Throwable cause) {
+                    throw new BehaviorUnCaughtException(cause);
                 }
             }
-            return null;
-        }
-    };
-
-    /**
-     * CALL目标对象
-     */
-    private static class CallTarget {
-
-        final int callLineNum;
-        final String callJavaClassName;
-        final String callJavaMethodName;
-        final String callJavaMethodDesc;
-
-        CallTarget(int callLineNum, String callJavaClassName, String callJavaMethodName, String callJavaMethodDesc) {
-            this.callLineNum = callLineNum;
-            this.callJavaClassName = callJavaClassName;
-            this.callJavaMethodName = callJavaMethodName;
-            this.callJavaMethodDesc = callJavaMethodDesc;
+            return behavior;
         }
-    }
-
-    /**
-     * 通知内部封装，主要是要封装掉attachment
-     */
-    private static class WrapAdvice implements Attachment {
 
-        final Advice advice;
-        Object attachment;
-
-        WrapAdvice(Advice advice) {
-            this.advice = advice;
+        CallTarget attachCallTarget(final int callLineNum,
+                                    final String callJavaClassName,
+                                    final String callJavaMethodName,
+                                    final String callJavaMethodDesc) {
+            callTarget.callLineNum = callLineNum;
+            callTarget.callJavaClassName = callJavaClassName;
+            callTarget.callJavaMethodName = callJavaMethodName;
+            callTarget.callJavaMethodDesc = callJavaMethodDesc;
+            isCallTargetAttached = true;
+            return callTarget;
         }
 
-        @Override
-        public void attach(Object attachment) {
-            this.attachment = attachment;
+        CallTarget callTarget() {
+            return isCallTargetAttached
+                    ? callTarget
+                    : null;
         }
 
-        @SuppressWarnings("unchecked")
-        @Override
-        public <T> T attachment() {
-            return (T) attachment;
-        }
     }
 
-    /**
-     * 根据提供的行为名称、行为描述从指定的Class中获取对应的行为
-     *
-     * @param clazz          指定的Class
-     * @param javaMethodName 行为名称
-     * @param javaMethodDesc 行为参数声明
-     * @return 匹配的行为
-     * @throws NoSuchMethodException 如果匹配不到行为，则抛出该异常
-     */
-    private Behavior toBehavior(final Class<?> clazz,
-                                final String javaMethodName,
-                                final String javaMethodDesc) throws NoSuchMethodException {
-        final Behavior behavior = toBehaviorCacheGet.getFromCache(new BehaviorCacheKey(clazz, javaMethodName, javaMethodDesc));
-        if (null == behavior) {
-            throw new NoSuchMethodException(String.format("%s.%s(%s)", clazz.getName(), javaMethodName, javaMethodDesc));
+    private static class BehaviorUnCaughtException extends RuntimeException {
+        BehaviorUnCaughtException(Throwable cause) {
+            super(cause);
         }
-        return behavior;
     }
 
 }
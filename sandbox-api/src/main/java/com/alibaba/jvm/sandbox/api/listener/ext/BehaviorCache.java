@@ -0,0 +1,338 @@
+package com.alibaba.jvm.sandbox.api.listener.ext;
+
+import com.alibaba.jvm.sandbox.api.util.BehaviorDescriptor;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 行为缓存
+ * <p>
+ * 根据类、行为名称和行为签名查找行为。同一个命名空间下的所有事件监听器共用一份缓存，可以被多个线程并发访问。
+ * 每个类第一次被查找时建立一次行为索引（行为名称+行为签名:行为），之后的查找不再遍历类中声明的所有行为
+ * </p>
+ * <p>
+ * 缓存对类只持有弱引用，行为索引只记录行为名称、行为签名和行为在类中的位置，不引用类，和类同生命周期；
+ * 还原出的行为会强引用类，所以只持有弱引用，不会阻止类和ClassLoader被卸载。
+ * 行为没有被使用时可能随GC回收，之后的查找按位置重新取出，不再重建行为索引
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public class BehaviorCache {
+
+    // 计数器分段数量，不同线程尽量落在不同的分段上，避免争抢同一个缓存行
+    private static final int STRIPES = 16;
+    private static final int STRIPE_MASK = STRIPES - 1;
+
+    // 每个分段占用一个缓存行(8个long)
+    private static final int STRIPE_PADDING = 8;
+
+    // 计数器在分段中的位置
+    private static final int HIT = 0;
+    private static final int MISS = 1;
+
+    private final ConcurrentHashMap<Object, ClassIndex> classIndexes
+            = new ConcurrentHashMap<Object, ClassIndex>();
+
+    // 已经被回收的类，从缓存中清理
+    private final ReferenceQueue<Class<?>> collectedClassQueue = new ReferenceQueue<Class<?>>();
+
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+
+    /**
+     * 查找行为
+     *
+     * @param clazz          行为所在的类
+     * @param javaMethodName 行为名称，构造函数为{@code <init>}
+     * @param javaMethodDesc 行为签名
+     * @return 行为
+     * @throws NoSuchMethodException 类中找不到对应的行为
+     */
+    public Behavior getBehavior(final Class<?> clazz,
+                                final String javaMethodName,
+                                final String javaMethodDesc) throws NoSuchMethodException {
+        final ClassIndex.Entry entry = getClassIndex(clazz).get(javaMethodName, javaMethodDesc);
+        if (null == entry) {
+            throw new NoSuchMethodException(String.format("%s.%s(%s)", clazz.getName(), javaMethodName, javaMethodDesc));
+        }
+        final Behavior behavior = entry.getBehavior(clazz);
+        if (null != behavior) {
+            return behavior;
+        }
+
+        // 类中行为的顺序发生了变化，位置已经失效，重建一次行为索引
+        final ClassIndex.Entry newEntry = newClassIndex(clazz).get(javaMethodName, javaMethodDesc);
+        final Behavior newBehavior = null == newEntry
+                ? null
+                : newEntry.getBehavior(clazz);
+        if (null == newBehavior) {
+            throw new NoSuchMethodException(String.format("%s.%s(%s)", clazz.getName(), javaMethodName, javaMethodDesc));
+        }
+        return newBehavior;
+    }
+
+    private ClassIndex getClassIndex(final Class<?> clazz) {
+        final ClassIndex existIndex = classIndexes.get(new LookupKey(clazz));
+        if (null != existIndex) {
+            increment(HIT);
+            return existIndex;
+        }
+        return newClassIndex(clazz);
+    }
+
+    // 并发时同一个类可能会被建立多次索引，结果相同，后建立的覆盖先建立的即可
+    private ClassIndex newClassIndex(final Class<?> clazz) {
+        increment(MISS);
+        expungeCollectedClasses();
+        final ClassIndex classIndex = new ClassIndex(clazz);
+        classIndexes.put(new ClassKey(clazz, collectedClassQueue), classIndex);
+        return classIndex;
+    }
+
+    private void expungeCollectedClasses() {
+        Object key;
+        while (null != (key = collectedClassQueue.poll())) {
+            classIndexes.remove(key);
+        }
+    }
+
+    private void increment(final int counter) {
+        final int stripe = (int) Thread.currentThread().getId() & STRIPE_MASK;
+        counters.incrementAndGet(stripe * STRIPE_PADDING + counter);
+    }
+
+    private long sum(final int counter) {
+        long total = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            total += counters.get(stripe * STRIPE_PADDING + counter);
+        }
+        return total;
+    }
+
+    /**
+     * 获取命中缓存的次数
+     *
+     * @return 命中缓存的次数
+     */
+    public long getHitCount() {
+        return sum(HIT);
+    }
+
+    /**
+     * 获取未命中缓存的次数，每次未命中都会为类建立一次行为索引
+     *
+     * @return 未命中缓存的次数
+     */
+    public long getMissCount() {
+        return sum(MISS);
+    }
+
+    /**
+     * 获取缓存中的类数量，已经被回收的类会先被清理
+     *
+     * @return 缓存中的类数量
+     */
+    public int size() {
+        expungeCollectedClasses();
+        return classIndexes.size();
+    }
+
+    /**
+     * 类的行为索引，建立后不再修改，可以被多个线程并发读取
+     * <p>索引中不强引用类，只有还原出的行为以弱引用的方式缓存在索引项中</p>
+     */
+    private static class ClassIndex {
+
+        // 行为名称:索引项数组，同名行为通常只有一两个，按签名顺序比对即可
+        private final Map<String, Entry[]> entriesMap = new HashMap<String, Entry[]>();
+
+        ClassIndex(final Class<?> clazz) {
+            final Map<String, List<Entry>> entryListMap = new HashMap<String, List<Entry>>();
+            final Constructor<?>[] constructors = clazz.getDeclaredConstructors();
+            for (int index = 0; index < constructors.length; index++) {
+                add(entryListMap, "<init>", new Entry(
+                        "<init>",
+                        new BehaviorDescriptor(constructors[index]).getDescriptor(),
+                        -index - 1,
+                        new Behavior.ConstructorImpl(constructors[index])
+                ));
+            }
+            final Method[] methods = clazz.getDeclaredMethods();
+            for (int index = 0; index < methods.length; index++) {
+                add(entryListMap, methods[index].getName(), new Entry(
+                        methods[index].getName(),
+                        new BehaviorDescriptor(methods[index]).getDescriptor(),
+                        index,
+                        new Behavior.MethodImpl(methods[index])
+                ));
+            }
+            for (final Map.Entry<String, List<Entry>> entry : entryListMap.entrySet()) {
+                entriesMap.put(entry.getKey(), entry.getValue().toArray(new Entry[0]));
+            }
+        }
+
+        private static void add(final Map<String, List<Entry>> entryListMap,
+                                final String name,
+                                final Entry entry) {
+            if (!entryListMap.containsKey(name)) {
+                entryListMap.put(name, new ArrayList<Entry>());
+            }
+            entryListMap.get(name).add(entry);
+        }
+
+        Entry get(final String javaMethodName,
+                  final String javaMethodDesc) {
+            final Entry[] entries = entriesMap.get(javaMethodName);
+            if (null == entries) {
+                return null;
+            }
+            for (final Entry entry : entries) {
+                if (entry.descriptor.equals(javaMethodDesc)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 索引项，记录行为名称、行为签名和行为在类中的位置
+         */
+        static class Entry {
+
+            private final String name;
+            private final String descriptor;
+
+            // 大于等于0：行为在getDeclaredMethods()中的下标；小于0：构造函数在getDeclaredConstructors()中的下标取反减一
+            private final int position;
+
+            // 还原出的行为，并发时可能被还原多次，结果相同，后还原的覆盖先还原的即可
+            private volatile WeakReference<Behavior> behaviorRef;
+
+            Entry(final String name,
+                  final String descriptor,
+                  final int position,
+                  final Behavior behavior) {
+                this.name = name;
+                this.descriptor = descriptor;
+                this.position = position;
+                this.behaviorRef = new WeakReference<Behavior>(behavior);
+            }
+
+            // 获取行为，行为已被回收时按位置重新取出，位置已经失效时返回null
+            Behavior getBehavior(final Class<?> clazz) {
+                final Behavior existBehavior = behaviorRef.get();
+                if (null != existBehavior) {
+                    return existBehavior;
+                }
+                final Behavior behavior = resolve(clazz);
+                if (null != behavior) {
+                    behaviorRef = new WeakReference<Behavior>(behavior);
+                }
+                return behavior;
+            }
+
+            private Behavior resolve(final Class<?> clazz) {
+                if (position >= 0) {
+                    final Method[] methods = clazz.getDeclaredMethods();
+                    return position < methods.length
+                            && name.equals(methods[position].getName())
+                            && descriptor.equals(new BehaviorDescriptor(methods[position]).getDescriptor())
+                            ? new Behavior.MethodImpl(methods[position])
+                            : null;
+                } else {
+                    final Constructor<?>[] constructors = clazz.getDeclaredConstructors();
+                    final int index = -position - 1;
+                    return index < constructors.length
+                            && descriptor.equals(new BehaviorDescriptor(constructors[index]).getDescriptor())
+                            ? new Behavior.ConstructorImpl(constructors[index])
+                            : null;
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * 缓存中的类KEY，只持有类的弱引用，按类的同一性比较
+     */
+    private static class ClassKey extends WeakReference<Class<?>> {
+
+        private final int hashCode;
+
+        ClassKey(final Class<?> clazz,
+                 final ReferenceQueue<Class<?>> queue) {
+            super(clazz, queue);
+            this.hashCode = System.identityHashCode(clazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            final Class<?> clazz = get();
+            if (null == clazz) {
+                return false;
+            }
+            if (o instanceof LookupKey) {
+                return ((LookupKey) o).clazz == clazz;
+            }
+            return o instanceof ClassKey
+                    && ((ClassKey) o).get() == clazz;
+        }
+
+    }
+
+    /**
+     * 查找缓存时使用的类KEY，只在查找期间存在，不需要弱引用
+     */
+    private static class LookupKey {
+
+        private final Class<?> clazz;
+
+        LookupKey(final Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(clazz);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof ClassKey
+                    && ((ClassKey) o).get() == clazz;
+        }
+
+    }
+
+    // ----------------------------------- 单例模式 -----------------------------------
+
+    private final static BehaviorCache singleton = new BehaviorCache();
+
+    /**
+     * 获取行为缓存，同一个命名空间下共用一份
+     *
+     * @return 行为缓存
+     */
+    public static BehaviorCache getSingleton() {
+        return singleton;
+    }
+
+}
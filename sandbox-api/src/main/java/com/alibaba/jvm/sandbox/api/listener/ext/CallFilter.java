@@ -0,0 +1,23 @@
+package com.alibaba.jvm.sandbox.api.listener.ext;
+
+/**
+ * 方法调用过滤器
+ * <p>
+ * 决定行为内部的哪些方法调用需要产生CALL_BEFORE/CALL_RETURN/CALL_THROWS事件。
+ * 过滤在代码增强时进行，未通过过滤的方法调用不会织入任何探针，运行时没有额外的开销
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public interface CallFilter {
+
+    /**
+     * 过滤方法调用
+     *
+     * @param javaClassName  被调用方法所声明的类名（调用指令中的类名）
+     * @param javaMethodName 被调用的方法名
+     * @return TRUE:需要观察；FALSE:不需要观察
+     */
+    boolean doCallFilter(String javaClassName, String javaMethodName);
+
+}
@@ -1,5 +1,6 @@
 package com.alibaba.jvm.sandbox.api.listener.ext;
 
+import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
 import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.filter.AccessFlags;
 import com.alibaba.jvm.sandbox.api.filter.ExtFilter;
@@ -237,6 +238,22 @@ public class EventWatchBuilder {
          */
         IBuildingForWatching withCall();
 
+        /**
+         * 观察行为内部的方法调用，只观察匹配的方法调用
+         * <p>
+         * 匹配在代码增强时进行，匹配模式与{@link EventWatchBuilder}的模版匹配模式一致。
+         * 不匹配的方法调用保持原样，不会织入任何探针，
+         * 适用于只关心调用了哪些业务方法、不关心getter和日志等调用的跟踪
+         * </p>
+         *
+         * @param ownerPattern  被调用方法所声明的类名（调用指令中的类名）匹配模版
+         * @param methodPattern 被调用的方法名匹配模版
+         * @return IBuildingForWatching
+         * @see #withCall()
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withCall(String ownerPattern, String methodPattern);
+
         /**
          * 观察行为内部的行调用
          * 调用之后，
@@ -249,6 +266,137 @@ public class EventWatchBuilder {
          */
         IBuildingForWatching withLine();
 
+        /**
+         * 观察行为内部的指定行，可以多次调用追加
+         * <p>只有指定的行会被织入行探针，其余的行保持原样</p>
+         *
+         * @param lines 行号
+         * @return IBuildingForWatching
+         * @see #withLine()
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withLines(int... lines);
+
+        /**
+         * 观察行为内部指定区间内的行，可以多次调用追加
+         *
+         * @param from 起始行号（包含）
+         * @param to   结束行号（包含）
+         * @return IBuildingForWatching
+         * @see #withLines(int...)
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withLineRange(int from, int to);
+
+        /**
+         * 观察行为内部的行，每个行探针只在第一次执行时产生{@link AdviceListener#beforeLine(Advice, int)}
+         * <p>
+         * 行探针第一次执行之后只剩一次数组读取的开销，适用于在生产环境中统计行覆盖，
+         * 可以和{@link #withLines(int...)}、{@link #withLineRange(int, int)}一起使用
+         * </p>
+         *
+         * @return IBuildingForWatching
+         * @see #withLine()
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withLineFirstHitOnly();
+
+        /**
+         * 不采集行为的参数
+         * <p>
+         * 增强代码将不再构造参数数组，也不会对原始类型的参数进行装箱，
+         * 适用于不关心参数的观察，{@link BeforeEvent#argumentArray}将会是一个空数组
+         * </p>
+         *
+         * @return IBuildingForWatching
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withoutParameters();
+
+        /**
+         * 只采集指定下标的参数
+         * <p>
+         * {@link BeforeEvent#argumentArray}的长度依旧是参数个数，但只有指定下标上的参数会被采集，其余位置为null
+         * </p>
+         *
+         * @param indexes 需要采集的参数下标，从0开始
+         * @return IBuildingForWatching
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withParameterIndexes(int... indexes);
+
+        /**
+         * 参数只读
+         * <p>
+         * 增强代码在BEFORE之后不再把参数数组写回方法参数，
+         * 对参数的修改（{@link BeforeEvent#changeParameter(int, Object)}、{@link Advice#changeParameter(int, Object)}）将不会生效
+         * </p>
+         *
+         * @return IBuildingForWatching
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withReadOnlyParameters();
+
+        /**
+         * 按比例随机采样调用过程
+         * <p>
+         * 只在调用过程的第一个BEFORE事件时决定是否采样，未被采样的调用过程（包括其中嵌套的调用）不会产生任何事件，
+         * 适用于在生产环境中长期开启的跟踪、录制类观察
+         * </p>
+         *
+         * @param rate 采样比例，取值范围[0,1]，例如0.01表示采样1%的调用过程
+         * @return IBuildingForWatching
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withSampling(double rate);
+
+        /**
+         * 使用自定义的采样器决定调用过程是否需要被观察
+         *
+         * @param sampler 采样器
+         * @return IBuildingForWatching
+         * @see #withSampling(double)
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withSampler(Sampler sampler);
+
+        /**
+         * 异步通知事件，使用默认的缓冲区容量
+         *
+         * @return IBuildingForWatching
+         * @see #withAsync(int)
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withAsync();
+
+        /**
+         * 异步通知事件
+         * <p>
+         * 事件的内容被复制到缓冲区中，由容器的通知线程按顺序回调事件监听器，慢速的监听器（录制、日志投递）不再拖慢业务线程。
+         * 缓冲区满时新的事件将被丢弃；异步通知时不能进行流程控制，参数也总是只读的。
+         * 只支持{@link #onWatch(EventListener, Event.Type...)}
+         * </p>
+         *
+         * @param capacity 缓冲区容量
+         * @return IBuildingForWatching
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withAsync(int capacity);
+
+        /**
+         * 设置单个事件的开销预算
+         * <p>
+         * 容器抽样统计事件监听器处理单个事件的耗时，P99超出预算时事件监听器将被自动冻结（熔断），
+         * 以免拖慢业务；熔断可以通过模块管理查看，模块重新冻结、激活后恢复。
+         * 未设置时使用容器的默认配置（listener.budget.nanos）
+         * </p>
+         *
+         * @param p99Nanos 开销预算(P99，纳秒)
+         * @return IBuildingForWatching
+         * @since {@code sandbox-api:1.4.0}
+         */
+        IBuildingForWatching withOverheadBudget(long p99Nanos);
+
         /**
          * 使用通知监听器观察
          *
@@ -649,7 +797,7 @@ public class EventWatchBuilder {
 
         @Override
         public EventWatcher onWatch(AdviceListener adviceListener) {
-            return build(new AdviceAdapterListener(adviceListener), null, BEFORE, RETURN, THROWS, IMMEDIATELY_RETURN, IMMEDIATELY_THROWS);
+            return build(new AdviceAdapterListener(adviceListener), null, new EventWatchOption(), BEFORE, RETURN, THROWS, IMMEDIATELY_RETURN, IMMEDIATELY_THROWS);
         }
 
         @Deprecated
@@ -660,7 +808,7 @@ public class EventWatchBuilder {
 
         @Override
         public EventWatcher onWatch(EventListener eventListener, Event.Type... eventTypeArray) {
-            return build(eventListener, null, eventTypeArray);
+            return build(eventListener, null, new EventWatchOption(), eventTypeArray);
         }
 
     }
@@ -669,6 +817,7 @@ public class EventWatchBuilder {
 
         private final Set<Event.Type> eventTypeSet = new HashSet<Event.Type>();
         private final List<Progress> progresses = new ArrayList<Progress>();
+        private final EventWatchOption option = new EventWatchOption();
 
         @Override
         public IBuildingForWatching withProgress(Progress progress) {
@@ -686,14 +835,96 @@ public class EventWatchBuilder {
             return this;
         }
 
+        @Override
+        public IBuildingForWatching withCall(final String ownerPattern, final String methodPattern) {
+            option.withCallFilter(new CallFilter() {
+                @Override
+                public boolean doCallFilter(final String javaClassName, final String javaMethodName) {
+                    return patternMatching(javaClassName, ownerPattern, patternType)
+                            && patternMatching(javaMethodName, methodPattern, patternType);
+                }
+            });
+            return withCall();
+        }
+
         @Override
         public IBuildingForWatching withLine() {
             eventTypeSet.add(LINE);
             return this;
         }
 
+        @Override
+        public IBuildingForWatching withLines(final int... lines) {
+            option.withLines(lines);
+            return withLine();
+        }
+
+        @Override
+        public IBuildingForWatching withLineRange(final int from, final int to) {
+            option.withLineRange(from, to);
+            return withLine();
+        }
+
+        @Override
+        public IBuildingForWatching withLineFirstHitOnly() {
+            option.withLineFirstHitOnly();
+            return withLine();
+        }
+
+        @Override
+        public IBuildingForWatching withoutParameters() {
+            option.withoutParameters();
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withParameterIndexes(int... indexes) {
+            option.withParameterIndexes(indexes);
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withReadOnlyParameters() {
+            option.withReadOnlyParameters();
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withSampling(double rate) {
+            option.withSampling(rate);
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withSampler(Sampler sampler) {
+            option.withSampler(sampler);
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withAsync() {
+            option.withAsync();
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withAsync(int capacity) {
+            option.withAsync(capacity);
+            return this;
+        }
+
+        @Override
+        public IBuildingForWatching withOverheadBudget(long p99Nanos) {
+            option.withOverheadBudget(p99Nanos);
+            return this;
+        }
+
         @Override
         public EventWatcher onWatch(AdviceListener adviceListener) {
+            // 通知监听器需要在业务线程中维护调用栈，不能异步通知
+            if (option.isAsync()) {
+                throw new IllegalStateException("async watching is not supported by AdviceListener.");
+            }
             eventTypeSet.add(BEFORE);
             eventTypeSet.add(RETURN);
             eventTypeSet.add(THROWS);
@@ -702,18 +933,19 @@ public class EventWatchBuilder {
             return build(
                     new AdviceAdapterListener(adviceListener),
                     toProgressGroup(progresses),
+                    option,
                     eventTypeSet.toArray(EMPTY)
             );
         }
 
         @Override
         public EventWatcher onWatch(EventListener eventListener, Event.Type... eventTypeArray) {
-            return build(eventListener, toProgressGroup(progresses), eventTypeArray);
+            return build(eventListener, toProgressGroup(progresses), option, eventTypeArray);
         }
 
     }
 
-    private EventWatchCondition toEventWatchCondition() {
+    private EventWatchCondition toEventWatchCondition(final EventWatchOption option) {
         final List<Filter> filters = new ArrayList<Filter>();
         for (final BuildingForClass bfClass : bfClasses) {
             final Filter filter = new Filter() {
@@ -758,11 +990,16 @@ public class EventWatchBuilder {
 
             filters.add(makeExtFilter(filter, bfClass));
         }
-        return new EventWatchCondition() {
+        return new ExtEventWatchCondition() {
             @Override
             public Filter[] getOrFilterArray() {
                 return filters.toArray(new Filter[0]);
             }
+
+            @Override
+            public EventWatchOption getEventWatchOption() {
+                return option;
+            }
         };
     }
 
@@ -808,10 +1045,11 @@ public class EventWatchBuilder {
 
     private EventWatcher build(final EventListener listener,
                                final Progress progress,
+                               final EventWatchOption option,
                                final Event.Type... eventTypes) {
 
         final int watchId = moduleEventWatcher.watch(
-                toEventWatchCondition(),
+                toEventWatchCondition(option),
                 listener,
                 progress,
                 eventTypes
@@ -0,0 +1,400 @@
+package com.alibaba.jvm.sandbox.api.listener.ext;
+
+import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
+
+/**
+ * 事件观察选项
+ * <p>
+ * 用于调整容器对观察目标的代码增强方式，通过{@link EventWatchBuilder.IBuildingForWatching}进行设置
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public class EventWatchOption {
+
+    /**
+     * 异步通知时默认的缓冲区容量
+     */
+    public static final int DEFAULT_ASYNC_CAPACITY = 4096;
+
+    // 是否采集参数
+    private boolean isCaptureParameters = true;
+
+    // 需要采集的参数下标，为null表示采集全部参数
+    private int[] parameterIndexes = null;
+
+    // 参数是否只读
+    private boolean isReadOnlyParameters = false;
+
+    // 采样器，为null表示观察所有的调用过程
+    private Sampler sampler = null;
+
+    // 异步通知的缓冲区容量，为0表示同步通知
+    private int asyncCapacity = 0;
+
+    // 单个事件的开销预算(P99，纳秒)，为0表示使用容器的默认配置
+    private long overheadBudgetNanos = 0;
+
+    // 方法调用过滤器，为null表示观察所有的方法调用
+    private CallFilter callFilter = null;
+
+    // 需要观察的行号区间，按[from,to]成对存放，为null表示观察所有的行
+    private int[] lineRanges = null;
+
+    // 行探针是否只在第一次执行时产生事件
+    private boolean isLineFirstHitOnly = false;
+
+    /**
+     * 是否采集参数
+     * <p>
+     * 不采集参数时{@link BeforeEvent#argumentArray}为空数组，增强代码不会构造参数数组，也不会对原始类型参数进行装箱
+     * </p>
+     *
+     * @return TRUE:采集；FALSE：不采集
+     */
+    public boolean isCaptureParameters() {
+        return isCaptureParameters;
+    }
+
+    /**
+     * 获取需要采集的参数下标
+     * <p>
+     * {@link BeforeEvent#argumentArray}的长度依旧是参数个数，但只有这些下标上的参数会被采集，其余位置为null
+     * </p>
+     *
+     * @return 需要采集的参数下标，为null表示采集全部参数
+     */
+    public int[] getParameterIndexes() {
+        return parameterIndexes;
+    }
+
+    /**
+     * 参数是否只读
+     * <p>
+     * 只读时增强代码在BEFORE之后不会将参数数组写回方法参数，对参数的修改({@link BeforeEvent#changeParameter(int, Object)})不会生效。
+     * 异步通知时参数总是只读的
+     * </p>
+     *
+     * @return TRUE:只读；FALSE：可修改
+     */
+    public boolean isReadOnlyParameters() {
+        return isReadOnlyParameters || !isCaptureParameters || isAsync();
+    }
+
+    /**
+     * 获取采样器
+     *
+     * @return 采样器，为null表示观察所有的调用过程
+     */
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * 是否异步通知事件
+     * <p>
+     * 异步通知时事件监听器不再运行在业务线程中，而是由容器的通知线程按顺序回调，
+     * 此时不能进行流程控制，对{@link com.alibaba.jvm.sandbox.api.ProcessController}的调用将会被忽略
+     * </p>
+     *
+     * @return TRUE:异步；FALSE：同步
+     */
+    public boolean isAsync() {
+        return asyncCapacity > 0;
+    }
+
+    /**
+     * 获取异步通知的缓冲区容量
+     * <p>缓冲区满时新的事件将被丢弃</p>
+     *
+     * @return 缓冲区容量，为0表示同步通知
+     */
+    public int getAsyncCapacity() {
+        return asyncCapacity;
+    }
+
+    /**
+     * 获取单个事件的开销预算
+     * <p>
+     * 容器抽样统计事件监听器处理单个事件的耗时，P99超出预算时事件监听器将被自动冻结（熔断），
+     * 以免拖慢业务；模块重新冻结、激活后恢复
+     * </p>
+     *
+     * @return 开销预算(P99，纳秒)，为0表示使用容器的默认配置
+     */
+    public long getOverheadBudgetNanos() {
+        return overheadBudgetNanos;
+    }
+
+    /**
+     * 获取方法调用过滤器
+     *
+     * @return 方法调用过滤器，为null表示观察所有的方法调用
+     */
+    public CallFilter getCallFilter() {
+        return callFilter;
+    }
+
+    /**
+     * 判断方法调用是否需要被观察
+     *
+     * @param javaClassName  被调用方法所声明的类名
+     * @param javaMethodName 被调用的方法名
+     * @return TRUE:需要观察；FALSE:不需要观察
+     */
+    public boolean isMatchedCall(final String javaClassName, final String javaMethodName) {
+        return null == callFilter
+                || callFilter.doCallFilter(javaClassName, javaMethodName);
+    }
+
+    /**
+     * 获取需要观察的行号区间
+     *
+     * @return 行号区间，按[from,to]成对存放，为null表示观察所有的行
+     */
+    public int[] getLineRanges() {
+        return null == lineRanges
+                ? null
+                : lineRanges.clone();
+    }
+
+    /**
+     * 判断行是否需要被观察
+     *
+     * @param lineNumber 行号
+     * @return TRUE:需要观察；FALSE:不需要观察
+     */
+    public boolean isMatchedLine(final int lineNumber) {
+        if (null == lineRanges) {
+            return true;
+        }
+        for (int index = 0; index < lineRanges.length; index += 2) {
+            if (lineNumber >= lineRanges[index]
+                    && lineNumber <= lineRanges[index + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 行探针是否只在第一次执行时产生LINE事件
+     * <p>
+     * 行探针第一次执行之后只剩一次数组读取的开销，适用于在生产环境中统计行覆盖。
+     * 类被重新增强后行探针会重新计算第一次执行
+     * </p>
+     *
+     * @return TRUE:只在第一次执行时产生事件；FALSE:每次执行都产生事件
+     */
+    public boolean isLineFirstHitOnly() {
+        return isLineFirstHitOnly;
+    }
+
+    /**
+     * 判断参数下标是否需要被采集
+     *
+     * @param index 参数下标
+     * @return TRUE:需要采集；FALSE：不需要采集
+     */
+    public boolean isCaptureParameter(final int index) {
+        if (!isCaptureParameters) {
+            return false;
+        }
+        if (null == parameterIndexes) {
+            return true;
+        }
+        for (final int parameterIndex : parameterIndexes) {
+            if (parameterIndex == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 不采集参数
+     *
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withoutParameters()
+     */
+    public EventWatchOption withoutParameters() {
+        this.isCaptureParameters = false;
+        return this;
+    }
+
+    /**
+     * 只采集指定下标的参数
+     *
+     * @param parameterIndexes 需要采集的参数下标，从0开始
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withParameterIndexes(int...)
+     */
+    public EventWatchOption withParameterIndexes(final int... parameterIndexes) {
+        this.isCaptureParameters = true;
+        this.parameterIndexes = null == parameterIndexes
+                ? new int[0]
+                : parameterIndexes.clone();
+        return this;
+    }
+
+    /**
+     * 参数只读
+     *
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withReadOnlyParameters()
+     */
+    public EventWatchOption withReadOnlyParameters() {
+        this.isReadOnlyParameters = true;
+        return this;
+    }
+
+    /**
+     * 按比例随机采样调用过程
+     *
+     * @param rate 采样比例，取值范围[0,1]，例如0.01表示采样1%的调用过程
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withSampling(double)
+     */
+    public EventWatchOption withSampling(final double rate) {
+        return withSampler(rate >= 1 ? null : new RateSampler(rate));
+    }
+
+    /**
+     * 使用采样器决定调用过程是否需要被观察
+     *
+     * @param sampler 采样器，为null表示观察所有的调用过程
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withSampler(Sampler)
+     */
+    public EventWatchOption withSampler(final Sampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+
+    /**
+     * 异步通知事件，使用默认的缓冲区容量
+     *
+     * @return this
+     * @see #withAsync(int)
+     */
+    public EventWatchOption withAsync() {
+        return withAsync(DEFAULT_ASYNC_CAPACITY);
+    }
+
+    /**
+     * 异步通知事件
+     *
+     * @param capacity 缓冲区容量，必须大于0
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withAsync(int)
+     */
+    public EventWatchOption withAsync(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("async capacity must greater than 0, but was " + capacity);
+        }
+        this.asyncCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * 设置单个事件的开销预算
+     *
+     * @param p99Nanos 开销预算(P99，纳秒)，必须大于0
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withOverheadBudget(long)
+     */
+    public EventWatchOption withOverheadBudget(final long p99Nanos) {
+        if (p99Nanos <= 0) {
+            throw new IllegalArgumentException("overhead budget must greater than 0, but was " + p99Nanos);
+        }
+        this.overheadBudgetNanos = p99Nanos;
+        return this;
+    }
+
+    /**
+     * 只观察通过过滤的方法调用
+     *
+     * @param callFilter 方法调用过滤器，为null表示观察所有的方法调用
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withCall(String, String)
+     */
+    public EventWatchOption withCallFilter(final CallFilter callFilter) {
+        this.callFilter = callFilter;
+        return this;
+    }
+
+    /**
+     * 只观察指定的行，可以多次调用追加
+     *
+     * @param lines 行号
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withLines(int...)
+     */
+    public EventWatchOption withLines(final int... lines) {
+        if (null != lines) {
+            for (final int line : lines) {
+                withLineRange(line, line);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 只观察指定区间内的行，可以多次调用追加
+     *
+     * @param from 起始行号（包含）
+     * @param to   结束行号（包含）
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withLineRange(int, int)
+     */
+    public EventWatchOption withLineRange(final int from, final int to) {
+        if (from > to) {
+            throw new IllegalArgumentException("line range from must not greater than to, but was [" + from + "," + to + "]");
+        }
+        final int length = null == lineRanges
+                ? 0
+                : lineRanges.length;
+        final int[] newLineRanges = new int[length + 2];
+        if (length > 0) {
+            System.arraycopy(lineRanges, 0, newLineRanges, 0, length);
+        }
+        newLineRanges[length] = from;
+        newLineRanges[length + 1] = to;
+        this.lineRanges = newLineRanges;
+        return this;
+    }
+
+    /**
+     * 行探针只在第一次执行时产生LINE事件
+     *
+     * @return this
+     * @see EventWatchBuilder.IBuildingForWatching#withLineFirstHitOnly()
+     */
+    public EventWatchOption withLineFirstHitOnly() {
+        this.isLineFirstHitOnly = true;
+        return this;
+    }
+
+    /**
+     * 复制观察选项，之后对副本的修改不会影响原选项
+     *
+     * @return 观察选项的副本
+     */
+    public EventWatchOption copy() {
+        final EventWatchOption option = new EventWatchOption();
+        option.isCaptureParameters = isCaptureParameters;
+        option.parameterIndexes = null == parameterIndexes
+                ? null
+                : parameterIndexes.clone();
+        option.isReadOnlyParameters = isReadOnlyParameters;
+        option.sampler = sampler;
+        option.asyncCapacity = asyncCapacity;
+        option.overheadBudgetNanos = overheadBudgetNanos;
+        option.callFilter = callFilter;
+        option.lineRanges = null == lineRanges
+                ? null
+                : lineRanges.clone();
+        option.isLineFirstHitOnly = isLineFirstHitOnly;
+        return option;
+    }
+}
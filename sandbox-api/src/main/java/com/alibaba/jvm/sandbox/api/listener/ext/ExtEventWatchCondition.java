@@ -0,0 +1,21 @@
+package com.alibaba.jvm.sandbox.api.listener.ext;
+
+/**
+ * 增强事件观察条件
+ * <p>
+ * 为了向下兼容，{@link EventWatchCondition}的声明保持不变，
+ * 由{@link EventWatchBuilder}构建出来的观察条件会携带观察选项，容器内部会做兼容性判断
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public interface ExtEventWatchCondition extends EventWatchCondition {
+
+    /**
+     * 获取观察选项
+     *
+     * @return 观察选项
+     */
+    EventWatchOption getEventWatchOption();
+
+}
@@ -0,0 +1,61 @@
+package com.alibaba.jvm.sandbox.api.listener.ext;
+
+/**
+ * 按比例随机采样的采样器
+ * <p>
+ * 随机数由xorshift生成器产生，生成器的状态按线程保存，线程之间既不会争抢同一个缓存行，
+ * 采样结果也不会互相关联
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public class RateSampler implements Sampler {
+
+    // 随机数取53位，和double的精度保持一致
+    private static final long RANDOM_BOUND = 1L << 53;
+
+    // 线程的xorshift状态，所有采样器共用；值只是long[]，不会引用到其他类加载器
+    private static final ThreadLocal<long[]> seedRef = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[]{(System.nanoTime() ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) | 1L};
+        }
+    };
+
+    private final double rate;
+    private final long threshold;
+
+    /**
+     * 构造按比例随机采样的采样器
+     *
+     * @param rate 采样比例，取值范围[0,1]，例如0.01表示采样1%的调用过程
+     */
+    public RateSampler(final double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("sampling rate must between 0 and 1, but was " + rate);
+        }
+        this.rate = rate;
+        this.threshold = (long) (rate * RANDOM_BOUND);
+    }
+
+    /**
+     * 获取采样比例
+     *
+     * @return 采样比例
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    @Override
+    public boolean isSampled() {
+        final long[] seed = seedRef.get();
+        long x = seed[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        seed[0] = x;
+        return (x >>> 11) < threshold;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.alibaba.jvm.sandbox.api.listener.ext;
+
+/**
+ * 采样器
+ * <p>
+ * 决定一次调用过程是否需要被观察。容器只在调用过程的第一个BEFORE事件时询问一次，
+ * 未被采样的调用过程（包括其中嵌套的调用）不会产生任何事件，只会付出一次标记判断的代价
+ * </p>
+ * <p>
+ * 采样器会被业务线程并发调用，实现需要足够轻量，且不能阻塞
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public interface Sampler {
+
+    /**
+     * 本次调用过程是否被采样
+     *
+     * @return TRUE:采样，调用过程中的事件正常通知；FALSE:不采样，整个调用过程被忽略
+     */
+    boolean isSampled();
+
+}
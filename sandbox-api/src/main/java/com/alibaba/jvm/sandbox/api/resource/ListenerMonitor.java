@@ -0,0 +1,126 @@
+package com.alibaba.jvm.sandbox.api.resource;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+
+import java.util.List;
+
+/**
+ * 事件监听器监控
+ * <p>
+ * 容器按事件监听器统计事件的派发情况，统计从事件监听器激活时开始，重新激活后清零
+ * </p>
+ *
+ * @since {@code sandbox-api:1.4.0}
+ */
+public interface ListenerMonitor {
+
+    /**
+     * 事件监听器的统计指标
+     *
+     * @since {@code sandbox-api:1.4.0}
+     */
+    interface ListenerMetrics {
+
+        /**
+         * 获取事件监听器所属的模块ID
+         *
+         * @return 模块ID
+         */
+        String getUniqueId();
+
+        /**
+         * 获取事件监听器ID
+         *
+         * @return 事件监听器ID
+         */
+        int getListenerId();
+
+        /**
+         * 获取事件监听器的类名
+         *
+         * @return 事件监听器类名
+         */
+        String getListenerClassName();
+
+        /**
+         * 获取派发给事件监听器的事件总数
+         *
+         * @return 派发的事件总数
+         */
+        long getDispatchedCount();
+
+        /**
+         * 获取派发给事件监听器的指定类型事件数
+         *
+         * @param type 事件类型
+         * @return 派发的事件数
+         */
+        long getDispatchedCount(Event.Type type);
+
+        /**
+         * 获取被忽略的事件总数
+         * <p>在守护区内产生、调用过程堆栈为空或调用过程被忽略（含未被采样）的事件都会被忽略</p>
+         *
+         * @return 被忽略的事件总数
+         */
+        long getIgnoredCount();
+
+        /**
+         * 获取被忽略的指定类型事件数
+         *
+         * @param type 事件类型
+         * @return 被忽略的事件数
+         */
+        long getIgnoredCount(Event.Type type);
+
+        /**
+         * 获取事件监听器发起流程控制的次数
+         *
+         * @return 流程控制次数
+         */
+        long getProcessControlCount();
+
+        /**
+         * 获取事件监听器抛出异常的次数
+         *
+         * @return 抛出异常次数
+         */
+        long getErrorCount();
+
+        /**
+         * 获取事件监听器耗时分布
+         * <p>
+         * 第i个桶统计耗时在[2^i,2^(i+1))纳秒之间的事件数，最后一个桶包含所有更长的耗时。
+         * 耗时是抽样统计的，每个线程每16个事件统计一次
+         * </p>
+         *
+         * @return 耗时分布
+         */
+        long[] getNanosHistogram();
+
+        /**
+         * 根据耗时分布估算事件监听器耗时的百分位数
+         *
+         * @param percentile 百分位，取值范围(0,100]
+         * @return 耗时上界(纳秒)，没有耗时样本时返回0
+         */
+        long getPercentileNanos(double percentile);
+
+    }
+
+    /**
+     * 获取当前模块指定观察的事件监听器统计指标
+     *
+     * @param watchId 观察ID
+     * @return 统计指标，观察不存在或未激活时返回null
+     */
+    ListenerMetrics getListenerMetrics(int watchId);
+
+    /**
+     * 列出容器中所有已激活的事件监听器统计指标
+     *
+     * @return 统计指标集合
+     */
+    List<ListenerMetrics> listListenerMetrics();
+
+}
@@ -125,4 +125,15 @@ public interface ModuleManager {
      */
     File getJarFile(String uniqueId) throws ModuleException;
 
+    /**
+     * 获取模块中因超出开销预算而被熔断的观察个数
+     * <p>熔断的观察不再产生事件，模块重新冻结、激活后恢复</p>
+     *
+     * @param uniqueId 模块ID
+     * @return 被熔断的观察个数
+     * @throws ModuleException 模块不存在
+     * @see com.alibaba.jvm.sandbox.api.listener.ext.EventWatchBuilder.IBuildingForWatching#withOverheadBudget(long)
+     * @since {@code sandbox-api:1.4.0}
+     */
+    int trippedCnt(String uniqueId) throws ModuleException;
 }
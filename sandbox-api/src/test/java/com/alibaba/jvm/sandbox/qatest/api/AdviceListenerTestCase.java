@@ -3,6 +3,7 @@ package com.alibaba.jvm.sandbox.qatest.api;
 import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
 import com.alibaba.jvm.sandbox.api.event.ReturnEvent;
 import com.alibaba.jvm.sandbox.api.event.ThrowsEvent;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
 import com.alibaba.jvm.sandbox.api.listener.ext.Advice;
 import com.alibaba.jvm.sandbox.api.listener.ext.AdviceListener;
 import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchBuilder;
@@ -10,6 +11,9 @@ import com.alibaba.jvm.sandbox.qatest.api.mock.MockForBuilderModuleEventWatcher;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class AdviceListenerTestCase {
 
 
@@ -96,4 +100,71 @@ public class AdviceListenerTestCase {
 
     }
 
+    private static BeforeEvent newBeforeEvent(final int invokeId, final Object target) {
+        return new BeforeEvent(
+                10001,
+                invokeId,
+                AdviceListenerTestCase.class.getClassLoader(),
+                "java.lang.String",
+                "toString",
+                "()Ljava/lang/String;",
+                target,
+                new Object[]{}
+        );
+    }
+
+    @Test
+    public void test$$AdviceListener$$recycle$retain() throws Throwable {
+
+        final MockForBuilderModuleEventWatcher mockForBuilderModuleEventWatcher
+                = new MockForBuilderModuleEventWatcher();
+
+        final List<Advice> advices = new ArrayList<Advice>();
+        final boolean[] isRetainRef = new boolean[]{false};
+        new EventWatchBuilder(mockForBuilderModuleEventWatcher)
+                .onClass(String.class)
+                .onBehavior("toString")
+                .onWatch(new AdviceListener() {
+                    @Override
+                    protected void before(Advice advice) throws Throwable {
+                        advice.attach("attachment", "mark");
+                        if (isRetainRef[0]) {
+                            advice.retain();
+                        }
+                        advices.add(advice);
+                    }
+                });
+
+        final EventListener listener = mockForBuilderModuleEventWatcher.getEventListener();
+
+        // 调用结束后通知被回收，下一次调用复用同一个通知
+        listener.onEvent(newBeforeEvent(10001, "first"));
+        listener.onEvent(new ReturnEvent(10001, 10001, "first"));
+        Assert.assertFalse(advices.get(0).hasMark("mark"));
+        Assert.assertNull(advices.get(0).attachment());
+        Assert.assertNull(advices.get(0).getTarget());
+
+        listener.onEvent(newBeforeEvent(10002, "second"));
+        Assert.assertSame(advices.get(0), advices.get(1));
+        Assert.assertEquals("second", advices.get(1).getTarget());
+        Assert.assertEquals("toString", advices.get(1).getBehavior().getName());
+        Assert.assertEquals(10001L, advices.get(1).getLongProcessId());
+        Assert.assertEquals(10002L, advices.get(1).getLongInvokeId());
+        listener.onEvent(new ReturnEvent(10001, 10002, "second"));
+
+        // 被保留的通知不会被回收
+        isRetainRef[0] = true;
+        listener.onEvent(newBeforeEvent(10003, "third"));
+        listener.onEvent(new ReturnEvent(10001, 10003, "third"));
+        Assert.assertTrue(advices.get(2).isRetained());
+        Assert.assertTrue(advices.get(2).hasMark("mark"));
+        Assert.assertEquals("third", advices.get(2).getTarget());
+        Assert.assertEquals("third", advices.get(2).getReturnObj());
+
+        listener.onEvent(newBeforeEvent(10004, "fourth"));
+        Assert.assertNotSame(advices.get(2), advices.get(3));
+        Assert.assertEquals("third", advices.get(2).getTarget());
+
+    }
+
 }
@@ -0,0 +1,91 @@
+package com.alibaba.jvm.sandbox.qatest.api;
+
+import com.alibaba.jvm.sandbox.api.listener.ext.Behavior;
+import com.alibaba.jvm.sandbox.api.listener.ext.BehaviorCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class BehaviorCacheTestCase {
+
+    @Test
+    public void test$cache$method$constructor() throws NoSuchMethodException {
+        final BehaviorCache behaviorCache = new BehaviorCache();
+
+        final Behavior indexOfChar = behaviorCache.getBehavior(String.class, "indexOf", "(I)I");
+        Assert.assertEquals("indexOf", indexOfChar.getName());
+        Assert.assertArrayEquals(new Class<?>[]{int.class}, indexOfChar.getParameterTypes());
+
+        final Behavior indexOfString = behaviorCache.getBehavior(String.class, "indexOf", "(Ljava/lang/String;I)I");
+        Assert.assertArrayEquals(new Class<?>[]{String.class, int.class}, indexOfString.getParameterTypes());
+
+        final Behavior constructor = behaviorCache.getBehavior(String.class, "<init>", "(Ljava/lang/String;)V");
+        Assert.assertEquals("<init>", constructor.getName());
+        Assert.assertArrayEquals(new Class<?>[]{String.class}, constructor.getParameterTypes());
+
+        // 同一个类只建立一次索引，之后返回同一个行为
+        Assert.assertSame(indexOfChar, behaviorCache.getBehavior(String.class, "indexOf", "(I)I"));
+        Assert.assertEquals(1, behaviorCache.getMissCount());
+        Assert.assertEquals(3, behaviorCache.getHitCount());
+        Assert.assertEquals(1, behaviorCache.size());
+
+        behaviorCache.getBehavior(Integer.class, "intValue", "()I");
+        Assert.assertEquals(2, behaviorCache.getMissCount());
+        Assert.assertEquals(2, behaviorCache.size());
+    }
+
+    @Test
+    public void test$cache$indexSurviveGc() throws Exception {
+        final BehaviorCache behaviorCache = new BehaviorCache();
+        Assert.assertEquals("indexOf", behaviorCache.getBehavior(String.class, "indexOf", "(I)I").getName());
+
+        // 行为没有被引用时随GC回收，行为索引和类同生命周期，之后的查找不会重建行为索引
+        System.gc();
+        final Behavior indexOfChar = behaviorCache.getBehavior(String.class, "indexOf", "(I)I");
+        Assert.assertEquals("indexOf", indexOfChar.getName());
+        Assert.assertArrayEquals(new Class<?>[]{int.class}, indexOfChar.getParameterTypes());
+        final Behavior constructor = behaviorCache.getBehavior(String.class, "<init>", "(Ljava/lang/String;)V");
+        Assert.assertArrayEquals(new Class<?>[]{String.class}, constructor.getParameterTypes());
+        Assert.assertEquals(1, behaviorCache.getMissCount());
+        Assert.assertEquals(1, behaviorCache.size());
+    }
+
+    @Test
+    public void test$cache$classUnloaded() throws Exception {
+        final BehaviorCache behaviorCache = new BehaviorCache();
+        cacheUnloadableClass(behaviorCache);
+        Assert.assertEquals(1, behaviorCache.size());
+
+        // 缓存不能阻止类和ClassLoader被回收
+        for (int i = 0; i < 50 && behaviorCache.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, behaviorCache.size());
+    }
+
+    // 用一次性的ClassLoader加载类并建立索引，返回后不再持有类和ClassLoader
+    private static void cacheUnloadableClass(final BehaviorCache behaviorCache) throws Exception {
+        final URL location = BehaviorCacheTestCase.class.getProtectionDomain().getCodeSource().getLocation();
+        final URLClassLoader loader = new URLClassLoader(new URL[]{location}, null);
+        final Class<?> clazz = loader.loadClass(Unloadable.class.getName());
+        Assert.assertNotSame(Unloadable.class, clazz);
+        Assert.assertEquals("sum", behaviorCache.getBehavior(clazz, "sum", "(II)I").getName());
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void test$cache$noSuchMethod() throws NoSuchMethodException {
+        new BehaviorCache().getBehavior(String.class, "indexOf", "(J)I");
+    }
+
+    public static class Unloadable {
+
+        public int sum(int a, int b) {
+            return a + b;
+        }
+
+    }
+
+}
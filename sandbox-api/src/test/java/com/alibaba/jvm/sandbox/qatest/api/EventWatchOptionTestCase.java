@@ -0,0 +1,43 @@
+package com.alibaba.jvm.sandbox.qatest.api;
+
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventWatchOptionTestCase {
+
+    @Test
+    public void test$copy() {
+        final EventWatchOption option = new EventWatchOption()
+                .withParameterIndexes(0, 2)
+                .withReadOnlyParameters()
+                .withAsync(128)
+                .withOverheadBudget(1000)
+                .withLineRange(10, 20)
+                .withLineFirstHitOnly();
+        final EventWatchOption copy = option.copy();
+        Assert.assertNotSame(option, copy);
+        Assert.assertTrue(copy.isCaptureParameter(0));
+        Assert.assertFalse(copy.isCaptureParameter(1));
+        Assert.assertTrue(copy.isCaptureParameter(2));
+        Assert.assertTrue(copy.isReadOnlyParameters());
+        Assert.assertEquals(128, copy.getAsyncCapacity());
+        Assert.assertEquals(1000, copy.getOverheadBudgetNanos());
+        Assert.assertTrue(copy.isMatchedLine(15));
+        Assert.assertFalse(copy.isMatchedLine(21));
+        Assert.assertTrue(copy.isLineFirstHitOnly());
+    }
+
+    @Test
+    public void test$copy$independent() {
+        final EventWatchOption option = new EventWatchOption();
+        final EventWatchOption copy = option.copy()
+                .withOverheadBudget(1000)
+                .withLines(10);
+        Assert.assertEquals(0, option.getOverheadBudgetNanos());
+        Assert.assertNull(option.getLineRanges());
+        Assert.assertEquals(1000, copy.getOverheadBudgetNanos());
+        Assert.assertTrue(copy.isMatchedLine(10));
+    }
+
+}
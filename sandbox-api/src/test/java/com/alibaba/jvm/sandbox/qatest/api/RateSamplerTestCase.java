@@ -0,0 +1,69 @@
+package com.alibaba.jvm.sandbox.qatest.api;
+
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.api.listener.ext.RateSampler;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateSamplerTestCase {
+
+    private static int countSampled(final RateSampler sampler, final int times) {
+        int sampled = 0;
+        for (int index = 0; index < times; index++) {
+            if (sampler.isSampled()) {
+                sampled++;
+            }
+        }
+        return sampled;
+    }
+
+    @Test
+    public void test$rate() {
+        Assert.assertEquals(0, countSampled(new RateSampler(0), 10000));
+        Assert.assertEquals(10000, countSampled(new RateSampler(1), 10000));
+        final int sampled = countSampled(new RateSampler(0.1), 100000);
+        Assert.assertTrue("sampled=" + sampled, sampled > 9000 && sampled < 11000);
+    }
+
+    @Test
+    public void test$rate$concurrent() throws InterruptedException {
+        final RateSampler sampler = new RateSampler(0.1);
+        final int[] sampledArray = new int[4];
+        final Thread[] threads = new Thread[sampledArray.length];
+        for (int index = 0; index < threads.length; index++) {
+            final int threadIndex = index;
+            threads[index] = new Thread() {
+                @Override
+                public void run() {
+                    sampledArray[threadIndex] = countSampled(sampler, 100000);
+                }
+            };
+            threads[index].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        // 每个线程各自产生随机数，每个线程上的采样比例都不会偏离
+        for (final int sampled : sampledArray) {
+            Assert.assertTrue("sampled=" + sampled, sampled > 9000 && sampled < 11000);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test$illegal$rate() {
+        new RateSampler(1.5);
+    }
+
+    @Test
+    public void test$option$withSampling() {
+        Assert.assertNull(new EventWatchOption().getSampler());
+        Assert.assertNull(new EventWatchOption().withSampling(1).getSampler());
+        Assert.assertEquals(
+                0.01,
+                ((RateSampler) new EventWatchOption().withSampling(0.01).getSampler()).getRate(),
+                0
+        );
+    }
+
+}
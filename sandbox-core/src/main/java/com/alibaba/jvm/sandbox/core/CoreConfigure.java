@@ -37,6 +37,8 @@ public class CoreConfigure {
     private static final String VAL_LAUNCH_MODE_ATTACH = "attach";
 
     private static final String KEY_UNSAFE_ENABLE = "unsafe.enable";
+    private static final String KEY_FUSED_WEAVING_ENABLE = "fused.weaving.enable";
+    private static final String KEY_LISTENER_BUDGET_NANOS = "listener.budget.nanos";
 
     // 受保护key数组，在保护key范围之内，以用户传递的配置为准，系统配置不允许覆盖
     private static final String[] PROTECT_KEY_ARRAY = {KEY_NAMESPACE, KEY_SANDBOX_HOME, KEY_LAUNCH_MODE, KEY_SERVER_IP, KEY_SERVER_PORT, KEY_SERVER_CHARSET};
@@ -287,6 +289,26 @@ public class CoreConfigure {
         return BooleanUtils.toBoolean(featureMap.get(KEY_UNSAFE_ENABLE));
     }
 
+    /**
+     * 是否启用合并织入
+     * <p>启用后同一个行为被多个观察命中时只织入一套探针，由探针统一分发给所有的监听器</p>
+     *
+     * @return fused.weaving.enable
+     */
+    public boolean isEnableFusedWeaving() {
+        return BooleanUtils.toBoolean(featureMap.get(KEY_FUSED_WEAVING_ENABLE));
+    }
+
+    /**
+     * 获取事件监听器默认的开销预算
+     * <p>事件监听器处理单个事件耗时的P99超出预算时将被熔断，观察可以单独设置自己的预算</p>
+     *
+     * @return listener.budget.nanos，为0表示不开启开销熔断
+     */
+    public long getListenerBudgetNanos() {
+        return Math.max(NumberUtils.toLong(featureMap.get(KEY_LISTENER_BUDGET_NANOS), 0), 0);
+    }
+
     /**
      * 获取沙箱安装目录
      *
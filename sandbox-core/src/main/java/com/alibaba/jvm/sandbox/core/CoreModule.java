@@ -2,6 +2,7 @@ package com.alibaba.jvm.sandbox.core;
 
 import com.alibaba.jvm.sandbox.api.Module;
 import com.alibaba.jvm.sandbox.core.classloader.ModuleJarClassLoader;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
 import com.alibaba.jvm.sandbox.core.manager.impl.SandboxClassFileTransformer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -175,6 +176,21 @@ public class CoreModule {
         return mCnt;
     }
 
+    /**
+     * 获取模块中因开销超出预算而被熔断的观察个数
+     *
+     * @return 被熔断的观察个数
+     */
+    public int trippedCnt() {
+        int trippedCnt = 0;
+        for (final SandboxClassFileTransformer sandboxClassFileTransformer : sandboxClassFileTransformers) {
+            if (EventListenerHandler.getSingleton().isTripped(sandboxClassFileTransformer.getListenerId())) {
+                trippedCnt++;
+            }
+        }
+        return trippedCnt;
+    }
+
     @Override
     public String toString() {
         return String.format(
@@ -1,39 +1,47 @@
 package com.alibaba.jvm.sandbox.core.classloader;
 
+import com.alibaba.jvm.sandbox.core.util.SandboxThreadContext;
+
 /**
+ * 业务类加载器持有者，业务类加载器存放在{@link SandboxThreadContext}中
+ * <p>
+ * 这里直接持有业务类加载器本身，每次BEFORE事件只是一次引用赋值，
+ * 不再为此构造一个委派的ClassLoader
+ * </p>
+ *
  * @author zhuangpeng
  * @since 2020/1/15
  */
 public class BusinessClassLoaderHolder {
 
-    private static final ThreadLocal<DelegateBizClassLoader> holder = new ThreadLocal<DelegateBizClassLoader>();
-
     public static void setBusinessClassLoader(ClassLoader classLoader){
         if(null == classLoader){
             return;
         }
-        DelegateBizClassLoader delegateBizClassLoader = new DelegateBizClassLoader(classLoader);
-        holder.set(delegateBizClassLoader);
+        setBusinessClassLoader(SandboxThreadContext.current(), classLoader);
     }
 
-
-    public static void removeBusinessClassLoader(){
-        holder.remove();
+    public static void setBusinessClassLoader(SandboxThreadContext context, ClassLoader classLoader){
+        if(null == classLoader){
+            return;
+        }
+        context.setBusinessClassLoader(classLoader);
     }
 
-    public static DelegateBizClassLoader getBusinessClassLoader(){
 
-        return null != holder ? holder.get() : null;
+    public static void removeBusinessClassLoader(){
+        removeBusinessClassLoader(SandboxThreadContext.peek());
     }
 
-    public static class DelegateBizClassLoader extends ClassLoader{
-        public DelegateBizClassLoader(ClassLoader parent){
-            super(parent);
+    public static void removeBusinessClassLoader(SandboxThreadContext context){
+        if(null != context){
+            context.setBusinessClassLoader(null);
         }
+    }
 
-        @Override
-        public Class<?> loadClass(final String javaClassName, final boolean resolve) throws ClassNotFoundException {
-            return super.loadClass(javaClassName,resolve);
-        }
+    public static ClassLoader getBusinessClassLoader(){
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+        return null != context ? context.getBusinessClassLoader() : null;
     }
+
 }
@@ -1,6 +1,5 @@
 package com.alibaba.jvm.sandbox.core.classloader;
 
-import com.alibaba.jvm.sandbox.core.classloader.BusinessClassLoaderHolder.DelegateBizClassLoader;
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,10 +92,15 @@ public class RoutingURLClassLoader extends URLClassLoader {
                     }
                     return aClass;
                 } catch (Exception cause) {
-                    DelegateBizClassLoader delegateBizClassLoader = BusinessClassLoaderHolder.getBusinessClassLoader();
+                    // 模块中找不到的类，尝试交给当前业务类加载器加载
+                    final ClassLoader bizClassLoader = BusinessClassLoaderHolder.getBusinessClassLoader();
                     try {
-                        if(null != delegateBizClassLoader){
-                            return delegateBizClassLoader.loadClass(javaClassName,resolve);
+                        if(null != bizClassLoader){
+                            final Class<?> bizClass = bizClassLoader.loadClass(javaClassName);
+                            if (resolve) {
+                                resolveClass(bizClass);
+                            }
+                            return bizClass;
                         }
                     } catch (Exception e) {
                         //忽略异常，继续往下加载
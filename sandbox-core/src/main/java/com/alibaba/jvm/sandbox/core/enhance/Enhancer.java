@@ -1,6 +1,7 @@
 package com.alibaba.jvm.sandbox.core.enhance;
 
 import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
 
 import java.util.Set;
 
@@ -19,6 +20,7 @@ public interface Enhancer {
      * @param namespace        命名空间
      * @param listenerId       需要埋入的监听器ID
      * @param eventTypeArray   需要配埋入的事件类型
+     * @param option           观察选项
      * @return 增强后的字节码数组
      */
     byte[] toByteCodeArray(ClassLoader loader,
@@ -26,6 +28,7 @@ public interface Enhancer {
                            Set<String> signCodes,
                            String namespace,
                            int listenerId,
-                           Event.Type[] eventTypeArray);
+                           Event.Type[] eventTypeArray,
+                           EventWatchOption option);
 
 }
@@ -1,6 +1,8 @@
 package com.alibaba.jvm.sandbox.core.enhance;
 
 import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
 import com.alibaba.jvm.sandbox.core.enhance.weaver.asm.EventWeaver;
 import com.alibaba.jvm.sandbox.core.manager.NativeMethodEnhanceAware;
 import com.alibaba.jvm.sandbox.core.util.AsmUtils;
@@ -100,18 +102,75 @@ public class EventEnhancer implements Enhancer {
                                   final Set<String> signCodes,
                                   final String namespace,
                                   final int listenerId,
-                                  final Event.Type[] eventTypeArray) {
+                                  final Event.Type[] eventTypeArray,
+                                  final EventWatchOption option) {
+        return weave(
+                targetClassLoader,
+                byteCodeArray,
+                signCodes,
+                namespace,
+                EventListenerHandler.getSingleton().getListenerSlot(listenerId),
+                eventTypeArray,
+                option
+        );
+    }
+
+    /**
+     * 转换为合并织入后的字节码数组
+     * <p>
+     * 多个监听器同时观察同一批行为时，行为只会被织入一套探针，探针中携带的是监听器组槽位，
+     * 事件发生时由{@link EventListenerHandler}按顺序分发给组内的所有监听器
+     * </p>
+     *
+     * @param targetClassLoader 目标类加载器
+     * @param byteCodeArray     源字节码数组
+     * @param signCodes         需要被增强的行为签名
+     * @param namespace         命名空间
+     * @param listenerIds       需要埋入的监听器ID，按织入顺序排列
+     * @param eventTypeArray    需要配埋入的事件类型，为组内所有监听器事件类型的并集
+     * @param option            观察选项，为组内所有监听器观察选项的合并
+     * @return 增强后的字节码数组
+     */
+    public byte[] toByteCodeArray(final ClassLoader targetClassLoader,
+                                  final byte[] byteCodeArray,
+                                  final Set<String> signCodes,
+                                  final String namespace,
+                                  final int[] listenerIds,
+                                  final Event.Type[] eventTypeArray,
+                                  final EventWatchOption option) {
+        return weave(
+                targetClassLoader,
+                byteCodeArray,
+                signCodes,
+                namespace,
+                listenerIds.length == 1
+                        ? EventListenerHandler.getSingleton().getListenerSlot(listenerIds[0])
+                        : EventListenerHandler.getSingleton().getListenerSetSlot(listenerIds),
+                eventTypeArray,
+                option
+        );
+    }
+
+    // 按监听器槽位(或监听器组槽位)织入增强代码
+    private byte[] weave(final ClassLoader targetClassLoader,
+                         final byte[] byteCodeArray,
+                         final Set<String> signCodes,
+                         final String namespace,
+                         final int listenerSlot,
+                         final Event.Type[] eventTypeArray,
+                         final EventWatchOption option) {
         // 返回增强后字节码
         final ClassReader cr = new ClassReader(byteCodeArray);
         final ClassWriter cw = createClassWriter(targetClassLoader, cr);
         final int targetClassLoaderObjectID = ObjectIDs.instance.identity(targetClassLoader);
         cr.accept(
                 new EventWeaver(isNativeMethodEnhanceSupported,
-                        ASM7, cw, namespace, listenerId,
+                        ASM7, cw, namespace, listenerSlot,
                         targetClassLoaderObjectID,
                         cr.getClassName(),
                         signCodes,
-                        eventTypeArray
+                        eventTypeArray,
+                        option
                 ),
                 EXPAND_FRAMES
         );
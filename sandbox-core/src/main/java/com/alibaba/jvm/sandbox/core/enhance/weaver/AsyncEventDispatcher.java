@@ -0,0 +1,353 @@
+package com.alibaba.jvm.sandbox.core.enhance.weaver;
+
+import com.alibaba.jvm.sandbox.api.ProcessControlException;
+import com.alibaba.jvm.sandbox.api.event.*;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.core.util.SandboxProtector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步事件通知器
+ * <p>
+ * 业务线程将事件的内容复制到预先分配好的槽位中，由通知线程按顺序还原成事件后回调事件监听器。
+ * 槽位组成一个有界的多生产者单消费者环形缓冲区，业务线程之间只通过CAS争抢写入位置，不会阻塞；
+ * 缓冲区满时直接丢弃事件并计数
+ * </p>
+ * <p>
+ * 缓冲区为空时通知线程逐步延长等待时长，业务线程写入事件时发现通知线程正在等待会将其唤醒，
+ * 空闲时不会频繁醒来空转
+ * </p>
+ * <p>
+ * 事件在通知线程中回调，流程控制已经无法生效，事件监听器发起的流程控制会被忽略
+ * </p>
+ */
+class AsyncEventDispatcher {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // 缓冲区为空时通知线程的最短等待时长，连续空闲时逐次加倍
+    private static final long MIN_IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // 缓冲区为空时通知线程的最长等待时长，也是错过唤醒时事件被延迟通知的上限
+    private static final long MAX_IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 槽位，保存从事件中复制出来的内容
+     */
+    private static class Slot {
+
+        Event.Type type;
+        long processId;
+        long invokeId;
+
+        // BEFORE
+        BehaviorInfo behaviorInfo;
+        Object target;
+        Object[] argumentArray;
+
+        // RETURN:返回对象；THROWS:抛出的异常
+        Object object;
+
+        // LINE/CALL_BEFORE
+        int lineNumber;
+
+        // CALL_BEFORE
+        String owner;
+        String name;
+        String desc;
+
+        // CALL_THROWS
+        String throwException;
+
+        // 通知完成后清理引用，避免槽位长期持有业务对象
+        void clean() {
+            type = null;
+            behaviorInfo = null;
+            target = null;
+            argumentArray = null;
+            object = null;
+            owner = null;
+            name = null;
+            desc = null;
+            throwException = null;
+        }
+
+    }
+
+    private final int listenerId;
+    private final EventListener listener;
+
+    private final Slot[] slots;
+    private final int mask;
+
+    // 槽位序号：等于写入位置时可写，等于写入位置+1时可读
+    private final AtomicLongArray sequences;
+
+    // 下一个写入位置
+    private final AtomicLong tail = new AtomicLong();
+
+    // 下一个读取位置，只有通知线程访问
+    private long head;
+
+    // 通知线程独享的事件工厂
+    private final SingleEventFactory eventFactory = new SingleEventFactory();
+
+    // 丢弃的事件数，只在缓冲区满时才会写入
+    private final AtomicLong dropCount = new AtomicLong();
+
+    private final Thread dispatchThread;
+    private volatile boolean isRunning = true;
+
+    // 通知线程是否正在等待事件
+    private volatile boolean isWaiting;
+
+    AsyncEventDispatcher(final int listenerId,
+                         final EventListener listener,
+                         final int capacity) {
+        this.listenerId = listenerId;
+        this.listener = listener;
+
+        // 容量向上取整为2的幂，写入位置和槽位下标之间只需要一次位运算
+        final int size = capacity <= 1
+                ? 1
+                : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            slots[index] = new Slot();
+            sequences.set(index, index);
+        }
+
+        this.dispatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+            }
+        }, "sandbox-async-listener-" + listenerId);
+        this.dispatchThread.setDaemon(true);
+
+        // 不让通知线程持有业务的类加载器
+        this.dispatchThread.setContextClassLoader(listener.getClass().getClassLoader());
+    }
+
+    /**
+     * 启动通知线程
+     */
+    void start() {
+        dispatchThread.start();
+    }
+
+    /**
+     * 停止通知线程，缓冲区中尚未通知的事件将被丢弃
+     * <p>这里不等待通知线程结束，避免慢速的事件监听器拖住冻结流程</p>
+     */
+    void stop() {
+        isRunning = false;
+        LockSupport.unpark(dispatchThread);
+    }
+
+    /**
+     * 投递事件
+     * <p>由业务线程调用，事件的内容会被复制出来，调用结束后事件可以被立即复用</p>
+     *
+     * @param event 事件
+     * @return TRUE:投递成功；FALSE：缓冲区已满，事件被丢弃
+     */
+    boolean offer(final Event event) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long distance = sequences.get(index) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    copy(slots[index], event);
+                    sequences.lazySet(index, position + 1);
+                    if (isWaiting) {
+                        isWaiting = false;
+                        LockSupport.unpark(dispatchThread);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (distance < 0) {
+                drop();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // 丢弃计数，丢弃次数为2的幂时输出一次告警，避免日志刷屏
+    private void drop() {
+        final long dropped = dropCount.incrementAndGet();
+        if (Long.bitCount(dropped) == 1) {
+            logger.warn("async listener={} buffer is full, {} events dropped.", listenerId, dropped);
+        }
+    }
+
+    private static void copy(final Slot slot, final Event event) {
+        slot.type = event.type;
+        if (event instanceof InvokeEvent) {
+            slot.processId = ((InvokeEvent) event).longProcessId;
+            slot.invokeId = ((InvokeEvent) event).longInvokeId;
+        }
+        switch (event.type) {
+            case BEFORE: {
+                final BeforeEvent beforeEvent = (BeforeEvent) event;
+                slot.behaviorInfo = beforeEvent.behaviorInfo;
+                slot.target = beforeEvent.target;
+                slot.argumentArray = beforeEvent.argumentArray;
+                break;
+            }
+            case RETURN: {
+                slot.object = ((ReturnEvent) event).object;
+                break;
+            }
+            case THROWS: {
+                slot.object = ((ThrowsEvent) event).throwable;
+                break;
+            }
+            case LINE: {
+                slot.lineNumber = ((LineEvent) event).lineNumber;
+                break;
+            }
+            case CALL_BEFORE: {
+                final CallBeforeEvent callBeforeEvent = (CallBeforeEvent) event;
+                slot.lineNumber = callBeforeEvent.lineNumber;
+                slot.owner = callBeforeEvent.owner;
+                slot.name = callBeforeEvent.name;
+                slot.desc = callBeforeEvent.desc;
+                break;
+            }
+            case CALL_THROWS: {
+                slot.throwException = ((CallThrowsEvent) event).throwException;
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    // 将槽位还原为事件，不支持的事件类型返回null
+    private Event toEvent(final Slot slot) {
+        switch (slot.type) {
+            case BEFORE:
+                return eventFactory.makeBeforeEvent(slot.processId, slot.invokeId,
+                        slot.behaviorInfo, slot.target, slot.argumentArray);
+            case RETURN:
+                return eventFactory.makeReturnEvent(slot.processId, slot.invokeId, slot.object);
+            case THROWS:
+                return eventFactory.makeThrowsEvent(slot.processId, slot.invokeId, (Throwable) slot.object);
+            case LINE:
+                return eventFactory.makeLineEvent(slot.processId, slot.invokeId, slot.lineNumber);
+            case CALL_BEFORE:
+                return eventFactory.makeCallBeforeEvent(slot.processId, slot.invokeId,
+                        slot.lineNumber, slot.owner, slot.name, slot.desc);
+            case CALL_RETURN:
+                return eventFactory.makeCallReturnEvent(slot.processId, slot.invokeId);
+            case CALL_THROWS:
+                return eventFactory.makeCallThrowsEvent(slot.processId, slot.invokeId, slot.throwException);
+            default:
+                return null;
+        }
+    }
+
+    private void dispatchLoop() {
+
+        // 通知线程全程处于守护区中，事件监听器调用到被增强的代码时不会再产生事件
+        SandboxProtector.instance.enterProtecting();
+        try {
+            long idleWaitNanos = MIN_IDLE_WAIT_NANOS;
+            while (isRunning) {
+                if (dispatchOne()) {
+                    idleWaitNanos = MIN_IDLE_WAIT_NANOS;
+                    continue;
+                }
+
+                // 先声明等待再检查一次缓冲区，避免错过在此期间写入的事件
+                isWaiting = true;
+                if (!isReadable()) {
+                    LockSupport.parkNanos(this, idleWaitNanos);
+                    idleWaitNanos = Math.min(idleWaitNanos << 1, MAX_IDLE_WAIT_NANOS);
+                }
+                isWaiting = false;
+            }
+        } finally {
+            SandboxProtector.instance.exitProtecting();
+            logger.info("async listener={} dispatch thread finished, accepted={};dropped={};",
+                    listenerId,
+                    getAcceptCount(),
+                    getDropCount()
+            );
+        }
+    }
+
+    // 缓冲区中是否有待通知的事件
+    private boolean isReadable() {
+        return sequences.get((int) (head & mask)) == head + 1;
+    }
+
+    // 通知一个事件，缓冲区为空时返回false
+    private boolean dispatchOne() {
+        if (!isReadable()) {
+            return false;
+        }
+        final int index = (int) (head & mask);
+        final Slot slot = slots[index];
+        final Event event = toEvent(slot);
+        try {
+            if (null != event) {
+                listener.onEvent(event);
+            }
+        } catch (ProcessControlException pce) {
+            logger.warn("async listener={} process-control is not supported, ignore {} on event={}",
+                    listenerId,
+                    pce.getState(),
+                    slot.type
+            );
+        } catch (Throwable cause) {
+            logger.warn("async listener={} on-event: event|{}|{}|{} occur an error.",
+                    listenerId,
+                    slot.type,
+                    slot.processId,
+                    slot.invokeId,
+                    cause
+            );
+        } finally {
+            if (null != event) {
+                eventFactory.returnEvent(event);
+            }
+            slot.clean();
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+        }
+        return true;
+    }
+
+    /**
+     * 获取成功写入缓冲区的事件数
+     *
+     * @return 写入缓冲区的事件数
+     */
+    long getAcceptCount() {
+        return tail.get();
+    }
+
+    /**
+     * 获取因缓冲区已满而被丢弃的事件数
+     *
+     * @return 丢弃的事件数
+     */
+    long getDropCount() {
+        return dropCount.get();
+    }
+
+}
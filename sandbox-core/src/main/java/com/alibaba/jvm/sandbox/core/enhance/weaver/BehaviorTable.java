@@ -0,0 +1,229 @@
+package com.alibaba.jvm.sandbox.core.enhance.weaver;
+
+import com.alibaba.jvm.sandbox.api.event.BehaviorInfo;
+import com.alibaba.jvm.sandbox.api.listener.ext.Behavior;
+import com.alibaba.jvm.sandbox.api.listener.ext.BehaviorCache;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AccessibleObject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 行为表
+ * <p>
+ * 代码增强时为每个被增强的行为分配一个行为ID，织入的BEFORE探针只需要携带行为ID，
+ * 不再携带ClassLoader、类名、方法名和方法签名，事件发生时用行为ID一次数组读取即可拿到行为信息
+ * </p>
+ * <p>
+ * 行为ID一经分配便不再回收，同一个ClassLoader中的同一个行为被重复增强时沿用原来的行为ID。
+ * 行为表只持有ClassLoader的对象ID，解析后的行为以软引用缓存，类长期不被使用时随GC回收，不会永久阻止类被卸载；
+ * ClassLoader被回收后，行为表扩容时清理掉它的行为
+ * </p>
+ */
+public class BehaviorTable {
+
+    /**
+     * 非法的行为ID
+     */
+    public static final int ILLEGAL_BEHAVIOR_ID = 0;
+
+    // 行为KEY:行为ID映射，只在代码增强时访问
+    private final Map<String, Integer> mappingOfBehaviorId = new HashMap<String, Integer>();
+
+    // 行为ID:行为信息数组
+    // 采用写时复制，容量不足时按倍数扩容，事件处理时只需要一次数组读取即可拿到行为信息
+    private volatile Entry[] entries = new Entry[1024];
+
+    // 下一个可分配的行为ID
+    private int nextBehaviorId = ILLEGAL_BEHAVIOR_ID + 1;
+
+    /**
+     * 登记行为，返回行为ID
+     *
+     * @param targetClassLoaderObjectID 行为所在类的ClassLoader对象ID
+     * @param javaClassName             类名
+     * @param javaMethodName            行为名称
+     * @param javaMethodDesc            行为签名
+     * @return 行为ID
+     */
+    public synchronized int register(final int targetClassLoaderObjectID,
+                                     final String javaClassName,
+                                     final String javaMethodName,
+                                     final String javaMethodDesc) {
+        final String key = toKey(targetClassLoaderObjectID, javaClassName, javaMethodName, javaMethodDesc);
+        final Integer existBehaviorId = mappingOfBehaviorId.get(key);
+        if (null != existBehaviorId) {
+            return existBehaviorId;
+        }
+
+        final int behaviorId = nextBehaviorId++;
+        final Entry[] newEntries;
+        if (behaviorId < entries.length) {
+            newEntries = entries;
+        } else {
+            newEntries = copyOf(entries, entries.length << 1);
+            expungeUnloadedEntries(newEntries);
+        }
+        newEntries[behaviorId] = new Entry(behaviorId, targetClassLoaderObjectID, javaClassName, javaMethodName, javaMethodDesc);
+
+        // 重新发布数组，保证读取到行为ID的线程一定能看到行为信息
+        entries = newEntries;
+        mappingOfBehaviorId.put(key, behaviorId);
+        return behaviorId;
+    }
+
+    private static String toKey(final int targetClassLoaderObjectID,
+                                final String javaClassName,
+                                final String javaMethodName,
+                                final String javaMethodDesc) {
+        return targetClassLoaderObjectID + "#" + javaClassName + "#" + javaMethodName + javaMethodDesc;
+    }
+
+    // 清理ClassLoader已经被回收的行为，这些行为所在的类已经卸载，不会再产生事件；扩容时才清理，开销随登记次数均摊
+    private void expungeUnloadedEntries(final Entry[] entries) {
+        for (int index = 0; index < entries.length; index++) {
+            final Entry entry = entries[index];
+            if (null != entry
+                    && entry.isUnloaded()) {
+                entries[index] = null;
+                mappingOfBehaviorId.remove(toKey(
+                        entry.targetClassLoaderObjectID,
+                        entry.javaClassName,
+                        entry.javaMethodName,
+                        entry.javaMethodDesc
+                ));
+            }
+        }
+    }
+
+    private static Entry[] copyOf(final Entry[] entries, final int length) {
+        final Entry[] newEntries = new Entry[length];
+        System.arraycopy(entries, 0, newEntries, 0, entries.length);
+        return newEntries;
+    }
+
+    /**
+     * 获取行为信息
+     *
+     * @param behaviorId 行为ID
+     * @return 行为信息，行为ID不存在时返回null
+     */
+    public BehaviorInfo get(final int behaviorId) {
+        final Entry[] entries = this.entries;
+        return behaviorId > ILLEGAL_BEHAVIOR_ID && behaviorId < entries.length
+                ? entries[behaviorId]
+                : null;
+    }
+
+    /**
+     * 行为表中的一项
+     */
+    private static class Entry implements BehaviorInfo {
+
+        private final int id;
+        private final int targetClassLoaderObjectID;
+        private final String javaClassName;
+        private final String javaMethodName;
+        private final String javaMethodDesc;
+
+        // 行为所在的类，类在卸载之前一直被它的ClassLoader强引用，所以弱引用不会提前被回收
+        private volatile WeakReference<Class<?>> javaClassRef;
+
+        // 解析后的行为，软引用只在内存紧张或长期不被使用时回收，被回收后按类重新查找
+        private volatile SoftReference<Behavior> behaviorRef;
+
+        Entry(final int id,
+              final int targetClassLoaderObjectID,
+              final String javaClassName,
+              final String javaMethodName,
+              final String javaMethodDesc) {
+            this.id = id;
+            this.targetClassLoaderObjectID = targetClassLoaderObjectID;
+            this.javaClassName = javaClassName;
+            this.javaMethodName = javaMethodName;
+            this.javaMethodDesc = javaMethodDesc;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public ClassLoader getJavaClassLoader() {
+            return ObjectIDs.instance.getObject(targetClassLoaderObjectID);
+        }
+
+        @Override
+        public String getJavaClassName() {
+            return javaClassName;
+        }
+
+        @Override
+        public String getJavaMethodName() {
+            return javaMethodName;
+        }
+
+        @Override
+        public String getJavaMethodDesc() {
+            return javaMethodDesc;
+        }
+
+        // 行为所在的ClassLoader已经被回收(BootstrapClassLoader不会被回收)
+        boolean isUnloaded() {
+            return targetClassLoaderObjectID != ObjectIDs.NULL_ID
+                    && null == ObjectIDs.instance.getObject(targetClassLoaderObjectID);
+        }
+
+        @Override
+        public Behavior getBehavior() throws ClassNotFoundException, NoSuchMethodException {
+            final SoftReference<Behavior> ref = behaviorRef;
+            final Behavior cached = null == ref
+                    ? null
+                    : ref.get();
+            if (null != cached) {
+                return cached;
+            }
+            final Behavior behavior = BehaviorCache.getSingleton().getBehavior(getJavaClass(), javaMethodName, javaMethodDesc);
+            behaviorRef = new SoftReference<Behavior>(behavior);
+            return behavior;
+        }
+
+        // 只有第一次解析时才通过ClassLoader加载类
+        private Class<?> getJavaClass() throws ClassNotFoundException {
+            final WeakReference<Class<?>> ref = javaClassRef;
+            final Class<?> cached = null == ref
+                    ? null
+                    : ref.get();
+            if (null != cached) {
+                return cached;
+            }
+            final Class<?> javaClass = Class.forName(javaClassName, false, getJavaClassLoader());
+            javaClassRef = new WeakReference<Class<?>>(javaClass);
+            return javaClass;
+        }
+
+        @Override
+        public AccessibleObject getJavaBehavior() throws ClassNotFoundException, NoSuchMethodException {
+            return getBehavior().getTarget();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("behavior[id=%s;%s#%s%s;]", id, javaClassName, javaMethodName, javaMethodDesc);
+        }
+
+    }
+
+    // ----------------------------------- 单例模式 -----------------------------------
+
+    private final static BehaviorTable singleton = new BehaviorTable();
+
+    public static BehaviorTable getSingleton() {
+        return singleton;
+    }
+
+}
@@ -2,26 +2,34 @@ package com.alibaba.jvm.sandbox.core.enhance.weaver;
 
 import com.alibaba.jvm.sandbox.api.ProcessControlException;
 import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
+import com.alibaba.jvm.sandbox.api.event.BehaviorInfo;
 import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.event.InvokeEvent;
 import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
 import com.alibaba.jvm.sandbox.core.classloader.BusinessClassLoaderHolder;
-import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import com.alibaba.jvm.sandbox.core.util.InvokeIdSequencer;
 import com.alibaba.jvm.sandbox.core.util.SandboxProtector;
+import com.alibaba.jvm.sandbox.core.util.SandboxThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.com.alibaba.jvm.sandbox.spy.Spy;
 import java.com.alibaba.jvm.sandbox.spy.SpyHandler;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.alibaba.jvm.sandbox.api.event.Event.Type.IMMEDIATELY_RETURN;
 import static com.alibaba.jvm.sandbox.api.event.Event.Type.IMMEDIATELY_THROWS;
 import static com.alibaba.jvm.sandbox.core.util.SandboxReflectUtils.isInterruptEventHandler;
 import static java.com.alibaba.jvm.sandbox.spy.Spy.Ret.newInstanceForNone;
-import static java.com.alibaba.jvm.sandbox.spy.Spy.Ret.newInstanceForThrows;
+import static java.com.alibaba.jvm.sandbox.spy.Spy.Ret.reuseInstanceForThrows;
+import static org.apache.commons.lang3.ArrayUtils.EMPTY_OBJECT_ARRAY;
 import static org.apache.commons.lang3.ArrayUtils.contains;
 import static org.apache.commons.lang3.StringUtils.join;
 
@@ -34,13 +42,133 @@ public class EventListenerHandler implements SpyHandler {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    // 调用序列生成器
-    // private final Sequencer invokeIdSequencer = new Sequencer();
-    private final AtomicInteger invokeIdSequencer = new AtomicInteger(1000);
+    // 调用序列生成器，按线程分段分配
+    private final InvokeIdSequencer invokeIdSequencer = new InvokeIdSequencer();
 
-    // 全局处理器ID:处理器映射集合
-    private final Map<Integer/*LISTENER_ID*/, EventProcessor> mappingOfEventProcessor
-            = new ConcurrentHashMap<Integer, EventProcessor>();
+    // 全局处理器ID:处理器槽位映射集合
+    // 监听器冻结后槽位依旧保留，已织入字节码中的槽位在重新激活后指向同一个监听器；
+    // 只有观察被删除、织入代码已被移除后槽位才会被释放，见{@link #release(int)}
+    private final Map<Integer/*LISTENER_ID*/, Integer/*LISTENER_SLOT*/> mappingOfListenerSlot
+            = new ConcurrentHashMap<Integer, Integer>();
+
+    // 已释放、等待复用的处理器槽位
+    private final BitSet freeListenerSlots = new BitSet();
+
+    // 槽位上的事件处理器被替换的次数，线程发现次数变化后清理上下文中不再有效的调用过程
+    private volatile int listenerSlotVersion;
+
+    // 因开销超出预算而被熔断的事件监听器ID集合
+    private final Set<Integer> trippedListenerIds
+            = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    // 处理器槽位:处理器数组
+    // 采用写时复制，事件处理时只需要一次数组读取即可拿到事件处理器
+    private volatile EventProcessor[] eventProcessorArray = new EventProcessor[0];
+
+    /**
+     * 获取事件监听器对应的槽位，若尚未分配则为其分配一个新的槽位
+     * <p>织入代码中携带的是槽位而不是监听器ID，以便事件发生时能直接按下标找到事件处理器</p>
+     *
+     * @param listenerId 事件监听器ID
+     * @return 事件监听器槽位
+     */
+    public synchronized int getListenerSlot(final int listenerId) {
+        final Integer listenerSlot = mappingOfListenerSlot.get(listenerId);
+        if (null != listenerSlot) {
+            return listenerSlot;
+        }
+        final int freeListenerSlot = freeListenerSlots.nextSetBit(0);
+        if (freeListenerSlot >= 0) {
+            freeListenerSlots.clear(freeListenerSlot);
+            mappingOfListenerSlot.put(listenerId, freeListenerSlot);
+            return freeListenerSlot;
+        }
+        final int newListenerSlot = eventProcessorArray.length;
+        final EventProcessor[] newEventProcessorArray = new EventProcessor[newListenerSlot + 1];
+        System.arraycopy(eventProcessorArray, 0, newEventProcessorArray, 0, eventProcessorArray.length);
+        eventProcessorArray = newEventProcessorArray;
+        mappingOfListenerSlot.put(listenerId, newListenerSlot);
+        return newListenerSlot;
+    }
+
+    // 替换槽位上的事件处理器，返回被替换掉的事件处理器
+    private synchronized EventProcessor setEventProcessor(final int listenerSlot,
+                                                          final EventProcessor processor) {
+        final EventProcessor[] newEventProcessorArray = eventProcessorArray.clone();
+        final EventProcessor oldProcessor = newEventProcessorArray[listenerSlot];
+        newEventProcessorArray[listenerSlot] = processor;
+        eventProcessorArray = newEventProcessorArray;
+        if (null != oldProcessor) {
+            listenerSlotVersion++;
+        }
+        return oldProcessor;
+    }
+
+    // 监听器组:监听器组下标映射集合，监听器组由参与合并织入的监听器槽位按顺序组成
+    private final Map<String/*LISTENER_SLOTS*/, Integer/*LISTENER_SET_INDEX*/> mappingOfListenerSet
+            = new ConcurrentHashMap<String, Integer>();
+
+    // 监听器组下标:组内监听器槽位数组，同样采用写时复制
+    private volatile int[][] listenerSetArray = new int[0][];
+
+    // 已释放、等待复用的监听器组下标
+    private final BitSet freeListenerSetIndexes = new BitSet();
+
+    /**
+     * 获取一组事件监听器对应的监听器组槽位，若尚未分配则为其分配
+     * <p>
+     * 监听器组槽位为负数(监听器组下标按位取反)，和监听器槽位共用织入代码中的同一个参数。
+     * 合并织入时一个方法只织入一套探针，事件发生时再按顺序分发给组内的每一个监听器，
+     * BEFORE/LINE/CALL事件按组内顺序分发，RETURN/THROWS事件按组内逆序分发，和逐层织入时的嵌套顺序保持一致
+     * </p>
+     *
+     * @param listenerIds 组内事件监听器ID，按织入顺序排列
+     * @return 监听器组槽位
+     */
+    public synchronized int getListenerSetSlot(final int... listenerIds) {
+        final int[] listenerSlots = new int[listenerIds.length];
+        for (int index = 0; index < listenerIds.length; index++) {
+            listenerSlots[index] = getListenerSlot(listenerIds[index]);
+        }
+        final String key = Arrays.toString(listenerSlots);
+        final Integer listenerSetIndex = mappingOfListenerSet.get(key);
+        if (null != listenerSetIndex) {
+            return ~listenerSetIndex;
+        }
+        final int freeListenerSetIndex = freeListenerSetIndexes.nextSetBit(0);
+        final int newListenerSetIndex = freeListenerSetIndex >= 0
+                ? freeListenerSetIndex
+                : listenerSetArray.length;
+        final int[][] newListenerSetArray = new int[Math.max(listenerSetArray.length, newListenerSetIndex + 1)][];
+        System.arraycopy(listenerSetArray, 0, newListenerSetArray, 0, listenerSetArray.length);
+        newListenerSetArray[newListenerSetIndex] = listenerSlots;
+        freeListenerSetIndexes.clear(newListenerSetIndex);
+        listenerSetArray = newListenerSetArray;
+        mappingOfListenerSet.put(key, newListenerSetIndex);
+        return ~newListenerSetIndex;
+    }
+
+    // 根据监听器组槽位获取组内监听器槽位
+    private int[] getListenerSet(final int listenerSetSlot) {
+        final int[][] listenerSetArray = this.listenerSetArray;
+        final int listenerSetIndex = ~listenerSetSlot;
+        return listenerSetIndex < listenerSetArray.length
+                ? listenerSetArray[listenerSetIndex]
+                : null;
+    }
+
+    // 是否监听器组槽位
+    private static boolean isListenerSetSlot(final int listenerSlot) {
+        return listenerSlot < 0;
+    }
+
+    // 根据槽位获取事件处理器
+    private EventProcessor getEventProcessor(final int listenerSlot) {
+        final EventProcessor[] eventProcessorArray = this.eventProcessorArray;
+        return listenerSlot >= 0 && listenerSlot < eventProcessorArray.length
+                ? eventProcessorArray[listenerSlot]
+                : null;
+    }
 
     /**
      * 注册事件处理器
@@ -52,7 +180,29 @@ public class EventListenerHandler implements SpyHandler {
     public void active(final int listenerId,
                        final EventListener listener,
                        final Event.Type[] eventTypes) {
-        mappingOfEventProcessor.put(listenerId, new EventProcessor(listenerId, listener, eventTypes));
+        active(listenerId, listener, eventTypes, new EventWatchOption());
+    }
+
+    /**
+     * 注册事件处理器
+     *
+     * @param listenerId 事件监听器ID
+     * @param listener   事件监听器
+     * @param eventTypes 监听事件集合
+     * @param option     观察选项，决定事件的采样和通知方式
+     */
+    public synchronized void active(final int listenerId,
+                                    final EventListener listener,
+                                    final Event.Type[] eventTypes,
+                                    final EventWatchOption option) {
+        final int listenerSlot = getListenerSlot(listenerId);
+        final EventProcessor processor = new EventProcessor(listenerId, listenerSlot, listener, eventTypes, option);
+        processor.active();
+        trippedListenerIds.remove(listenerId);
+        final EventProcessor oldProcessor = setEventProcessor(listenerSlot, processor);
+        if (null != oldProcessor) {
+            oldProcessor.frozen();
+        }
         logger.info("activated listener[id={};target={};] event={}",
                 listenerId,
                 listener,
@@ -65,13 +215,17 @@ public class EventListenerHandler implements SpyHandler {
      *
      * @param listenerId 事件处理器ID
      */
-    public void frozen(int listenerId) {
-        final EventProcessor processor = mappingOfEventProcessor.remove(listenerId);
+    public synchronized void frozen(int listenerId) {
+        final Integer listenerSlot = mappingOfListenerSlot.get(listenerId);
+        final EventProcessor processor = null == listenerSlot
+                ? null
+                : setEventProcessor(listenerSlot, null);
         if (null == processor) {
             logger.debug("ignore frozen listener={}, because not found.", listenerId);
             return;
         }
 
+        processor.frozen();
         logger.info("frozen listener[id={};target={};]",
                 listenerId,
                 processor.listener
@@ -80,6 +234,116 @@ public class EventListenerHandler implements SpyHandler {
         // processor.clean();
     }
 
+    /**
+     * 释放事件监听器的槽位，以及包含该槽位的监听器组，释放后的槽位会分配给新的事件监听器
+     * <p>
+     * 只能在观察被删除、织入代码已经从类中移除之后调用，否则残留的织入代码会把事件派发给复用了槽位的监听器
+     * </p>
+     *
+     * @param listenerId 事件监听器ID
+     */
+    public synchronized void release(final int listenerId) {
+        frozen(listenerId);
+        trippedListenerIds.remove(listenerId);
+        final Integer listenerSlot = mappingOfListenerSlot.remove(listenerId);
+        if (null == listenerSlot) {
+            return;
+        }
+        freeListenerSlots.set(listenerSlot);
+
+        final Iterator<Map.Entry<String, Integer>> it = mappingOfListenerSet.entrySet().iterator();
+        while (it.hasNext()) {
+            final int listenerSetIndex = it.next().getValue();
+            if (contains(listenerSetArray[listenerSetIndex], listenerSlot)) {
+                it.remove();
+                final int[][] newListenerSetArray = listenerSetArray.clone();
+                newListenerSetArray[listenerSetIndex] = null;
+                listenerSetArray = newListenerSetArray;
+                freeListenerSetIndexes.set(listenerSetIndex);
+            }
+        }
+        logger.info("released listener[id={};slot={};]", listenerId, listenerSlot);
+    }
+
+    // 槽位上的事件处理器被替换后，清理当前线程上下文中属于旧事件处理器的调用过程，
+    // 避免线程长期持有它们，也避免复用槽位的新事件处理器看到旧的调用过程
+    private void expungeStaleProcesses(final SandboxThreadContext context) {
+        final int version = listenerSlotVersion;
+        if (context.getListenerSlotVersion() == version) {
+            return;
+        }
+        context.setListenerSlotVersion(version);
+        final EventProcessor[] eventProcessorArray = this.eventProcessorArray;
+        for (int listenerSlot = 0; listenerSlot < context.getProcessCapacity(); listenerSlot++) {
+            final Object process = context.getProcess(listenerSlot);
+            if (process instanceof EventProcessor.Process
+                    && (listenerSlot >= eventProcessorArray.length
+                    || ((EventProcessor.Process) process).getEventProcessor() != eventProcessorArray[listenerSlot])) {
+                context.setProcess(listenerSlot, null);
+            }
+        }
+    }
+
+    // 事件处理器的开销超出预算，通过冻结熔断，直到事件处理器被重新激活
+    private synchronized void trip(final EventProcessor processor) {
+
+        // 事件处理器已经被冻结或替换
+        if (getEventProcessor(processor.listenerSlot) != processor) {
+            return;
+        }
+        frozen(processor.listenerId);
+        trippedListenerIds.add(processor.listenerId);
+        logger.warn("tripped listener[id={};target={};], p99 overhead exceeded budget={}ns, listener is frozen until re-activated.",
+                processor.listenerId,
+                processor.listener,
+                processor.breaker.getBudgetNanos()
+        );
+    }
+
+    /**
+     * 事件监听器是否因开销超出预算而被熔断
+     *
+     * @param listenerId 事件监听器ID
+     * @return TRUE:已熔断；FALSE：未熔断
+     */
+    public boolean isTripped(final int listenerId) {
+        return trippedListenerIds.contains(listenerId);
+    }
+
+    /**
+     * 获取异步通知的事件监听器因缓冲区已满而丢弃的事件数
+     *
+     * @param listenerId 事件监听器ID
+     * @return 丢弃的事件数，事件监听器未激活或不是异步通知时返回0
+     */
+    public long getAsyncDropCount(final int listenerId) {
+        final EventProcessor processor = getEventProcessorByListenerId(listenerId);
+        return null == processor || null == processor.asyncDispatcher
+                ? 0
+                : processor.asyncDispatcher.getDropCount();
+    }
+
+    /**
+     * 获取事件监听器的事件计数器
+     *
+     * @param listenerId 事件监听器ID
+     * @return 事件计数器，事件监听器未激活时返回null
+     */
+    public ListenerCounter getListenerCounter(final int listenerId) {
+        final EventProcessor processor = getEventProcessorByListenerId(listenerId);
+        return null == processor
+                ? null
+                : processor.counter;
+    }
+
+    // 获取事件监听器当前的事件处理器，未激活时返回null
+    private EventProcessor getEventProcessorByListenerId(final int listenerId) {
+        final Integer listenerSlot = mappingOfListenerSlot.get(listenerId);
+        return null == listenerSlot
+                ? null
+                : getEventProcessor(listenerSlot);
+    }
+
     /**
      * 调用出发事件处理&调用执行流程控制
      *
@@ -88,14 +352,16 @@ public class EventListenerHandler implements SpyHandler {
      * @param invokeId   调用ID
      * @param event      调用事件
      * @param processor  事件处理器
+     * @param process    调用过程
      * @return 处理返回结果
      * @throws Throwable 当出现未知异常时,且事件处理器为中断流程事件时抛出
      */
     private Spy.Ret handleEvent(final int listenerId,
-                                final int processId,
-                                final int invokeId,
+                                final long processId,
+                                final long invokeId,
                                 final Event event,
-                                final EventProcessor processor) throws Throwable {
+                                final EventProcessor processor,
+                                final EventProcessor.Process process) throws Throwable {
         // 获取事件监听器
         final EventListener listener = processor.listener;
 
@@ -104,6 +370,14 @@ public class EventListenerHandler implements SpyHandler {
             return newInstanceForNone();
         }
 
+        processor.counter.dispatched(event.type);
+
+        // 异步通知时只投递事件，不会发生流程变更
+        if (null != processor.asyncDispatcher) {
+            processor.asyncDispatcher.offer(event);
+            return newInstanceForNone();
+        }
+
         // 调用事件处理
         try {
             if (logger.isDebugEnabled()) {
@@ -114,23 +388,38 @@ public class EventListenerHandler implements SpyHandler {
                         listenerId
                 );
             }
-            listener.onEvent(event);
+            if (process.isTimingEvent()) {
+                final long beginNanos = System.nanoTime();
+                try {
+                    listener.onEvent(event);
+                } finally {
+                    final long costNanos = System.nanoTime() - beginNanos;
+                    processor.counter.timing(costNanos);
+                    if (null != processor.breaker
+                            && processor.breaker.record(costNanos)) {
+                        trip(processor);
+                    }
+                }
+            } else {
+                listener.onEvent(event);
+            }
         }
 
         // 代码执行流程变更
         catch (ProcessControlException pce) {
 
-            final EventProcessor.Process process = processor.processRef.get();
-
+            processor.counter.processControl();
             final ProcessControlException.State state = pce.getState();
-            logger.debug("on-event: event|{}|{}|{}|{}, process-changed: {}. isIgnoreProcessEvent={};",
-                    event.type,
-                    processId,
-                    invokeId,
-                    listenerId,
-                    state,
-                    pce.isIgnoreProcessEvent()
-            );
+            if (logger.isDebugEnabled()) {
+                logger.debug("on-event: event|{}|{}|{}|{}, process-changed: {}. isIgnoreProcessEvent={};",
+                        event.type,
+                        processId,
+                        invokeId,
+                        listenerId,
+                        state,
+                        pce.isIgnoreProcessEvent()
+                );
+            }
 
             // 如果流程控制要求忽略后续处理所有事件，则需要在此处进行标记
             if (pce.isIgnoreProcessEvent()) {
@@ -144,12 +433,14 @@ public class EventListenerHandler implements SpyHandler {
 
                     // 如果已经禁止后续返回任何事件了，则不进行后续的操作
                     if (pce.isIgnoreProcessEvent()) {
-                        logger.debug("on-event: event|{}|{}|{}|{}, ignore immediately-return-event, isIgnored.",
-                                event.type,
-                                processId,
-                                invokeId,
-                                listenerId
-                        );
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("on-event: event|{}|{}|{}|{}, ignore immediately-return-event, isIgnored.",
+                                    event.type,
+                                    processId,
+                                    invokeId,
+                                    listenerId
+                            );
+                        }
                     } else {
                         // 补偿立即返回事件
                         compensateProcessControlEvent(pce, processor, process, event);
@@ -162,7 +453,7 @@ public class EventListenerHandler implements SpyHandler {
                     }
 
                     // 让流程立即返回
-                    return Spy.Ret.newInstanceForReturn(pce.getRespond());
+                    return Spy.Ret.reuseInstanceForReturn(pce.getRespond());
 
                 }
 
@@ -173,12 +464,14 @@ public class EventListenerHandler implements SpyHandler {
 
                     // 如果已经禁止后续返回任何事件了，则不进行后续的操作
                     if (pce.isIgnoreProcessEvent()) {
-                        logger.debug("on-event: event|{}|{}|{}|{}, ignore immediately-throws-event, isIgnored.",
-                                event.type,
-                                processId,
-                                invokeId,
-                                listenerId
-                        );
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("on-event: event|{}|{}|{}|{}, ignore immediately-throws-event, isIgnored.",
+                                    event.type,
+                                    processId,
+                                    invokeId,
+                                    listenerId
+                            );
+                        }
                     } else {
 
                         // 如果是在BEFORE中立即抛出，则后续不会再有THROWS事件产生
@@ -197,7 +490,7 @@ public class EventListenerHandler implements SpyHandler {
                     }
 
                     // 让流程立即抛出
-                    return Spy.Ret.newInstanceForThrows(throwable);
+                    return Spy.Ret.reuseInstanceForThrows(throwable);
 
                 }
 
@@ -213,6 +506,8 @@ public class EventListenerHandler implements SpyHandler {
         // BEFORE处理异常,打日志,并通知下游不需要进行处理
         catch (Throwable throwable) {
 
+            processor.counter.error();
+
             // 如果当前事件处理器是可中断的事件处理器,则对外抛出UnCaughtException
             // 中断当前方法
             if (isInterruptEventHandler(listener.getClass())) {
@@ -253,7 +548,7 @@ public class EventListenerHandler implements SpyHandler {
                 && contains(processor.eventTypes, IMMEDIATELY_RETURN)) {
             compensateEvent = process
                     .getEventFactory()
-                    .makeImmediatelyReturnEvent(iEvent.processId, iEvent.invokeId, pce.getRespond());
+                    .makeImmediatelyReturnEvent(iEvent.longProcessId, iEvent.longInvokeId, pce.getRespond());
         }
 
         // 补偿立即抛出事件
@@ -261,7 +556,7 @@ public class EventListenerHandler implements SpyHandler {
                 && contains(processor.eventTypes, IMMEDIATELY_THROWS)) {
             compensateEvent = process
                     .getEventFactory()
-                    .makeImmediatelyThrowsEvent(iEvent.processId, iEvent.invokeId, (Throwable) pce.getRespond());
+                    .makeImmediatelyThrowsEvent(iEvent.longProcessId, iEvent.longInvokeId, (Throwable) pce.getRespond());
         }
 
         // 异常情况不补偿
@@ -270,13 +565,15 @@ public class EventListenerHandler implements SpyHandler {
         }
 
         try {
-            logger.debug("compensate-event: event|{}|{}|{}|{} when ori-event:{}",
-                    compensateEvent.type,
-                    iEvent.processId,
-                    iEvent.invokeId,
-                    processor.listenerId,
-                    event.type
-            );
+            if (logger.isDebugEnabled()) {
+                logger.debug("compensate-event: event|{}|{}|{}|{} when ori-event:{}",
+                        compensateEvent.type,
+                        iEvent.processId,
+                        iEvent.invokeId,
+                        processor.listenerId,
+                        event.type
+                );
+            }
             processor.listener.onEvent(compensateEvent);
         } catch (Throwable cause) {
             logger.warn("compensate-event: event|{}|{}|{}|{} when ori-event:{} occur error.",
@@ -295,131 +592,286 @@ public class EventListenerHandler implements SpyHandler {
     /*
      * 判断堆栈是否错位
      */
-    private boolean checkProcessStack(final int processId,
-                                      final int invokeId,
+    private boolean checkProcessStack(final long processId,
+                                      final long invokeId,
                                       final boolean isEmptyStack) {
         return (processId == invokeId && !isEmptyStack)
                 || (processId != invokeId && isEmptyStack);
     }
 
     @Override
-    public Spy.Ret handleOnBefore(int listenerId, int targetClassLoaderObjectID, Object[] argumentArray, String javaClassName, String javaMethodName, String javaMethodDesc, Object target) throws Throwable {
+    public Spy.Ret handleOnBefore(int listenerSlot, int behaviorId, Object[] argumentArray, Object target) throws Throwable {
 
-        // 在守护区内产生的事件不需要响应
-        if (SandboxProtector.instance.isInProtecting()) {
-            logger.debug("listener={} is in protecting, ignore processing before-event", listenerId);
+        // 行为信息在代码增强时登记，这里只需一次数组读取
+        final BehaviorInfo behaviorInfo = BehaviorTable.getSingleton().get(behaviorId);
+        if (null == behaviorInfo) {
+            logger.debug("behavior-id={} is not existed, ignore processing before-event.", behaviorId);
+            return newInstanceForNone();
+        }
+
+        // 一次事件处理只查找一次线程上下文
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+
+        if (!isListenerSetSlot(listenerSlot)) {
+            return handleOnBefore(context, listenerSlot, behaviorInfo, argumentArray, target);
+        }
+
+        final int[] listenerSlots = getListenerSet(listenerSlot);
+        if (null == listenerSlots) {
+            logger.debug("listener-set-slot={} is not existed, ignore processing before-event.", listenerSlot);
             return newInstanceForNone();
         }
 
+        for (int index = 0; index < listenerSlots.length; index++) {
+            final Spy.Ret ret = handleOnBefore(context, listenerSlots[index], behaviorInfo, argumentArray, target);
+            if (ret.getState() == Spy.Ret.RET_STATE_NONE) {
+                continue;
+            }
+
+            // 流程在BEFORE中被改变，组内后续的监听器不会再收到BEFORE事件，立即返回时织入代码也不会再回调RETURN探针，
+            // 这里需要为组内前面已经收到BEFORE事件的监听器补齐结束事件，效果等同于逐层织入时外层监听器看到内层的流程变更
+            final boolean isThrows = ret.getState() == Spy.Ret.RET_STATE_THROWS;
+            final SandboxThreadContext currentContext = SandboxThreadContext.peek();
+            final Spy.Ret endRet = handleOnEnd(currentContext, listenerSlots, index - 1, ret.getRespond(), !isThrows, true);
+
+            // 立即抛出的异常依旧会被织入的THROWS探针捕获，组内所有的调用过程都已经对齐，需要标记让它们忽略这次异常
+            if (endRet.getState() == Spy.Ret.RET_STATE_THROWS) {
+                markExceptionFromImmediately(currentContext, listenerSlots, isThrows ? index : -1);
+            }
+            return endRet;
+        }
+        return newInstanceForNone();
+    }
+
+    // 标记组内监听器的当前异常来自于立即抛出，排除掉已经在处理流程变更时标记过的监听器
+    private void markExceptionFromImmediately(final SandboxThreadContext context,
+                                              final int[] listenerSlots,
+                                              final int excludeIndex) {
+        for (int index = 0; index < listenerSlots.length; index++) {
+            final EventProcessor processor = index == excludeIndex
+                    ? null
+                    : getEventProcessor(listenerSlots[index]);
+            final EventProcessor.Process process = null == processor
+                    ? null
+                    : processor.peekProcess(context);
+            if (null != process && !process.isEmptyStack()) {
+                process.markExceptionFromImmediately();
+            }
+        }
+    }
+
+    private Spy.Ret handleOnBefore(final SandboxThreadContext context,
+                                   final int listenerSlot,
+                                   final BehaviorInfo behaviorInfo,
+                                   final Object[] argumentArray,
+                                   final Object target) throws Throwable {
+
         // 获取事件处理器
-        final EventProcessor processor = mappingOfEventProcessor.get(listenerId);
+        final EventProcessor processor = getEventProcessor(listenerSlot);
 
         // 如果尚未注册,则直接返回,不做任何处理
         if (null == processor) {
-            logger.debug("listener={} is not activated, ignore processing before-event.", listenerId);
+            logger.debug("listener-slot={} is not activated, ignore processing before-event.", listenerSlot);
+            return newInstanceForNone();
+        }
+
+        // 在守护区内产生的事件不需要响应
+        if (SandboxProtector.instance.isInProtecting(context)) {
+            logger.debug("listener-slot={} is in protecting, ignore processing before-event", listenerSlot);
+            processor.counter.ignored(Event.Type.BEFORE);
             return newInstanceForNone();
         }
 
-        // 获取调用跟踪信息
-        final EventProcessor.Process process = processor.processRef.get();
+        // 获取调用跟踪信息，BEFORE事件会开启新的调用过程，所以此时上下文必须存在
+        final SandboxThreadContext currentContext = null != context
+                ? context
+                : SandboxThreadContext.current();
+        expungeStaleProcesses(currentContext);
+        final EventProcessor.Process process = processor.getProcess(currentContext);
 
         // 如果当前处理ID被忽略，则立即返回
+        // 被忽略的调用过程依旧要压栈，和RETURN/THROWS事件的弹栈保持对齐，否则嵌套调用返回时会提前结束整个调用过程
+        // 这里沿用调用过程ID，不再分配调用ID
         if (process.isIgnoreProcess()) {
-            logger.debug("listener={} is marked ignore process!", listenerId);
+            if (logger.isDebugEnabled()) {
+                logger.debug("listener={} is marked ignore process!", processor.listenerId);
+            }
+            if (processor.isTracingProcess) {
+                process.pushInvokeId(process.getProcessId());
+            }
+            processor.counter.ignored(Event.Type.BEFORE);
+            return newInstanceForNone();
+        }
+
+        // 调用过程的第一个BEFORE事件决定整个调用过程是否被采样
+        // 未被采样的调用过程标记为忽略，后续事件只需判断标记，不会再构造事件
+        final boolean isSampled = !process.isEmptyStack()
+                || processor.isSampled();
+
+        // 没有织入RETURN/THROWS探针时每次调用都是一个新的调用过程，未被采样时什么都不需要做
+        if (!isSampled && !processor.isTracingProcess) {
+            processor.counter.ignored(Event.Type.BEFORE);
             return newInstanceForNone();
         }
 
         // 调用ID
-        final int invokeId = invokeIdSequencer.getAndIncrement();
+        final long invokeId = invokeIdSequencer.next(currentContext.getInvokeIdBlock());
         process.pushInvokeId(invokeId);
+        if (!isSampled) {
+            process.markIgnoreProcess();
+            processor.counter.ignored(Event.Type.BEFORE);
+            return newInstanceForNone();
+        }
 
         // 调用过程ID
-        final int processId = process.getProcessId();
+        final long processId = process.getProcessId();
 
-        final ClassLoader javaClassLoader = ObjectIDs.instance.getObject(targetClassLoaderObjectID);
         //放置业务类加载器
-        BusinessClassLoaderHolder.setBusinessClassLoader(Thread.currentThread().getContextClassLoader());
+        // 没有织入RETURN/THROWS探针时不会再有事件来移除业务类加载器，事件处理完后需要恢复成处理前的状态，
+        // 否则线程上下文会一直持有业务类加载器而无法释放(#194)
+        final ClassLoader previousBusinessClassLoader = processor.isTracingProcess
+                ? null
+                : currentContext.getBusinessClassLoader();
+        BusinessClassLoaderHolder.setBusinessClassLoader(currentContext, Thread.currentThread().getContextClassLoader());
         final BeforeEvent event = process.getEventFactory().makeBeforeEvent(
                 processId,
                 invokeId,
-                javaClassLoader,
-                javaClassName,
-                javaMethodName,
-                javaMethodDesc,
+                behaviorInfo,
                 target,
-                argumentArray
+                null == argumentArray
+                        ? EMPTY_OBJECT_ARRAY
+                        : argumentArray
         );
         try {
-            return handleEvent(listenerId, processId, invokeId, event, processor);
+            return handleEvent(processor.listenerId, processId, invokeId, event, processor, process);
         } finally {
             process.getEventFactory().returnEvent(event);
+
+            // 没有织入RETURN/THROWS探针，不会再有事件来弹出调用ID，这里需要主动对齐堆栈
+            // 若流程控制已经对齐过堆栈，则此时堆栈已经为空
+            if (!processor.isTracingProcess
+                    && !process.isEmptyStack()) {
+                process.popInvokeId();
+            }
+            if (!processor.isTracingProcess) {
+                if (null == previousBusinessClassLoader) {
+                    BusinessClassLoaderHolder.removeBusinessClassLoader(currentContext);
+                } else {
+                    BusinessClassLoaderHolder.setBusinessClassLoader(currentContext, previousBusinessClassLoader);
+                }
+            }
         }
     }
 
     @Override
-    public Spy.Ret handleOnThrows(int listenerId, Throwable throwable) throws Throwable {
+    public Spy.Ret handleOnThrows(int listenerSlot, Throwable throwable) throws Throwable {
+        final SandboxThreadContext context = SandboxThreadContext.peek();
         try{
-            return handleOnEnd(listenerId, throwable, false);
+            return handleOnEnd(context, listenerSlot, throwable, false);
         }finally {
-            BusinessClassLoaderHolder.removeBusinessClassLoader();
+            BusinessClassLoaderHolder.removeBusinessClassLoader(context);
         }
     }
 
     @Override
-    public Spy.Ret handleOnReturn(int listenerId, Object object) throws Throwable {
+    public Spy.Ret handleOnReturn(int listenerSlot, Object object) throws Throwable {
+        final SandboxThreadContext context = SandboxThreadContext.peek();
         try{
-            return handleOnEnd(listenerId, object, true);
+            return handleOnEnd(context, listenerSlot, object, true);
         }finally {
-            BusinessClassLoaderHolder.removeBusinessClassLoader();
+            BusinessClassLoaderHolder.removeBusinessClassLoader(context);
         }
     }
 
+    /*
+     * 按组内逆序分发RETURN/THROWS事件
+     * 内层监听器改变的返回结果会作为外层监听器看到的返回结果，和逐层织入时的效果一致
+     */
+    private Spy.Ret handleOnEnd(final SandboxThreadContext context,
+                                final int[] listenerSlots,
+                                final int fromIndex,
+                                final Object object,
+                                final boolean isReturn,
+                                final boolean isChanged) throws Throwable {
+        Object respond = object;
+        boolean isRespondReturn = isReturn;
+        boolean isRespondChanged = isChanged;
+        for (int index = fromIndex; index >= 0; index--) {
+            final Spy.Ret ret = handleOnEnd(context, listenerSlots[index], respond, isRespondReturn);
+            if (ret.getState() != Spy.Ret.RET_STATE_NONE) {
+                respond = ret.getRespond();
+                isRespondReturn = ret.getState() == Spy.Ret.RET_STATE_RETURN;
+                isRespondChanged = true;
+            }
+        }
+        if (!isRespondChanged) {
+            return newInstanceForNone();
+        }
+        return isRespondReturn
+                ? Spy.Ret.reuseInstanceForReturn(respond)
+                : reuseInstanceForThrows((Throwable) respond);
+    }
 
-    private Spy.Ret handleOnEnd(final int listenerId,
+
+    private Spy.Ret handleOnEnd(final SandboxThreadContext context,
+                                final int listenerSlot,
                                 final Object object,
                                 final boolean isReturn) throws Throwable {
 
-        // 在守护区内产生的事件不需要响应
-        if (SandboxProtector.instance.isInProtecting()) {
-            logger.debug("listener={} is in protecting, ignore processing {}-event", listenerId, isReturn ? "return" : "throws");
-            return newInstanceForNone();
+        if (isListenerSetSlot(listenerSlot)) {
+            final int[] listenerSlots = getListenerSet(listenerSlot);
+            return null == listenerSlots
+                    ? newInstanceForNone()
+                    : handleOnEnd(context, listenerSlots, listenerSlots.length - 1, object, isReturn, false);
         }
 
-        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final EventProcessor wrap = getEventProcessor(listenerSlot);
 
         // 如果尚未注册,则直接返回,不做任何处理
         if (null == wrap) {
-            logger.debug("listener={} is not activated, ignore processing return-event|throws-event.", listenerId);
+            logger.debug("listener-slot={} is not activated, ignore processing return-event|throws-event.", listenerSlot);
             return newInstanceForNone();
         }
 
-        final EventProcessor.Process process = wrap.processRef.get();
+        final Event.Type type = isReturn
+                ? Event.Type.RETURN
+                : Event.Type.THROWS;
+
+        // 在守护区内产生的事件不需要响应
+        if (SandboxProtector.instance.isInProtecting(context)) {
+            logger.debug("listener-slot={} is in protecting, ignore processing {}-event", listenerSlot, isReturn ? "return" : "throws");
+            wrap.counter.ignored(type);
+            return newInstanceForNone();
+        }
+
+        final EventProcessor.Process process = wrap.peekProcess(context);
 
         // 如果当前调用过程信息堆栈是空的,说明
         // 1. BEFORE/RETURN错位
         // 2. super.<init>
         // 处理方式是直接返回,不做任何事件的处理和代码流程的改变,放弃对super.<init>的观察，可惜了
-        if (process.isEmptyStack()) {
-
-            // 修复 #194 问题
-            wrap.processRef.remove();
-
+        // 修复 #194 问题：这里只查看不创建调用过程，不会在线程中残留状态
+        if (null == process || process.isEmptyStack()) {
+            wrap.counter.ignored(type);
             return newInstanceForNone();
         }
 
         // 如果异常来自于ImmediatelyException，则忽略处理直接返回抛异常
         final boolean isExceptionFromImmediately = !isReturn && process.rollingIsExceptionFromImmediately();
         if (isExceptionFromImmediately) {
-            return newInstanceForThrows((Throwable) object);
+            return reuseInstanceForThrows((Throwable) object);
         }
 
         // 继续异常处理
-        final int processId = process.getProcessId();
-        final int invokeId = process.popInvokeId();
+        // 忽略标记需要在弹栈前读取，调用过程结束（堆栈清空）时会重置忽略标记
+        final boolean isIgnoreProcess = process.isIgnoreProcess();
+        final long processId = process.getProcessId();
+        final long invokeId = process.popInvokeId();
 
         // 忽略事件处理
         // 放在stack.pop()后边是为了对齐执行栈
-        if (process.isIgnoreProcess()) {
+        if (isIgnoreProcess) {
+            wrap.counter.ignored(type);
             return newInstanceForNone();
         }
 
@@ -429,7 +881,7 @@ public class EventListenerHandler implements SpyHandler {
             logger.warn("ERROR process-stack. pid={};iid={};listener={};",
                     processId,
                     invokeId,
-                    listenerId
+                    wrap.listenerId
             );
         }
 
@@ -438,7 +890,7 @@ public class EventListenerHandler implements SpyHandler {
                 : process.getEventFactory().makeThrowsEvent(processId, invokeId, (Throwable) object);
 
         try {
-            return handleEvent(listenerId, processId, invokeId, event, wrap);
+            return handleEvent(wrap.listenerId, processId, invokeId, event, wrap, process);
         } finally {
             process.getEventFactory().returnEvent(event);
         }
@@ -447,36 +899,62 @@ public class EventListenerHandler implements SpyHandler {
 
 
     @Override
-    public void handleOnCallBefore(int listenerId, int lineNumber, String owner, String name, String desc) throws Throwable {
+    public void handleOnCallBefore(int listenerSlot, int lineNumber, String owner, String name, String desc) throws Throwable {
 
-        // 在守护区内产生的事件不需要响应
-        if (SandboxProtector.instance.isInProtecting()) {
-            logger.debug("listener={} is in protecting, ignore processing call-before-event", listenerId);
+        // 一次事件处理只查找一次线程上下文
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+
+        if (!isListenerSetSlot(listenerSlot)) {
+            handleOnCallBefore(context, listenerSlot, lineNumber, owner, name, desc);
             return;
         }
 
-        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final int[] listenerSlots = getListenerSet(listenerSlot);
+        if (null != listenerSlots) {
+            for (final int slot : listenerSlots) {
+                handleOnCallBefore(context, slot, lineNumber, owner, name, desc);
+            }
+        }
+    }
+
+    private void handleOnCallBefore(final SandboxThreadContext context,
+                                    final int listenerSlot,
+                                    final int lineNumber,
+                                    final String owner,
+                                    final String name,
+                                    final String desc) throws Throwable {
+
+        final EventProcessor wrap = getEventProcessor(listenerSlot);
         if (null == wrap) {
-            logger.debug("listener={} is not activated, ignore processing call-before-event.", listenerId);
+            logger.debug("listener-slot={} is not activated, ignore processing call-before-event.", listenerSlot);
             return;
         }
 
-        final EventProcessor.Process process = wrap.processRef.get();
+        // 在守护区内产生的事件不需要响应
+        if (SandboxProtector.instance.isInProtecting(context)) {
+            logger.debug("listener-slot={} is in protecting, ignore processing call-before-event", listenerSlot);
+            wrap.counter.ignored(Event.Type.CALL_BEFORE);
+            return;
+        }
+
+        final EventProcessor.Process process = wrap.peekProcess(context);
 
         // 如果当前调用过程信息堆栈是空的,有两种情况
         // 1. CALL_BEFORE事件和BEFORE事件错位
         // 2. 当前方法是<init>，而CALL_BEFORE事件触发是当前方法在调用父类的<init>
         //    super.<init>会导致CALL_BEFORE事件优先于BEFORE事件
         // 但如果按照现在的架构要兼容这种情况，比较麻烦，所以暂时先放弃了这部分的消息，可惜可惜
-        if (process.isEmptyStack()) {
+        if (null == process || process.isEmptyStack()) {
+            wrap.counter.ignored(Event.Type.CALL_BEFORE);
             return;
         }
 
-        final int processId = process.getProcessId();
-        final int invokeId = process.getInvokeId();
+        final long processId = process.getProcessId();
+        final long invokeId = process.getInvokeId();
 
         // 如果事件处理流被忽略，则直接返回，不产生后续事件
         if (process.isIgnoreProcess()) {
+            wrap.counter.ignored(Event.Type.CALL_BEFORE);
             return;
         }
 
@@ -484,37 +962,59 @@ public class EventListenerHandler implements SpyHandler {
                 .getEventFactory()
                 .makeCallBeforeEvent(processId, invokeId, lineNumber, owner, name, desc);
         try {
-            handleEvent(listenerId, processId, invokeId, event, wrap);
+            handleEvent(wrap.listenerId, processId, invokeId, event, wrap, process);
         } finally {
             process.getEventFactory().returnEvent(event);
         }
     }
 
     @Override
-    public void handleOnCallReturn(int listenerId) throws Throwable {
+    public void handleOnCallReturn(int listenerSlot) throws Throwable {
 
-        // 在守护区内产生的事件不需要响应
-        if (SandboxProtector.instance.isInProtecting()) {
-            logger.debug("listener={} is in protecting, ignore processing call-return-event", listenerId);
+        // 一次事件处理只查找一次线程上下文
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+
+        if (!isListenerSetSlot(listenerSlot)) {
+            handleOnCallReturn(context, listenerSlot);
             return;
         }
 
-        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final int[] listenerSlots = getListenerSet(listenerSlot);
+        if (null != listenerSlots) {
+            for (final int slot : listenerSlots) {
+                handleOnCallReturn(context, slot);
+            }
+        }
+    }
+
+    private void handleOnCallReturn(final SandboxThreadContext context,
+                                    final int listenerSlot) throws Throwable {
+
+        final EventProcessor wrap = getEventProcessor(listenerSlot);
         if (null == wrap) {
-            logger.debug("listener={} is not activated, ignore processing call-return-event.", listenerId);
+            logger.debug("listener-slot={} is not activated, ignore processing call-return-event.", listenerSlot);
+            return;
+        }
+
+        // 在守护区内产生的事件不需要响应
+        if (SandboxProtector.instance.isInProtecting(context)) {
+            logger.debug("listener-slot={} is in protecting, ignore processing call-return-event", listenerSlot);
+            wrap.counter.ignored(Event.Type.CALL_RETURN);
             return;
         }
 
-        final EventProcessor.Process process = wrap.processRef.get();
-        if (process.isEmptyStack()) {
+        final EventProcessor.Process process = wrap.peekProcess(context);
+        if (null == process || process.isEmptyStack()) {
+            wrap.counter.ignored(Event.Type.CALL_RETURN);
             return;
         }
 
-        final int processId = process.getProcessId();
-        final int invokeId = process.getInvokeId();
+        final long processId = process.getProcessId();
+        final long invokeId = process.getInvokeId();
 
         // 如果事件处理流被忽略，则直接返回，不产生后续事件
         if (process.isIgnoreProcess()) {
+            wrap.counter.ignored(Event.Type.CALL_RETURN);
             return;
         }
 
@@ -522,37 +1022,60 @@ public class EventListenerHandler implements SpyHandler {
                 .getEventFactory()
                 .makeCallReturnEvent(processId, invokeId);
         try {
-            handleEvent(listenerId, processId, invokeId, event, wrap);
+            handleEvent(wrap.listenerId, processId, invokeId, event, wrap, process);
         } finally {
             process.getEventFactory().returnEvent(event);
         }
     }
 
     @Override
-    public void handleOnCallThrows(int listenerId, String throwException) throws Throwable {
+    public void handleOnCallThrows(int listenerSlot, String throwException) throws Throwable {
 
-        // 在守护区内产生的事件不需要响应
-        if (SandboxProtector.instance.isInProtecting()) {
-            logger.debug("listener={} is in protecting, ignore processing call-throws-event", listenerId);
+        // 一次事件处理只查找一次线程上下文
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+
+        if (!isListenerSetSlot(listenerSlot)) {
+            handleOnCallThrows(context, listenerSlot, throwException);
             return;
         }
 
-        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        final int[] listenerSlots = getListenerSet(listenerSlot);
+        if (null != listenerSlots) {
+            for (final int slot : listenerSlots) {
+                handleOnCallThrows(context, slot, throwException);
+            }
+        }
+    }
+
+    private void handleOnCallThrows(final SandboxThreadContext context,
+                                    final int listenerSlot,
+                                    final String throwException) throws Throwable {
+
+        final EventProcessor wrap = getEventProcessor(listenerSlot);
         if (null == wrap) {
-            logger.debug("listener={} is not activated, ignore processing call-throws-event.", listenerId);
+            logger.debug("listener-slot={} is not activated, ignore processing call-throws-event.", listenerSlot);
             return;
         }
 
-        final EventProcessor.Process process = wrap.processRef.get();
-        if (process.isEmptyStack()) {
+        // 在守护区内产生的事件不需要响应
+        if (SandboxProtector.instance.isInProtecting(context)) {
+            logger.debug("listener-slot={} is in protecting, ignore processing call-throws-event", listenerSlot);
+            wrap.counter.ignored(Event.Type.CALL_THROWS);
+            return;
+        }
+
+        final EventProcessor.Process process = wrap.peekProcess(context);
+        if (null == process || process.isEmptyStack()) {
+            wrap.counter.ignored(Event.Type.CALL_THROWS);
             return;
         }
 
-        final int processId = process.getProcessId();
-        final int invokeId = process.getInvokeId();
+        final long processId = process.getProcessId();
+        final long invokeId = process.getInvokeId();
 
         // 如果事件处理流被忽略，则直接返回，不产生后续事件
         if (process.isIgnoreProcess()) {
+            wrap.counter.ignored(Event.Type.CALL_THROWS);
             return;
         }
 
@@ -560,55 +1083,89 @@ public class EventListenerHandler implements SpyHandler {
                 .getEventFactory()
                 .makeCallThrowsEvent(processId, invokeId, throwException);
         try {
-            handleEvent(listenerId, processId, invokeId, event, wrap);
+            handleEvent(wrap.listenerId, processId, invokeId, event, wrap, process);
         } finally {
             process.getEventFactory().returnEvent(event);
         }
     }
 
     @Override
-    public void handleOnLine(int listenerId, int lineNumber) throws Throwable {
+    public boolean handleOnLine(int listenerSlot, int lineNumber) throws Throwable {
 
-        // 在守护区内产生的事件不需要响应
-        if (SandboxProtector.instance.isInProtecting()) {
-            logger.debug("listener={} is in protecting, ignore processing call-line-event", listenerId);
-            return;
+        // 一次事件处理只查找一次线程上下文
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+
+        if (!isListenerSetSlot(listenerSlot)) {
+            return handleOnLine(context, listenerSlot, lineNumber);
         }
 
-        final EventProcessor wrap = mappingOfEventProcessor.get(listenerId);
+        // 监听器组中只要有一个监听器收到事件就算通知成功
+        boolean isDelivered = false;
+        final int[] listenerSlots = getListenerSet(listenerSlot);
+        if (null != listenerSlots) {
+            for (final int slot : listenerSlots) {
+                isDelivered |= handleOnLine(context, slot, lineNumber);
+            }
+        }
+        return isDelivered;
+    }
+
+    // 返回事件是否已经通知到了事件监听器
+    private boolean handleOnLine(final SandboxThreadContext context,
+                                 final int listenerSlot,
+                                 final int lineNumber) throws Throwable {
+
+        final EventProcessor wrap = getEventProcessor(listenerSlot);
         if (null == wrap) {
-            logger.debug("listener={} is not activated, ignore processing line-event.", listenerId);
-            return;
+            logger.debug("listener-slot={} is not activated, ignore processing line-event.", listenerSlot);
+            return false;
         }
 
-        final EventProcessor.Process process = wrap.processRef.get();
+        // 在守护区内产生的事件不需要响应
+        if (SandboxProtector.instance.isInProtecting(context)) {
+            logger.debug("listener-slot={} is in protecting, ignore processing call-line-event", listenerSlot);
+            wrap.counter.ignored(Event.Type.LINE);
+            return false;
+        }
+
+        final EventProcessor.Process process = wrap.peekProcess(context);
 
         // 如果当前调用过程信息堆栈是空的,说明BEFORE/LINE错位
         // 处理方式是直接返回,不做任何事件的处理和代码流程的改变
-        if (process.isEmptyStack()) {
-            return;
+        if (null == process || process.isEmptyStack()) {
+            wrap.counter.ignored(Event.Type.LINE);
+            return false;
         }
 
-        final int processId = process.getProcessId();
-        final int invokeId = process.getInvokeId();
+        final long processId = process.getProcessId();
+        final long invokeId = process.getInvokeId();
 
         // 如果事件处理流被忽略，则直接返回，不产生后续事件
         if (process.isIgnoreProcess()) {
-            return;
+            wrap.counter.ignored(Event.Type.LINE);
+            return false;
+        }
+
+        if (!contains(wrap.eventTypes, Event.Type.LINE)) {
+            return false;
         }
 
         final Event event = process.getEventFactory().makeLineEvent(processId, invokeId, lineNumber);
         try {
-            handleEvent(listenerId, processId, invokeId, event, wrap);
+            handleEvent(wrap.listenerId, processId, invokeId, event, wrap, process);
         } finally {
             process.getEventFactory().returnEvent(event);
         }
+        return true;
     }
 
     // ---- 自检查
     public void checkEventProcessor(final int... listenerIds) {
         for (int listenerId : listenerIds) {
-            final EventProcessor processor = mappingOfEventProcessor.get(listenerId);
+            final Integer listenerSlot = mappingOfListenerSlot.get(listenerId);
+            final EventProcessor processor = null == listenerSlot
+                    ? null
+                    : getEventProcessor(listenerSlot);
             if (null == processor) {
                 throw new IllegalStateException(String.format("listener=%s not existed.", listenerId));
             }
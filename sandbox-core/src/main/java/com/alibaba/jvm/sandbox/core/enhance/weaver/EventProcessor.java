@@ -2,12 +2,17 @@ package com.alibaba.jvm.sandbox.core.enhance.weaver;
 
 import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.api.listener.ext.Sampler;
 import com.alibaba.jvm.sandbox.core.enhance.annotation.Interrupted;
-import com.alibaba.jvm.sandbox.core.util.collection.GaStack;
-import com.alibaba.jvm.sandbox.core.util.collection.ThreadUnsafeGaStack;
+import com.alibaba.jvm.sandbox.core.util.SandboxThreadContext;
+import com.alibaba.jvm.sandbox.core.util.collection.ThreadUnsafeLongGaStack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.NoSuchElementException;
+
+import static com.alibaba.jvm.sandbox.core.util.SandboxEventTypeUtils.isTracingProcess;
 import static com.alibaba.jvm.sandbox.core.util.SandboxReflectUtils.isInterruptEventHandler;
 
 /**
@@ -19,16 +24,23 @@ class EventProcessor {
 
     /**
      * 处理单元
+     * <p>调用过程结束后依旧保留在线程上下文中，下一次调用过程复用同一个处理单元及其事件对象</p>
      */
     class Process {
 
+        // 所属线程上下文
+        private final SandboxThreadContext context;
+
         // 事件工厂
         private final SingleEventFactory eventFactory
                 = new SingleEventFactory();
 
         // 调用堆栈
-        private final GaStack<Integer> stack
-                = new ThreadUnsafeGaStack<Integer>();
+        private final ThreadUnsafeLongGaStack stack
+                = new ThreadUnsafeLongGaStack();
+
+        // 调用过程ID，即栈底的调用ID，在压入第一个调用ID时确定
+        private long processId;
 
         // 是否需要忽略整个调用过程
         private boolean isIgnoreProcess = false;
@@ -36,16 +48,28 @@ class EventProcessor {
         // 是否来自ImmediatelyThrowsException所抛出的异常
         private boolean isExceptionFromImmediately = false;
 
+        // 事件计数，用于抽样计时，不随调用过程结束而重置
+        private int eventTick;
+
+        Process(final SandboxThreadContext context) {
+            this.context = context;
+        }
+
         /**
          * 压入调用ID
          *
          * @param invokeId 调用ID
          */
-        void pushInvokeId(int invokeId) {
+        void pushInvokeId(long invokeId) {
+            if (stack.isEmpty()) {
+                processId = invokeId;
+                isExceptionFromImmediately = false;
+                context.activateProcess(listenerSlot, this);
+            }
             stack.push(invokeId);
             if (logger.isDebugEnabled()) {
                 logger.debug("push process-stack, process-id={};invoke-id={};deep={};listener={};",
-                        stack.peekLast(),
+                        processId,
                         invokeId,
                         stack.deep(),
                         listenerId
@@ -58,10 +82,9 @@ class EventProcessor {
          *
          * @return 调用ID
          */
-        int popInvokeId() {
-            final int invokeId;
+        long popInvokeId() {
+            final long invokeId;
             if (logger.isDebugEnabled()) {
-                final int processId = stack.peekLast();
                 invokeId = stack.pop();
                 logger.debug("pop process-stack, process-id={};invoke-id={};deep={};listener={};",
                         processId,
@@ -73,8 +96,11 @@ class EventProcessor {
                 invokeId = stack.pop();
             }
             if (stack.isEmpty()) {
-                processRef.remove();
-                logger.debug("clean TLS: event-processor, listener={};", listenerId);
+                isIgnoreProcess = false;
+                context.deactivateProcess(listenerSlot, this);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("finish process: event-processor, listener={};", listenerId);
+                }
             }
             return invokeId;
         }
@@ -84,7 +110,7 @@ class EventProcessor {
          *
          * @return 调用ID
          */
-        int getInvokeId() {
+        long getInvokeId() {
             return stack.peek();
         }
 
@@ -93,8 +119,11 @@ class EventProcessor {
          *
          * @return 调用过程ID
          */
-        int getProcessId() {
-            return stack.peekLast();
+        long getProcessId() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return processId;
         }
 
         /**
@@ -143,6 +172,15 @@ class EventProcessor {
             isExceptionFromImmediately = true;
         }
 
+        /**
+         * 本次事件是否需要计时，计时结果用于耗时分布统计和开销熔断
+         *
+         * @return TRUE:需要计时；FALSE：不需要计时
+         */
+        boolean isTimingEvent() {
+            return OverheadBreaker.isTiming(eventTick++);
+        }
+
         /**
          * 获取事件工厂
          *
@@ -152,6 +190,15 @@ class EventProcessor {
             return eventFactory;
         }
 
+        /**
+         * 获取所属事件处理器
+         *
+         * @return 事件处理器
+         */
+        EventProcessor getEventProcessor() {
+            return EventProcessor.this;
+        }
+
     }
 
     @Interrupted
@@ -171,26 +218,118 @@ class EventProcessor {
     }
 
     final int listenerId;
+    final int listenerSlot;
     final EventListener listener;
     final Event.Type[] eventTypes;
-    final ThreadLocal<Process> processRef = new ThreadLocal<Process>() {
-        @Override
-        protected Process initialValue() {
-            return new Process();
-        }
-    };
+
+    // 是否织入了RETURN/THROWS探针，若没有则调用过程在BEFORE事件处理完后立即结束
+    final boolean isTracingProcess;
+
+    // 采样器，为null表示观察所有的调用过程
+    final Sampler sampler;
+
+    // 异步事件通知器，为null表示同步通知
+    final AsyncEventDispatcher asyncDispatcher;
+
+    // 开销熔断器，为null表示不统计开销
+    final OverheadBreaker breaker;
+
+    // 事件计数器
+    final ListenerCounter counter = new ListenerCounter();
 
     EventProcessor(final int listenerId,
+                   final int listenerSlot,
                    final EventListener listener,
-                   final Event.Type[] eventTypes) {
+                   final Event.Type[] eventTypes,
+                   final EventWatchOption option) {
 
         this.listenerId = listenerId;
+        this.listenerSlot = listenerSlot;
         this.eventTypes = eventTypes;
+        this.isTracingProcess = isTracingProcess(eventTypes);
+        this.sampler = option.getSampler();
         this.listener = isInterruptEventHandler(listener.getClass())
                 ? new InterruptedEventListenerImpl(listener)
                 : listener;
+        this.asyncDispatcher = option.isAsync()
+                ? new AsyncEventDispatcher(listenerId, this.listener, option.getAsyncCapacity())
+                : null;
+
+        // 异步通知时事件监听器不在业务线程中运行，不需要熔断
+        this.breaker = option.getOverheadBudgetNanos() > 0 && !option.isAsync()
+                ? new OverheadBreaker(option.getOverheadBudgetNanos())
+                : null;
     }
 
+    /**
+     * 激活事件处理器，异步通知时启动通知线程
+     */
+    void active() {
+        if (null != asyncDispatcher) {
+            asyncDispatcher.start();
+        }
+    }
+
+    /**
+     * 冻结事件处理器，异步通知时停止通知线程
+     */
+    void frozen() {
+        if (null != asyncDispatcher) {
+            asyncDispatcher.stop();
+        }
+    }
+
+    /**
+     * 新的调用过程是否被采样
+     * <p>采样器出错时按采样处理，不能因为采样器的问题丢掉观察</p>
+     *
+     * @return TRUE:采样；FALSE：不采样
+     */
+    boolean isSampled() {
+        if (null == sampler) {
+            return true;
+        }
+        try {
+            return sampler.isSampled();
+        } catch (Throwable cause) {
+            logger.warn("sampler occur an error, listener={};", listenerId, cause);
+            return true;
+        }
+    }
+
+
+    /**
+     * 获取线程上下文中当前事件处理器的调用过程，若不存在则创建
+     *
+     * @param context 线程上下文
+     * @return 调用过程
+     */
+    Process getProcess(final SandboxThreadContext context) {
+        final Process process = peekProcess(context);
+        if (null != process) {
+            return process;
+        }
+        final Process newProcess = new Process(context);
+        context.setProcess(listenerSlot, newProcess);
+        return newProcess;
+    }
+
+    /**
+     * 获取线程上下文中当前事件处理器的调用过程，不存在时不会创建
+     *
+     * @param context 线程上下文，可以为null
+     * @return 调用过程，若不存在则返回null
+     */
+    Process peekProcess(final SandboxThreadContext context) {
+        if (null == context) {
+            return null;
+        }
+        final Object process = context.getProcess(listenerSlot);
+        // 槽位上的调用过程可能属于已被替换掉的旧事件处理器，此时需要重新开始
+        return process instanceof Process && ((Process) process).getEventProcessor() == this
+                ? (Process) process
+                : null;
+    }
 
     /**
      * 校验器，用于校验事件处理器状态是否正确
@@ -200,8 +339,14 @@ class EventProcessor {
 
         void check() {
 
-            final EventProcessor.Process process = processRef.get();
-            final ThreadUnsafeGaStack<Integer> stack = (ThreadUnsafeGaStack<Integer>) process.stack;
+            final EventProcessor.Process process = peekProcess(SandboxThreadContext.peek());
+
+            // 线程上下文已被释放，或从未开始过调用过程
+            if (null == process) {
+                return;
+            }
+
+            final ThreadUnsafeLongGaStack stack = process.stack;
 
             if (!process.isEmptyStack()) {
                 throw new IllegalStateException(String.format("process-stack is not empty! listener=%s;\n%s",
@@ -212,16 +357,16 @@ class EventProcessor {
 
             for (int index = 0; index < stack.getElementArray().length; index++) {
                 if (index <= stack.getCurrent()) {
-                    if (null == stack.getElementArray()[index]) {
-                        throw new IllegalStateException(String.format("process-stack element is null at index=[%d], listener=%s;\n%s",
+                    if (0 == stack.getElementArray()[index]) {
+                        throw new IllegalStateException(String.format("process-stack element is empty at index=[%d], listener=%s;\n%s",
                                 index,
                                 listenerId,
                                 toString(stack)
                         ));
                     }
                 } else {
-                    if (null != stack.getElementArray()[index]) {
-                        throw new IllegalStateException(String.format("process-stack element is not null at index=[%d], listener=%s;\n%s",
+                    if (0 != stack.getElementArray()[index]) {
+                        throw new IllegalStateException(String.format("process-stack element is not empty at index=[%d], listener=%s;\n%s",
                                 index,
                                 listenerId,
                                 toString(stack)
@@ -237,7 +382,7 @@ class EventProcessor {
 
         }
 
-        String toString(ThreadUnsafeGaStack<Integer> stack) {
+        String toString(ThreadUnsafeLongGaStack stack) {
             final StringBuilder stackSB = new StringBuilder(String.format("stack[deep=%d;current=%d;]{\n", stack.deep(), stack.getCurrent()));
             for (int index = 0; index < stack.getElementArray().length; index++) {
                 stackSB.append("\t[").append(index).append("] = ").append(stack.getElementArray()[index]).append("\n");
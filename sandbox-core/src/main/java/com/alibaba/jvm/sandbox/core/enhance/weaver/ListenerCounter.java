@@ -0,0 +1,131 @@
+package com.alibaba.jvm.sandbox.core.enhance.weaver;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 事件监听器计数器
+ * <p>
+ * 所有线程都在同一组原子计数器上自增会产生明显的缓存行争抢，这里把计数器按线程ID分成若干条带，
+ * 每个条带占据独立的缓存行，写入时只访问本线程所在的条带，读取时再把所有条带累加起来
+ * </p>
+ */
+public class ListenerCounter {
+
+    /**
+     * 耗时分布的桶个数，第i个桶统计耗时在[2^i,2^(i+1))纳秒之间的事件
+     */
+    public static final int HISTOGRAM_SIZE = 40;
+
+    // 条带数上限
+    private static final int MAX_STRIPES = 64;
+
+    // 条带之间的填充，避免相邻条带落在同一缓存行
+    private static final int PADDING = 8;
+
+    private static final int TYPE_COUNT = Event.Type.values().length;
+
+    // 条带内各计数器的偏移
+    private static final int DISPATCHED_OFFSET = 0;
+    private static final int IGNORED_OFFSET = DISPATCHED_OFFSET + TYPE_COUNT;
+    private static final int PROCESS_CONTROL_OFFSET = IGNORED_OFFSET + TYPE_COUNT;
+    private static final int ERROR_OFFSET = PROCESS_CONTROL_OFFSET + 1;
+    private static final int HISTOGRAM_OFFSET = ERROR_OFFSET + 1;
+    private static final int STRIPE_WIDTH = HISTOGRAM_OFFSET + HISTOGRAM_SIZE + PADDING;
+
+    private static final int STRIPE_MASK;
+
+    static {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final int stripes = processors <= 1
+                ? 1
+                : Math.min(MAX_STRIPES, Integer.highestOneBit(processors - 1) << 1);
+        STRIPE_MASK = stripes - 1;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray((STRIPE_MASK + 1) * STRIPE_WIDTH);
+
+    // 当前线程所在条带的起始下标
+    private static int stripeBase() {
+        return ((int) Thread.currentThread().getId() & STRIPE_MASK) * STRIPE_WIDTH;
+    }
+
+    /**
+     * 记录一次派发给事件监听器的事件
+     *
+     * @param type 事件类型
+     */
+    void dispatched(final Event.Type type) {
+        cells.incrementAndGet(stripeBase() + DISPATCHED_OFFSET + type.ordinal());
+    }
+
+    /**
+     * 记录一次被忽略的事件
+     *
+     * @param type 事件类型
+     */
+    void ignored(final Event.Type type) {
+        cells.incrementAndGet(stripeBase() + IGNORED_OFFSET + type.ordinal());
+    }
+
+    /**
+     * 记录一次流程控制
+     */
+    void processControl() {
+        cells.incrementAndGet(stripeBase() + PROCESS_CONTROL_OFFSET);
+    }
+
+    /**
+     * 记录一次事件监听器异常
+     */
+    void error() {
+        cells.incrementAndGet(stripeBase() + ERROR_OFFSET);
+    }
+
+    /**
+     * 记录一次事件监听器耗时
+     *
+     * @param costNanos 耗时(纳秒)
+     */
+    void timing(final long costNanos) {
+        final int bucket = costNanos <= 1
+                ? 0
+                : Math.min(HISTOGRAM_SIZE - 1, 63 - Long.numberOfLeadingZeros(costNanos));
+        cells.incrementAndGet(stripeBase() + HISTOGRAM_OFFSET + bucket);
+    }
+
+    // 累加所有条带上指定偏移的计数器
+    private long sum(final int offset) {
+        long total = 0;
+        for (int base = 0; base < cells.length(); base += STRIPE_WIDTH) {
+            total += cells.get(base + offset);
+        }
+        return total;
+    }
+
+    public long getDispatchedCount(final Event.Type type) {
+        return sum(DISPATCHED_OFFSET + type.ordinal());
+    }
+
+    public long getIgnoredCount(final Event.Type type) {
+        return sum(IGNORED_OFFSET + type.ordinal());
+    }
+
+    public long getProcessControlCount() {
+        return sum(PROCESS_CONTROL_OFFSET);
+    }
+
+    public long getErrorCount() {
+        return sum(ERROR_OFFSET);
+    }
+
+    public long[] getNanosHistogram() {
+        final long[] histogram = new long[HISTOGRAM_SIZE];
+        for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket++) {
+            histogram[bucket] = sum(HISTOGRAM_OFFSET + bucket);
+        }
+        return histogram;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.alibaba.jvm.sandbox.core.enhance.weaver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件监听器开销熔断器
+ * <p>
+ * 每个线程每{@link #TIMING_INTERVAL}个事件只计时一次，计时样本按{@link #WINDOW_SIZE}个一组进行统计，
+ * 一组样本中超出预算的样本数超过1%，即P99超出预算时熔断。
+ * 不需要保存耗时分布，热路径上只有计时的事件才会访问两个原子计数器
+ * </p>
+ */
+class OverheadBreaker {
+
+    /**
+     * 计时间隔，每个线程每16个事件计时一次
+     */
+    static final int TIMING_INTERVAL = 16;
+
+    // 计时间隔掩码
+    private static final int TIMING_MASK = TIMING_INTERVAL - 1;
+
+    /**
+     * 统计窗口的样本数
+     */
+    static final int WINDOW_SIZE = 1024;
+
+    // 统计窗口掩码
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    // 窗口内允许超出预算的样本数，超过即P99超出预算
+    private static final int TRIP_THRESHOLD = WINDOW_SIZE / 100;
+
+    private final long budgetNanos;
+
+    // 计时样本总数
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    // 当前窗口内超出预算的样本数
+    private final AtomicLong overBudgetCount = new AtomicLong();
+
+    OverheadBreaker(final long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * 本次事件是否需要计时
+     *
+     * @param tick 调用过程的事件计数
+     * @return TRUE:需要计时；FALSE：不需要计时
+     */
+    static boolean isTiming(final int tick) {
+        return (tick & TIMING_MASK) == 0;
+    }
+
+    /**
+     * 记录计时样本
+     *
+     * @param costNanos 事件处理耗时(纳秒)
+     * @return TRUE:P99超出预算，需要熔断；FALSE：无需熔断
+     */
+    boolean record(final long costNanos) {
+        if (costNanos > budgetNanos) {
+            overBudgetCount.incrementAndGet();
+        }
+        if ((sampleCount.incrementAndGet() & WINDOW_MASK) != 0) {
+            return false;
+        }
+
+        // 窗口结束，并发下窗口边界附近的样本可能被计入相邻的窗口，不影响统计结果
+        return overBudgetCount.getAndSet(0) > TRIP_THRESHOLD;
+    }
+
+    /**
+     * 获取开销预算
+     *
+     * @return 开销预算(P99，纳秒)
+     */
+    long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+}
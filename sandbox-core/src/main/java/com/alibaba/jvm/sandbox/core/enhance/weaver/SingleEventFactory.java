@@ -7,6 +7,7 @@ import sun.misc.Unsafe;
 
 import java.lang.reflect.Field;
 
+import static com.alibaba.jvm.sandbox.core.util.InvokeIdSequencer.toIntId;
 import static com.alibaba.jvm.sandbox.core.util.SandboxReflectUtils.unCaughtGetClassDeclaredJavaField;
 
 /**
@@ -20,10 +21,13 @@ class SingleEventFactory {
     private static final Unsafe unsafe;
     private static final long processIdFieldInInvokeEventOffset;
     private static final long invokeIdFieldInInvokeEventOffset;
+    private static final long longProcessIdFieldInInvokeEventOffset;
+    private static final long longInvokeIdFieldInInvokeEventOffset;
     private static final long javaClassLoaderFieldInBeforeEventOffset;
     private static final long javaClassNameFieldInBeforeEventOffset;
     private static final long javaMethodNameFieldInBeforeEventOffset;
     private static final long javaMethodDescFieldInBeforeEventOffset;
+    private static final long behaviorInfoFieldInBeforeEventOffset;
     private static final long targetFieldInBeforeEventOffset;
     private static final long argumentArrayFieldInBeforeEventOffset;
     private static final long objectFieldInReturnEventOffset;
@@ -41,10 +45,13 @@ class SingleEventFactory {
             unsafe = UnsafeUtils.getUnsafe();
             processIdFieldInInvokeEventOffset = unsafe.objectFieldOffset(InvokeEvent.class.getDeclaredField("processId"));
             invokeIdFieldInInvokeEventOffset = unsafe.objectFieldOffset(InvokeEvent.class.getDeclaredField("invokeId"));
+            longProcessIdFieldInInvokeEventOffset = unsafe.objectFieldOffset(InvokeEvent.class.getDeclaredField("longProcessId"));
+            longInvokeIdFieldInInvokeEventOffset = unsafe.objectFieldOffset(InvokeEvent.class.getDeclaredField("longInvokeId"));
             javaClassLoaderFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("javaClassLoader"));
             javaClassNameFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("javaClassName"));
             javaMethodNameFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("javaMethodName"));
             javaMethodDescFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("javaMethodDesc"));
+            behaviorInfoFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("behaviorInfo"));
             targetFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("target"));
             argumentArrayFieldInBeforeEventOffset = unsafe.objectFieldOffset(BeforeEvent.class.getDeclaredField("argumentArray"));
             objectFieldInReturnEventOffset = unsafe.objectFieldOffset(ReturnEvent.class.getDeclaredField("object"));
@@ -72,91 +79,93 @@ class SingleEventFactory {
     private ImmediatelyReturnEvent immediatelyReturnEvent = null;
 
 
-    public BeforeEvent makeBeforeEvent(final int processId,
-                                       final int invokeId,
-                                       final ClassLoader javaClassLoader,
-                                       final String javaClassName,
-                                       final String javaMethodName,
-                                       final String javaMethodDesc,
+    // 设置事件的调用过程ID和调用ID，32位ID由64位ID折算而来
+    private static void setInvokeId(final InvokeEvent event,
+                                    final long processId,
+                                    final long invokeId) {
+        unsafe.putInt(event, processIdFieldInInvokeEventOffset, toIntId(processId));
+        unsafe.putInt(event, invokeIdFieldInInvokeEventOffset, toIntId(invokeId));
+        unsafe.putLong(event, longProcessIdFieldInInvokeEventOffset, processId);
+        unsafe.putLong(event, longInvokeIdFieldInInvokeEventOffset, invokeId);
+    }
+
+    public BeforeEvent makeBeforeEvent(final long processId,
+                                       final long invokeId,
+                                       final BehaviorInfo behaviorInfo,
                                        final Object target,
                                        final Object[] argumentArray) {
         if (null == beforeEvent) {
-            beforeEvent = new BeforeEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null, null, null, null, null, null);
+            beforeEvent = new BeforeEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null, null, null, null, null, null, null);
         }
-        unsafe.putInt(beforeEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(beforeEvent, invokeIdFieldInInvokeEventOffset, invokeId);
-        unsafe.putObject(beforeEvent, javaClassLoaderFieldInBeforeEventOffset, javaClassLoader);
-        unsafe.putObject(beforeEvent, javaClassNameFieldInBeforeEventOffset, javaClassName);
-        unsafe.putObject(beforeEvent, javaMethodNameFieldInBeforeEventOffset, javaMethodName);
-        unsafe.putObject(beforeEvent, javaMethodDescFieldInBeforeEventOffset, javaMethodDesc);
+        setInvokeId(beforeEvent, processId, invokeId);
+        unsafe.putObject(beforeEvent, javaClassLoaderFieldInBeforeEventOffset, behaviorInfo.getJavaClassLoader());
+        unsafe.putObject(beforeEvent, javaClassNameFieldInBeforeEventOffset, behaviorInfo.getJavaClassName());
+        unsafe.putObject(beforeEvent, javaMethodNameFieldInBeforeEventOffset, behaviorInfo.getJavaMethodName());
+        unsafe.putObject(beforeEvent, javaMethodDescFieldInBeforeEventOffset, behaviorInfo.getJavaMethodDesc());
+        unsafe.putObject(beforeEvent, behaviorInfoFieldInBeforeEventOffset, behaviorInfo);
         unsafe.putObject(beforeEvent, targetFieldInBeforeEventOffset, target);
         unsafe.putObject(beforeEvent, argumentArrayFieldInBeforeEventOffset, argumentArray);
         return beforeEvent;
     }
 
-    public ReturnEvent makeReturnEvent(final int processId,
-                                       final int invokeId,
+    public ReturnEvent makeReturnEvent(final long processId,
+                                       final long invokeId,
                                        final Object returnObj) {
         if (null == returnEvent) {
             returnEvent = new ReturnEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null);
         }
-        unsafe.putInt(returnEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(returnEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(returnEvent, processId, invokeId);
         unsafe.putObject(returnEvent, objectFieldInReturnEventOffset, returnObj);
         return returnEvent;
     }
 
-    public ImmediatelyReturnEvent makeImmediatelyReturnEvent(final int processId,
-                                                             final int invokeId,
+    public ImmediatelyReturnEvent makeImmediatelyReturnEvent(final long processId,
+                                                             final long invokeId,
                                                              final Object returnObj) {
         if (null == immediatelyReturnEvent) {
             immediatelyReturnEvent = new ImmediatelyReturnEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null);
         }
-        unsafe.putInt(immediatelyReturnEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(immediatelyReturnEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(immediatelyReturnEvent, processId, invokeId);
         unsafe.putObject(immediatelyReturnEvent, objectFieldInReturnEventOffset, returnObj);
         return immediatelyReturnEvent;
     }
 
-    public ThrowsEvent makeThrowsEvent(final int processId,
-                                       final int invokeId,
+    public ThrowsEvent makeThrowsEvent(final long processId,
+                                       final long invokeId,
                                        final Throwable throwable) {
         if (null == throwsEvent) {
             throwsEvent = new ThrowsEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null);
         }
-        unsafe.putInt(throwsEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(throwsEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(throwsEvent, processId, invokeId);
         unsafe.putObject(throwsEvent, throwableFieldInThrowsEventOffset, throwable);
         return throwsEvent;
     }
 
-    public ImmediatelyThrowsEvent makeImmediatelyThrowsEvent(final int processId,
-                                                             final int invokeId,
+    public ImmediatelyThrowsEvent makeImmediatelyThrowsEvent(final long processId,
+                                                             final long invokeId,
                                                              final Throwable throwable) {
         if (null == immediatelyThrowsEvent) {
             immediatelyThrowsEvent = new ImmediatelyThrowsEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null);
         }
-        unsafe.putInt(immediatelyThrowsEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(immediatelyThrowsEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(immediatelyThrowsEvent, processId, invokeId);
         unsafe.putObject(immediatelyThrowsEvent, throwableFieldInThrowsEventOffset, throwable);
         return immediatelyThrowsEvent;
     }
 
 
-    public LineEvent makeLineEvent(final int processId,
-                                   final int invokeId,
+    public LineEvent makeLineEvent(final long processId,
+                                   final long invokeId,
                                    final int lineNumber) {
         if (null == lineEvent) {
             lineEvent = new LineEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, -1);
         }
-        unsafe.putInt(lineEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(lineEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(lineEvent, processId, invokeId);
         unsafe.putInt(lineEvent, lineNumberFieldInLineEventOffset, lineNumber);
         return lineEvent;
     }
 
-    public CallBeforeEvent makeCallBeforeEvent(final int processId,
-                                               final int invokeId,
+    public CallBeforeEvent makeCallBeforeEvent(final long processId,
+                                               final long invokeId,
                                                final int lineNumber,
                                                final String owner,
                                                final String name,
@@ -164,8 +173,7 @@ class SingleEventFactory {
         if (null == callBeforeEvent) {
             callBeforeEvent = new CallBeforeEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, -1, null, null, null);
         }
-        unsafe.putInt(callBeforeEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(callBeforeEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(callBeforeEvent, processId, invokeId);
         unsafe.putInt(callBeforeEvent, lineNumberFieldInCallBeforeEventOffset, lineNumber);
         unsafe.putObject(callBeforeEvent, ownerFieldInCallBeforeEventOffset, owner);
         unsafe.putObject(callBeforeEvent, nameFieldInCallBeforeEventOffset, name);
@@ -173,24 +181,22 @@ class SingleEventFactory {
         return callBeforeEvent;
     }
 
-    public CallReturnEvent makeCallReturnEvent(final int processId,
-                                               final int invokeId) {
+    public CallReturnEvent makeCallReturnEvent(final long processId,
+                                               final long invokeId) {
         if (null == callReturnEvent) {
             callReturnEvent = new CallReturnEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID);
         }
-        unsafe.putInt(callReturnEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(callReturnEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(callReturnEvent, processId, invokeId);
         return callReturnEvent;
     }
 
-    public CallThrowsEvent makeCallThrowsEvent(final int processId,
-                                               final int invokeId,
+    public CallThrowsEvent makeCallThrowsEvent(final long processId,
+                                               final long invokeId,
                                                final String throwException) {
         if (null == callThrowsEvent) {
             callThrowsEvent = new CallThrowsEvent(ILLEGAL_PROCESS_ID, ILLEGAL_INVOKE_ID, null);
         }
-        unsafe.putInt(callThrowsEvent, processIdFieldInInvokeEventOffset, processId);
-        unsafe.putInt(callThrowsEvent, invokeIdFieldInInvokeEventOffset, invokeId);
+        setInvokeId(callThrowsEvent, processId, invokeId);
         unsafe.putObject(callThrowsEvent, throwExceptionFieldInCallThrowsEventOffset, throwException);
         return callThrowsEvent;
     }
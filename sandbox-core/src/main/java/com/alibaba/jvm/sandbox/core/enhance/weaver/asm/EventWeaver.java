@@ -1,7 +1,9 @@
 package com.alibaba.jvm.sandbox.core.enhance.weaver.asm;
 
 import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
 import com.alibaba.jvm.sandbox.core.enhance.weaver.CodeLock;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.BehaviorTable;
 import com.alibaba.jvm.sandbox.core.manager.NativeMethodEnhanceAware;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.AdviceAdapter;
@@ -9,11 +11,15 @@ import org.objectweb.asm.commons.JSRInlinerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.com.alibaba.jvm.sandbox.spy.Spy;
 import java.lang.instrument.Instrumentation;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static com.alibaba.jvm.sandbox.core.util.SandboxEventTypeUtils.isTracingProcess;
 import static com.alibaba.jvm.sandbox.core.util.SandboxStringUtils.toInternalClassName;
 import static com.alibaba.jvm.sandbox.core.util.SandboxStringUtils.toJavaClassName;
 import static org.apache.commons.lang3.ArrayUtils.contains;
@@ -67,14 +73,19 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final int targetClassLoaderObjectID;
-    private final String namespace;
-    private final int listenerId;
+    private final int namespaceIndex;
+    private final int listenerSlot;
     private final String targetJavaClassName;
     private final Set<String> signCodes;
     private final Event.Type[] eventTypeArray;
+    private final EventWatchOption option;
     private final List<Method> addMethodNodes = new ArrayList<Method>();
     private final boolean isNativeMethodEnhanceSupported;
 
+    // 是否需要织入RETURN/THROWS探针
+    // 若只订阅了BEFORE事件，则不需要RETURN/THROWS探针以及包裹整个方法的try...catch
+    private final boolean isTracingProcess;
+
     // 是否支持LINE_EVENT
     // LINE_EVENT需要对Class做特殊的增强，所以需要在这里做特殊的判断
     private final boolean isLineEnable;
@@ -91,20 +102,23 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
         final int api,
         final ClassVisitor cv,
         final String namespace,
-        final int listenerId,
+        final int listenerSlot,
         final int targetClassLoaderObjectID,
         final String targetClassInternalName,
         final Set<String/*BehaviorStructure#getSignCode()*/> signCodes,
-        final Event.Type[] eventTypeArray) {
+        final Event.Type[] eventTypeArray,
+        final EventWatchOption option) {
         super(api, cv);
         this.isNativeMethodEnhanceSupported = isNativeMethodEnhanceSupported;
         this.targetClassLoaderObjectID = targetClassLoaderObjectID;
-        this.namespace = namespace;
-        this.listenerId = listenerId;
+        this.namespaceIndex = Spy.getNamespaceIndex(namespace);
+        this.listenerSlot = listenerSlot;
         this.targetJavaClassName = toJavaClassName(targetClassInternalName);
         this.signCodes = signCodes;
         this.eventTypeArray = eventTypeArray;
+        this.option = option;
 
+        this.isTracingProcess = isTracingProcess(eventTypeArray);
         this.isLineEnable = contains(eventTypeArray, Event.Type.LINE);
         this.hasCallBefore = contains(eventTypeArray, Event.Type.CALL_BEFORE);
         this.hasCallReturn = contains(eventTypeArray, Event.Type.CALL_RETURN);
@@ -116,6 +130,16 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
         return signCodes.contains(signCode);
     }
 
+    // 方法调用是否需要织入CALL探针，过滤器出错时按匹配处理
+    private boolean isMatchedCall(final String owner, final String name) {
+        try {
+            return option.isMatchedCall(toJavaClassName(owner), name);
+        } catch (Throwable cause) {
+            logger.warn("call filter occur an error when weaving {}, call={}#{};", targetJavaClassName, owner, name, cause);
+            return true;
+        }
+    }
+
     private String getBehaviorSignCode(final String name,
         final String desc) {
         final StringBuilder sb = new StringBuilder(256).append(targetJavaClassName).append("#").append(name).append("(");
@@ -137,16 +161,16 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
         final String signCode = getBehaviorSignCode(name, desc);
         if (!isMatchedBehavior(signCode)) {
             final MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
-            logger.debug("non-rewrite method {} for listener[id={}];",
+            logger.debug("non-rewrite method {} for listener[slot={}];",
                 signCode,
-                listenerId
+                listenerSlot
             );
             return mv;
         }
 
-        logger.info("rewrite method {} for listener[id={}];event={};",
+        logger.info("rewrite method {} for listener[slot={}];event={};",
             signCode,
-            listenerId,
+            listenerSlot,
             join(eventTypeArray, ",")
         );
 
@@ -171,9 +195,12 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                 // 代码锁
                 private final CodeLock codeLockForTracing = new CallAsmCodeLock(this);
 
-                // 加载ClassLoader
-                private void loadClassLoader() {
-                    push(targetClassLoaderObjectID);
+                // BEFORE之后是否需要将参数数组写回方法参数
+                private final boolean isStoreArgArray = isStoreArgArray(option);
+
+                // 加载行为ID
+                private void loadBehaviorId() {
+                    push(BehaviorTable.getSingleton().register(targetClassLoaderObjectID, targetJavaClassName, name, desc));
                 }
                 /**
                  * 流程控制
@@ -186,19 +213,20 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                             @Override
                             public void code() {
                                 mark(beginLabel);
-                                loadArgArray();
-                                dup();
-                                push(namespace);
-                                push(listenerId);
-                                loadClassLoader();
-                                push(targetJavaClassName);
-                                push(name);
-                                push(desc);
+                                loadArgArray(option);
+                                if (isStoreArgArray) {
+                                    dup();
+                                }
+                                push(namespaceIndex);
+                                push(listenerSlot);
+                                loadBehaviorId();
                                 loadThisOrPushNullIfIsStatic();
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnBefore);
-                                swap();
-                                storeArgArray();
-                                pop();
+                                if (isStoreArgArray) {
+                                    swap();
+                                    storeArgArray(option);
+                                    pop();
+                                }
                                 processControl(desc);
                                 final String wrapperNativeMethodName = NATIVE_PREFIX + name;
                                 Method wrapperMethod = new Method(access,wrapperNativeMethodName,desc);
@@ -214,9 +242,13 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                                     mv.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, wrapperMethod.getName(), wrapperMethod.getDescriptor(), false);
                                 }
                                 EventWeaver.this.addMethodNodes.add(wrapperMethod);
+                                if (!isTracingProcess) {
+                                    returnValue();
+                                    return;
+                                }
                                 loadReturn(Type.getReturnType(desc));
-                                push(namespace);
-                                push(listenerId);
+                                push(namespaceIndex);
+                                push(listenerSlot);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnReturn);
                                 processControl(desc,true);
                                 returnValue();
@@ -226,8 +258,8 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                                 newLocal = newLocal(ASM_TYPE_THROWABLE);
                                 storeLocal(newLocal);
                                 loadLocal(newLocal);
-                                push(namespace);
-                                push(listenerId);
+                                push(namespaceIndex);
+                                push(listenerSlot);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnThrows);
                                 processControl(desc);
                                 loadLocal(newLocal);
@@ -236,8 +268,10 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                             }
                         });
                     }
-                    super.visitLocalVariable("t",ASM_TYPE_THROWABLE.getDescriptor(),null,startCatchBlock,endCatchBlock,
-                        newLocal);
+                    if (newLocal >= 0) {
+                        super.visitLocalVariable("t",ASM_TYPE_THROWABLE.getDescriptor(),null,startCatchBlock,endCatchBlock,
+                            newLocal);
+                    }
                     super.visitEnd();
                 }
             };
@@ -261,11 +295,14 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                 // 代码锁
                 private final CodeLock codeLockForTracing = new CallAsmCodeLock(this);
 
+                // BEFORE之后是否需要将参数数组写回方法参数
+                private final boolean isStoreArgArray = isStoreArgArray(option);
 
 
-                // 加载ClassLoader
-                private void loadClassLoader() {
-                    push(targetClassLoaderObjectID);
+
+                // 加载行为ID
+                private void loadBehaviorId() {
+                    push(BehaviorTable.getSingleton().register(targetClassLoaderObjectID, targetJavaClassName, name, desc));
                 }
 
                 @Override
@@ -274,19 +311,20 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         @Override
                         public void code() {
                             mark(beginLabel);
-                            loadArgArray();
-                            dup();
-                            push(namespace);
-                            push(listenerId);
-                            loadClassLoader();
-                            push(targetJavaClassName);
-                            push(name);
-                            push(desc);
+                            loadArgArray(option);
+                            if (isStoreArgArray) {
+                                dup();
+                            }
+                            push(namespaceIndex);
+                            push(listenerSlot);
+                            loadBehaviorId();
                             loadThisOrPushNullIfIsStatic();
                             invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnBefore);
-                            swap();
-                            storeArgArray();
-                            pop();
+                            if (isStoreArgArray) {
+                                swap();
+                                storeArgArray(option);
+                                pop();
+                            }
                             processControl(desc);
                             isMethodEnter = true;
                         }
@@ -338,13 +376,13 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
                 @Override
                 protected void onMethodExit(final int opcode) {
-                    if (!isThrow(opcode) && !codeLockForTracing.isLock()) {
+                    if (isTracingProcess && !isThrow(opcode) && !codeLockForTracing.isLock()) {
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
                                 loadReturn(opcode);
-                                push(namespace);
-                                push(listenerId);
+                                push(namespaceIndex);
+                                push(listenerSlot);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnReturn);
                                 //[Ret,rawRespond]
                                 processControl(desc,true);
@@ -355,6 +393,13 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
                 @Override
                 public void visitMaxs(int maxStack, int maxLocals) {
+
+                    // 不需要THROWS探针时也就不需要包裹整个方法的try...catch
+                    if (!isTracingProcess) {
+                        super.visitMaxs(maxStack, maxLocals);
+                        return;
+                    }
+
                     mark(endLabel);
                     mv.visitLabel(startCatchBlock);
                     visitTryCatchBlock(beginLabel, endLabel, startCatchBlock, ASM_TYPE_THROWABLE.getInternalName());
@@ -365,8 +410,8 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                             newlocal = newLocal(ASM_TYPE_THROWABLE);
                             storeLocal(newlocal);
                             loadLocal(newlocal);
-                            push(namespace);
-                            push(listenerId);
+                            push(namespaceIndex);
+                            push(listenerSlot);
                             invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnThrows);
                             processControl(desc);
                             loadLocal(newlocal);
@@ -381,16 +426,36 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                 // 用于tracing的当前行号
                 private int tracingCurrentLineNumber = -1;
 
+                // 行号:一次性行探针ID，同一行可能对应多个行号表项（如循环），共用一个一次性行探针
+                private final Map<Integer, Integer> lineProbeIds = new HashMap<Integer, Integer>();
+
+                // 获取行号对应的一次性行探针ID，ID分配完后返回-1，退化为普通行探针
+                private int getLineProbeId(final int lineNumber) {
+                    Integer lineProbeId = lineProbeIds.get(lineNumber);
+                    if (null == lineProbeId) {
+                        lineProbeIds.put(lineNumber, lineProbeId = Spy.newLineProbeId());
+                    }
+                    return lineProbeId;
+                }
+
                 @Override
                 public void visitLineNumber(final int lineNumber, Label label) {
-                    if (isMethodEnter && isLineEnable) {
+                    if (isMethodEnter && isLineEnable && option.isMatchedLine(lineNumber)) {
+                        final int lineProbeId = option.isLineFirstHitOnly()
+                                ? getLineProbeId(lineNumber)
+                                : -1;
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
+                                if (lineProbeId >= 0) {
+                                    push(lineProbeId);
+                                }
                                 push(lineNumber);
-                                push(namespace);
-                                push(listenerId);
-                                invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnLine);
+                                push(namespaceIndex);
+                                push(listenerSlot);
+                                invokeStatic(ASM_TYPE_SPY, lineProbeId >= 0
+                                        ? ASM_METHOD_Spy$spyMethodOnLineOnce
+                                        : ASM_METHOD_Spy$spyMethodOnLine);
                             }
                         });
                     }
@@ -413,7 +478,9 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
 
                     // 如果CALL事件没有启用，则不需要对CALL进行增强
                     // 如果正在CALL的方法来自于SANDBOX本身，则不需要进行追踪
-                    if (!isMethodEnter || !isCallEnable || codeLockForTracing.isLock()) {
+                    // 如果方法调用没有通过过滤，则保持原样
+                    if (!isMethodEnter || !isCallEnable || codeLockForTracing.isLock()
+                            || !isMatchedCall(owner, name)) {
                         super.visitMethodInsn(opcode, owner, name, desc, itf);
                         return;
                     }
@@ -427,8 +494,8 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                                 push(toJavaClassName(owner));
                                 push(name);
                                 push(desc);
-                                push(namespace);
-                                push(listenerId);
+                                push(namespaceIndex);
+                                push(listenerSlot);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallBefore);
                             }
                         });
@@ -441,8 +508,8 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
-                                push(namespace);
-                                push(listenerId);
+                                push(namespaceIndex);
+                                push(listenerSlot);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallReturn);
                             }
                         });
@@ -467,8 +534,8 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                         codeLockForTracing.lock(new CodeLock.Block() {
                             @Override
                             public void code() {
-                                push(namespace);
-                                push(listenerId);
+                                push(namespaceIndex);
+                                push(listenerSlot);
                                 invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallReturn);
                             }
                         });
@@ -486,8 +553,8 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                             dup();
                             invokeVirtual(ASM_TYPE_OBJECT, ASM_METHOD_Object$getClass);
                             invokeVirtual(ASM_TYPE_CLASS, ASM_METHOD_Class$getName);
-                            push(namespace);
-                            push(listenerId);
+                            push(namespaceIndex);
+                            push(listenerSlot);
                             invokeStatic(ASM_TYPE_SPY, ASM_METHOD_Spy$spyMethodOnCallThrows);
                         }
                     });
@@ -518,7 +585,9 @@ public class EventWeaver extends ClassVisitor implements Opcodes, AsmTypes, AsmM
                     for (AsmTryCatchBlock tcb : asmTryCatchBlocks) {
                         super.visitTryCatchBlock(tcb.start, tcb.end, tcb.handler, tcb.type);
                     }
-                    super.visitLocalVariable("t",ASM_TYPE_THROWABLE.getDescriptor(),null,startCatchBlock,endCatchBlock,newlocal);
+                    if (newlocal >= 0) {
+                        super.visitLocalVariable("t",ASM_TYPE_THROWABLE.getDescriptor(),null,startCatchBlock,endCatchBlock,newlocal);
+                    }
                     super.visitEnd();
                 }
 
@@ -1,5 +1,6 @@
 package com.alibaba.jvm.sandbox.core.enhance.weaver.asm;
 
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -142,6 +143,68 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         }
     }
 
+    /**
+     * 按观察选项加载参数数组
+     * <p>
+     * 不采集参数或方法没有参数时压入null，由事件处理统一替换为空数组，不必每次调用都创建一个空数组；
+     * 只采集部分参数时，数组长度依旧是参数个数，但只有被采集的参数会被装箱放入数组，其余位置为null
+     * </p>
+     *
+     * @param option 观察选项
+     */
+    final protected void loadArgArray(final EventWatchOption option) {
+        if (!option.isCaptureParameters()
+                || argumentTypeArray.length == 0) {
+            pushNull();
+            return;
+        }
+        if (null == option.getParameterIndexes()) {
+            loadArgArray();
+            return;
+        }
+        push(argumentTypeArray.length);
+        newArray(ASM_TYPE_OBJECT);
+        for (int i = 0; i < argumentTypeArray.length; i++) {
+            if (!option.isCaptureParameter(i)) {
+                continue;
+            }
+            dup();
+            push(i);
+            loadArg(i);
+            box(argumentTypeArray[i]);
+            arrayStore(ASM_TYPE_OBJECT);
+        }
+    }
+
+    /**
+     * 按观察选项保存参数数组，只有被采集的参数才会被写回
+     *
+     * @param option 观察选项
+     */
+    final protected void storeArgArray(final EventWatchOption option) {
+        for (int i = 0; i < argumentTypeArray.length; i++) {
+            if (!option.isCaptureParameter(i)) {
+                continue;
+            }
+            dup();
+            push(i);
+            arrayLoad(ASM_TYPE_OBJECT);
+            unbox(argumentTypeArray[i]);
+            storeArg(i);
+        }
+    }
+
+    /**
+     * 按观察选项判断BEFORE之后是否需要将参数数组写回方法参数
+     *
+     * @param option 观察选项
+     * @return TRUE:需要写回；FALSE：不需要写回
+     */
+    final protected boolean isStoreArgArray(final EventWatchOption option) {
+        return argumentTypeArray.length > 0
+                && !option.isReadOnlyParameters();
+    }
+
     final protected void loadReturn(Type returnType) {
         final int sort = returnType.getSort();
         switch (sort) {
@@ -208,7 +271,7 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         /*
          * [Ret, Ret, {rawRespond}]
          */
-        visitFieldInsn(GETFIELD, ASM_TYPE_SPY_RET, "state", ASM_TYPE_INT);
+        invokeVirtual(ASM_TYPE_SPY_RET, ASM_METHOD_Spy$Ret$getState);
         /*
          * [I, Ret, {rawRespond}]
          */
@@ -249,7 +312,7 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         /*
          * [Ret]
          */
-        visitFieldInsn(GETFIELD, ASM_TYPE_SPY_RET, "respond", ASM_TYPE_OBJECT);
+        invokeVirtual(ASM_TYPE_SPY_RET, ASM_METHOD_Spy$Ret$consumeRespond);
         /*
          *  [spyRespond] ,execute XReturn
          */
@@ -268,7 +331,7 @@ public class ReWriteMethod extends AdviceAdapter implements Opcodes, AsmTypes, A
         /*
          * [Ret]
          */
-        visitFieldInsn(GETFIELD, ASM_TYPE_SPY_RET, "respond", ASM_TYPE_OBJECT);
+        invokeVirtual(ASM_TYPE_SPY_RET, ASM_METHOD_Spy$Ret$consumeRespond);
         /*
          * [Object]
          */
@@ -44,6 +44,9 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
     private final CoreLoadedClassDataSource classDataSource;
     private final ProviderManager providerManager;
 
+    // 合并织入类形变器，未开启合并织入时为null
+    private final SandboxFusedClassFileTransformer fusedClassFileTransformer;
+
     // 模块目录&文件集合
     private final File[] moduleLibDirArray;
 
@@ -66,6 +69,9 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
         this.inst = inst;
         this.classDataSource = classDataSource;
         this.providerManager = providerManager;
+        this.fusedClassFileTransformer = cfg.isEnableFusedWeaving()
+                ? new SandboxFusedClassFileTransformer(inst, cfg.isEnableUnsafe(), cfg.getNamespace())
+                : null;
 
         // 初始化模块目录
         this.moduleLibDirArray = mergeFileArray(
@@ -216,7 +222,7 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
                             new ReleaseResource<ModuleEventWatcher>(
                                     SandboxProtector.instance.protectProxy(
                                             ModuleEventWatcher.class,
-                                            new DefaultModuleEventWatcher(inst, classDataSource, coreModule, cfg.isEnableUnsafe(), cfg.getNamespace())
+                                            new DefaultModuleEventWatcher(inst, classDataSource, coreModule, cfg.isEnableUnsafe(), cfg.getNamespace(), cfg.getListenerBudgetNanos(), fusedClassFileTransformer)
                                     )
                             ) {
                                 @Override
@@ -270,6 +276,16 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
                     );
                 }
 
+                // ListenerMonitor注入
+                else if (ListenerMonitor.class.isAssignableFrom(fieldType)) {
+                    writeField(
+                            resourceField,
+                            module,
+                            new DefaultListenerMonitor(coreModule, this),
+                            true
+                    );
+                }
+
                 // EventMonitor注入
                 else if (EventMonitor.class.isAssignableFrom(fieldType)) {
                     writeField(
@@ -427,7 +443,8 @@ public class DefaultCoreModuleManager implements CoreModuleManager {
             EventListenerHandler.getSingleton().active(
                     sandboxClassFileTransformer.getListenerId(),
                     sandboxClassFileTransformer.getEventListener(),
-                    sandboxClassFileTransformer.getEventTypeArray()
+                    sandboxClassFileTransformer.getEventTypeArray(),
+                    sandboxClassFileTransformer.getEventWatchOption()
             );
         }
 
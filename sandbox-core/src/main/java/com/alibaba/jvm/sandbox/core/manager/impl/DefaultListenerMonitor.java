@@ -0,0 +1,181 @@
+package com.alibaba.jvm.sandbox.core.manager.impl;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.resource.ListenerMonitor;
+import com.alibaba.jvm.sandbox.core.CoreModule;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.ListenerCounter;
+import com.alibaba.jvm.sandbox.core.manager.CoreModuleManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 默认事件监听器监控实现
+ */
+class DefaultListenerMonitor implements ListenerMonitor {
+
+    private final CoreModule coreModule;
+    private final CoreModuleManager coreModuleManager;
+
+    DefaultListenerMonitor(final CoreModule coreModule,
+                           final CoreModuleManager coreModuleManager) {
+        this.coreModule = coreModule;
+        this.coreModuleManager = coreModuleManager;
+    }
+
+    @Override
+    public ListenerMetrics getListenerMetrics(final int watchId) {
+        for (final SandboxClassFileTransformer sandboxClassFileTransformer : coreModule.getSandboxClassFileTransformers()) {
+            if (sandboxClassFileTransformer.getWatchId() == watchId) {
+                return toListenerMetrics(coreModule, sandboxClassFileTransformer);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<ListenerMetrics> listListenerMetrics() {
+        final List<ListenerMetrics> listenerMetricsList = new ArrayList<ListenerMetrics>();
+
+        // 同一个事件监听器可能被多次观察，这里只统计一次
+        final Set<Integer> listenerIds = new HashSet<Integer>();
+        for (final CoreModule module : coreModuleManager.list()) {
+            for (final SandboxClassFileTransformer sandboxClassFileTransformer : module.getSandboxClassFileTransformers()) {
+                if (!listenerIds.add(sandboxClassFileTransformer.getListenerId())) {
+                    continue;
+                }
+                final ListenerMetrics listenerMetrics = toListenerMetrics(module, sandboxClassFileTransformer);
+                if (null != listenerMetrics) {
+                    listenerMetricsList.add(listenerMetrics);
+                }
+            }
+        }
+        return listenerMetricsList;
+    }
+
+    private static ListenerMetrics toListenerMetrics(final CoreModule module,
+                                                     final SandboxClassFileTransformer sandboxClassFileTransformer) {
+        final ListenerCounter counter = EventListenerHandler.getSingleton()
+                .getListenerCounter(sandboxClassFileTransformer.getListenerId());
+        return null == counter
+                ? null
+                : new DefaultListenerMetrics(
+                module.getUniqueId(),
+                sandboxClassFileTransformer.getListenerId(),
+                sandboxClassFileTransformer.getEventListener().getClass().getName(),
+                counter
+        );
+    }
+
+    /**
+     * 事件监听器统计指标，读取时实时汇总计数器
+     */
+    private static class DefaultListenerMetrics implements ListenerMetrics {
+
+        private final String uniqueId;
+        private final int listenerId;
+        private final String listenerClassName;
+        private final ListenerCounter counter;
+
+        private DefaultListenerMetrics(final String uniqueId,
+                                       final int listenerId,
+                                       final String listenerClassName,
+                                       final ListenerCounter counter) {
+            this.uniqueId = uniqueId;
+            this.listenerId = listenerId;
+            this.listenerClassName = listenerClassName;
+            this.counter = counter;
+        }
+
+        @Override
+        public String getUniqueId() {
+            return uniqueId;
+        }
+
+        @Override
+        public int getListenerId() {
+            return listenerId;
+        }
+
+        @Override
+        public String getListenerClassName() {
+            return listenerClassName;
+        }
+
+        @Override
+        public long getDispatchedCount() {
+            long total = 0;
+            for (final Event.Type type : Event.Type.values()) {
+                total += counter.getDispatchedCount(type);
+            }
+            return total;
+        }
+
+        @Override
+        public long getDispatchedCount(final Event.Type type) {
+            return counter.getDispatchedCount(type);
+        }
+
+        @Override
+        public long getIgnoredCount() {
+            long total = 0;
+            for (final Event.Type type : Event.Type.values()) {
+                total += counter.getIgnoredCount(type);
+            }
+            return total;
+        }
+
+        @Override
+        public long getIgnoredCount(final Event.Type type) {
+            return counter.getIgnoredCount(type);
+        }
+
+        @Override
+        public long getProcessControlCount() {
+            return counter.getProcessControlCount();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return counter.getErrorCount();
+        }
+
+        @Override
+        public long[] getNanosHistogram() {
+            return counter.getNanosHistogram();
+        }
+
+        @Override
+        public long getPercentileNanos(final double percentile) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must in (0,100], but " + percentile);
+            }
+            final long[] histogram = counter.getNanosHistogram();
+            long total = 0;
+            for (final long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            // 返回目标样本所在桶的上界
+            final long rank = (long) Math.ceil(total * percentile / 100);
+            long accumulated = 0;
+            for (int bucket = 0; bucket < histogram.length; bucket++) {
+                accumulated += histogram[bucket];
+                if (accumulated >= rank) {
+                    return bucket == histogram.length - 1
+                            ? Long.MAX_VALUE
+                            : (1L << (bucket + 1)) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+    }
+
+}
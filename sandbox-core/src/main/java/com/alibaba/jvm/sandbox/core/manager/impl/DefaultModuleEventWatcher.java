@@ -4,6 +4,8 @@ import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.filter.Filter;
 import com.alibaba.jvm.sandbox.api.listener.EventListener;
 import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchCondition;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.api.listener.ext.ExtEventWatchCondition;
 import com.alibaba.jvm.sandbox.api.resource.ModuleEventWatcher;
 import com.alibaba.jvm.sandbox.core.CoreModule;
 import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
@@ -18,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -41,6 +44,12 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
     private final boolean isEnableUnsafe;
     private final String namespace;
 
+    // 事件监听器默认的开销预算(P99，纳秒)，为0表示不开启开销熔断
+    private final long listenerBudgetNanos;
+
+    // 合并织入类形变器，为null时每个观察各自注册类形变器
+    private final SandboxFusedClassFileTransformer fusedClassFileTransformer;
+
     // 观察ID序列生成器
     private final Sequencer watchIdSequencer = new Sequencer();
 
@@ -48,12 +57,16 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                               final CoreLoadedClassDataSource classDataSource,
                               final CoreModule coreModule,
                               final boolean isEnableUnsafe,
-                              final String namespace) {
+                              final String namespace,
+                              final long listenerBudgetNanos,
+                              final SandboxFusedClassFileTransformer fusedClassFileTransformer) {
         this.inst = inst;
         this.classDataSource = classDataSource;
         this.coreModule = coreModule;
         this.isEnableUnsafe = isEnableUnsafe;
         this.namespace = namespace;
+        this.listenerBudgetNanos = listenerBudgetNanos;
+        this.fusedClassFileTransformer = fusedClassFileTransformer;
     }
 
 
@@ -81,9 +94,9 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
     }
 
     /*
-     * 形变观察所影响的类
+     * 形变观察所影响的类，返回形变失败的类数量
      */
-    private void reTransformClasses(
+    private int reTransformClasses(
         final int watchId,
         final List<Class<?>> waitingReTransformClasses,
         final Progress progress) {
@@ -92,7 +105,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
 
         // 如果找不到需要被重新增强的类则直接返回
         if (CollectionUtils.isEmpty(waitingReTransformClasses)) {
-            return;
+            return 0;
         }
 
         if (logger.isDebugEnabled()) {
@@ -100,7 +113,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                     waitingReTransformClasses, coreModule.getUniqueId(), watchId);
         }
 
-        int index = 0;
+        int index = 0, failed = 0;
         for (final Class<?> waitingReTransformClass : waitingReTransformClasses) {
             index++;
             try {
@@ -123,6 +136,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                         index - 1, total
                 );
             } catch (Throwable causeOfReTransform) {
+                failed++;
                 logger.warn("watch={} in module={} single reTransform {} failed, at index={};total={}. ignore this class.",
                         watchId, coreModule.getUniqueId(), waitingReTransformClass,
                         index - 1, total,
@@ -142,6 +156,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
             }
         }//for
 
+        return failed;
     }
 
     @Override
@@ -156,7 +171,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                      final EventListener listener,
                      final Progress progress,
                      final Event.Type... eventType) {
-        return watch(new ExtFilterMatcher(make(filter)), listener, progress, eventType);
+        return watch(new ExtFilterMatcher(make(filter)), listener, progress, new EventWatchOption(), eventType);
     }
 
     @Override
@@ -164,30 +179,57 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                      final EventListener listener,
                      final Progress progress,
                      final Event.Type... eventType) {
-        return watch(toOrGroupMatcher(condition.getOrFilterArray()), listener, progress, eventType);
+        return watch(toOrGroupMatcher(condition.getOrFilterArray()), listener, progress, toEventWatchOption(condition), eventType);
+    }
+
+    // 兼容旧版本的观察条件，只有EventWatchBuilder构建出来的观察条件才会携带观察选项
+    private EventWatchOption toEventWatchOption(final EventWatchCondition condition) {
+        final EventWatchOption option = condition instanceof ExtEventWatchCondition
+                ? ((ExtEventWatchCondition) condition).getEventWatchOption()
+                : null;
+        return null == option
+                ? new EventWatchOption()
+                : option;
     }
 
     // 这里是用matcher重制过后的watch
     private int watch(final Matcher matcher,
                       final EventListener listener,
                       final Progress progress,
+                      final EventWatchOption watchOption,
                       final Event.Type... eventType) {
         final int watchId = watchIdSequencer.next();
+
+        // 观察没有单独设置开销预算时使用容器的默认配置
+        // 在副本上生效，调用方的观察选项保持不变，可以放心地复用到之后的观察中
+        final EventWatchOption option = watchOption.copy();
+        if (option.getOverheadBudgetNanos() <= 0
+                && listenerBudgetNanos > 0) {
+            option.withOverheadBudget(listenerBudgetNanos);
+        }
+
         // 给对应的模块追加ClassFileTransformer
         final SandboxClassFileTransformer sandClassFileTransformer = new SandboxClassFileTransformer(inst,
-                watchId, coreModule.getUniqueId(), matcher, listener, isEnableUnsafe, eventType, namespace);
+                watchId, coreModule.getUniqueId(), matcher, listener, isEnableUnsafe, eventType, option, namespace);
 
         // 注册到CoreModule中
         coreModule.getSandboxClassFileTransformers().add(sandClassFileTransformer);
 
-        //这里addTransformer后，接下来引起的类加载都会经过sandClassFileTransformer
-        inst.addTransformer(sandClassFileTransformer, true);
+        // 合并织入时由合并织入类形变器统一完成增强，不能参与合并织入的观察仍然单独织入
+        if (null != fusedClassFileTransformer
+                && SandboxFusedClassFileTransformer.isFusible(eventType, option)) {
+            fusedClassFileTransformer.add(sandClassFileTransformer);
+        } else {
 
-        //设定Native支持
-        if(inst.isNativeMethodPrefixSupported()){
-            inst.setNativeMethodPrefix(sandClassFileTransformer, EventWeaver.NATIVE_PREFIX);
-        }else{
-            logger.info("Native Method Prefix Unsupported");
+            //这里addTransformer后，接下来引起的类加载都会经过sandClassFileTransformer
+            inst.addTransformer(sandClassFileTransformer, true);
+
+            //设定Native支持
+            if(inst.isNativeMethodPrefixSupported()){
+                inst.setNativeMethodPrefix(sandClassFileTransformer, EventWeaver.NATIVE_PREFIX);
+            }else{
+                logger.info("Native Method Prefix Unsupported");
+            }
         }
 
         // 查找需要渲染的类集合
@@ -215,7 +257,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
             if (coreModule.isActivated()) {
                 final int listenerId = sandClassFileTransformer.getListenerId();
                 EventListenerHandler.getSingleton()
-                        .active(listenerId, listener, eventType);
+                        .active(listenerId, listener, eventType, option);
             }
 
         } finally {
@@ -230,6 +272,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                        final Progress progress) {
 
         final Set<Matcher> waitingRemoveMatcherSet = new LinkedHashSet<Matcher>();
+        final List<Integer> waitingReleaseListenerIds = new ArrayList<Integer>();
 
         // 找出待删除的SandboxClassFileTransformer
         final Iterator<SandboxClassFileTransformer> cftIt = coreModule.getSandboxClassFileTransformers().iterator();
@@ -243,7 +286,10 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                         .frozen(sandboxClassFileTransformer.getListenerId());
 
                 // 在JVM中移除掉命中的ClassFileTransformer
-                inst.removeTransformer(sandboxClassFileTransformer);
+                if (null == fusedClassFileTransformer
+                        || !fusedClassFileTransformer.remove(sandboxClassFileTransformer)) {
+                    inst.removeTransformer(sandboxClassFileTransformer);
+                }
 
                 // 计数
                 cCnt += sandboxClassFileTransformer.getAffectStatistic().cCnt();
@@ -251,6 +297,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
 
                 // 追加到待删除过滤器集合
                 waitingRemoveMatcherSet.add(sandboxClassFileTransformer.getMatcher());
+                waitingReleaseListenerIds.add(sandboxClassFileTransformer.getListenerId());
 
                 // 清除掉该SandboxClassFileTransformer
                 cftIt.remove();
@@ -268,13 +315,25 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                 waitingReTransformClasses.size()
         );
 
+        int failed = 0;
         beginProgress(progress, waitingReTransformClasses.size());
         try {
             // 应用JVM
-            reTransformClasses(watcherId, waitingReTransformClasses, progress);
+            failed = reTransformClasses(watcherId, waitingReTransformClasses, progress);
         } finally {
             finishProgress(progress, cCnt, mCnt);
         }
+
+        // 织入代码已经全部移除，释放监听器槽位以便复用；
+        // 有类形变失败时其中仍残留着织入代码，槽位不能交给其他监听器
+        if (failed > 0) {
+            logger.warn("watch={} in module={} has {} classes failed to reTransform, listener slots are kept.",
+                    watcherId, coreModule.getUniqueId(), failed);
+            return;
+        }
+        for (final int listenerId : waitingReleaseListenerIds) {
+            EventListenerHandler.getSingleton().release(listenerId);
+        }
     }
 
     @Override
@@ -294,7 +353,7 @@ public class DefaultModuleEventWatcher implements ModuleEventWatcher {
                          final WatchCallback watchCb,
                          final Progress dProgress,
                          final Event.Type... eventType) throws Throwable {
-        final int watchId = watch(new ExtFilterMatcher(make(filter)), listener, wProgress, eventType);
+        final int watchId = watch(new ExtFilterMatcher(make(filter)), listener, wProgress, new EventWatchOption(), eventType);
         try {
             watchCb.watchCompleted();
         } finally {
@@ -77,6 +77,11 @@ public class DefaultModuleManager implements ModuleManager {
         return coreModuleManager.getThrowsExceptionIfNull(uniqueId).mCnt();
     }
 
+    @Override
+    public int trippedCnt(String uniqueId) throws ModuleException {
+        return coreModuleManager.getThrowsExceptionIfNull(uniqueId).trippedCnt();
+    }
+
     @Override
     public boolean isActivated(String uniqueId) throws ModuleException {
         return coreModuleManager.getThrowsExceptionIfNull(uniqueId).isActivated();
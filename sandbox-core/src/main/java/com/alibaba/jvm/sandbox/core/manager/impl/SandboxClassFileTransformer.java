@@ -3,6 +3,7 @@ package com.alibaba.jvm.sandbox.core.manager.impl;
 import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.event.Event.Type;
 import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
 import com.alibaba.jvm.sandbox.core.enhance.EventEnhancer;
 import com.alibaba.jvm.sandbox.core.enhance.weaver.asm.EventWeaver;
 import com.alibaba.jvm.sandbox.core.manager.NativeMethodEnhanceAware;
@@ -41,6 +42,7 @@ public class SandboxClassFileTransformer implements ClassFileTransformer{
     private final EventListener eventListener;
     private final boolean isEnableUnsafe;
     private final Event.Type[] eventTypeArray;
+    private final EventWatchOption option;
 
     private final String namespace;
     private final int listenerId;
@@ -53,6 +55,7 @@ public class SandboxClassFileTransformer implements ClassFileTransformer{
         final EventListener eventListener,
         final boolean isEnableUnsafe,
         final Type[] eventTypeArray,
+        final EventWatchOption option,
         final String namespace) {
         this.inst = inst;
         this.watchId = watchId;
@@ -61,6 +64,7 @@ public class SandboxClassFileTransformer implements ClassFileTransformer{
         this.eventListener = eventListener;
         this.isEnableUnsafe = isEnableUnsafe;
         this.eventTypeArray = eventTypeArray;
+        this.option = option;
         this.namespace = namespace;
         this.listenerId = ObjectIDs.instance.identity(eventListener);
         this.isNativeMethodEnhanceSupported = inst.isNativeMethodPrefixSupported();
@@ -142,7 +146,8 @@ public class SandboxClassFileTransformer implements ClassFileTransformer{
                     behaviorSignCodes,
                     namespace,
                     listenerId,
-                    eventTypeArray
+                    eventTypeArray,
+                    option
             );
             if (srcByteCodeArray == toByteCodeArray) {
                 logger.debug("transform ignore {}, nothing changed in loader={}", internalClassName, loader);
@@ -184,7 +189,7 @@ public class SandboxClassFileTransformer implements ClassFileTransformer{
      *
      * @return 事件监听器ID
      */
-    int getListenerId() {
+    public int getListenerId() {
         return listenerId;
     }
 
@@ -206,6 +211,15 @@ public class SandboxClassFileTransformer implements ClassFileTransformer{
         return eventTypeArray;
     }
 
+    /**
+     * 获取本次观察选项
+     *
+     * @return 本次观察选项
+     */
+    EventWatchOption getEventWatchOption() {
+        return option;
+    }
+
     /**
      * 获取本次增强的影响统计
      *
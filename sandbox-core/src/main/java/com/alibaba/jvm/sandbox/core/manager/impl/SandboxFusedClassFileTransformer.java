@@ -0,0 +1,299 @@
+package com.alibaba.jvm.sandbox.core.manager.impl;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.core.enhance.EventEnhancer;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.asm.EventWeaver;
+import com.alibaba.jvm.sandbox.core.util.SandboxClassUtils;
+import com.alibaba.jvm.sandbox.core.util.SandboxProtector;
+import com.alibaba.jvm.sandbox.core.util.matcher.MatchingResult;
+import com.alibaba.jvm.sandbox.core.util.matcher.UnsupportedMatcher;
+import com.alibaba.jvm.sandbox.core.util.matcher.structure.ClassStructure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.alibaba.jvm.sandbox.core.util.matcher.structure.ClassStructureFactory.createClassStructure;
+import static org.apache.commons.lang3.ArrayUtils.contains;
+import static org.apache.commons.lang3.ArrayUtils.toPrimitive;
+
+/**
+ * 沙箱合并织入类形变器
+ * <p>
+ * 开启合并织入后，命名空间内各个观察的{@link SandboxClassFileTransformer}不再各自注册到JVM中，
+ * 而是统一由本形变器完成增强：同一个行为无论被多少个观察命中都只织入一套探针，
+ * 探针携带的是监听器组槽位，事件发生时用同一份参数数组按顺序分发给组内所有的监听器。
+ * 单次调用的开销只随监听器个数增长，不再随织入的层数增长
+ * </p>
+ * <p>
+ * 同一组内的观察选项会被合并，以最宽松的选项为准：
+ * 只要有一个观察需要采集（或修改）参数，组内的所有监听器就都能看到（或修改）参数
+ * </p>
+ * <p>
+ * 事件分发时不会再按监听器各自的方法调用过滤器、行范围过滤，也不会按监听器分别记录行是否已经命中过，
+ * 所以设置了方法调用过滤器、行范围或只观察第一次执行的行的观察不参与合并织入，
+ * 见{@link #isFusible(Event.Type[], EventWatchOption)}
+ * </p>
+ */
+public class SandboxFusedClassFileTransformer implements ClassFileTransformer {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Instrumentation inst;
+    private final boolean isEnableUnsafe;
+    private final String namespace;
+
+    // 参与合并织入的观察，按观察的先后顺序排列
+    private final List<SandboxClassFileTransformer> sandboxClassFileTransformers
+            = new CopyOnWriteArrayList<SandboxClassFileTransformer>();
+
+    SandboxFusedClassFileTransformer(final Instrumentation inst,
+                                     final boolean isEnableUnsafe,
+                                     final String namespace) {
+        this.inst = inst;
+        this.isEnableUnsafe = isEnableUnsafe;
+        this.namespace = namespace;
+    }
+
+    /**
+     * 观察能否参与合并织入
+     * <p>
+     * 观察CALL事件并设置了方法调用过滤器的观察、观察LINE事件并设置了行范围或只观察第一次执行的行的观察需要单独织入，
+     * 否则会收到组内其他观察命中的方法调用或行
+     * </p>
+     *
+     * @param eventTypes 观察的事件类型
+     * @param option     观察选项
+     * @return TRUE:可以参与合并织入；FALSE:需要单独织入
+     */
+    public static boolean isFusible(final Event.Type[] eventTypes,
+                                    final EventWatchOption option) {
+        if (isCallEnable(eventTypes)
+                && null != option.getCallFilter()) {
+            return false;
+        }
+        return !contains(eventTypes, Event.Type.LINE)
+                || null == option.getLineRanges() && !option.isLineFirstHitOnly();
+    }
+
+    /**
+     * 追加参与合并织入的观察
+     * <p>第一个观察加入时才会将本形变器注册到JVM中</p>
+     *
+     * @param sandboxClassFileTransformer 观察对应的类形变器
+     */
+    synchronized void add(final SandboxClassFileTransformer sandboxClassFileTransformer) {
+        final boolean isFirst = sandboxClassFileTransformers.isEmpty();
+        sandboxClassFileTransformers.add(sandboxClassFileTransformer);
+        if (!isFirst) {
+            return;
+        }
+        inst.addTransformer(this, true);
+        if (inst.isNativeMethodPrefixSupported()) {
+            inst.setNativeMethodPrefix(this, EventWeaver.NATIVE_PREFIX);
+        } else {
+            logger.info("Native Method Prefix Unsupported");
+        }
+    }
+
+    /**
+     * 移除参与合并织入的观察
+     * <p>最后一个观察移除时会将本形变器从JVM中移除</p>
+     *
+     * @param sandboxClassFileTransformer 观察对应的类形变器
+     * @return TRUE:观察参与了合并织入并已移除；FALSE:观察没有参与合并织入
+     */
+    synchronized boolean remove(final SandboxClassFileTransformer sandboxClassFileTransformer) {
+        if (!sandboxClassFileTransformers.remove(sandboxClassFileTransformer)) {
+            return false;
+        }
+        if (sandboxClassFileTransformers.isEmpty()) {
+            inst.removeTransformer(this);
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] transform(final ClassLoader loader,
+                            final String internalClassName,
+                            final Class<?> classBeingRedefined,
+                            final ProtectionDomain protectionDomain,
+                            final byte[] srcByteCodeArray) {
+
+        SandboxProtector.instance.enterProtecting();
+        try {
+
+            // 这里过滤掉Sandbox所需要的类|来自SandboxClassLoader所加载的类|来自ModuleJarClassLoader加载的类
+            // 防止ClassCircularityError的发生
+            if (SandboxClassUtils.isComeFromSandboxFamily(internalClassName, loader)) {
+                return null;
+            }
+
+            return _transform(
+                    loader,
+                    internalClassName,
+                    classBeingRedefined,
+                    srcByteCodeArray
+            );
+
+        } catch (Throwable cause) {
+            logger.warn("sandbox fused transform {} in loader={}; failed, will ignore this transform.",
+                    internalClassName,
+                    loader,
+                    cause
+            );
+            return null;
+        } finally {
+            SandboxProtector.instance.exitProtecting();
+        }
+    }
+
+    private byte[] _transform(final ClassLoader loader,
+                              final String internalClassName,
+                              final Class<?> classBeingRedefined,
+                              final byte[] srcByteCodeArray) {
+        // 如果未开启unsafe开关，是不允许增强来自BootStrapClassLoader的类
+        if (!isEnableUnsafe
+                && null == loader) {
+            logger.debug("fused transform ignore {}, class from bootstrap but unsafe.enable=false.", internalClassName);
+            return null;
+        }
+
+        final ClassStructure classStructure = null == classBeingRedefined
+                ? createClassStructure(srcByteCodeArray, loader)
+                : createClassStructure(classBeingRedefined);
+        final UnsupportedMatcher unsupportedMatcher = new UnsupportedMatcher(loader, isEnableUnsafe);
+
+        // 行为签名:命中该行为的观察
+        final Map<String, List<SandboxClassFileTransformer>> behaviorMapping
+                = new LinkedHashMap<String, List<SandboxClassFileTransformer>>();
+        for (final SandboxClassFileTransformer sandboxClassFileTransformer : sandboxClassFileTransformers) {
+            final MatchingResult matchingResult = unsupportedMatcher
+                    .and(sandboxClassFileTransformer.getMatcher())
+                    .matching(classStructure);
+            for (final String signCode : matchingResult.getBehaviorSignCodes()) {
+                List<SandboxClassFileTransformer> matchedTransformers = behaviorMapping.get(signCode);
+                if (null == matchedTransformers) {
+                    behaviorMapping.put(signCode, matchedTransformers = new ArrayList<SandboxClassFileTransformer>());
+                }
+                matchedTransformers.add(sandboxClassFileTransformer);
+            }
+        }
+
+        // 如果一个行为都没匹配上也不用继续了
+        if (behaviorMapping.isEmpty()) {
+            logger.debug("fused transform ignore {}, no behaviors matched in loader={}", internalClassName, loader);
+            return null;
+        }
+
+        // 命中观察完全相同的行为编为一组，每组织入一次，每个行为只会被织入一套探针
+        final Map<List<SandboxClassFileTransformer>, Set<String>> behaviorGroups
+                = new LinkedHashMap<List<SandboxClassFileTransformer>, Set<String>>();
+        for (final Map.Entry<String, List<SandboxClassFileTransformer>> entry : behaviorMapping.entrySet()) {
+            Set<String> signCodes = behaviorGroups.get(entry.getValue());
+            if (null == signCodes) {
+                behaviorGroups.put(entry.getValue(), signCodes = new LinkedHashSet<String>());
+            }
+            signCodes.add(entry.getKey());
+        }
+
+        final EventEnhancer enhancer = new EventEnhancer(inst.isNativeMethodPrefixSupported());
+        byte[] toByteCodeArray = srcByteCodeArray;
+        for (final Map.Entry<List<SandboxClassFileTransformer>, Set<String>> entry : behaviorGroups.entrySet()) {
+            final List<SandboxClassFileTransformer> groupTransformers = entry.getKey();
+            final Set<String> signCodes = entry.getValue();
+            toByteCodeArray = enhancer.toByteCodeArray(
+                    loader,
+                    toByteCodeArray,
+                    signCodes,
+                    namespace,
+                    toListenerIds(groupTransformers),
+                    toEventTypeArray(groupTransformers),
+                    toEventWatchOption(groupTransformers)
+            );
+
+            // statistic affect
+            for (final SandboxClassFileTransformer sandboxClassFileTransformer : groupTransformers) {
+                sandboxClassFileTransformer.getAffectStatistic().statisticAffect(loader, internalClassName, signCodes);
+            }
+        }
+
+        if (srcByteCodeArray == toByteCodeArray) {
+            logger.debug("fused transform ignore {}, nothing changed in loader={}", internalClassName, loader);
+            return null;
+        }
+
+        logger.info("fused transform {} finished, behaviors={};groups={}; in loader={}",
+                internalClassName,
+                behaviorMapping.size(),
+                behaviorGroups.size(),
+                loader
+        );
+        return toByteCodeArray;
+    }
+
+    // 组内监听器ID，按观察的先后顺序排列
+    private static int[] toListenerIds(final List<SandboxClassFileTransformer> groupTransformers) {
+        final int[] listenerIds = new int[groupTransformers.size()];
+        for (int index = 0; index < listenerIds.length; index++) {
+            listenerIds[index] = groupTransformers.get(index).getListenerId();
+        }
+        return listenerIds;
+    }
+
+    // 组内所有观察事件类型的并集
+    private static Event.Type[] toEventTypeArray(final List<SandboxClassFileTransformer> groupTransformers) {
+        final Set<Event.Type> eventTypes = new LinkedHashSet<Event.Type>();
+        for (final SandboxClassFileTransformer sandboxClassFileTransformer : groupTransformers) {
+            Collections.addAll(eventTypes, sandboxClassFileTransformer.getEventTypeArray());
+        }
+        return eventTypes.toArray(new Event.Type[0]);
+    }
+
+    // 合并组内所有观察的观察选项
+    private static EventWatchOption toEventWatchOption(final List<SandboxClassFileTransformer> groupTransformers) {
+        boolean isCaptureAny = false;
+        boolean isCaptureAll = false;
+        boolean isReadOnly = true;
+        final Set<Integer> parameterIndexes = new LinkedHashSet<Integer>();
+        for (final SandboxClassFileTransformer sandboxClassFileTransformer : groupTransformers) {
+            final EventWatchOption option = sandboxClassFileTransformer.getEventWatchOption();
+            isReadOnly &= option.isReadOnlyParameters();
+            if (!option.isCaptureParameters()) {
+                continue;
+            }
+            isCaptureAny = true;
+            if (null == option.getParameterIndexes()) {
+                isCaptureAll = true;
+            } else {
+                for (final int parameterIndex : option.getParameterIndexes()) {
+                    parameterIndexes.add(parameterIndex);
+                }
+            }
+        }
+
+        final EventWatchOption option = new EventWatchOption();
+        if (!isCaptureAny) {
+            option.withoutParameters();
+        } else if (!isCaptureAll) {
+            option.withParameterIndexes(toPrimitive(parameterIndexes.toArray(new Integer[0])));
+        }
+        if (isReadOnly) {
+            option.withReadOnlyParameters();
+        }
+        return option;
+    }
+
+    // 是否观察了CALL事件
+    private static boolean isCallEnable(final Event.Type[] eventTypes) {
+        return contains(eventTypes, Event.Type.CALL_BEFORE)
+                || contains(eventTypes, Event.Type.CALL_RETURN)
+                || contains(eventTypes, Event.Type.CALL_THROWS);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.alibaba.jvm.sandbox.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调用ID序列发生器
+ * <p>
+ * 每次BEFORE事件都要分配调用ID，如果所有线程都在同一个原子计数器上自增，多核下对同一缓存行的CAS争抢会非常明显。
+ * 这里每个线程一次从全局计数器领取{@link #BLOCK_SIZE}个ID，之后在本线程内自增，只有用完时才会再次访问全局计数器
+ * </p>
+ * <p>
+ * 调用ID为64位，在进程的生命周期内不会回绕；事件中32位的调用ID由64位调用ID折算而来，
+ * 回绕后依旧落在[{@link #INITIAL_ID},{@link Integer#MAX_VALUE}]之间，不会出现0和负数
+ * </p>
+ */
+public class InvokeIdSequencer {
+
+    /**
+     * 线程每次领取的ID个数
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * 初始调用ID
+     */
+    public static final long INITIAL_ID = 1000;
+
+    // 32位调用ID的取值个数
+    private static final long INT_ID_RANGE = Integer.MAX_VALUE - INITIAL_ID + 1;
+
+    // 全局计数器，只在线程领取ID段时访问
+    private final AtomicLong blockSequencer = new AtomicLong(INITIAL_ID);
+
+    /**
+     * 生成下一个调用ID
+     *
+     * @param block 当前线程的ID段{@code [next, limit)}，见{@link SandboxThreadContext#getInvokeIdBlock()}
+     * @return 64位调用ID
+     */
+    public long next(final long[] block) {
+        if (block[0] >= block[1]) {
+            block[0] = blockSequencer.getAndAdd(BLOCK_SIZE);
+            block[1] = block[0] + BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+
+    /**
+     * 将64位调用ID折算为32位调用ID
+     *
+     * @param id 64位调用ID
+     * @return 32位调用ID
+     */
+    public static int toIntId(final long id) {
+        return (int) (INITIAL_ID + (id - INITIAL_ID) % INT_ID_RANGE);
+    }
+
+}
@@ -2,10 +2,7 @@ package com.alibaba.jvm.sandbox.core.util;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.WeakHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 给指定的Java对象分配JVM唯一ID <br>
@@ -14,6 +11,11 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * 2. Object如果被GC回收，对应的ID会被失效，内存也会被释放
  * 3. int为[0,{@link Integer#MAX_VALUE}]之间的整数
  * 4. 这个类当前无需考虑对象溢出的情况，因为我不需要，我放入的对象数量很少，就这么简单
+ * 5. 对象按引用（identity）进行映射，不依赖对象自身的equals/hashCode
+ * </p>
+ * <p>
+ * {@link #getObject(int)}在每次BEFORE事件中都会被调用，所以[objectID:object]方向采用写时复制的开放寻址表，
+ * 读取时无锁也不产生任何对象；映射和清理都很少发生，统一在对象锁内完成
  * </p>
  *
  * @author luanjia@taobao.com
@@ -25,28 +27,24 @@ public class ObjectIDs {
      */
     public static final int NULL_ID = 0;
 
+    // 开放寻址表的初始容量，必须为2的幂
+    private static final int INITIAL_CAPACITY = 64;
+
     /**
      * 对象ID序列生成器，生成范围[1,{@link Integer#MAX_VALUE}]之间的整数
      */
     private final Sequencer objectIDSequencer = new Sequencer();
 
-    /**
-     * 全局读写锁:用于维护世界的和平
-     * <p>
-     * 用于维护{@link #identityObjectMapping}和{@link #objectIDMapping}之间数据的一致性
-     * </p>
-     */
-    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-
-    // 全局<对象:ID>映射表
-    private final WeakHashMap<Object, Integer> objectIDMapping
-            = new WeakHashMap<Object, Integer>();
+    // 全局<对象:ID>映射表，只在增强时使用
+    private final ConcurrentHashMap<IdentityKey, IdentityWeakReference> objectIDMapping
+            = new ConcurrentHashMap<IdentityKey, IdentityWeakReference>();
 
 
     // --- ObjectID : Object 的映射关系维护 ----------------------------------------+
     private final ReferenceQueue<Object> rQueue = new ReferenceQueue<Object>(); //|
-    private final HashMap<Integer, IdentityWeakReference> identityObjectMapping //|
-            = new HashMap<Integer, IdentityWeakReference>();                    //|
+    private volatile IdentityWeakReference[] identityObjectTable                //|
+            = new IdentityWeakReference[INITIAL_CAPACITY];                      //|
+    private int identityObjectCount = 0;                                        //|
     // ---------------------------------------------------------------------------+
 
 
@@ -71,70 +69,110 @@ public class ObjectIDs {
             return NULL_ID;
         }
 
-        rwLock.readLock().lock();
-        try {
-            final Integer objectID = objectIDMapping.get(object);
-            if (null != objectID) {
-                return objectID;
-            }
-        } finally {
-            rwLock.readLock().unlock();
-            expungeIdentityObjectMapping();
+        expungeIdentityObjectMapping();
+
+        final LookupKey lookupKey = new LookupKey(object);
+        final IdentityWeakReference reference = objectIDMapping.get(lookupKey);
+        if (null != reference) {
+            return reference.objectID;
         }
 
-        rwLock.writeLock().lock();
-        try {
-            final Integer nextObjectID;
-            if (objectIDMapping.containsKey(object)) {
-                nextObjectID = objectIDMapping.get(object);
-            } else {
-                mapping(
-                        nextObjectID = objectIDSequencer.next(),
-                        object
-                );
+        synchronized (this) {
+            final IdentityWeakReference existed = objectIDMapping.get(lookupKey);
+            if (null != existed) {
+                return existed.objectID;
             }
+            final int nextObjectID = objectIDSequencer.next();
+            mapping(new IdentityWeakReference(nextObjectID, object));
             return nextObjectID;
-        } finally {
-            rwLock.writeLock().unlock();
         }
     }
 
     /**
      * 维持{@code [object:objectID]}和{@code [objectID:object]}两个集合的映射关系
      *
-     * @param objectID 对象ID
-     * @param object   对象
+     * @param reference 带对象ID的弱引用
      */
-    private void mapping(final Integer objectID,
-                         final Object object) {
-        rwLock.writeLock().lock();
-        try {
-            // 映射 [object : objectID]
-            objectIDMapping.put(object, objectID);
+    private void mapping(final IdentityWeakReference reference) {
 
-            // 映射 [objectID : object]
-            identityObjectMapping.put(objectID, new IdentityWeakReference(objectID, object));
-        } finally {
-            rwLock.writeLock().unlock();
+        // 映射 [objectID : object]
+        final IdentityWeakReference[] table = identityObjectTable;
+        final IdentityWeakReference[] newTable;
+        if ((identityObjectCount + 1) << 1 > table.length) {
+            newTable = resize(table, table.length << 1, false);
+        } else {
+            newTable = table.clone();
         }
+        insert(newTable, reference);
+        identityObjectCount++;
+        identityObjectTable = newTable;
+
+        // 映射 [object : objectID]
+        objectIDMapping.put(reference, reference);
     }
 
     /**
      * 清理失效的 [objectID : object] 映射
+     * <p>被回收的对象攒在引用队列中，每次批量清理并只重建一次表</p>
      */
     private void expungeIdentityObjectMapping() {
-        for (Object x; (x = rQueue.poll()) != null; ) {
-            synchronized (rQueue) {
-                rwLock.writeLock().lock();
-                try {
-                    identityObjectMapping.remove(((IdentityWeakReference) x).objectID);
-                } finally {
-                    rwLock.writeLock().unlock();
-                }
+
+        // 引用队列为空时poll()不会加锁
+        Object x = rQueue.poll();
+        if (null == x) {
+            return;
+        }
+
+        synchronized (this) {
+            for (; x != null; x = rQueue.poll()) {
+                objectIDMapping.remove(x);
             }
+            final IdentityWeakReference[] table = identityObjectTable;
+            final IdentityWeakReference[] newTable = resize(table, table.length, true);
+            identityObjectCount = countOf(newTable);
+            identityObjectTable = newTable;
         }
     }
 
+    // 重建开放寻址表，同时丢弃已被回收的引用
+    private IdentityWeakReference[] resize(final IdentityWeakReference[] table,
+                                           final int capacity,
+                                           final boolean isExpunge) {
+        final IdentityWeakReference[] newTable = new IdentityWeakReference[capacity];
+        for (final IdentityWeakReference reference : table) {
+            if (null != reference
+                    && (!isExpunge || null != reference.get())) {
+                insert(newTable, reference);
+            }
+        }
+        return newTable;
+    }
+
+    private static int countOf(final IdentityWeakReference[] table) {
+        int count = 0;
+        for (final IdentityWeakReference reference : table) {
+            if (null != reference) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void insert(final IdentityWeakReference[] table,
+                               final IdentityWeakReference reference) {
+        final int mask = table.length - 1;
+        int index = indexOf(reference.objectID, mask);
+        while (null != table[index]) {
+            index = (index + 1) & mask;
+        }
+        table[index] = reference;
+    }
+
+    private static int indexOf(final int objectID, final int mask) {
+        final int hash = objectID * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
     /**
      * 映射{@code objectID}为Java对象
      *
@@ -149,33 +187,99 @@ public class ObjectIDs {
             return null;
         }
 
-        rwLock.readLock().lock();
         try {
-            final Object object;
-            final IdentityWeakReference reference = identityObjectMapping.get(objectID);
-            if (null != reference
-                    && null != (object = reference.get())) {
-                return (T) object;
-            } else {
-                return null;
+            final IdentityWeakReference[] table = identityObjectTable;
+            final int mask = table.length - 1;
+            for (int index = indexOf(objectID, mask); ; index = (index + 1) & mask) {
+                final IdentityWeakReference reference = table[index];
+                if (null == reference) {
+                    return null;
+                }
+                if (reference.objectID == objectID) {
+                    return (T) reference.get();
+                }
             }
         } finally {
-            rwLock.readLock().unlock();
             expungeIdentityObjectMapping();
         }
 
     }
 
+    // 按对象引用判断相等的键
+    private interface IdentityKey {
+
+        Object referent();
+
+    }
+
+    private static boolean isSameReferent(final IdentityKey key, final Object o) {
+        if (key == o) {
+            return true;
+        }
+        if (!(o instanceof IdentityKey)) {
+            return false;
+        }
+        final Object referent = key.referent();
+        return null != referent && referent == ((IdentityKey) o).referent();
+    }
+
+    // 查询[object:objectID]时使用的临时键
+    private static class LookupKey implements IdentityKey {
+
+        private final Object referent;
+        private final int hash;
+
+        private LookupKey(final Object referent) {
+            this.referent = referent;
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public Object referent() {
+            return referent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return isSameReferent(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
     // 带ObjectID标记的弱对象引用
-    private class IdentityWeakReference extends WeakReference<Object> {
+    private class IdentityWeakReference extends WeakReference<Object> implements IdentityKey {
 
         // 对应的对象ID
-        private final Integer objectID;
+        private final int objectID;
+
+        // 对象被回收后依旧要能从映射表中删除，所以需要提前记下hash
+        private final int hash;
 
-        private IdentityWeakReference(final Integer objectID,
+        private IdentityWeakReference(final int objectID,
                                       final Object referent) {
             super(referent, rQueue);
             this.objectID = objectID;
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public Object referent() {
+            return get();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return isSameReferent(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
 
     }
@@ -0,0 +1,32 @@
+package com.alibaba.jvm.sandbox.core.util;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+
+import static org.apache.commons.lang3.ArrayUtils.contains;
+
+/**
+ * 事件类型工具类
+ */
+public class SandboxEventTypeUtils {
+
+    /**
+     * 是否需要跟踪BEFORE之后的调用过程
+     * <p>
+     * RETURN/THROWS以及发生在方法体内的LINE/CALL系列事件都依赖调用堆栈，
+     * 只要订阅了其中任意一种，就必须织入RETURN/THROWS探针来对齐调用堆栈；
+     * 否则只需要织入BEFORE探针，调用过程在BEFORE事件处理完后立即结束
+     * </p>
+     *
+     * @param eventTypeArray 订阅的事件类型
+     * @return TRUE:需要跟踪；FALSE：只需要BEFORE
+     */
+    public static boolean isTracingProcess(final Event.Type[] eventTypeArray) {
+        return contains(eventTypeArray, Event.Type.RETURN)
+                || contains(eventTypeArray, Event.Type.THROWS)
+                || contains(eventTypeArray, Event.Type.LINE)
+                || contains(eventTypeArray, Event.Type.CALL_BEFORE)
+                || contains(eventTypeArray, Event.Type.CALL_RETURN)
+                || contains(eventTypeArray, Event.Type.CALL_THROWS);
+    }
+
+}
@@ -6,13 +6,15 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Sandbox守护者
  * <p>
  * 用来保护sandbox的操作所产生的事件不被响应
  * </p>
+ * <p>
+ * 守护区引用计数存放在{@link SandboxThreadContext}中
+ * </p>
  *
  * @author oldmanpushcart@gamil.com
  */
@@ -20,20 +22,13 @@ public class SandboxProtector {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final ThreadLocal<AtomicInteger> isInProtectingThreadLocal = new ThreadLocal<AtomicInteger>() {
-        @Override
-        protected AtomicInteger initialValue() {
-            return new AtomicInteger(0);
-        }
-    };
-
     /**
      * 进入守护区域
      *
      * @return 守护区域当前引用计数
      */
     public int enterProtecting() {
-        final int referenceCount = isInProtectingThreadLocal.get().getAndIncrement();
+        final int referenceCount = SandboxThreadContext.current().incProtecting();
         if (logger.isDebugEnabled()) {
             logger.debug("thread:{} enter protect:{}", Thread.currentThread(), referenceCount);
         }
@@ -46,10 +41,12 @@ public class SandboxProtector {
      * @return 守护区域当前引用计数
      */
     public int exitProtecting() {
-        final int referenceCount = isInProtectingThreadLocal.get().decrementAndGet();
+        final SandboxThreadContext context = SandboxThreadContext.peek();
+        final int referenceCount = null == context
+                ? -1
+                : context.decProtecting();
         // assert referenceCount >= 0;
         if (referenceCount == 0) {
-            isInProtectingThreadLocal.remove();
             if (logger.isDebugEnabled()) {
                 logger.debug("thread:{} exit protect:{} with clean", Thread.currentThread(), referenceCount);
             }
@@ -69,12 +66,19 @@ public class SandboxProtector {
      * @return TRUE:在守护区域中；FALSE：非守护区域中
      */
     public boolean isInProtecting() {
-        // fix for #384
-        final boolean res = isInProtectingThreadLocal.get().get() > 0;
-        if(!res) {
-            isInProtectingThreadLocal.remove();
-        }
-        return res;
+        // fix for #384，这里只读取不创建上下文，不在守护区内时不会残留任何线程状态
+        return isInProtecting(SandboxThreadContext.peek());
+    }
+
+    /**
+     * 判断线程上下文是否处于守护区域中
+     * <p>事件处理时已经拿到了线程上下文，直接判断可以省掉一次ThreadLocal查找</p>
+     *
+     * @param context 线程上下文，可以为null
+     * @return TRUE:在守护区域中；FALSE：非守护区域中
+     */
+    public boolean isInProtecting(final SandboxThreadContext context) {
+        return null != context && context.isInProtecting();
     }
 
     /**
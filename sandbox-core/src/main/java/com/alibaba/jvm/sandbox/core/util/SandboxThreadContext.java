@@ -0,0 +1,271 @@
+package com.alibaba.jvm.sandbox.core.util;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Sandbox线程上下文
+ * <p>
+ * 将事件处理过程中每个线程需要的状态（守护区引用计数、各监听器的调用过程、业务类加载器）
+ * 收拢到同一个对象中，一次事件处理只需要一次ThreadLocal查找即可拿到全部状态
+ * </p>
+ * <p>
+ * 上下文中的对象均来自Sandbox的类加载器，为避免线程长期持有导致模块卸载后类加载器无法回收（#194、#384），
+ * 当线程不再处于守护区、没有进行中的调用过程且没有业务类加载器时，上下文会被立即释放
+ * </p>
+ * <p>
+ * 释放后的上下文只以弱引用的方式留在线程中，下次进入时若尚未被GC回收则直接复用，
+ * 连同其中已经结束的调用过程（及其事件对象）一起复用，稳定状态下事件处理不再产生任何对象
+ * </p>
+ */
+public class SandboxThreadContext {
+
+    private static final ThreadLocal<SandboxThreadContext> contextRef = new ThreadLocal<SandboxThreadContext>();
+
+    // 线程已释放的上下文，只有弱引用，不会阻止Sandbox的类加载器被回收
+    private static final ThreadLocal<WeakReference<SandboxThreadContext>> idleContextRef
+            = new ThreadLocal<WeakReference<SandboxThreadContext>>();
+
+    // 线程的调用ID段，不随上下文释放，否则每个调用过程都要重新领取ID段
+    // 值只是long[]，不会引用到Sandbox的类加载器
+    private static final ThreadLocal<long[]> invokeIdBlockRef = new ThreadLocal<long[]>();
+
+    // 守护区引用计数
+    private int protectingCount;
+
+    // 监听器槽位:调用过程，调用过程结束后依旧保留在槽位上以便复用
+    private Object[] processArray = new Object[8];
+
+    // 监听器槽位:调用过程是否进行中
+    private boolean[] processActiveArray = new boolean[8];
+
+    // 进行中的调用过程数量
+    private int processCount;
+
+    // 最近一次清理调用过程时监听器槽位的版本，见EventListenerHandler
+    private int listenerSlotVersion;
+
+    // 业务类加载器
+    private ClassLoader businessClassLoader;
+
+    // 线程的调用ID段，第一次分配调用ID时才从invokeIdBlockRef中取出
+    private long[] invokeIdBlock;
+
+    // 指向自己的弱引用，释放时放入idleContextRef，避免每次释放都创建一个弱引用
+    private final WeakReference<SandboxThreadContext> selfRef = new WeakReference<SandboxThreadContext>(this);
+
+    private SandboxThreadContext() {
+    }
+
+    /**
+     * 获取当前线程的上下文，若不存在则创建
+     *
+     * @return 当前线程的上下文
+     */
+    public static SandboxThreadContext current() {
+        final SandboxThreadContext context = contextRef.get();
+        if (null != context) {
+            return context;
+        }
+        final WeakReference<SandboxThreadContext> idleRef = idleContextRef.get();
+        final SandboxThreadContext idleContext = null == idleRef
+                ? null
+                : idleRef.get();
+        if (null != idleContext) {
+            contextRef.set(idleContext);
+            return idleContext;
+        }
+        final SandboxThreadContext newContext = new SandboxThreadContext();
+        contextRef.set(newContext);
+        return newContext;
+    }
+
+    /**
+     * 获取当前线程的上下文，不存在时不会创建
+     *
+     * @return 当前线程的上下文，若不存在则返回null
+     */
+    public static SandboxThreadContext peek() {
+        return contextRef.get();
+    }
+
+    // 上下文中已没有任何状态时释放掉，这里只清空值而不移除ThreadLocal条目，避免反复创建条目
+    private void releaseIfIdle() {
+        if (protectingCount <= 0
+                && processCount <= 0
+                && null == businessClassLoader
+                && contextRef.get() == this) {
+            contextRef.set(null);
+            if (idleContextRef.get() != selfRef) {
+                idleContextRef.set(selfRef);
+            }
+        }
+    }
+
+    /**
+     * 守护区引用计数加一
+     *
+     * @return 加一之前的引用计数
+     */
+    public int incProtecting() {
+        return protectingCount++;
+    }
+
+    /**
+     * 守护区引用计数减一
+     *
+     * @return 减一之后的引用计数
+     */
+    public int decProtecting() {
+        final int referenceCount = --protectingCount;
+        if (referenceCount <= 0) {
+            protectingCount = 0;
+            releaseIfIdle();
+        }
+        return referenceCount;
+    }
+
+    /**
+     * 是否处于守护区中
+     *
+     * @return TRUE:在守护区域中；FALSE：非守护区域中
+     */
+    public boolean isInProtecting() {
+        return protectingCount > 0;
+    }
+
+    /**
+     * 获取监听器槽位上的调用过程，调用过程可能已经结束，等待复用
+     *
+     * @param listenerSlot 监听器槽位
+     * @return 调用过程，若不存在则返回null
+     */
+    public Object getProcess(final int listenerSlot) {
+        return listenerSlot < processArray.length
+                ? processArray[listenerSlot]
+                : null;
+    }
+
+    /**
+     * 获取调用过程数组的容量，槽位小于容量时才可能存在调用过程
+     *
+     * @return 调用过程数组的容量
+     */
+    public int getProcessCapacity() {
+        return processArray.length;
+    }
+
+    /**
+     * 放置监听器槽位上的调用过程，放置的调用过程尚未开始，见{@link #activateProcess(int, Object)}
+     *
+     * @param listenerSlot 监听器槽位
+     * @param process      调用过程，为null时清空槽位
+     */
+    public void setProcess(final int listenerSlot, final Object process) {
+        if (listenerSlot >= processArray.length) {
+            final int newLength = Math.max(listenerSlot + 1, processArray.length << 1);
+            final Object[] newProcessArray = new Object[newLength];
+            final boolean[] newProcessActiveArray = new boolean[newLength];
+            System.arraycopy(processArray, 0, newProcessArray, 0, processArray.length);
+            System.arraycopy(processActiveArray, 0, newProcessActiveArray, 0, processActiveArray.length);
+            processArray = newProcessArray;
+            processActiveArray = newProcessActiveArray;
+        }
+        if (processActiveArray[listenerSlot]) {
+            processActiveArray[listenerSlot] = false;
+            processCount--;
+        }
+        processArray[listenerSlot] = process;
+    }
+
+    /**
+     * 标记监听器槽位上的调用过程开始，只有槽位上仍是该调用过程时才会标记
+     * <p>有进行中的调用过程时上下文不会被释放</p>
+     *
+     * @param listenerSlot 监听器槽位
+     * @param process      调用过程
+     */
+    public void activateProcess(final int listenerSlot, final Object process) {
+        if (null != process
+                && listenerSlot < processArray.length
+                && process == processArray[listenerSlot]
+                && !processActiveArray[listenerSlot]) {
+            processActiveArray[listenerSlot] = true;
+            processCount++;
+        }
+    }
+
+    /**
+     * 标记监听器槽位上的调用过程结束，只有槽位上仍是该调用过程时才会标记
+     * <p>调用过程依旧保留在槽位上，下次调用时复用</p>
+     *
+     * @param listenerSlot 监听器槽位
+     * @param process      调用过程
+     */
+    public void deactivateProcess(final int listenerSlot, final Object process) {
+        if (null != process
+                && listenerSlot < processArray.length
+                && process == processArray[listenerSlot]
+                && processActiveArray[listenerSlot]) {
+            processActiveArray[listenerSlot] = false;
+            processCount--;
+            releaseIfIdle();
+        }
+    }
+
+    /**
+     * 获取最近一次清理调用过程时监听器槽位的版本
+     *
+     * @return 监听器槽位的版本
+     */
+    public int getListenerSlotVersion() {
+        return listenerSlotVersion;
+    }
+
+    /**
+     * 记录最近一次清理调用过程时监听器槽位的版本
+     *
+     * @param listenerSlotVersion 监听器槽位的版本
+     */
+    public void setListenerSlotVersion(final int listenerSlotVersion) {
+        this.listenerSlotVersion = listenerSlotVersion;
+    }
+
+    /**
+     * 获取业务类加载器
+     *
+     * @return 业务类加载器
+     */
+    public ClassLoader getBusinessClassLoader() {
+        return businessClassLoader;
+    }
+
+    /**
+     * 放置业务类加载器
+     *
+     * @param businessClassLoader 业务类加载器
+     */
+    public void setBusinessClassLoader(final ClassLoader businessClassLoader) {
+        this.businessClassLoader = businessClassLoader;
+        if (null == businessClassLoader) {
+            releaseIfIdle();
+        }
+    }
+
+    /**
+     * 获取当前线程的调用ID段{@code [next, limit)}
+     * <p>一个上下文只需要查找一次，见{@link InvokeIdSequencer}</p>
+     *
+     * @return 当前线程的调用ID段
+     */
+    public long[] getInvokeIdBlock() {
+        if (null != invokeIdBlock) {
+            return invokeIdBlock;
+        }
+        long[] block = invokeIdBlockRef.get();
+        if (null == block) {
+            invokeIdBlockRef.set(block = new long[2]);
+        }
+        return invokeIdBlock = block;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.alibaba.jvm.sandbox.core.util.collection;
+
+import java.util.NoSuchElementException;
+
+import static java.lang.System.arraycopy;
+
+/**
+ * 线程不安全不固定栈深的long堆栈实现
+ * <p>
+ * 与{@link ThreadUnsafeGaStack}相同，但元素直接以long存放，压栈出栈不会产生装箱拆箱
+ * </p>
+ */
+public class ThreadUnsafeLongGaStack {
+
+    private final static int EMPTY_INDEX = -1;
+    private final static int DEFAULT_STACK_DEEP = 12;
+
+    private long[] elementArray;
+    private int current = EMPTY_INDEX;
+
+    public ThreadUnsafeLongGaStack() {
+        this(DEFAULT_STACK_DEEP);
+    }
+
+    public ThreadUnsafeLongGaStack(int stackSize) {
+        this.elementArray = new long[stackSize];
+    }
+
+
+    /**
+     * 自动扩容
+     * 当前堆栈最大深度不满足期望时会自动扩容(2倍扩容)
+     *
+     * @param expectDeep 期望堆栈深度
+     */
+    private void ensureCapacityInternal(int expectDeep) {
+        final int currentStackSize = elementArray.length;
+        if (elementArray.length <= expectDeep) {
+            final long[] newElementArray = new long[currentStackSize * 2];
+            arraycopy(elementArray, 0, newElementArray, 0, currentStackSize);
+            this.elementArray = newElementArray;
+        }
+    }
+
+    private void checkForPopOrPeek() {
+        // stack is empty
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public long pop() {
+        checkForPopOrPeek();
+        final long e = elementArray[current];
+        elementArray[current] = 0;
+        current--;
+        return e;
+    }
+
+    public void push(long e) {
+        ensureCapacityInternal(current + 1);
+        elementArray[++current] = e;
+    }
+
+    public long peek() {
+        checkForPopOrPeek();
+        return elementArray[current];
+    }
+
+    public boolean isEmpty() {
+        return current == EMPTY_INDEX;
+    }
+
+    public boolean isLast() {
+        return current == 0;
+    }
+
+    public long peekLast() {
+        checkForPopOrPeek();
+        return elementArray[0];
+    }
+
+    public int deep() {
+        return current + 1;
+    }
+
+    public long[] getElementArray() {
+        return elementArray;
+    }
+
+    public int getCurrent() {
+        return current;
+    }
+}
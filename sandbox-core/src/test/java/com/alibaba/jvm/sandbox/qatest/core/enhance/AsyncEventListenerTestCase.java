@@ -0,0 +1,195 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.alibaba.jvm.sandbox.api.ProcessController.returnImmediately;
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static com.alibaba.jvm.sandbox.qatest.core.util.CalculatorHelper.*;
+import static org.junit.Assert.*;
+
+/**
+ * 异步通知：事件监听器运行在容器的通知线程中
+ */
+public class AsyncEventListenerTestCase {
+
+    // 记录事件类型和通知线程的监听器
+    private static class RecordingEventListener implements EventListener {
+
+        private final BlockingQueue<Event.Type> eventTypes = new LinkedBlockingQueue<Event.Type>();
+        private final BlockingQueue<Thread> threads = new LinkedBlockingQueue<Thread>();
+
+        @Override
+        public void onEvent(Event event) throws Throwable {
+            threads.add(Thread.currentThread());
+            eventTypes.add(event.type);
+        }
+
+        // 等待指定数量的事件
+        List<Event.Type> waitingEventTypes(final int count) throws InterruptedException {
+            final List<Event.Type> result = new ArrayList<Event.Type>();
+            while (result.size() < count) {
+                final Event.Type type = eventTypes.poll(10, TimeUnit.SECONDS);
+                assertNotNull("waiting async event timeout.", type);
+                result.add(type);
+            }
+            return result;
+        }
+
+    }
+
+    private static void frozen(final EventListener listener) {
+        EventListenerHandler.getSingleton().frozen(ObjectIDs.instance.identity(listener));
+    }
+
+    @Test
+    public void cal$pow$async() throws Throwable {
+        final RecordingEventListener listener = new RecordingEventListener();
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_POW_FILTER,
+                                listener,
+                                BEFORE, RETURN, THROWS
+                        ).withOption(new EventWatchOption().withAsync())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        try {
+            assertEquals(4, pow(newInstance(calculatorClass), 2, 2));
+            assertEquals(
+                    Arrays.asList(BEFORE, BEFORE, BEFORE, RETURN, RETURN, RETURN),
+                    listener.waitingEventTypes(6)
+            );
+            for (final Thread thread : listener.threads) {
+                assertTrue(thread != Thread.currentThread());
+                assertTrue(thread.getName().startsWith("sandbox-async-listener-"));
+            }
+        } finally {
+            frozen(listener);
+        }
+    }
+
+    @Test
+    public void cal$sum$async$processControlIgnored() throws Throwable {
+        final RecordingEventListener listener = new RecordingEventListener() {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+                returnImmediately(100);
+            }
+        };
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener,
+                                BEFORE, RETURN, THROWS
+                        ).withOption(new EventWatchOption().withAsync())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        try {
+            assertEquals(30, sum(newInstance(calculatorClass), 10, 20));
+            assertEquals(
+                    Arrays.asList(BEFORE, RETURN),
+                    listener.waitingEventTypes(2)
+            );
+        } finally {
+            frozen(listener);
+        }
+    }
+
+    @Test
+    public void cal$sum$async$wakeUpAfterIdle() throws Throwable {
+        final RecordingEventListener listener = new RecordingEventListener();
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener,
+                                BEFORE, RETURN, THROWS
+                        ).withOption(new EventWatchOption().withAsync())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        try {
+            final Object objectOfCal = newInstance(calculatorClass);
+            for (int round = 0; round < 3; round++) {
+
+                // 空闲足够久，通知线程的等待时长已经退避到上限
+                Thread.sleep(350);
+                final long beginNanos = System.nanoTime();
+                assertEquals(30, sum(objectOfCal, 10, 20));
+                assertEquals(Arrays.asList(BEFORE, RETURN), listener.waitingEventTypes(2));
+
+                // 写入事件时唤醒通知线程，不需要等到退避结束
+                final long costMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beginNanos);
+                assertTrue("cost=" + costMillis + "ms", costMillis < 50);
+            }
+        } finally {
+            frozen(listener);
+        }
+    }
+
+    @Test
+    public void cal$sum$async$dropOnFull() throws Throwable {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final RecordingEventListener listener = new RecordingEventListener() {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+                latch.await();
+            }
+        };
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener,
+                                BEFORE, RETURN, THROWS
+                        ).withOption(new EventWatchOption().withAsync(2))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        final int listenerId = ObjectIDs.instance.identity(listener);
+        try {
+            final Object objectOfCal = newInstance(calculatorClass);
+            for (int index = 0; index < 10; index++) {
+                assertEquals(30, sum(objectOfCal, 10, 20));
+            }
+
+            // 通知线程阻塞在第一个事件上，缓冲区中最多再容纳2个事件
+            final long dropped = EventListenerHandler.getSingleton().getAsyncDropCount(listenerId);
+            assertTrue("dropped=" + dropped, dropped >= 17);
+            latch.countDown();
+            listener.waitingEventTypes((int) (20 - dropped));
+        } finally {
+            latch.countDown();
+            frozen(listener);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.core.enhance.weaver.BehaviorTable;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * 行为表：ClassLoader被回收后清理对应的行为
+ */
+public class BehaviorTableTestCase {
+
+    // 用一次性的ClassLoader登记行为，返回后不再持有ClassLoader
+    private static int registerUnloadable(final BehaviorTable behaviorTable) {
+        final int loaderObjectID = ObjectIDs.instance.identity(new URLClassLoader(new URL[0], null));
+        return behaviorTable.register(loaderObjectID, "com.example.Unloadable", "sum", "(II)I");
+    }
+
+    @Test
+    public void behavior$expunged$loaderCollected() throws Exception {
+        final BehaviorTable behaviorTable = new BehaviorTable();
+        final int unloadableBehaviorId = registerUnloadable(behaviorTable);
+        final int loaderObjectID = ObjectIDs.instance.identity(getClass().getClassLoader());
+        final int behaviorId = behaviorTable.register(loaderObjectID, "com.example.Alive", "sum", "(II)I");
+        assertNotNull(behaviorTable.get(unloadableBehaviorId));
+
+        for (int i = 0; i < 50 && null != behaviorTable.get(unloadableBehaviorId).getJavaClassLoader(); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        // 扩容时清理掉ClassLoader已经被回收的行为，存活的行为不受影响
+        for (int index = 0; index < 1024; index++) {
+            behaviorTable.register(loaderObjectID, "com.example.Alive", "method" + index, "()V");
+        }
+        assertNull(behaviorTable.get(unloadableBehaviorId));
+        assertNotNull(behaviorTable.get(behaviorId));
+        assertEquals(behaviorId, behaviorTable.register(loaderObjectID, "com.example.Alive", "sum", "(II)I"));
+    }
+
+}
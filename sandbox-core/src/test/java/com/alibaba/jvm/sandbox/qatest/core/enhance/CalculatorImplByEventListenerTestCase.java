@@ -1,7 +1,16 @@
 package com.alibaba.jvm.sandbox.qatest.core.enhance;
 
 import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
+import com.alibaba.jvm.sandbox.api.event.BehaviorInfo;
 import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.CallFilter;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.api.listener.ext.Sampler;
+import com.alibaba.jvm.sandbox.core.classloader.BusinessClassLoaderHolder;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.BehaviorTable;
+import com.alibaba.jvm.sandbox.core.util.SandboxProtector;
+import com.alibaba.jvm.sandbox.core.util.SandboxThreadContext;
 import com.alibaba.jvm.sandbox.qatest.core.enhance.listener.LineNumTracingEventListener;
 import com.alibaba.jvm.sandbox.qatest.core.enhance.listener.TracingEventListener;
 import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator;
@@ -9,6 +18,8 @@ import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
+
 import static com.alibaba.jvm.sandbox.api.ProcessController.returnImmediately;
 import static com.alibaba.jvm.sandbox.api.ProcessController.throwsImmediately;
 import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
@@ -17,6 +28,9 @@ import static com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator.Test
 import static com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator.TestCase.SUM$EXCEPTION;
 import static com.alibaba.jvm.sandbox.qatest.core.util.CalculatorHelper.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class CalculatorImplByEventListenerTestCase implements ICalculatorTestCase {
 
@@ -48,6 +62,43 @@ public class CalculatorImplByEventListenerTestCase implements ICalculatorTestCas
 
     }
 
+    @Test
+    public void cal$sum$before$behaviorInfo() throws Throwable {
+
+        final BehaviorInfo[] behaviorInfoRef = new BehaviorInfo[1];
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        CALCULATOR_SUM_FILTER,
+                        new EventListener() {
+                            @Override
+                            public void onEvent(Event event) {
+                                behaviorInfoRef[0] = ((BeforeEvent) event).behaviorInfo;
+                            }
+                        },
+                        BEFORE
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(30, sum(newInstance(calculatorClass), 10, 20));
+
+        final BehaviorInfo behaviorInfo = behaviorInfoRef[0];
+        assertNotNull(behaviorInfo);
+        assertEquals(CALCULATOR_CLASS_NAME, behaviorInfo.getJavaClassName());
+        assertEquals("sum", behaviorInfo.getJavaMethodName());
+        assertEquals("([I)I", behaviorInfo.getJavaMethodDesc());
+        assertSame(behaviorInfo, BehaviorTable.getSingleton().get(behaviorInfo.getId()));
+
+        final Method method = (Method) behaviorInfo.getJavaBehavior();
+        assertSame(calculatorClass, method.getDeclaringClass());
+        assertEquals("sum", method.getName());
+        assertSame(method, behaviorInfo.getJavaBehavior());
+        assertSame(behaviorInfo.getBehavior(), behaviorInfo.getBehavior());
+        assertSame(method, behaviorInfo.getBehavior().getTarget());
+
+    }
+
     @Test
     @Override
     public void cal$sum$line() throws Throwable {
@@ -76,6 +127,96 @@ public class CalculatorImplByEventListenerTestCase implements ICalculatorTestCas
         );
     }
 
+    @Test
+    public void cal$sum$line$withLines() throws Throwable {
+
+        final LineNumTracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener = new LineNumTracingEventListener(),
+                                LINE
+                        ).withOption(new EventWatchOption().withLines(93, 100).withLineRange(96, 97))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(30, sum(newInstance(calculatorClass), 10,20));
+        listener.assertLIneTracing(
+                93,
+                96,
+                97,
+                97,
+                97,
+                100
+        );
+    }
+
+    @Test
+    public void cal$sum$line$withLineFirstHitOnly() throws Throwable {
+
+        final LineNumTracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener = new LineNumTracingEventListener(),
+                                LINE
+                        ).withOption(new EventWatchOption().withLineFirstHitOnly())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        final Object objectOfCal = newInstance(calculatorClass);
+        assertEquals(30, sum(objectOfCal, 10,20));
+        assertEquals(30, sum(objectOfCal, 10,20));
+        listener.assertLIneTracing(
+                93,
+                96,
+                97,
+                98,
+                100
+        );
+    }
+
+    @Test
+    public void cal$sum$line$withLineFirstHitOnly$notDeliveredFirst() throws Throwable {
+
+        final LineNumTracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener = new LineNumTracingEventListener(),
+                                LINE
+                        ).withOption(new EventWatchOption().withLineFirstHitOnly())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        // 第一次执行在守护区中，事件没有通知到监听器，探针不能被标记
+        final Object objectOfCal = newInstance(calculatorClass);
+        SandboxProtector.instance.enterProtecting();
+        try {
+            assertEquals(30, sum(objectOfCal, 10,20));
+        } finally {
+            SandboxProtector.instance.exitProtecting();
+        }
+        assertEquals(30, sum(objectOfCal, 10,20));
+        assertEquals(30, sum(objectOfCal, 10,20));
+        listener.assertLIneTracing(
+                93,
+                96,
+                97,
+                98,
+                100
+        );
+    }
+
     @Test
     @Override
     public void cal$sum$call() throws Throwable {
@@ -101,6 +242,64 @@ public class CalculatorImplByEventListenerTestCase implements ICalculatorTestCas
 
     }
 
+    @Test
+    public void cal$sum$call$withCallFilter$matched() throws Throwable {
+
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener = new TracingEventListener(),
+                                CALL_BEFORE, CALL_RETURN, CALL_THROWS
+                        ).withOption(new EventWatchOption().withCallFilter(new CallFilter() {
+                            @Override
+                            public boolean doCallFilter(String javaClassName, String javaMethodName) {
+                                return CALCULATOR_CLASS_NAME.equals(javaClassName)
+                                        && "add".equals(javaMethodName);
+                            }
+                        }))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(30, sum(newInstance(calculatorClass), 10,20));
+        listener.assertEventTracing(
+                CALL_BEFORE,
+                CALL_RETURN,
+                CALL_BEFORE,
+                CALL_RETURN
+        );
+
+    }
+
+    @Test
+    public void cal$sum$call$withCallFilter$unmatched() throws Throwable {
+
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener = new TracingEventListener(),
+                                CALL_BEFORE, CALL_RETURN, CALL_THROWS
+                        ).withOption(new EventWatchOption().withCallFilter(new CallFilter() {
+                            @Override
+                            public boolean doCallFilter(String javaClassName, String javaMethodName) {
+                                return "pow".equals(javaMethodName);
+                            }
+                        }))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(30, sum(newInstance(calculatorClass), 10,20));
+        listener.assertEventTracing();
+
+    }
+
     @Test
     @Override
     public void cal$sum$before$changeParameters() throws Throwable {
@@ -993,4 +1192,207 @@ public class CalculatorImplByEventListenerTestCase implements ICalculatorTestCas
             RETURN
         );
     }
+
+    /**
+     * 只订阅BEFORE事件时不织入RETURN/THROWS探针，每次调用都是一个独立的调用过程
+     */
+    @Test
+    public void cal$sum$beforeOnly() throws Throwable {
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        CALCULATOR_SUM_FILTER,
+                        listener = new TracingEventListener(){
+                            @Override
+                            public void onEvent(Event event) throws Throwable {
+                                super.onEvent(event);
+                                final BeforeEvent beforeEvent = (BeforeEvent) event;
+                                assertEquals(beforeEvent.processId, beforeEvent.invokeId);
+                            }
+                        },
+                        BEFORE
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        final Object objectOfCal = newInstance(calculatorClass);
+        assertEquals(30, sum(objectOfCal, 10,20));
+        assertEquals(70, sum(objectOfCal, 30,40));
+        listener.assertEventTracing(
+                BEFORE,
+                BEFORE
+        );
+    }
+
+    /**
+     * 只订阅BEFORE事件时，事件处理完后业务类加载器需要被移除，线程上下文随之释放
+     */
+    @Test
+    public void cal$sum$beforeOnly$releaseContext() throws Throwable {
+        final ClassLoader[] businessClassLoaders = new ClassLoader[1];
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        CALCULATOR_SUM_FILTER,
+                        new EventListener() {
+                            @Override
+                            public void onEvent(Event event) {
+                                businessClassLoaders[0] = BusinessClassLoaderHolder.getBusinessClassLoader();
+                            }
+                        },
+                        BEFORE
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        final Object objectOfCal = newInstance(calculatorClass);
+        assertEquals(30, sum(objectOfCal, 10,20));
+        assertNotNull(businessClassLoaders[0]);
+        assertNull(BusinessClassLoaderHolder.getBusinessClassLoader());
+        assertNull(SandboxThreadContext.peek());
+    }
+
+    @Test
+    public void cal$sum$before$withoutParameters() throws Throwable {
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_SUM_FILTER,
+                                listener = new TracingEventListener(){
+                                    @Override
+                                    public void onEvent(Event event) throws Throwable {
+                                        super.onEvent(event);
+                                        assertEquals(0, ((BeforeEvent) event).argumentArray.length);
+                                    }
+                                },
+                                BEFORE
+                        ).withOption(new EventWatchOption().withoutParameters())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(30, sum(newInstance(calculatorClass), 10,20));
+        listener.assertEventTracing(
+                BEFORE
+        );
+    }
+
+    @Test
+    public void cal$pow$before$withParameterIndexes() throws Throwable {
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_POW_FILTER,
+                                listener = new TracingEventListener(){
+                                    @Override
+                                    public void onEvent(Event event) throws Throwable {
+                                        super.onEvent(event);
+                                        final BeforeEvent beforeEvent = (BeforeEvent) event;
+                                        assertEquals(2, beforeEvent.argumentArray.length);
+                                        assertNull(beforeEvent.argumentArray[0]);
+                                        assertNotNull(beforeEvent.argumentArray[1]);
+
+                                        // 未采集的参数不会被写回
+                                        beforeEvent.changeParameter(0, 3);
+                                    }
+                                },
+                                BEFORE
+                        ).withOption(new EventWatchOption().withParameterIndexes(1))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(8, pow(newInstance(calculatorClass), 2, 3));
+    }
+
+    @Test
+    public void cal$pow$before$withReadOnlyParameters() throws Throwable {
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_POW_FILTER,
+                                listener = new TracingEventListener(){
+                                    @Override
+                                    public void onEvent(Event event) throws Throwable {
+                                        super.onEvent(event);
+                                        final BeforeEvent beforeEvent = (BeforeEvent) event;
+                                        assertEquals(2, beforeEvent.argumentArray[0]);
+                                        beforeEvent.changeParameter(0, 3);
+                                    }
+                                },
+                                BEFORE
+                        ).withOption(new EventWatchOption().withReadOnlyParameters())
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(8, pow(newInstance(calculatorClass), 2, 3));
+    }
+
+    /**
+     * 只在调用过程的第一个BEFORE事件时采样，未被采样的调用过程中嵌套的调用也不会产生事件
+     */
+    @Test
+    public void cal$pow$around$withSampler() throws Throwable {
+        final TracingEventListener listener;
+        final int[] samplingTimes = new int[1];
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_POW_FILTER,
+                                listener = new TracingEventListener(),
+                                BEFORE, RETURN, THROWS
+                        ).withOption(new EventWatchOption().withSampler(new Sampler() {
+                            @Override
+                            public boolean isSampled() {
+                                // 只采样第二次调用过程
+                                return ++samplingTimes[0] == 2;
+                            }
+                        }))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        final Object objectOfCal = newInstance(calculatorClass);
+        assertEquals(4, pow(objectOfCal, 2, 2));
+        listener.assertEventTracing();
+
+        assertEquals(4, pow(objectOfCal, 2, 2));
+        listener.assertEventTracing(
+                BEFORE, BEFORE, BEFORE,
+                RETURN, RETURN, RETURN
+        );
+        assertEquals(2, samplingTimes[0]);
+    }
+
+    /**
+     * 被忽略的调用过程中，嵌套调用的返回不能提前结束整个调用过程
+     */
+    @Test
+    public void cal$pow$around$withSampling$never() throws Throwable {
+        final TracingEventListener listener;
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(
+                                CALCULATOR_POW_FILTER,
+                                listener = new TracingEventListener(),
+                                BEFORE, RETURN, THROWS
+                        ).withOption(new EventWatchOption().withSampling(0))
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(8, pow(newInstance(calculatorClass), 2, 3));
+        listener.assertEventTracing();
+    }
+
 }
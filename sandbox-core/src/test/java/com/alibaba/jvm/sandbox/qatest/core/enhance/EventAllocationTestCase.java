@@ -0,0 +1,210 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.ProcessControlException;
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.filter.NameRegexFilter;
+import com.alibaba.jvm.sandbox.api.filter.Filter;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Counter;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static com.alibaba.jvm.sandbox.api.ProcessController.returnImmediately;
+import static com.alibaba.jvm.sandbox.api.ProcessController.throwsImmediately;
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 事件分发过程的内存分配回归测试
+ * <p>
+ * 通过{@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}度量稳定状态下每次调用的分配字节数，
+ * 被增强的方法本身不产生对象，所以度量到的分配全部来自增强代码和事件分发过程
+ * </p>
+ */
+public class EventAllocationTestCase {
+
+    // 预热次数，让调用过程、事件对象和线程上下文都完成初始化
+    private static final int WARM_UP_TIMES = 20000;
+
+    // 度量次数
+    private static final int MEASURE_TIMES = 100000;
+
+    // 度量轮数，取分配最少的一轮，排除掉类加载、JIT编译等一次性的分配
+    private static final int MEASURE_ROUNDS = 3;
+
+    // 一轮度量允许的分配字节数，只容许零星的分配，每次调用哪怕只分配一个对象也会远远超出
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    private static final Filter COUNTER_RUN_FILTER = new NameRegexFilter(
+            "^com\\.alibaba\\.jvm\\.sandbox\\.qatest\\.core\\.enhance\\.target\\.Counter$",
+            "^run$"
+    );
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    @BeforeClass
+    public static void initThreadMXBean() {
+        final java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(mxBean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) mxBean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    // 什么都不做的事件监听器
+    private static class NoopEventListener implements EventListener {
+
+        @Override
+        public void onEvent(Event event) {
+        }
+
+    }
+
+    // 在BEFORE事件中改变流程的事件监听器，每次抛出同一个流程控制异常，监听器本身不产生对象
+    private static class ImmediatelyEventListener implements EventListener {
+
+        private final ProcessControlException pce;
+
+        ImmediatelyEventListener(final ProcessControlException pce) {
+            this.pce = pce;
+        }
+
+        @Override
+        public void onEvent(Event event) throws Throwable {
+            if (event.type == BEFORE) {
+                throw pce;
+            }
+        }
+
+    }
+
+    private static ProcessControlException newReturnImmediately() {
+        try {
+            returnImmediately(null);
+            throw new IllegalStateException();
+        } catch (ProcessControlException pce) {
+            return pce;
+        }
+    }
+
+    private static ProcessControlException newThrowsImmediately() {
+        try {
+            throwsImmediately(new RuntimeException("immediately"));
+            throw new IllegalStateException();
+        } catch (ProcessControlException pce) {
+            return pce;
+        }
+    }
+
+    private static long allocatedBytes(final Runnable counter, final int times) {
+        final long threadId = Thread.currentThread().getId();
+        final long begin = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int index = 0; index < times; index++) {
+            try {
+                counter.run();
+            } catch (RuntimeException cause) {
+                // ignore
+            }
+        }
+        return threadMXBean.getThreadAllocatedBytes(threadId) - begin;
+    }
+
+    private static void assertZeroAllocation(final boolean isThrows,
+                                             final Event.Type... eventTypes) throws Throwable {
+        assertZeroAllocation(
+                isThrows,
+                new JvmHelper.Transformer(COUNTER_RUN_FILTER, new NoopEventListener(), eventTypes)
+                        .withOption(new EventWatchOption().withoutParameters())
+        );
+    }
+
+    private static void assertZeroAllocation(final boolean isThrows,
+                                             final JvmHelper.Transformer transformer) throws Throwable {
+        final Runnable counter = (Runnable) JvmHelper
+                .createJvm()
+                .defineClass(Counter.class, transformer)
+                .loadClass(Counter.class.getName())
+                .getConstructor(boolean.class)
+                .newInstance(isThrows);
+
+        allocatedBytes(counter, WARM_UP_TIMES);
+
+        // 读取已分配字节数的方法本身也可能产生少量分配，这里扣除掉空跑时的基线
+        final long baseline = allocatedBytes(counter, 0);
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURE_ROUNDS && allocated >= MAX_ALLOCATED_BYTES; round++) {
+            allocated = Math.min(allocated, allocatedBytes(counter, MEASURE_TIMES) - baseline);
+        }
+        assertTrue(
+                String.format("allocated %d bytes in %d calls", allocated, MEASURE_TIMES),
+                allocated < MAX_ALLOCATED_BYTES
+        );
+    }
+
+    @Test
+    public void counter$run$before() throws Throwable {
+        assertZeroAllocation(false, BEFORE);
+    }
+
+    @Test
+    public void counter$run$around() throws Throwable {
+        assertZeroAllocation(false, BEFORE, RETURN, THROWS);
+    }
+
+    @Test
+    public void counter$run$throws() throws Throwable {
+        assertZeroAllocation(true, BEFORE, RETURN, THROWS);
+    }
+
+    @Test
+    public void counter$run$line() throws Throwable {
+        assertZeroAllocation(false, BEFORE, RETURN, THROWS, LINE);
+    }
+
+    @Test
+    public void counter$run$call() throws Throwable {
+        assertZeroAllocation(false, BEFORE, RETURN, THROWS, CALL_BEFORE, CALL_RETURN, CALL_THROWS);
+    }
+
+    @Test
+    public void counter$run$returnImmediately() throws Throwable {
+        assertZeroAllocation(
+                false,
+                new JvmHelper.Transformer(
+                        COUNTER_RUN_FILTER,
+                        new ImmediatelyEventListener(newReturnImmediately()),
+                        BEFORE, RETURN, THROWS, IMMEDIATELY_RETURN, IMMEDIATELY_THROWS
+                ).withOption(new EventWatchOption().withoutParameters())
+        );
+    }
+
+    @Test
+    public void counter$run$throwsImmediately() throws Throwable {
+        assertZeroAllocation(
+                false,
+                new JvmHelper.Transformer(
+                        COUNTER_RUN_FILTER,
+                        new ImmediatelyEventListener(newThrowsImmediately()),
+                        BEFORE, RETURN, THROWS, IMMEDIATELY_RETURN, IMMEDIATELY_THROWS
+                ).withOption(new EventWatchOption().withoutParameters())
+        );
+    }
+
+    @Test
+    public void counter$run$fused() throws Throwable {
+        assertZeroAllocation(
+                true,
+                new JvmHelper.FusedTransformer(
+                        COUNTER_RUN_FILTER,
+                        new EventListener[]{new NoopEventListener(), new NoopEventListener()},
+                        BEFORE, RETURN, THROWS, LINE
+                )
+        );
+    }
+
+}
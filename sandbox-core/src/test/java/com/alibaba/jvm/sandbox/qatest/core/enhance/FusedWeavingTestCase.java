@@ -0,0 +1,266 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.event.ReturnEvent;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.CallFilter;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
+import com.alibaba.jvm.sandbox.core.manager.impl.SandboxFusedClassFileTransformer;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.alibaba.jvm.sandbox.api.ProcessController.returnImmediately;
+import static com.alibaba.jvm.sandbox.api.ProcessController.throwsImmediately;
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator.ERROR_EXCEPTION_MESSAGE;
+import static com.alibaba.jvm.sandbox.qatest.core.util.CalculatorHelper.*;
+import static org.junit.Assert.*;
+
+/**
+ * 合并织入：一个方法只织入一套探针，由监听器组分发给所有的监听器
+ */
+public class FusedWeavingTestCase {
+
+    // 记录事件分发顺序的监听器
+    private static class RecordingEventListener implements EventListener {
+
+        private final String name;
+        private final List<String> records;
+
+        RecordingEventListener(final String name, final List<String> records) {
+            this.name = name;
+            this.records = records;
+        }
+
+        @Override
+        public void onEvent(Event event) throws Throwable {
+            records.add(name + ":" + event.type);
+        }
+
+    }
+
+    private static void checkEventProcessor(final EventListener... listeners) {
+        for (final EventListener listener : listeners) {
+            EventListenerHandler.getSingleton().checkEventProcessor(ObjectIDs.instance.identity(listener));
+        }
+    }
+
+    @Test
+    public void cal$sum$fused$around() throws Throwable {
+        final List<String> records = new ArrayList<String>();
+        final EventListener a = new RecordingEventListener("a", records);
+        final EventListener b = new RecordingEventListener("b", records);
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.FusedTransformer(
+                                CALCULATOR_SUM_FILTER,
+                                new EventListener[]{a, b},
+                                BEFORE, RETURN, THROWS
+                        )
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(30, sum(newInstance(calculatorClass), 10, 20));
+        assertEquals(
+                Arrays.asList("a:BEFORE", "b:BEFORE", "b:RETURN", "a:RETURN"),
+                records
+        );
+        checkEventProcessor(a, b);
+    }
+
+    @Test
+    public void cal$sum$fused$before$returnImmediately() throws Throwable {
+        final List<String> records = new ArrayList<String>();
+        final List<Object> returnObjects = new ArrayList<Object>();
+        final EventListener a = new RecordingEventListener("a", records) {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+                if (event instanceof ReturnEvent) {
+                    returnObjects.add(((ReturnEvent) event).object);
+                }
+            }
+        };
+        final EventListener b = new RecordingEventListener("b", records) {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+                if (event.type == BEFORE) {
+                    returnImmediately(100);
+                }
+            }
+        };
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.FusedTransformer(
+                                CALCULATOR_SUM_FILTER,
+                                new EventListener[]{a, b},
+                                BEFORE, RETURN, THROWS
+                        )
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(100, sum(newInstance(calculatorClass), 10, 20));
+        assertEquals(
+                Arrays.asList("a:BEFORE", "b:BEFORE", "a:RETURN"),
+                records
+        );
+        assertEquals(Arrays.<Object>asList(100), returnObjects);
+        checkEventProcessor(a, b);
+    }
+
+    @Test
+    public void cal$sum$fused$return$changeReturn() throws Throwable {
+        final List<String> records = new ArrayList<String>();
+        final List<Object> returnObjects = new ArrayList<Object>();
+        final EventListener a = new RecordingEventListener("a", records) {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+                if (event instanceof ReturnEvent) {
+                    returnObjects.add(((ReturnEvent) event).object);
+                }
+            }
+        };
+        final EventListener b = new RecordingEventListener("b", records) {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+                if (event.type == RETURN) {
+                    returnImmediately(100);
+                }
+            }
+        };
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.FusedTransformer(
+                                CALCULATOR_SUM_FILTER,
+                                new EventListener[]{a, b},
+                                BEFORE, RETURN, THROWS
+                        )
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        assertEquals(100, sum(newInstance(calculatorClass), 10, 20));
+        assertEquals(
+                Arrays.asList("a:BEFORE", "b:BEFORE", "b:RETURN", "a:RETURN"),
+                records
+        );
+        assertEquals(Arrays.<Object>asList(100), returnObjects);
+        checkEventProcessor(a, b);
+    }
+
+    @Test
+    public void cal$pow$fused$before$throwsImmediately() throws Throwable {
+        final List<String> records = new ArrayList<String>();
+        final EventListener a = new RecordingEventListener("a", records);
+        final EventListener b = new RecordingEventListener("b", records) {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                super.onEvent(event);
+
+                // 在最内层的递归中立即抛出异常
+                if (event.type == BEFORE
+                        && Integer.valueOf(0).equals(((BeforeEvent) event).argumentArray[1])) {
+                    throwsImmediately(new RuntimeException(ERROR_EXCEPTION_MESSAGE));
+                }
+            }
+        };
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.FusedTransformer(
+                                CALCULATOR_POW_FILTER,
+                                new EventListener[]{a, b},
+                                BEFORE, RETURN, THROWS
+                        )
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        try {
+            pow(newInstance(calculatorClass), 2, 1);
+            fail();
+        } catch (Throwable cause) {
+            assertEquals(ERROR_EXCEPTION_MESSAGE, cause.getMessage());
+        }
+        assertEquals(
+                Arrays.asList(
+                        "a:BEFORE", "b:BEFORE",
+                        "a:BEFORE", "b:BEFORE", "a:THROWS",
+                        "b:THROWS", "a:THROWS"
+                ),
+                records
+        );
+        checkEventProcessor(a, b);
+    }
+
+    @Test
+    public void fusible$callFilter() {
+        final CallFilter callFilter = new CallFilter() {
+            @Override
+            public boolean doCallFilter(String javaClassName, String javaMethodName) {
+                return javaClassName.startsWith("com.foo.");
+            }
+        };
+
+        // 事件分发时不会按监听器各自的方法调用过滤器过滤，设置了过滤器的CALL观察需要单独织入
+        assertFalse(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{BEFORE, CALL_BEFORE, CALL_RETURN},
+                new EventWatchOption().withCallFilter(callFilter)
+        ));
+        assertTrue(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{BEFORE, CALL_BEFORE, CALL_RETURN},
+                new EventWatchOption()
+        ));
+
+        // 不观察CALL事件时方法调用过滤器不起作用
+        assertTrue(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{BEFORE, RETURN, THROWS},
+                new EventWatchOption().withCallFilter(callFilter)
+        ));
+    }
+
+    @Test
+    public void fusible$lines() {
+
+        // 事件分发时不会按监听器各自的行范围过滤，也不会按监听器分别记录行是否命中过，这些LINE观察需要单独织入
+        assertFalse(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{LINE},
+                new EventWatchOption().withLineRange(90, 100)
+        ));
+        assertFalse(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{LINE},
+                new EventWatchOption().withLines(93, 97)
+        ));
+        assertFalse(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{LINE},
+                new EventWatchOption().withLineFirstHitOnly()
+        ));
+        assertTrue(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{LINE},
+                new EventWatchOption()
+        ));
+
+        // 不观察LINE事件时行选项不起作用
+        assertTrue(SandboxFusedClassFileTransformer.isFusible(
+                new Event.Type[]{BEFORE, RETURN},
+                new EventWatchOption().withLineRange(90, 100)
+        ));
+    }
+
+}
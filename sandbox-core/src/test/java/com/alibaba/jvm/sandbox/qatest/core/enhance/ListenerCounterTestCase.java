@@ -0,0 +1,125 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.ListenerCounter;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import com.alibaba.jvm.sandbox.core.util.SandboxProtector;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Test;
+
+import static com.alibaba.jvm.sandbox.api.ProcessController.returnImmediately;
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static com.alibaba.jvm.sandbox.qatest.core.util.CalculatorHelper.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 事件监听器计数器
+ */
+public class ListenerCounterTestCase {
+
+    private static Object newCalculator(final EventListener listener) throws Throwable {
+        return newInstance(JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(CALCULATOR_POW_FILTER, listener, BEFORE, RETURN, THROWS)
+                )
+                .loadClass(CALCULATOR_CLASS_NAME)
+        );
+    }
+
+    private static ListenerCounter getCounter(final EventListener listener) {
+        return EventListenerHandler.getSingleton().getListenerCounter(ObjectIDs.instance.identity(listener));
+    }
+
+    private static void frozen(final EventListener listener) {
+        EventListenerHandler.getSingleton().frozen(ObjectIDs.instance.identity(listener));
+    }
+
+    private static long sum(final long[] histogram) {
+        long total = 0;
+        for (final long count : histogram) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Test
+    public void cal$pow$dispatched() throws Throwable {
+        final EventListener listener = new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+            }
+        };
+        final Object objectOfCal = newCalculator(listener);
+        try {
+            for (int index = 0; index < 100; index++) {
+                assertEquals(4, pow(objectOfCal, 2, 2));
+            }
+            final ListenerCounter counter = getCounter(listener);
+            assertEquals(300, counter.getDispatchedCount(BEFORE));
+            assertEquals(300, counter.getDispatchedCount(RETURN));
+            assertEquals(0, counter.getDispatchedCount(THROWS));
+            assertEquals(0, counter.getIgnoredCount(BEFORE));
+            assertEquals(0, counter.getProcessControlCount());
+            assertEquals(0, counter.getErrorCount());
+
+            // 每个线程每16个事件计时一次
+            assertEquals(600 / 16 + 1, sum(counter.getNanosHistogram()));
+        } finally {
+            frozen(listener);
+        }
+    }
+
+    @Test
+    public void cal$pow$processControlAndError() throws Throwable {
+        final EventListener listener = new EventListener() {
+            @Override
+            public void onEvent(Event event) throws Throwable {
+                if (event.type == RETURN) {
+                    returnImmediately(100);
+                }
+                throw new RuntimeException("test");
+            }
+        };
+        final Object objectOfCal = newCalculator(listener);
+        try {
+            assertEquals(100, pow(objectOfCal, 2, 2));
+            final ListenerCounter counter = getCounter(listener);
+            assertEquals(3, counter.getProcessControlCount());
+            assertEquals(3, counter.getErrorCount());
+        } finally {
+            frozen(listener);
+        }
+    }
+
+    @Test
+    public void cal$pow$ignoredInProtecting() throws Throwable {
+        final EventListener listener = new EventListener() {
+            @Override
+            public void onEvent(Event event) {
+            }
+        };
+        final Object objectOfCal = newCalculator(listener);
+        try {
+            SandboxProtector.instance.enterProtecting();
+            try {
+                assertEquals(4, pow(objectOfCal, 2, 2));
+            } finally {
+                SandboxProtector.instance.exitProtecting();
+            }
+            final ListenerCounter counter = getCounter(listener);
+            assertEquals(0, counter.getDispatchedCount(BEFORE));
+            assertEquals(3, counter.getIgnoredCount(BEFORE));
+            assertEquals(3, counter.getIgnoredCount(RETURN));
+            assertTrue(sum(counter.getNanosHistogram()) == 0);
+        } finally {
+            frozen(listener);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import com.alibaba.jvm.sandbox.core.util.SandboxThreadContext;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Test;
+
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static com.alibaba.jvm.sandbox.qatest.core.util.CalculatorHelper.*;
+import static org.junit.Assert.*;
+
+/**
+ * 监听器槽位的释放和复用
+ */
+public class ListenerSlotReleaseTestCase {
+
+    private static class CountingEventListener implements EventListener {
+
+        private int count;
+
+        @Override
+        public void onEvent(Event event) {
+            count++;
+        }
+
+    }
+
+    private static Object newCalculator(final EventListener listener) throws Throwable {
+        return newInstance(JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        new JvmHelper.Transformer(CALCULATOR_SUM_FILTER, listener, BEFORE, RETURN, THROWS)
+                )
+                .loadClass(CALCULATOR_CLASS_NAME)
+        );
+    }
+
+    private static int getListenerSlot(final EventListener listener) {
+        return EventListenerHandler.getSingleton().getListenerSlot(ObjectIDs.instance.identity(listener));
+    }
+
+    private static void release(final EventListener listener) {
+        EventListenerHandler.getSingleton().release(ObjectIDs.instance.identity(listener));
+    }
+
+    @Test
+    public void slot$reused$afterRelease() throws Throwable {
+        final CountingEventListener a = new CountingEventListener();
+        final CountingEventListener b = new CountingEventListener();
+        assertEquals(30, sum(newCalculator(a), 10, 20));
+        assertEquals(2, a.count);
+        final int listenerSlot = getListenerSlot(a);
+
+        release(a);
+        assertNull(EventListenerHandler.getSingleton().getListenerCounter(ObjectIDs.instance.identity(a)));
+
+        // 释放后的槽位分配给新的监听器，新监听器只收到自己的事件
+        final Object objectOfCal = newCalculator(b);
+        assertEquals(listenerSlot, getListenerSlot(b));
+        assertEquals(30, sum(objectOfCal, 10, 20));
+        assertEquals(2, a.count);
+        assertEquals(2, b.count);
+        EventListenerHandler.getSingleton().checkEventProcessor(ObjectIDs.instance.identity(b));
+        release(b);
+    }
+
+    @Test
+    public void slot$released$expungeThreadProcess() throws Throwable {
+        final CountingEventListener a = new CountingEventListener();
+        final CountingEventListener c = new CountingEventListener();
+        final Object objectOfCalA = newCalculator(a);
+        final Object objectOfCalC = newCalculator(c);
+        assertEquals(30, sum(objectOfCalA, 10, 20));
+        final int listenerSlot = getListenerSlot(a);
+
+        // 调用过程结束后依旧留在线程上下文中等待复用
+        final SandboxThreadContext context = SandboxThreadContext.current();
+        assertNotNull(context.getProcess(listenerSlot));
+
+        // 槽位释放后，线程在下一次事件处理时清理掉旧的调用过程
+        release(a);
+        assertEquals(30, sum(objectOfCalC, 10, 20));
+        assertNull(context.getProcess(listenerSlot));
+        assertNull(SandboxThreadContext.peek());
+        release(c);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.filter.Filter;
+import com.alibaba.jvm.sandbox.api.filter.NameRegexFilter;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
+import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Counter;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Test;
+
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static org.junit.Assert.*;
+
+/**
+ * 开销熔断：事件监听器的开销超出预算时被自动冻结
+ */
+public class OverheadBreakerTestCase {
+
+    // 足够让熔断器完成一个统计窗口的调用次数
+    private static final int CALL_TIMES = 20000;
+
+    private static final Filter COUNTER_RUN_FILTER = new NameRegexFilter(
+            "^com\\.alibaba\\.jvm\\.sandbox\\.qatest\\.core\\.enhance\\.target\\.Counter$",
+            "^run$"
+    );
+
+    // 对事件计数的监听器
+    private static class CountingEventListener implements EventListener {
+
+        private int count;
+
+        @Override
+        public void onEvent(Event event) {
+            count++;
+        }
+
+    }
+
+    private static Runnable newCounter(final EventListener listener,
+                                       final EventWatchOption option) throws Throwable {
+        return (Runnable) JvmHelper
+                .createJvm()
+                .defineClass(
+                        Counter.class,
+                        new JvmHelper.Transformer(COUNTER_RUN_FILTER, listener, BEFORE, RETURN, THROWS)
+                                .withOption(option)
+                )
+                .loadClass(Counter.class.getName())
+                .newInstance();
+    }
+
+    private static void run(final Runnable counter, final int times) {
+        for (int index = 0; index < times; index++) {
+            counter.run();
+        }
+    }
+
+    @Test
+    public void counter$run$overBudget() throws Throwable {
+        final CountingEventListener listener = new CountingEventListener();
+        final int listenerId = ObjectIDs.instance.identity(listener);
+
+        // 任何事件都不可能在1纳秒内处理完
+        final Runnable counter = newCounter(listener, new EventWatchOption().withOverheadBudget(1));
+        run(counter, CALL_TIMES);
+        assertTrue(EventListenerHandler.getSingleton().isTripped(listenerId));
+
+        // 熔断后不再产生事件
+        final int count = listener.count;
+        assertTrue(count < CALL_TIMES * 2);
+        run(counter, CALL_TIMES);
+        assertEquals(count, listener.count);
+
+        // 重新激活后恢复
+        EventListenerHandler.getSingleton().active(listenerId, listener, new Event.Type[]{BEFORE, RETURN, THROWS});
+        assertFalse(EventListenerHandler.getSingleton().isTripped(listenerId));
+        counter.run();
+        assertEquals(count + 2, listener.count);
+        EventListenerHandler.getSingleton().frozen(listenerId);
+    }
+
+    @Test
+    public void counter$run$underBudget() throws Throwable {
+        final CountingEventListener listener = new CountingEventListener();
+        final int listenerId = ObjectIDs.instance.identity(listener);
+        final Runnable counter = newCounter(listener, new EventWatchOption().withOverheadBudget(1000000000L));
+        run(counter, CALL_TIMES);
+        assertFalse(EventListenerHandler.getSingleton().isTripped(listenerId));
+        assertEquals(CALL_TIMES * 2, listener.count);
+        EventListenerHandler.getSingleton().frozen(listenerId);
+    }
+
+}
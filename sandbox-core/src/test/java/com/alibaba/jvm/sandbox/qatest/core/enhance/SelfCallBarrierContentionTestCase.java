@@ -0,0 +1,114 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance;
+
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.listener.InterruptedEventListener;
+import com.alibaba.jvm.sandbox.qatest.core.enhance.target.Calculator;
+import com.alibaba.jvm.sandbox.qatest.core.util.JvmHelper;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+import static com.alibaba.jvm.sandbox.qatest.core.util.CalculatorHelper.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 自调用屏障在大量线程并发下的压力测试
+ * <p>
+ * 1024个线程同时调用被增强的方法，并在事件处理中再次调用被增强的方法，
+ * 校验屏障能正确拦截自调用、所有事件均被完整投递，并输出吞吐量作为基准参考
+ * </p>
+ */
+public class SelfCallBarrierContentionTestCase {
+
+    private static final Logger logger = LoggerFactory.getLogger(SelfCallBarrierContentionTestCase.class);
+
+    private static final int THREAD_COUNT = 1024;
+    private static final int LOOP_COUNT = 500;
+
+    @Test
+    public void cal$sum$contention() throws Throwable {
+
+        final AtomicInteger beforeCnt = new AtomicInteger();
+        final AtomicInteger returnCnt = new AtomicInteger();
+        final AtomicReference<Object> objectOfCalRef = new AtomicReference<Object>();
+        final Class<?> calculatorClass = JvmHelper
+                .createJvm()
+                .defineClass(
+                        Calculator.class,
+                        CALCULATOR_SUM_FILTER,
+                        new InterruptedEventListener() {
+                            @Override
+                            public void onEvent(Event event) throws Throwable {
+                                if (event.type == BEFORE) {
+                                    beforeCnt.incrementAndGet();
+                                    // 事件处理中的自调用必须被屏障拦截，不能产生新的事件
+                                    assertEquals(3, sum(objectOfCalRef.get(), 1, 2));
+                                } else if (event.type == RETURN) {
+                                    returnCnt.incrementAndGet();
+                                }
+                            }
+                        },
+                        BEFORE, RETURN, THROWS
+                )
+                .loadClass(CALCULATOR_CLASS_NAME);
+
+        final Object objectOfCal = newInstance(calculatorClass);
+        objectOfCalRef.set(objectOfCal);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch finishLatch = new CountDownLatch(THREAD_COUNT);
+        final AtomicReference<Throwable> errorRef = new AtomicReference<Throwable>();
+        final AtomicLong costNanos = new AtomicLong();
+        final List<Thread> threads = new ArrayList<Thread>(THREAD_COUNT);
+        for (int index = 0; index < THREAD_COUNT; index++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        final long beginNanos = System.nanoTime();
+                        for (int loop = 0; loop < LOOP_COUNT; loop++) {
+                            assertEquals(30, sum(objectOfCal, 10, 20));
+                        }
+                        costNanos.addAndGet(System.nanoTime() - beginNanos);
+                    } catch (Throwable cause) {
+                        errorRef.compareAndSet(null, cause);
+                    } finally {
+                        finishLatch.countDown();
+                    }
+                }
+            }, "self-call-barrier-contention-" + index);
+            thread.start();
+            threads.add(thread);
+        }
+
+        final long beginMillis = System.currentTimeMillis();
+        startLatch.countDown();
+        finishLatch.await();
+        final long costMillis = Math.max(1, System.currentTimeMillis() - beginMillis);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(errorRef.get());
+        assertEquals(THREAD_COUNT * LOOP_COUNT, beforeCnt.get());
+        assertEquals(THREAD_COUNT * LOOP_COUNT, returnCnt.get());
+        logger.info("self-call-barrier contention: threads={};invokes={};cost={}ms;throughput={}/s;avg={}ns/invoke;",
+                THREAD_COUNT,
+                THREAD_COUNT * LOOP_COUNT,
+                costMillis,
+                THREAD_COUNT * LOOP_COUNT * 1000L / costMillis,
+                costNanos.get() / (THREAD_COUNT * LOOP_COUNT)
+        );
+    }
+
+}
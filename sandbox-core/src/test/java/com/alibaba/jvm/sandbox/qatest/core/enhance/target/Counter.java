@@ -0,0 +1,37 @@
+package com.alibaba.jvm.sandbox.qatest.core.enhance.target;
+
+/**
+ * 计数器，用于度量事件分发过程中的内存分配
+ * <p>
+ * 实现{@link Runnable}以便在测试中不经过反射直接调用，
+ * 抛出的异常也是预先创建好的，被增强的方法本身不会产生任何对象
+ * </p>
+ */
+public class Counter implements Runnable {
+
+    private static final RuntimeException COUNTER_EXCEPTION = new RuntimeException("counter exception");
+
+    private final boolean isThrows;
+    private int count;
+
+    public Counter() {
+        this(false);
+    }
+
+    public Counter(boolean isThrows) {
+        this.isThrows = isThrows;
+    }
+
+    @Override
+    public void run() {
+        count = increase(count);
+        if (isThrows) {
+            throw COUNTER_EXCEPTION;
+        }
+    }
+
+    private int increase(int n) {
+        return n + 1;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.alibaba.jvm.sandbox.qatest.core.util;
+
+import com.alibaba.jvm.sandbox.core.util.InvokeIdSequencer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static com.alibaba.jvm.sandbox.core.util.InvokeIdSequencer.BLOCK_SIZE;
+import static com.alibaba.jvm.sandbox.core.util.InvokeIdSequencer.INITIAL_ID;
+import static com.alibaba.jvm.sandbox.core.util.InvokeIdSequencer.toIntId;
+
+public class InvokeIdSequencerTestCase {
+
+    @Test
+    public void test$next$inBlock() {
+        final InvokeIdSequencer sequencer = new InvokeIdSequencer();
+        final long[] block = new long[2];
+        for (int index = 0; index < BLOCK_SIZE * 3; index++) {
+            Assert.assertEquals(INITIAL_ID + index, sequencer.next(block));
+        }
+    }
+
+    @Test
+    public void test$next$unique() throws InterruptedException {
+        final InvokeIdSequencer sequencer = new InvokeIdSequencer();
+        final int threadCount = 8;
+        final long[][] ids = new long[threadCount][BLOCK_SIZE * 2 + 1];
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int threadIndex = 0; threadIndex < threadCount; threadIndex++) {
+            final long[] threadIds = ids[threadIndex];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final long[] block = new long[2];
+                    for (int index = 0; index < threadIds.length; index++) {
+                        threadIds[index] = sequencer.next(block);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+
+        final Set<Long> idSet = new HashSet<Long>();
+        for (final long[] threadIds : ids) {
+            for (final long id : threadIds) {
+                Assert.assertTrue(idSet.add(id));
+            }
+        }
+    }
+
+    @Test
+    public void test$toIntId() {
+        Assert.assertEquals(1000, toIntId(INITIAL_ID));
+        Assert.assertEquals(Integer.MAX_VALUE, toIntId(Integer.MAX_VALUE));
+
+        // 超出32位后回绕，依旧为正数
+        Assert.assertEquals(1000, toIntId(Integer.MAX_VALUE + 1L));
+        Assert.assertEquals(1001, toIntId(Integer.MAX_VALUE + 2L));
+        for (long id = Integer.MAX_VALUE * 3L; id < Integer.MAX_VALUE * 3L + 1000; id++) {
+            Assert.assertTrue(toIntId(id) >= 1000);
+        }
+    }
+
+}
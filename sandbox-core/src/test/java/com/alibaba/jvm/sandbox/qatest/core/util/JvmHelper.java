@@ -4,6 +4,7 @@ import com.alibaba.jvm.sandbox.api.event.Event;
 import com.alibaba.jvm.sandbox.api.filter.Filter;
 import com.alibaba.jvm.sandbox.api.listener.EventListener;
 import com.alibaba.jvm.sandbox.api.listener.ext.AdviceListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchOption;
 import com.alibaba.jvm.sandbox.core.enhance.EventEnhancer;
 import com.alibaba.jvm.sandbox.core.enhance.weaver.EventListenerHandler;
 import com.alibaba.jvm.sandbox.core.enhance.weaver.asm.EventWeaver;
@@ -93,6 +94,7 @@ public class JvmHelper {
         protected final Filter filter;
         private final EventListener listener;
         private final Event.Type[] eventTypes;
+        private EventWatchOption option = new EventWatchOption();
 
         public Transformer(final Filter filter,
                            final EventListener listener,
@@ -113,6 +115,11 @@ public class JvmHelper {
             this.eventTypes = eventTypeList.toArray(new Event.Type[]{});
         }
 
+        public Transformer withOption(final EventWatchOption option) {
+            this.option = option;
+            return this;
+        }
+
         public byte[] transform(final String namespace,
                                 final ClassLoader loader,
                                 final byte[] byteCodes) {
@@ -124,7 +131,8 @@ public class JvmHelper {
             EventListenerHandler.getSingleton().active(
                     listenerId,
                     listener,
-                    eventTypes
+                    eventTypes,
+                    option
             );
 
             if (matchingResult.isMatched()) {
@@ -134,7 +142,8 @@ public class JvmHelper {
                         matchingResult.getBehaviorSignCodes(),
                         namespace,
                         listenerId,
-                        eventTypes
+                        eventTypes,
+                        option
                 );
             } else {
                 return byteCodes;
@@ -152,6 +161,57 @@ public class JvmHelper {
         }
     }
 
+    /**
+     * 合并织入形变器，多个监听器只织入一套探针
+     */
+    public static class FusedTransformer extends Transformer {
+
+        private final EventListener[] listeners;
+        private final Event.Type[] eventTypes;
+
+        public FusedTransformer(final Filter filter,
+                                final EventListener[] listeners,
+                                final Event.Type... eventTypes) {
+            super(filter, listeners[0], eventTypes);
+            this.listeners = listeners;
+            this.eventTypes = eventTypes;
+        }
+
+        @Override
+        public byte[] transform(final String namespace,
+                                final ClassLoader loader,
+                                final byte[] byteCodes) {
+
+            final MatchingResult matchingResult = new ExtFilterMatcher(make(filter))
+                    .matching(ClassStructureFactory.createClassStructure(byteCodes, loader));
+
+            final int[] listenerIds = new int[listeners.length];
+            for (int index = 0; index < listeners.length; index++) {
+                listenerIds[index] = ObjectIDs.instance.identity(listeners[index]);
+                EventListenerHandler.getSingleton().active(
+                        listenerIds[index],
+                        listeners[index],
+                        eventTypes
+                );
+            }
+
+            if (matchingResult.isMatched()) {
+                return new EventEnhancer(true).toByteCodeArray(
+                        loader,
+                        byteCodes,
+                        matchingResult.getBehaviorSignCodes(),
+                        namespace,
+                        listenerIds,
+                        eventTypes,
+                        new EventWatchOption()
+                );
+            } else {
+                return byteCodes;
+            }
+        }
+
+    }
+
     public JvmHelper defineClass(final Class<?> clazz,
                                  final Filter filter,
                                  final EventListener listener,
@@ -0,0 +1,69 @@
+package com.alibaba.jvm.sandbox.qatest.core.util;
+
+import com.alibaba.jvm.sandbox.core.util.ObjectIDs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.alibaba.jvm.sandbox.core.util.ObjectIDs.NULL_ID;
+
+public class ObjectIDsTestCase {
+
+    // equals/hashCode都相同的对象，用于校验按引用映射
+    private static class SameObject {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SameObject;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
+    }
+
+    @Test
+    public void test$identity() {
+        final Object object = new Object();
+        final int objectID = ObjectIDs.instance.identity(object);
+        Assert.assertTrue(NULL_ID != objectID);
+        Assert.assertEquals(objectID, ObjectIDs.instance.identity(object));
+        Assert.assertSame(object, ObjectIDs.instance.getObject(objectID));
+    }
+
+    @Test
+    public void test$identity$null() {
+        Assert.assertEquals(NULL_ID, ObjectIDs.instance.identity(null));
+        Assert.assertNull(ObjectIDs.instance.getObject(NULL_ID));
+    }
+
+    @Test
+    public void test$identity$byReference() {
+        final SameObject a = new SameObject();
+        final SameObject b = new SameObject();
+        final int aID = ObjectIDs.instance.identity(a);
+        final int bID = ObjectIDs.instance.identity(b);
+        Assert.assertTrue(aID != bID);
+        Assert.assertSame(a, ObjectIDs.instance.getObject(aID));
+        Assert.assertSame(b, ObjectIDs.instance.getObject(bID));
+    }
+
+    @Test
+    public void test$identity$many() {
+        final List<Object> objects = new ArrayList<Object>();
+        final List<Integer> objectIDs = new ArrayList<Integer>();
+        for (int index = 0; index < 10000; index++) {
+            final Object object = new Object();
+            objects.add(object);
+            objectIDs.add(ObjectIDs.instance.identity(object));
+        }
+        for (int index = 0; index < objects.size(); index++) {
+            Assert.assertSame(objects.get(index), ObjectIDs.instance.getObject(objectIDs.get(index)));
+        }
+    }
+
+}
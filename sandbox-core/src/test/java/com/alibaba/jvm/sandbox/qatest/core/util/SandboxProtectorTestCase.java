@@ -1,6 +1,7 @@
 package com.alibaba.jvm.sandbox.qatest.core.util;
 
 import com.alibaba.jvm.sandbox.core.util.SandboxProtector;
+import com.alibaba.jvm.sandbox.core.util.SandboxThreadContext;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -55,6 +56,9 @@ public class SandboxProtectorTestCase {
 
         Assert.assertFalse(protector.isInProtecting());
 
+        // 离开守护区后不能在线程中残留上下文
+        Assert.assertNull(SandboxThreadContext.peek());
+
     }
 
 }
@@ -0,0 +1,361 @@
+package com.alibaba.jvm.sandbox.module.debug;
+
+import com.alibaba.jvm.sandbox.api.Information;
+import com.alibaba.jvm.sandbox.api.Module;
+import com.alibaba.jvm.sandbox.api.ModuleLifecycle;
+import com.alibaba.jvm.sandbox.api.annotation.Command;
+import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.http.printer.ConcurrentLinkedQueuePrinter;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchBuilder;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatcher;
+import com.alibaba.jvm.sandbox.api.resource.ModuleEventWatcher;
+import com.alibaba.jvm.sandbox.module.debug.profile.LatencyHistogram;
+import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Resource;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+
+/**
+ * 方法耗时统计
+ * <p>
+ * 常驻观察匹配的行为，按行为统计调用次数、异常次数和耗时分布。业务线程上只做直方图计数，
+ * 只有在执行{@code report}命令或定时输出时才合并统计结果
+ * </p>
+ * <p>
+ * 可以多次执行{@code start}观察多组行为，每组观察各自统计，同一个行为被多组匹配时会被重复统计；
+ * 观察停止后该组的统计结果随之释放
+ * </p>
+ */
+@MetaInfServices(Module.class)
+@Information(id = "debug-latency", version = "0.0.1", author = "luanjia@taobao.com")
+public class DebugLatencyModule extends ParamSupported implements Module, ModuleLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Resource
+    private ModuleEventWatcher moduleEventWatcher;
+
+    // 观察ID:耗时统计事件监听器
+    private final Map<Integer, LatencyEventListener> listeners = new ConcurrentHashMap<Integer, LatencyEventListener>();
+    private final AtomicInteger watchIdSequence = new AtomicInteger();
+
+    // 直方图分段数，按CPU核数取2的幂，最多16段
+    private final int stripes = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private volatile ScheduledExecutorService dumpExecutor;
+
+    @Command("start")
+    public void start(final Map<String, String> param, final PrintWriter writer) {
+        final String cnPattern = getParameter(param, "class");
+        final String mnPattern = getParameter(param, "method");
+        final int watchId = watchIdSequence.incrementAndGet();
+        final LatencyEventListener listener = new LatencyEventListener();
+        listener.watcher = new EventWatchBuilder(moduleEventWatcher)
+                .onClass(cnPattern).includeSubClasses()
+                .onBehavior(mnPattern)
+                .onWatching()
+                .withProgress(new ProgressPrinter(new ConcurrentLinkedQueuePrinter(writer)))
+                .onWatch(listener, BEFORE, RETURN, THROWS);
+        listeners.put(watchId, listener);
+        writer.println(String.format("latency watching on [%s#%s], watch-id=%d.", cnPattern, mnPattern, watchId));
+    }
+
+    @Command("stop")
+    public void stop(final Map<String, String> param, final PrintWriter writer) {
+        final Integer watchId = getParameter(param, "id", Integer.class);
+        if (null == watchId) {
+            for (final Integer id : new ArrayList<Integer>(listeners.keySet())) {
+                unWatch(id);
+            }
+            writer.println("all latency watching stopped.");
+        } else if (unWatch(watchId)) {
+            writer.println(String.format("latency watching stopped, watch-id=%d.", watchId));
+        } else {
+            writer.println(String.format("watch-id=%d not found.", watchId));
+        }
+    }
+
+    // 停止观察，该组观察的直方图随监听器一起释放
+    private boolean unWatch(final int watchId) {
+        final LatencyEventListener listener = listeners.remove(watchId);
+        if (null == listener) {
+            return false;
+        }
+        listener.watcher.onUnWatched();
+        return true;
+    }
+
+    /**
+     * 输出统计结果，reset=true时输出后清零
+     */
+    @Command("report")
+    public void report(final Map<String, String> param, final PrintWriter writer) {
+        final boolean isReset = Boolean.parseBoolean(getParameter(param, "reset", "false"));
+        final int top = getParameter(param, "top", Integer.class, Integer.MAX_VALUE);
+        report(writer, isReset, top);
+    }
+
+    /**
+     * 定时把统计结果输出到日志，interval为0时停止定时输出
+     */
+    @Command("dump")
+    public synchronized void dump(final Map<String, String> param, final PrintWriter writer) {
+        final int intervalSec = getParameter(param, "interval", Integer.class, 60);
+        final boolean isReset = Boolean.parseBoolean(getParameter(param, "reset", "true"));
+        shutdownDumpExecutor();
+        if (intervalSec <= 0) {
+            writer.println("latency dump stopped.");
+            return;
+        }
+
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "sandbox-debug-latency-dump");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                final StringWriter buffer = new StringWriter();
+                report(new PrintWriter(buffer), isReset, Integer.MAX_VALUE);
+                logger.info("latency report:\n{}", buffer);
+            }
+        }, intervalSec, intervalSec, TimeUnit.SECONDS);
+        dumpExecutor = executor;
+        writer.println(String.format("latency dump every %ds.", intervalSec));
+    }
+
+    private synchronized void shutdownDumpExecutor() {
+        final ScheduledExecutorService executor = dumpExecutor;
+        dumpExecutor = null;
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void report(final PrintWriter writer, final boolean isReset, final int top) {
+        final List<LatencyHistogram.Snapshot> snapshots = new ArrayList<LatencyHistogram.Snapshot>();
+        for (final LatencyEventListener listener : listeners.values()) {
+            for (final LatencyHistogram histogram : listener.histograms) {
+                if (null != histogram) {
+                    final LatencyHistogram.Snapshot snapshot = histogram.snapshot(isReset);
+                    if (snapshot.getCount() > 0) {
+                        snapshots.add(snapshot);
+                    }
+                }
+            }
+        }
+        Collections.sort(snapshots, new Comparator<LatencyHistogram.Snapshot>() {
+            @Override
+            public int compare(LatencyHistogram.Snapshot o1, LatencyHistogram.Snapshot o2) {
+                return o1.getCount() > o2.getCount()
+                        ? -1
+                        : (o1.getCount() == o2.getCount() ? 0 : 1);
+            }
+        });
+
+        writer.println(String.format("%10s %8s %8s %8s %8s %8s %8s %8s  %s",
+                "COUNT", "ERRORS", "AVG(us)", "P50", "P90", "P99", "P999", "MAX", "BEHAVIOR"));
+        for (final LatencyHistogram.Snapshot snapshot : snapshots.subList(0, Math.min(top, snapshots.size()))) {
+            writer.println(String.format("%10d %8d %8d %8d %8d %8d %8d %8d  %s",
+                    snapshot.getCount(),
+                    snapshot.getErrors(),
+                    snapshot.getMean(),
+                    snapshot.getPercentile(50),
+                    snapshot.getPercentile(90),
+                    snapshot.getPercentile(99),
+                    snapshot.getPercentile(99.9),
+                    snapshot.getMax(),
+                    snapshot.getName()
+            ));
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void onLoad() throws Throwable {
+
+    }
+
+    /**
+     * 模块卸载时停止观察和定时输出
+     */
+    @Override
+    public void onUnload() throws Throwable {
+        for (final Integer id : new ArrayList<Integer>(listeners.keySet())) {
+            unWatch(id);
+        }
+        shutdownDumpExecutor();
+    }
+
+    @Override
+    public void onActive() throws Throwable {
+
+    }
+
+    @Override
+    public void onFrozen() throws Throwable {
+
+    }
+
+    @Override
+    public void loadCompleted() {
+
+    }
+
+    /**
+     * 调用栈，记录当前线程中尚未结束的调用，只会被所属线程访问
+     */
+    private static class InvokeStack {
+
+        private int depth;
+        private LatencyHistogram[] histograms = new LatencyHistogram[16];
+        private long[] beginNanos = new long[16];
+
+        void push(final LatencyHistogram histogram) {
+            if (depth == histograms.length) {
+                histograms = Arrays.copyOf(histograms, depth << 1);
+                beginNanos = Arrays.copyOf(beginNanos, depth << 1);
+            }
+            histograms[depth] = histogram;
+            beginNanos[depth] = System.nanoTime();
+            depth++;
+        }
+
+        boolean isEmpty() {
+            return depth == 0;
+        }
+
+        void pop(final boolean isError) {
+            if (depth == 0) {
+                return;
+            }
+            depth--;
+            final LatencyHistogram histogram = histograms[depth];
+            histograms[depth] = null;
+            if (null != histogram) {
+                histogram.record(System.nanoTime() - beginNanos[depth], isError);
+            }
+        }
+
+    }
+
+    /**
+     * 耗时统计事件监听器，每组观察一个，持有该组观察的直方图
+     */
+    private class LatencyEventListener implements EventListener {
+
+        // 所属的观察者
+        private EventWatcher watcher;
+
+        // 直方图，按行为ID索引，写时复制
+        private volatile LatencyHistogram[] histograms = new LatencyHistogram[1024];
+
+        // 调用过程中的调用栈
+        private final ThreadLocal<InvokeStack> invokeStackRef = new ThreadLocal<InvokeStack>();
+
+        // 空闲的调用栈，留给线程的下一次调用过程复用
+        // 空闲时只保留弱引用，观察停止后不会因为线程长期存活而阻止模块被卸载
+        private final ThreadLocal<WeakReference<InvokeStack>> idleInvokeStackRef = new ThreadLocal<WeakReference<InvokeStack>>();
+
+        private InvokeStack getInvokeStack() {
+            final InvokeStack stack = invokeStackRef.get();
+            if (null != stack) {
+                return stack;
+            }
+            final WeakReference<InvokeStack> idleRef = idleInvokeStackRef.get();
+            final InvokeStack idleStack = null == idleRef
+                    ? null
+                    : idleRef.get();
+            if (null != idleStack) {
+                return idleStack;
+            }
+            final InvokeStack newStack = new InvokeStack();
+            idleInvokeStackRef.set(new WeakReference<InvokeStack>(newStack));
+            return newStack;
+        }
+
+        private LatencyHistogram getHistogram(final BeforeEvent event) {
+            final int behaviorId = event.behaviorInfo.getId();
+            final LatencyHistogram[] array = histograms;
+            if (behaviorId < array.length
+                    && null != array[behaviorId]) {
+                return array[behaviorId];
+            }
+            return newHistogram(behaviorId, event);
+        }
+
+        private synchronized LatencyHistogram newHistogram(final int behaviorId, final BeforeEvent event) {
+            LatencyHistogram[] array = histograms;
+            if (behaviorId < array.length
+                    && null != array[behaviorId]) {
+                return array[behaviorId];
+            }
+            if (behaviorId >= array.length) {
+                array = Arrays.copyOf(array, Math.max(array.length << 1, behaviorId + 1));
+            }
+            final LatencyHistogram histogram = new LatencyHistogram(
+                    event.javaClassName + "#" + event.javaMethodName + event.javaMethodDesc,
+                    stripes
+            );
+            array[behaviorId] = histogram;
+            histograms = array;
+            return histogram;
+        }
+
+        @Override
+        public void onEvent(final Event event) throws Throwable {
+            final InvokeStack stack = getInvokeStack();
+            final boolean isEmptyBefore = stack.isEmpty();
+            switch (event.type) {
+                case BEFORE: {
+                    final BeforeEvent bEvent = (BeforeEvent) event;
+                    // 没有行为信息时仍然入栈，保证和结束事件配对
+                    stack.push(null == bEvent.behaviorInfo ? null : getHistogram(bEvent));
+                    break;
+                }
+                case RETURN:
+                    stack.pop(false);
+                    break;
+                case THROWS:
+                    stack.pop(true);
+                    break;
+                default:
+                    break;
+            }
+
+            // 调用过程进行中需要强引用住调用栈，调用过程结束后调用栈转为空闲
+            final boolean isEmptyAfter = stack.isEmpty();
+            if (isEmptyAfter && !isEmptyBefore) {
+                invokeStackRef.remove();
+            } else if (!isEmptyAfter && isEmptyBefore) {
+                invokeStackRef.set(stack);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,350 @@
+package com.alibaba.jvm.sandbox.module.debug;
+
+import com.alibaba.jvm.sandbox.api.Information;
+import com.alibaba.jvm.sandbox.api.Module;
+import com.alibaba.jvm.sandbox.api.ModuleLifecycle;
+import com.alibaba.jvm.sandbox.api.annotation.Command;
+import com.alibaba.jvm.sandbox.api.event.BeforeEvent;
+import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.event.ReturnEvent;
+import com.alibaba.jvm.sandbox.api.event.ThrowsEvent;
+import com.alibaba.jvm.sandbox.api.http.printer.ConcurrentLinkedQueuePrinter;
+import com.alibaba.jvm.sandbox.api.http.printer.Printer;
+import com.alibaba.jvm.sandbox.api.listener.EventListener;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchBuilder;
+import com.alibaba.jvm.sandbox.api.listener.ext.EventWatcher;
+import com.alibaba.jvm.sandbox.api.resource.ModuleEventWatcher;
+import com.alibaba.jvm.sandbox.module.debug.record.DefaultValueCodec;
+import com.alibaba.jvm.sandbox.module.debug.record.RecordJournal;
+import com.alibaba.jvm.sandbox.module.debug.record.ValueCodec;
+import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.alibaba.jvm.sandbox.api.event.Event.Type.*;
+
+/**
+ * 调用录制
+ * <p>
+ * 把匹配行为的入参、返回值和异常写入预先分配好的内存映射文件，录制期间不占用堆内存，写满后循环覆盖最早的记录。
+ * 录制结果可以通过{@code segments}命令导出，再用{@link com.alibaba.jvm.sandbox.module.debug.record.RecordJournalReader}阅读
+ * </p>
+ * <p>
+ * 同一时刻只能有一个录制；每次录制都新建日志文件，默认按进程号和时间戳命名，指定的文件已经存在时拒绝录制
+ * </p>
+ */
+@MetaInfServices(Module.class)
+@Information(id = "debug-record", version = "0.0.1", author = "luanjia@taobao.com")
+public class DebugRecordModule extends ParamSupported implements Module, ModuleLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // 每个区域的段大小
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    // 字典区大小
+    private static final int DICTIONARY_SIZE = 1024 * 1024;
+
+    @Resource
+    private ModuleEventWatcher moduleEventWatcher;
+
+    private final AtomicReference<Recording> recordingRef = new AtomicReference<Recording>();
+
+    @Command("start")
+    public void start(final Map<String, String> param, final PrintWriter writer) {
+
+        // 先占住录制再创建日志文件，并发的start不会同时创建或覆盖日志文件
+        final Recording recording = new Recording();
+        if (!recordingRef.compareAndSet(null, recording)) {
+            writer.println("recording is already started, stop it first.");
+            return;
+        }
+
+        boolean isStarted = false;
+        try {
+            isStarted = start(recording, param, writer);
+        } finally {
+            if (!isStarted) {
+                recordingRef.compareAndSet(recording, null);
+                recording.stop();
+            }
+        }
+    }
+
+    private boolean start(final Recording recording,
+                          final Map<String, String> param,
+                          final PrintWriter writer) {
+        final String cnPattern = getParameter(param, "class");
+        final String mnPattern = getParameter(param, "method");
+
+        // 默认文件名带上进程号和时间戳，同一台机器上的多个JVM、多次录制各用各的文件
+        final File file = new File(getParameter(
+                param,
+                "file",
+                new File(
+                        System.getProperty("java.io.tmpdir"),
+                        String.format("sandbox-record-%s-%d.journal", getPid(), System.currentTimeMillis())
+                ).getPath()
+        ));
+
+        // 默认按CPU核数的两倍分配区域，每个区域16M
+        final int regionCount = getParameter(param, "regions", Integer.class, Runtime.getRuntime().availableProcessors() * 2);
+        final int regionSizeInMb = getParameter(param, "region-size", Integer.class, 16);
+        final int maxRecordBytes = getParameter(param, "max-record", Integer.class, 4096);
+        final int maxStringLength = getParameter(param, "max-string", Integer.class, 256);
+        final String codecClassName = getParameter(param, "codec");
+
+        final ValueCodec codec;
+        try {
+            codec = null == codecClassName
+                    ? new DefaultValueCodec(maxStringLength)
+                    : (ValueCodec) getClass().getClassLoader().loadClass(codecClassName).newInstance();
+        } catch (Exception cause) {
+            writer.println(String.format("load codec: %s failed, %s", codecClassName, cause.getMessage()));
+            return false;
+        }
+
+        final RecordJournal journal;
+        try {
+            journal = RecordJournal.create(
+                    file,
+                    regionCount,
+                    (int) (regionSizeInMb * 1024L * 1024L / SEGMENT_SIZE),
+                    SEGMENT_SIZE,
+                    DICTIONARY_SIZE,
+                    maxRecordBytes,
+                    codec
+            );
+        } catch (IllegalArgumentException cause) {
+            writer.println("create journal failed, " + cause.getMessage());
+            return false;
+        } catch (IOException cause) {
+            writer.println("create journal failed, " + cause.getMessage());
+            return false;
+        }
+        if (!recording.attach(journal)) {
+            closeQuietly(journal);
+            writer.println("recording is stopped while starting.");
+            return true;
+        }
+
+        final Printer printer = new ConcurrentLinkedQueuePrinter(writer);
+        final EventWatcher watcher = new EventWatchBuilder(moduleEventWatcher)
+                .onClass(cnPattern).includeSubClasses()
+                .onBehavior(mnPattern)
+                .onWatching()
+                .withProgress(new ProgressPrinter(printer))
+                .onWatch(new RecordEventListener(journal), BEFORE, RETURN, THROWS);
+        if (!recording.attach(watcher)) {
+            watcher.onUnWatched();
+            writer.println("recording is stopped while starting.");
+            return true;
+        }
+
+        writer.println(String.format("recording on [%s#%s] into %s, regions=%d, region-size=%dM.",
+                cnPattern, mnPattern, file, regionCount, regionSizeInMb));
+        return true;
+    }
+
+    // 当前进程号，取不到时返回unknown
+    private static String getPid() {
+        final String name = ManagementFactory.getRuntimeMXBean().getName();
+        final int index = name.indexOf('@');
+        return index > 0
+                ? name.substring(0, index)
+                : "unknown";
+    }
+
+    @Command("stop")
+    public void stop(final PrintWriter writer) {
+        final Recording recording = recordingRef.getAndSet(null);
+        if (null == recording) {
+            writer.println("recording is not started.");
+            return;
+        }
+        recording.stop();
+        if (null == recording.journal) {
+            writer.println("recording is stopped.");
+            return;
+        }
+        printStatus(recording.journal, writer);
+    }
+
+    @Command("status")
+    public void status(final PrintWriter writer) {
+        final Recording recording = recordingRef.get();
+        if (null == recording) {
+            writer.println("recording is not started.");
+            return;
+        }
+        final RecordJournal journal = recording.journal;
+        if (null == journal) {
+            writer.println("recording is starting.");
+            return;
+        }
+        printStatus(journal, writer);
+    }
+
+    /**
+     * 导出录制结果，导出期间录制不会暂停
+     *
+     * @param output 输出流
+     * @throws IOException 导出失败
+     */
+    @Command("segments")
+    public void segments(final OutputStream output) throws IOException {
+        final Recording recording = recordingRef.get();
+        final RecordJournal journal = null == recording
+                ? null
+                : recording.journal;
+        if (null == journal) {
+            return;
+        }
+        journal.transferSegments(output);
+    }
+
+    private static void printStatus(final RecordJournal journal, final PrintWriter writer) {
+        writer.println(String.format("%-20s : %s", "FILE", journal.getFile()));
+        writer.println(String.format("%-20s : %d", "RECORDS", journal.getRecordCount()));
+        writer.println(String.format("%-20s : %d", "TRUNCATED", journal.getTruncatedCount()));
+        writer.println(String.format("%-20s : %d", "DROPPED", journal.getDroppedCount()));
+        writer.println(String.format("%-20s : %d", "DICTIONARY_OVERFLOW", journal.getDictionaryOverflowCount()));
+    }
+
+    private void closeQuietly(final RecordJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException cause) {
+            logger.warn("close record journal: {} failed.", journal.getFile(), cause);
+        }
+    }
+
+    @Override
+    public void onLoad() throws Throwable {
+
+    }
+
+    /**
+     * 模块卸载时停止录制，释放日志文件
+     */
+    @Override
+    public void onUnload() throws Throwable {
+        final Recording recording = recordingRef.getAndSet(null);
+        if (null != recording) {
+            recording.stop();
+        }
+    }
+
+    @Override
+    public void onActive() throws Throwable {
+
+    }
+
+    @Override
+    public void onFrozen() throws Throwable {
+
+    }
+
+    @Override
+    public void loadCompleted() {
+
+    }
+
+    /**
+     * 一次录制
+     * <p>
+     * 录制先被占住再逐步创建日志文件和观察者，启动期间可能被停止，停止后再挂上的日志文件和观察者由启动方负责释放
+     * </p>
+     */
+    private class Recording {
+
+        private volatile RecordJournal journal;
+        private EventWatcher watcher;
+        private boolean isStopped;
+
+        // 挂上日志文件，录制已经停止时返回false
+        synchronized boolean attach(final RecordJournal journal) {
+            if (isStopped) {
+                return false;
+            }
+            this.journal = journal;
+            return true;
+        }
+
+        // 挂上观察者，录制已经停止时返回false
+        synchronized boolean attach(final EventWatcher watcher) {
+            if (isStopped) {
+                return false;
+            }
+            this.watcher = watcher;
+            return true;
+        }
+
+        // 先停止观察再关闭日志，关闭时会等待正在写入的业务线程写完
+        synchronized void stop() {
+            if (isStopped) {
+                return;
+            }
+            isStopped = true;
+            if (null != watcher) {
+                watcher.onUnWatched();
+            }
+            if (null != journal) {
+                closeQuietly(journal);
+            }
+        }
+
+    }
+
+    /**
+     * 录制事件监听器，在业务线程上直接写入记录
+     */
+    private static class RecordEventListener implements EventListener {
+
+        private final RecordJournal journal;
+
+        RecordEventListener(final RecordJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public void onEvent(final Event event) throws Throwable {
+            switch (event.type) {
+                case BEFORE: {
+                    final BeforeEvent bEvent = (BeforeEvent) event;
+                    final int dictionaryId = journal.intern(
+                            null == bEvent.behaviorInfo ? -1 : bEvent.behaviorInfo.getId(),
+                            bEvent.javaClassName,
+                            bEvent.javaMethodName,
+                            bEvent.javaMethodDesc
+                    );
+                    journal.appendBefore(bEvent.longProcessId, bEvent.longInvokeId, dictionaryId, bEvent.argumentArray);
+                    break;
+                }
+                case RETURN: {
+                    final ReturnEvent rEvent = (ReturnEvent) event;
+                    journal.appendEnd(false, rEvent.longProcessId, rEvent.longInvokeId, rEvent.object);
+                    break;
+                }
+                case THROWS: {
+                    final ThrowsEvent tEvent = (ThrowsEvent) event;
+                    journal.appendEnd(true, tEvent.longProcessId, tEvent.longInvokeId, tEvent.throwable);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+    }
+
+}
@@ -10,21 +10,42 @@ import com.alibaba.jvm.sandbox.api.listener.ext.AdviceListener;
 import com.alibaba.jvm.sandbox.api.listener.ext.EventWatchBuilder;
 import com.alibaba.jvm.sandbox.api.listener.ext.EventWatcher;
 import com.alibaba.jvm.sandbox.api.resource.ModuleEventWatcher;
+import com.alibaba.jvm.sandbox.module.debug.profile.CallTree;
+import com.alibaba.jvm.sandbox.module.debug.profile.FrameStack;
+import com.alibaba.jvm.sandbox.module.debug.profile.FrameTable;
+import com.alibaba.jvm.sandbox.module.debug.profile.SpanStream;
 import com.alibaba.jvm.sandbox.module.debug.textui.TTree;
 import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 模仿Greys的trace命令
  * <p>测试用模块</p>
+ * <p>
+ * trace为每次顶层调用渲染一棵调用树；profile把调用树按路径聚合后定时输出折叠栈；
+ * span输出定长的二进制跨度记录，由调用方自行还原调用树
+ * </p>
  */
 @MetaInfServices(Module.class)
 @Information(id = "debug-trace", version = "0.0.2", author = "luanjia@taobao.com")
 public class DebugTraceModule extends ParamSupported implements Module {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     @Resource
     private ModuleEventWatcher moduleEventWatcher;
 
@@ -34,13 +55,17 @@ public class DebugTraceModule extends ParamSupported implements Module {
 
         final String cnPattern = getParameter(param, "class");
         final String mnPattern = getParameter(param, "method");
+
+        // 只跟踪匹配的方法调用，未匹配的方法调用不会被增强
+        final String callCnPattern = getParameter(param, "call-class", "*");
+        final String callMnPattern = getParameter(param, "call-method", "*");
         final Printer printer = new ConcurrentLinkedQueuePrinter(writer);
 
         final EventWatcher watcher = new EventWatchBuilder(moduleEventWatcher)
                 .onClass(cnPattern).includeSubClasses()
                 .onBehavior(mnPattern)
                 .onWatching()
-                .withCall()
+                .withCall(callCnPattern, callMnPattern)
                 .withProgress(new ProgressPrinter(printer))
                 .onWatch(new AdviceListener() {
 
@@ -142,4 +167,271 @@ public class DebugTraceModule extends ParamSupported implements Module {
 
     }
 
+
+    /**
+     * 聚合调用树，按固定间隔以折叠栈格式输出，可以直接交给flamegraph.pl等工具生成火焰图
+     * <p>
+     * 参数value决定每行的数值：self(自身耗时，微秒，默认)、total(总耗时，微秒)、count(调用次数)
+     * </p>
+     */
+    @Command("profile")
+    public void profile(final Map<String, String> param, final PrintWriter writer) {
+
+        final String cnPattern = getParameter(param, "class");
+        final String mnPattern = getParameter(param, "method");
+        final String callCnPattern = getParameter(param, "call-class", "*");
+        final String callMnPattern = getParameter(param, "call-method", "*");
+        final int intervalSec = getParameter(param, "interval", Integer.class, 5);
+        final int maxNodes = getParameter(param, "max-nodes", Integer.class, 65536);
+        final String value = getParameter(param, "value", "self");
+        final Printer printer = new ConcurrentLinkedQueuePrinter(writer);
+
+        final FrameTable frameTable = new FrameTable();
+
+        // 每个线程独占一棵调用树，输出时再按折叠栈合并
+        // 调用树只由callTrees持有，线程上只保留弱引用，命令结束后不会因为线程长期存活而阻止模块被卸载
+        final List<CallTree> callTrees = new CopyOnWriteArrayList<CallTree>();
+        final ThreadLocal<WeakReference<CallTree>> callTreeRef = new ThreadLocal<WeakReference<CallTree>>();
+
+        final EventWatcher watcher = new EventWatchBuilder(moduleEventWatcher)
+                .onClass(cnPattern).includeSubClasses()
+                .onBehavior(mnPattern)
+                .onWatching()
+                .withCall(callCnPattern, callMnPattern)
+                .withProgress(new ProgressPrinter(printer))
+                .onWatch(new FrameAdviceListener(frameTable) {
+
+                    @Override
+                    FrameStack newFrameStack() {
+                        final WeakReference<CallTree> ref = callTreeRef.get();
+                        CallTree callTree = null == ref
+                                ? null
+                                : ref.get();
+                        if (null == callTree) {
+                            callTree = new CallTree(maxNodes);
+                            callTrees.add(callTree);
+                            callTreeRef.set(new WeakReference<CallTree>(callTree));
+                        }
+                        return new ProfileFrameStack(callTree);
+                    }
+
+                    @Override
+                    int getNode(final FrameStack stack, final int frameId) {
+                        return ((ProfileFrameStack) stack).callTree.child(stack.getTopNode(), frameId);
+                    }
+
+                    @Override
+                    void onExit(final Advice advice, final FrameStack stack, final byte flags, final boolean isEmpty) {
+                        ((ProfileFrameStack) stack).callTree.exit(
+                                stack.getExitNode(),
+                                stack.getExitTotalNanos(),
+                                stack.getExitSelfNanos()
+                        );
+                    }
+
+                });
+
+        try {
+            printer.println(String.format(
+                    "profiling on [%s#%s], interval=%ds, value=%s.\nPress CTRL_C abort it!",
+                    cnPattern,
+                    mnPattern,
+                    intervalSec,
+                    value
+            ));
+            while (printer.waitingForBroken(intervalSec, TimeUnit.SECONDS)) {
+                final Map<String, long[]> collapsed = new TreeMap<String, long[]>();
+                for (final CallTree callTree : callTrees) {
+                    callTree.drainTo(frameTable, collapsed);
+                }
+                printer.println(String.format("# %tF %<tT", new Date()));
+                for (final Map.Entry<String, long[]> entry : collapsed.entrySet()) {
+                    final long[] values = entry.getValue();
+                    final long v = "count".equals(value)
+                            ? values[0]
+                            : ("total".equals(value) ? values[1] : values[2]) / 1000;
+                    printer.println(entry.getKey() + " " + v);
+                }
+            }
+        } finally {
+            watcher.onUnWatched();
+        }
+
+    }
+
+    /**
+     * 以定长二进制跨度记录的形式持续输出每个帧的耗时，不在目标JVM中拼接和渲染调用树，
+     * 记录格式见{@link SpanStream}
+     */
+    @Command("span")
+    public void span(final Map<String, String> param, final OutputStream output) throws IOException {
+
+        final String cnPattern = getParameter(param, "class");
+        final String mnPattern = getParameter(param, "method");
+        final String callCnPattern = getParameter(param, "call-class", "*");
+        final String callMnPattern = getParameter(param, "call-method", "*");
+        final int maxBatches = getParameter(param, "max-batches", Integer.class, 1024);
+
+        final FrameTable frameTable = new FrameTable();
+        final SpanStream spanStream = new SpanStream(frameTable, maxBatches);
+
+        final EventWatcher watcher = new EventWatchBuilder(moduleEventWatcher)
+                .onClass(cnPattern).includeSubClasses()
+                .onBehavior(mnPattern)
+                .onWatching()
+                .withCall(callCnPattern, callMnPattern)
+                .onWatch(new FrameAdviceListener(frameTable) {
+
+                    @Override
+                    FrameStack newFrameStack() {
+                        return new SpanFrameStack();
+                    }
+
+                    @Override
+                    int getNode(final FrameStack stack, final int frameId) {
+                        return CallTree.ROOT;
+                    }
+
+                    @Override
+                    void onExit(final Advice advice, final FrameStack stack, final byte flags, final boolean isEmpty) {
+                        final SpanFrameStack spanFrameStack = (SpanFrameStack) stack;
+                        spanFrameStack.batch = spanStream.append(
+                                spanFrameStack.batch,
+                                stack,
+                                flags,
+                                advice.getLongProcessId(),
+                                advice.getLongInvokeId()
+                        );
+
+                        // 顶层调用结束时立即提交，避免跨度长时间滞留在批次中
+                        if (isEmpty) {
+                            spanStream.commit(spanFrameStack.batch);
+                            spanFrameStack.batch = null;
+                        }
+                    }
+
+                });
+
+        try {
+            spanStream.transferTo(output, 1000L);
+        } finally {
+            watcher.onUnWatched();
+            if (spanStream.getDroppedSpanCount() > 0) {
+                logger.info("span on [{}#{}] finished, dropped {} spans.", cnPattern, mnPattern, spanStream.getDroppedSpanCount());
+            }
+        }
+
+    }
+
+    /**
+     * 维护帧栈的通知监听器，被观察的行为和方法调用都作为帧入栈出栈
+     */
+    private abstract static class FrameAdviceListener extends AdviceListener {
+
+        private final FrameTable frameTable;
+
+        FrameAdviceListener(final FrameTable frameTable) {
+            this.frameTable = frameTable;
+        }
+
+        /**
+         * 创建顶层调用的帧栈
+         */
+        abstract FrameStack newFrameStack();
+
+        /**
+         * 获取帧在调用树上的节点
+         */
+        abstract int getNode(FrameStack stack, int frameId);
+
+        /**
+         * 帧出栈
+         *
+         * @param isEmpty 帧栈是否已经清空（顶层调用结束）
+         */
+        abstract void onExit(Advice advice, FrameStack stack, byte flags, boolean isEmpty);
+
+        private void enter(final FrameStack stack, final int frameId, final int lineNum) {
+            stack.enter(frameId, getNode(stack, frameId), lineNum);
+        }
+
+        private void exit(final Advice advice, final byte flags) {
+            final FrameStack stack = advice.getProcessTop().attachment();
+            onExit(advice, stack, flags, stack.exit());
+        }
+
+        @Override
+        protected void before(final Advice advice) throws Throwable {
+            final FrameStack stack;
+            if (advice.isProcessTop()) {
+                advice.attach(stack = newFrameStack());
+            } else {
+                stack = advice.getProcessTop().attachment();
+            }
+            enter(stack, frameTable.intern(advice.getBehavior()), -1);
+        }
+
+        @Override
+        protected void afterReturning(final Advice advice) throws Throwable {
+            exit(advice, (byte) 0);
+        }
+
+        @Override
+        protected void afterThrowing(final Advice advice) throws Throwable {
+            exit(advice, SpanStream.FLAG_THROWS);
+        }
+
+        @Override
+        protected void beforeCall(final Advice advice,
+                                  final int callLineNum,
+                                  final String callJavaClassName,
+                                  final String callJavaMethodName,
+                                  final String callJavaMethodDesc) {
+            final FrameStack stack = advice.getProcessTop().attachment();
+            enter(stack, frameTable.intern(callJavaClassName, callJavaMethodName), callLineNum);
+        }
+
+        @Override
+        protected void afterCallReturning(final Advice advice,
+                                          final int callLineNum,
+                                          final String callJavaClassName,
+                                          final String callJavaMethodName,
+                                          final String callJavaMethodDesc) {
+            exit(advice, SpanStream.FLAG_CALL);
+        }
+
+        @Override
+        protected void afterCallThrowing(final Advice advice,
+                                         final int callLineNum,
+                                         final String callJavaClassName,
+                                         final String callJavaMethodName,
+                                         final String callJavaMethodDesc,
+                                         final String callThrowJavaClassName) {
+            exit(advice, (byte) (SpanStream.FLAG_CALL | SpanStream.FLAG_THROWS));
+        }
+
+    }
+
+    /**
+     * 聚合模式的帧栈，记录所属线程的调用树
+     */
+    private static class ProfileFrameStack extends FrameStack {
+
+        private final CallTree callTree;
+
+        ProfileFrameStack(final CallTree callTree) {
+            this.callTree = callTree;
+        }
+
+    }
+
+    /**
+     * 跨度模式的帧栈，记录当前写入的批次
+     */
+    private static class SpanFrameStack extends FrameStack {
+
+        private ByteBuffer batch;
+
+    }
+
 }
@@ -0,0 +1,180 @@
+package com.alibaba.jvm.sandbox.module.debug.profile;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 聚合调用树
+ * <p>
+ * 把调用路径相同的调用合并到同一个节点上，累计调用次数、总耗时和自身耗时。
+ * 节点的所有数据都保存在按节点编号索引的基本类型数组中，子节点通过(父节点,帧ID)的开放寻址哈希表查找
+ * </p>
+ * <p>
+ * 每个线程独占一棵调用树，只有输出统计结果时才会和输出线程竞争，所以直接使用对象锁
+ * </p>
+ */
+public class CallTree {
+
+    /**
+     * 根节点
+     */
+    public static final int ROOT = 0;
+
+    // 节点数超过上限后，新的调用路径都合并到这个节点上
+    private static final int TRUNCATED = 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int maxNodes;
+
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] frameIds = new int[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private long[] totalNanos = new long[INITIAL_CAPACITY];
+    private long[] selfNanos = new long[INITIAL_CAPACITY];
+    private int size;
+
+    // 子节点索引：KEY为(父节点<<32|帧ID)，VALUE为节点编号+1，0表示空位
+    private long[] childKeys = new long[INITIAL_CAPACITY * 2];
+    private int[] childNodes = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * 构造聚合调用树
+     *
+     * @param maxNodes 节点数上限
+     */
+    public CallTree(final int maxNodes) {
+        this.maxNodes = maxNodes;
+        parents[ROOT] = -1;
+        frameIds[ROOT] = -1;
+        parents[TRUNCATED] = ROOT;
+        frameIds[TRUNCATED] = -1;
+        size = 2;
+    }
+
+    /**
+     * 查找子节点，不存在则创建
+     *
+     * @param parent  父节点
+     * @param frameId 帧ID
+     * @return 子节点
+     */
+    public synchronized int child(final int parent, final int frameId) {
+        if (parent == TRUNCATED) {
+            return TRUNCATED;
+        }
+        final long key = ((long) parent << 32) | (frameId & 0xFFFFFFFFL);
+        final int mask = childKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (childNodes[slot] != 0) {
+            if (childKeys[slot] == key) {
+                return childNodes[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= maxNodes) {
+            return TRUNCATED;
+        }
+
+        final int node = size++;
+        ensureNodeCapacity();
+        parents[node] = parent;
+        frameIds[node] = frameId;
+        childKeys[slot] = key;
+        childNodes[slot] = node + 1;
+
+        // 负载因子超过0.5后扩容
+        if (size * 2 > childKeys.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    /**
+     * 记录一次调用结束
+     *
+     * @param node       节点
+     * @param totalNanos 总耗时
+     * @param selfNanos  自身耗时(总耗时减去子节点耗时)
+     */
+    public synchronized void exit(final int node, final long totalNanos, final long selfNanos) {
+        this.counts[node]++;
+        this.totalNanos[node] += totalNanos;
+        this.selfNanos[node] += selfNanos;
+    }
+
+    /**
+     * 把统计结果按折叠栈合并到结果中，之后清零所有计数
+     * <p>节点结构保留，正在进行中的调用仍然可以继续记录到原来的节点上</p>
+     *
+     * @param frameTable 帧表
+     * @param collapsed  折叠栈:[调用次数,总耗时,自身耗时]
+     */
+    public synchronized void drainTo(final FrameTable frameTable,
+                                     final Map<String, long[]> collapsed) {
+        final StringBuilder path = new StringBuilder();
+        for (int node = TRUNCATED; node < size; node++) {
+            if (counts[node] == 0) {
+                continue;
+            }
+            path.setLength(0);
+            appendPath(frameTable, node, path);
+            final String stack = path.toString();
+            long[] values = collapsed.get(stack);
+            if (null == values) {
+                collapsed.put(stack, values = new long[3]);
+            }
+            values[0] += counts[node];
+            values[1] += totalNanos[node];
+            values[2] += selfNanos[node];
+            counts[node] = 0;
+            totalNanos[node] = 0;
+            selfNanos[node] = 0;
+        }
+    }
+
+    private void appendPath(final FrameTable frameTable, final int node, final StringBuilder path) {
+        if (parents[node] != ROOT) {
+            appendPath(frameTable, parents[node], path);
+            path.append(';');
+        }
+        path.append(node == TRUNCATED ? "[truncated]" : frameTable.getName(frameIds[node]));
+    }
+
+    private void ensureNodeCapacity() {
+        if (size <= parents.length) {
+            return;
+        }
+        final int capacity = parents.length << 1;
+        parents = Arrays.copyOf(parents, capacity);
+        frameIds = Arrays.copyOf(frameIds, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        totalNanos = Arrays.copyOf(totalNanos, capacity);
+        selfNanos = Arrays.copyOf(selfNanos, capacity);
+    }
+
+    private void rehash() {
+        final long[] oldKeys = childKeys;
+        final int[] oldNodes = childNodes;
+        childKeys = new long[oldKeys.length << 1];
+        childNodes = new int[oldNodes.length << 1];
+        final int mask = childKeys.length - 1;
+        for (int index = 0; index < oldKeys.length; index++) {
+            if (oldNodes[index] == 0) {
+                continue;
+            }
+            int slot = mix(oldKeys[index]) & mask;
+            while (childNodes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            childKeys[slot] = oldKeys[index];
+            childNodes[slot] = oldNodes[index];
+        }
+    }
+
+    private static int mix(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
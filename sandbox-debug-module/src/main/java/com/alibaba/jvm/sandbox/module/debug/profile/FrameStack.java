@@ -0,0 +1,113 @@
+package com.alibaba.jvm.sandbox.module.debug.profile;
+
+import java.util.Arrays;
+
+/**
+ * 帧栈
+ * <p>
+ * 记录一次顶层调用过程中尚未结束的帧，挂在顶层{@code Advice}上，只会被调用线程访问。
+ * 出栈后帧的信息保存在{@code exit*}字段中，直到下一次出栈
+ * </p>
+ */
+public class FrameStack {
+
+    private int depth;
+    private int[] frameIds = new int[16];
+    private int[] nodes = new int[16];
+    private int[] lineNums = new int[16];
+    private long[] beginNanos = new long[16];
+    private long[] childNanos = new long[16];
+
+    private int exitFrameId;
+    private int exitNode;
+    private int exitLineNum;
+    private int exitDepth;
+    private long exitBeginNanos;
+    private long exitTotalNanos;
+    private long exitSelfNanos;
+
+    /**
+     * 帧入栈
+     *
+     * @param frameId 帧ID
+     * @param node    帧在调用树上的节点，不聚合时为{@link CallTree#ROOT}
+     * @param lineNum 调用所在行号，被观察的行为为-1
+     */
+    public void enter(final int frameId, final int node, final int lineNum) {
+        if (depth == frameIds.length) {
+            final int capacity = depth << 1;
+            frameIds = Arrays.copyOf(frameIds, capacity);
+            nodes = Arrays.copyOf(nodes, capacity);
+            lineNums = Arrays.copyOf(lineNums, capacity);
+            beginNanos = Arrays.copyOf(beginNanos, capacity);
+            childNanos = Arrays.copyOf(childNanos, capacity);
+        }
+        frameIds[depth] = frameId;
+        nodes[depth] = node;
+        lineNums[depth] = lineNum;
+        childNanos[depth] = 0;
+        beginNanos[depth] = System.nanoTime();
+        depth++;
+    }
+
+    /**
+     * 帧出栈，计算帧的总耗时和自身耗时，并累加到上一帧的子帧耗时中
+     *
+     * @return 帧栈是否已经清空
+     */
+    public boolean exit() {
+        final long endNanos = System.nanoTime();
+        depth--;
+        exitFrameId = frameIds[depth];
+        exitNode = nodes[depth];
+        exitLineNum = lineNums[depth];
+        exitDepth = depth;
+        exitBeginNanos = beginNanos[depth];
+        exitTotalNanos = endNanos - exitBeginNanos;
+        exitSelfNanos = exitTotalNanos - childNanos[depth];
+        if (depth > 0) {
+            childNanos[depth - 1] += exitTotalNanos;
+        }
+        return depth == 0;
+    }
+
+    /**
+     * 获取栈顶帧在调用树上的节点
+     *
+     * @return 栈顶帧的节点，栈为空时返回{@link CallTree#ROOT}
+     */
+    public int getTopNode() {
+        return depth == 0
+                ? CallTree.ROOT
+                : nodes[depth - 1];
+    }
+
+    public int getExitFrameId() {
+        return exitFrameId;
+    }
+
+    public int getExitNode() {
+        return exitNode;
+    }
+
+    public int getExitLineNum() {
+        return exitLineNum;
+    }
+
+    public int getExitDepth() {
+        return exitDepth;
+    }
+
+    public long getExitBeginNanos() {
+        return exitBeginNanos;
+    }
+
+    public long getExitTotalNanos() {
+        return exitTotalNanos;
+    }
+
+    public long getExitSelfNanos() {
+        return exitSelfNanos;
+    }
+
+}
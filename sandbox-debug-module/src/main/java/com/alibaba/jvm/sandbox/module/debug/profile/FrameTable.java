@@ -0,0 +1,107 @@
+package com.alibaba.jvm.sandbox.module.debug.profile;
+
+import com.alibaba.jvm.sandbox.api.listener.ext.Behavior;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 帧表
+ * <p>
+ * 为调用树中的每个帧（被观察的行为或者被调用的方法）分配一个整数ID，调用树和跨度记录中只引用帧ID，
+ * 帧名称只在第一次出现时拼接一次
+ * </p>
+ */
+public class FrameTable {
+
+    // 被观察行为的Method/Constructor:帧ID
+    private final ConcurrentHashMap<Object, Integer> behaviorFrameIds = new ConcurrentHashMap<Object, Integer>();
+
+    // 被调用方法所在的类:被调用方法名称:帧ID，分两层查找，查找已登记的帧时不需要创建组合KEY
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> callFrameIds
+            = new ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>>();
+
+    // 帧名称，按帧ID索引，写时复制
+    private volatile String[] frameNames = new String[256];
+
+    // 帧数量，在帧名称发布之后才增加，读到的帧数量以内的帧名称都已经可见
+    private volatile int size = 0;
+
+    /**
+     * 登记被观察的行为
+     *
+     * @param behavior 行为
+     * @return 帧ID
+     */
+    public int intern(final Behavior behavior) {
+        // Behavior没有实现按值比较，以其代表的Method/Constructor作为KEY
+        final Object key = behavior.getTarget();
+        final Integer frameId = behaviorFrameIds.get(key);
+        return null != frameId
+                ? frameId
+                : register(behaviorFrameIds, key, behavior.getDeclaringClass().getName() + "." + behavior.getName());
+    }
+
+    /**
+     * 登记被调用的方法
+     *
+     * @param callJavaClassName  被调用方法所在的类
+     * @param callJavaMethodName 被调用方法名称
+     * @return 帧ID
+     */
+    public int intern(final String callJavaClassName,
+                      final String callJavaMethodName) {
+        ConcurrentHashMap<String, Integer> methodFrameIds = callFrameIds.get(callJavaClassName);
+        if (null == methodFrameIds) {
+            final ConcurrentHashMap<String, Integer> newMethodFrameIds = new ConcurrentHashMap<String, Integer>();
+            methodFrameIds = callFrameIds.putIfAbsent(callJavaClassName, newMethodFrameIds);
+            if (null == methodFrameIds) {
+                methodFrameIds = newMethodFrameIds;
+            }
+        }
+        final Integer frameId = methodFrameIds.get(callJavaMethodName);
+        return null != frameId
+                ? frameId
+                : register(methodFrameIds, callJavaMethodName, callJavaClassName + "." + callJavaMethodName);
+    }
+
+    private synchronized <K> int register(final ConcurrentHashMap<K, Integer> frameIds,
+                                          final K key,
+                                          final String name) {
+        final Integer exist = frameIds.get(key);
+        if (null != exist) {
+            return exist;
+        }
+        String[] names = frameNames;
+        if (size == names.length) {
+            final String[] newNames = new String[names.length << 1];
+            System.arraycopy(names, 0, newNames, 0, names.length);
+            names = newNames;
+        }
+        final int frameId = size;
+        names[frameId] = name;
+        frameNames = names;
+        size = frameId + 1;
+        frameIds.put(key, frameId);
+        return frameId;
+    }
+
+    /**
+     * 获取帧名称
+     *
+     * @param frameId 帧ID
+     * @return 帧名称
+     */
+    public String getName(final int frameId) {
+        return frameNames[frameId];
+    }
+
+    /**
+     * 获取已登记的帧数量，帧ID从0开始连续分配
+     *
+     * @return 帧数量
+     */
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.alibaba.jvm.sandbox.module.debug.profile;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图
+ * <p>
+ * 按对数-线性分桶：每个2的幂区间再等分为{@link #SUB_BUCKET_COUNT}个桶，桶内的相对误差不超过1/{@link #SUB_BUCKET_COUNT}。
+ * 耗时以微秒记录，超过2^32微秒的耗时记入最后一个桶
+ * </p>
+ * <p>
+ * 记录时只对线程所在分段的计数器做一次原子累加，不加锁也不重试；
+ * 只有读取时才把各分段合并成快照
+ * </p>
+ */
+public class LatencyHistogram {
+
+    // 每个2的幂区间的桶数：2^SUB_BUCKET_BITS
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+    // 记录的最大耗时为2^MAX_VALUE_BITS-1微秒
+    private static final int MAX_VALUE_BITS = 32;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    /**
+     * 桶数量
+     */
+    public static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    // 分段中各计数器的位置，之后是各个桶
+    private static final int ERRORS = 0;
+    private static final int SUM = 1;
+    private static final int BUCKETS = 2;
+    private static final int STRIDE = BUCKETS + BUCKET_COUNT;
+
+    private final String name;
+    private final int stripeMask;
+    private final AtomicLongArray cells;
+
+    /**
+     * 构造耗时直方图
+     *
+     * @param name    名称
+     * @param stripes 分段数量，必须是2的幂
+     */
+    public LatencyHistogram(final String name, final int stripes) {
+        if (stripes <= 0 || (stripes & (stripes - 1)) != 0) {
+            throw new IllegalArgumentException("stripes must be power of 2, current=" + stripes);
+        }
+        this.name = name;
+        this.stripeMask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * STRIDE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param costNanos 耗时(纳秒)
+     * @param isError   是否以异常结束
+     */
+    public void record(final long costNanos, final boolean isError) {
+        final long micros = Math.min(Math.max(costNanos / 1000, 0), MAX_VALUE);
+        final int base = ((int) Thread.currentThread().getId() & stripeMask) * STRIDE;
+        cells.getAndIncrement(base + BUCKETS + getBucketIndex(micros));
+        cells.getAndAdd(base + SUM, micros);
+        if (isError) {
+            cells.getAndIncrement(base + ERRORS);
+        }
+    }
+
+    /**
+     * 计算耗时所在的桶
+     *
+     * @param micros 耗时(微秒)
+     * @return 桶编号
+     */
+    static int getBucketIndex(final long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((micros >>> shift) & SUB_BUCKET_MASK);
+    }
+
+    /**
+     * 计算桶能容纳的最大耗时
+     *
+     * @param index 桶编号
+     * @return 最大耗时(微秒)
+     */
+    static long getBucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long sub = SUB_BUCKET_COUNT + (index & SUB_BUCKET_MASK);
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 合并所有分段，生成快照
+     *
+     * @param isReset 是否在读取的同时清零，清零期间的记录会被计入下一个快照
+     * @return 快照
+     */
+    public Snapshot snapshot(final boolean isReset) {
+        final long[] buckets = new long[BUCKET_COUNT];
+        long errors = 0;
+        long sum = 0;
+        for (int base = 0; base < cells.length(); base += STRIDE) {
+            errors += read(base + ERRORS, isReset);
+            sum += read(base + SUM, isReset);
+            for (int index = 0; index < BUCKET_COUNT; index++) {
+                buckets[index] += read(base + BUCKETS + index, isReset);
+            }
+        }
+        return new Snapshot(name, buckets, errors, sum);
+    }
+
+    private long read(final int cell, final boolean isReset) {
+        return isReset
+                ? cells.getAndSet(cell, 0)
+                : cells.get(cell);
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static class Snapshot {
+
+        private final String name;
+        private final long[] buckets;
+        private final long count;
+        private final long errors;
+        private final long sum;
+
+        Snapshot(final String name, final long[] buckets, final long errors, final long sum) {
+            this.name = name;
+            this.buckets = buckets;
+            this.errors = errors;
+            this.sum = sum;
+            long count = 0;
+            for (final long bucket : buckets) {
+                count += bucket;
+            }
+            this.count = count;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * 获取平均耗时
+         *
+         * @return 平均耗时(微秒)
+         */
+        public long getMean() {
+            return count == 0
+                    ? 0
+                    : sum / count;
+        }
+
+        /**
+         * 获取百分位耗时
+         *
+         * @param percentile 百分位，取值(0,100]
+         * @return 百分位所在桶能容纳的最大耗时(微秒)
+         */
+        public long getPercentile(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            // 先乘后除，避免99.9/100这样的浮点误差把排名向上取整多算一位
+            final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int index = 0; index < buckets.length; index++) {
+                seen += buckets[index];
+                if (seen >= rank) {
+                    return getBucketUpperBound(index);
+                }
+            }
+            return getBucketUpperBound(buckets.length - 1);
+        }
+
+        /**
+         * 获取最大耗时
+         *
+         * @return 最大耗时所在桶能容纳的最大耗时(微秒)
+         */
+        public long getMax() {
+            return getPercentile(100);
+        }
+
+    }
+
+}
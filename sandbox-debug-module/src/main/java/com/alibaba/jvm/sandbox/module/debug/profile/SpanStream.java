@@ -0,0 +1,204 @@
+package com.alibaba.jvm.sandbox.module.debug.profile;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 跨度流
+ * <p>
+ * 调用线程把每个帧的跨度编码为定长的二进制记录，按批写入缓冲区，批满或顶层调用结束时提交；
+ * 输出线程把提交的批次依次写到输出流。缓冲区数量有上限，用完后丢弃跨度并计数，不会让调用线程等待
+ * </p>
+ * <p>
+ * 流格式：{@code [int MAGIC][int VERSION][int SPAN_RECORD_SIZE]}，之后是若干条记录，每条记录以类型字节开头：
+ * </p>
+ * <pre>
+ * HEARTBEAT : [byte 0]
+ * FRAME     : [byte 1][int frameId][short length][utf8 name]
+ * SPAN      : [byte 2][byte flags][short depth][int frameId][int lineNum][long processId][long invokeId]
+ *             [long threadId][long beginNanos][long costNanos]
+ * </pre>
+ * <p>帧定义总是先于引用它的跨度输出</p>
+ */
+public class SpanStream {
+
+    public static final int MAGIC = 0x53424A54;
+    public static final int VERSION = 2;
+
+    public static final byte TYPE_HEARTBEAT = 0;
+    public static final byte TYPE_FRAME = 1;
+    public static final byte TYPE_SPAN = 2;
+
+    /**
+     * 跨度以异常结束
+     */
+    public static final byte FLAG_THROWS = 1;
+
+    /**
+     * 跨度是一次方法调用，而不是被观察的行为
+     */
+    public static final byte FLAG_CALL = 2;
+
+    /**
+     * 跨度记录大小(字节)
+     */
+    public static final int SPAN_RECORD_SIZE = 52;
+
+    // 每批最多容纳的跨度数
+    private static final int SPANS_PER_BATCH = 128;
+
+    private final FrameTable frameTable;
+    private final int maxBatches;
+
+    private final BlockingQueue<ByteBuffer> freeBatches;
+    private final BlockingQueue<ByteBuffer> committedBatches;
+    private final AtomicInteger allocatedBatchCount = new AtomicInteger();
+    private final AtomicLong droppedSpanCount = new AtomicLong();
+
+    // 已经输出的帧定义数量，只在输出线程访问
+    private int transferredFrameCount;
+
+    /**
+     * 构造跨度流
+     *
+     * @param frameTable 帧表
+     * @param maxBatches 缓冲区批次数量上限
+     */
+    public SpanStream(final FrameTable frameTable, final int maxBatches) {
+        this.frameTable = frameTable;
+        this.maxBatches = maxBatches;
+        this.freeBatches = new ArrayBlockingQueue<ByteBuffer>(maxBatches);
+        this.committedBatches = new ArrayBlockingQueue<ByteBuffer>(maxBatches);
+    }
+
+    /**
+     * 追加一条跨度记录
+     *
+     * @param batch     当前批次，可以为null
+     * @param stack     刚刚出栈的帧栈
+     * @param flags     跨度标记
+     * @param processId 64位调用过程ID
+     * @param invokeId  64位调用ID
+     * @return 追加后的当前批次，没有可用的缓冲区时返回null
+     */
+    public ByteBuffer append(ByteBuffer batch,
+                             final FrameStack stack,
+                             final byte flags,
+                             final long processId,
+                             final long invokeId) {
+        if (null != batch
+                && batch.remaining() < SPAN_RECORD_SIZE) {
+            commit(batch);
+            batch = null;
+        }
+        if (null == batch
+                && null == (batch = borrow())) {
+            droppedSpanCount.incrementAndGet();
+            return null;
+        }
+        batch.put(TYPE_SPAN)
+                .put(flags)
+                .putShort((short) Math.min(stack.getExitDepth(), Short.MAX_VALUE))
+                .putInt(stack.getExitFrameId())
+                .putInt(stack.getExitLineNum())
+                .putLong(processId)
+                .putLong(invokeId)
+                .putLong(Thread.currentThread().getId())
+                .putLong(stack.getExitBeginNanos())
+                .putLong(stack.getExitTotalNanos());
+        return batch;
+    }
+
+    /**
+     * 提交批次，交给输出线程输出
+     *
+     * @param batch 批次，可以为null
+     */
+    public void commit(final ByteBuffer batch) {
+        if (null == batch) {
+            return;
+        }
+        if (batch.position() == 0
+                || !committedBatches.offer(batch)) {
+            recycle(batch);
+        }
+    }
+
+    private ByteBuffer borrow() {
+        final ByteBuffer batch = freeBatches.poll();
+        if (null != batch) {
+            return batch;
+        }
+        if (allocatedBatchCount.incrementAndGet() > maxBatches) {
+            allocatedBatchCount.decrementAndGet();
+            return null;
+        }
+        return ByteBuffer.allocate(SPAN_RECORD_SIZE * SPANS_PER_BATCH);
+    }
+
+    private void recycle(final ByteBuffer batch) {
+        batch.clear();
+        freeBatches.offer(batch);
+    }
+
+    /**
+     * 持续把提交的批次写到输出流，直到输出失败或线程被中断
+     *
+     * @param output      输出流
+     * @param heartbeatMs 没有跨度时输出心跳的间隔，用于及时发现对端断开
+     * @throws IOException 输出失败
+     */
+    public void transferTo(final OutputStream output, final long heartbeatMs) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(output);
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(SPAN_RECORD_SIZE);
+        dos.flush();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final ByteBuffer batch = committedBatches.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                transferFrames(dos);
+                if (null == batch) {
+                    dos.writeByte(TYPE_HEARTBEAT);
+                } else {
+                    try {
+                        dos.write(batch.array(), 0, batch.position());
+                    } finally {
+                        recycle(batch);
+                    }
+                }
+                dos.flush();
+            }
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void transferFrames(final DataOutputStream dos) throws IOException {
+        final int frameCount = frameTable.size();
+        for (; transferredFrameCount < frameCount; transferredFrameCount++) {
+            final byte[] name = frameTable.getName(transferredFrameCount).getBytes("UTF-8");
+            dos.writeByte(TYPE_FRAME);
+            dos.writeInt(transferredFrameCount);
+            dos.writeShort(Math.min(name.length, Short.MAX_VALUE));
+            dos.write(name, 0, Math.min(name.length, Short.MAX_VALUE));
+        }
+    }
+
+    /**
+     * 获取因缓冲区用完而丢弃的跨度数
+     *
+     * @return 丢弃的跨度数
+     */
+    public long getDroppedSpanCount() {
+        return droppedSpanCount.get();
+    }
+
+}
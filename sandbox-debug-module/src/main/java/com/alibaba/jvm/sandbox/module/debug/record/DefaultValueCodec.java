@@ -0,0 +1,171 @@
+package com.alibaba.jvm.sandbox.module.debug.record;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+
+/**
+ * 默认的值编解码器
+ * <p>
+ * 只完整记录基本类型、包装类型、字符串和枚举；异常记录类名和消息；
+ * 其它对象只记录类名和对象标识，不会调用业务对象的{@code toString()}。
+ * 字符串超过上限时被截断
+ * </p>
+ */
+public class DefaultValueCodec implements ValueCodec {
+
+    // 默认单个字符串最多记录的字符数
+    private static final int DEFAULT_MAX_STRING_LENGTH = 256;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_BOOLEAN = 1;
+    private static final byte TAG_BYTE = 2;
+    private static final byte TAG_SHORT = 3;
+    private static final byte TAG_CHAR = 4;
+    private static final byte TAG_INT = 5;
+    private static final byte TAG_LONG = 6;
+    private static final byte TAG_FLOAT = 7;
+    private static final byte TAG_DOUBLE = 8;
+    private static final byte TAG_STRING = 9;
+    private static final byte TAG_ENUM = 10;
+    private static final byte TAG_THROWABLE = 11;
+    private static final byte TAG_ARRAY = 12;
+    private static final byte TAG_OBJECT = 13;
+
+    private final int maxStringLength;
+
+    public DefaultValueCodec() {
+        this(DEFAULT_MAX_STRING_LENGTH);
+    }
+
+    /**
+     * 构造默认的值编解码器
+     *
+     * @param maxStringLength 单个字符串最多记录的字符数
+     */
+    public DefaultValueCodec(final int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+
+    @Override
+    public void encode(final Object value, final ByteBuffer buffer) {
+        if (null == value) {
+            buffer.put(TAG_NULL);
+        } else if (value instanceof String) {
+            buffer.put(TAG_STRING);
+            putString(buffer, (String) value);
+        } else if (value instanceof Integer) {
+            buffer.put(TAG_INT).putInt((Integer) value);
+        } else if (value instanceof Long) {
+            buffer.put(TAG_LONG).putLong((Long) value);
+        } else if (value instanceof Boolean) {
+            buffer.put(TAG_BOOLEAN).put((byte) ((Boolean) value ? 1 : 0));
+        } else if (value instanceof Byte) {
+            buffer.put(TAG_BYTE).put((Byte) value);
+        } else if (value instanceof Short) {
+            buffer.put(TAG_SHORT).putShort((Short) value);
+        } else if (value instanceof Character) {
+            buffer.put(TAG_CHAR).putChar((Character) value);
+        } else if (value instanceof Float) {
+            buffer.put(TAG_FLOAT).putFloat((Float) value);
+        } else if (value instanceof Double) {
+            buffer.put(TAG_DOUBLE).putDouble((Double) value);
+        } else if (value instanceof Enum) {
+            buffer.put(TAG_ENUM);
+            // 带有类体的枚举常量是枚举的匿名子类，记录声明它的枚举类
+            putString(buffer, ((Enum<?>) value).getDeclaringClass().getName());
+            putString(buffer, ((Enum<?>) value).name());
+        } else if (value instanceof Throwable) {
+            buffer.put(TAG_THROWABLE);
+            putString(buffer, value.getClass().getName());
+            putString(buffer, ((Throwable) value).getMessage());
+        } else if (value.getClass().isArray()) {
+            buffer.put(TAG_ARRAY);
+            putString(buffer, value.getClass().getName());
+            buffer.putInt(Array.getLength(value));
+        } else {
+            buffer.put(TAG_OBJECT);
+            putString(buffer, value.getClass().getName());
+            buffer.putInt(System.identityHashCode(value));
+        }
+    }
+
+    // 字符串写入字符数和每个字符的变长编码（同Modified UTF-8），超过上限的部分被截断，字符数为-1表示null
+    private void putString(final ByteBuffer buffer, final String string) {
+        if (null == string) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        final int length = Math.min(string.length(), Math.min(maxStringLength, Short.MAX_VALUE));
+        buffer.putShort((short) length);
+        for (int index = 0; index < length; index++) {
+            final char c = string.charAt(index);
+            if (c > 0 && c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        final int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        for (int index = 0; index < length; index++) {
+            final int b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[index] = (char) b;
+            } else if (b < 0xE0) {
+                chars[index] = (char) (((b & 0x1F) << 6) | (buffer.get() & 0x3F));
+            } else {
+                chars[index] = (char) (((b & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+            }
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String decode(final ByteBuffer buffer) {
+        final byte tag = buffer.get();
+        switch (tag) {
+            case TAG_NULL:
+                return "null";
+            case TAG_BOOLEAN:
+                return String.valueOf(buffer.get() != 0);
+            case TAG_BYTE:
+                return String.valueOf(buffer.get());
+            case TAG_SHORT:
+                return String.valueOf(buffer.getShort());
+            case TAG_CHAR:
+                return "'" + buffer.getChar() + "'";
+            case TAG_INT:
+                return String.valueOf(buffer.getInt());
+            case TAG_LONG:
+                return buffer.getLong() + "L";
+            case TAG_FLOAT:
+                return buffer.getFloat() + "F";
+            case TAG_DOUBLE:
+                return String.valueOf(buffer.getDouble());
+            case TAG_STRING:
+                return "\"" + getString(buffer) + "\"";
+            case TAG_ENUM:
+                return getString(buffer) + "." + getString(buffer);
+            case TAG_THROWABLE:
+                return getString(buffer) + ": " + getString(buffer);
+            case TAG_ARRAY:
+                return getString(buffer) + "[length=" + buffer.getInt() + "]";
+            case TAG_OBJECT:
+                return getString(buffer) + "@" + Integer.toHexString(buffer.getInt());
+            default:
+                throw new IllegalStateException("illegal value tag: " + tag);
+        }
+    }
+
+}
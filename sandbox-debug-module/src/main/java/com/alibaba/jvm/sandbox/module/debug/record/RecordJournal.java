@@ -0,0 +1,636 @@
+package com.alibaba.jvm.sandbox.module.debug.record;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调用记录日志
+ * <p>
+ * 日志文件创建时一次性分配好空间并映射到内存，由文件头、字典区和若干个区域组成：
+ * <pre>
+ * | 文件头(4K) | 字典区 | 区域0 | 区域1 | ... | 区域N-1 |
+ * </pre>
+ * 字典区只追加，记录类名、方法名和方法签名，记录中只引用字典ID；
+ * 每个区域由区域头和若干个段组成，段在区域内循环使用，写满后覆盖最早的段；
+ * 记录不会跨段，每个段以段头开始，段头中记录段的序号，读取时据此判断段是否已经被覆盖
+ * </p>
+ * <p>
+ * 写入时线程按线程ID选择区域，通过CAS独占区域完成一条记录的写入，线程之间不会互相等待；
+ * 所有区域都被占用时丢弃记录并计数
+ * </p>
+ * <p>
+ * 日志文件只会新建，不会覆盖或截断已有的文件：截断一个仍被其他日志(包括其他JVM)映射着的文件，
+ * 写入映射内存时会触发SIGBUS导致进程崩溃
+ * </p>
+ */
+public class RecordJournal {
+
+    // 日志文件魔数
+    static final int FILE_MAGIC = 0x53424A4E;
+
+    // 导出的段流魔数
+    static final int STREAM_MAGIC = 0x53424A53;
+
+    static final int VERSION = 1;
+
+    // 段头魔数
+    static final int SEGMENT_MAGIC = 0x5345474D;
+
+    // 记录类型
+    static final byte RECORD_BEFORE = 1;
+    static final byte RECORD_RETURN = 2;
+    static final byte RECORD_THROWS = 3;
+
+    // 值标记：值完整/记录在此处被截断
+    static final byte VALUE_PRESENT = 1;
+    static final byte VALUE_TRUNCATED = 0;
+
+    // 字典ID：字典区已满，无法登记
+    static final int UNKNOWN_DICTIONARY_ID = 0;
+
+    // 独占区域时探测的轮数，超过后丢弃记录，不让业务线程等待
+    private static final int MAX_PROBE_ROUNDS = 2;
+
+    static final int FILE_HEADER_SIZE = 4096;
+    static final int REGION_HEADER_SIZE = 64;
+    static final int SEGMENT_HEADER_SIZE = 16;
+
+    // 文件头中各字段的位置
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_REGION_COUNT = 8;
+    private static final int HEADER_SEGMENT_COUNT = 12;
+    private static final int HEADER_SEGMENT_SIZE = 16;
+    private static final int HEADER_DICTIONARY_SIZE = 20;
+    private static final int HEADER_DICTIONARY_USED = 24;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer mapped;
+    private final boolean isReadOnly;
+
+    private final int regionCount;
+    private final int segmentCount;
+    private final int segmentSize;
+    private final int dictionarySize;
+    private final int regionSize;
+
+    private final Region[] regions;
+    private final ValueCodec codec;
+
+    // 字典ID，按行为ID索引，写时复制
+    private volatile int[] dictionaryIds = new int[1024];
+    private int nextDictionaryId = UNKNOWN_DICTIONARY_ID + 1;
+    private int dictionaryUsed = 0;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong dictionaryOverflowCount = new AtomicLong();
+
+    // 日志是否已经关闭，关闭后不再接受写入
+    private volatile boolean isClosed;
+
+    private RecordJournal(final File file,
+                          final RandomAccessFile raf,
+                          final MappedByteBuffer mapped,
+                          final boolean isReadOnly,
+                          final int regionCount,
+                          final int segmentCount,
+                          final int segmentSize,
+                          final int dictionarySize,
+                          final int maxRecordBytes,
+                          final ValueCodec codec) {
+        this.file = file;
+        this.raf = raf;
+        this.mapped = mapped;
+        this.isReadOnly = isReadOnly;
+        this.regionCount = regionCount;
+        this.segmentCount = segmentCount;
+        this.segmentSize = segmentSize;
+        this.dictionarySize = dictionarySize;
+        this.regionSize = REGION_HEADER_SIZE + segmentCount * segmentSize;
+        this.codec = codec;
+        this.regions = new Region[regionCount];
+        for (int index = 0; index < regionCount; index++) {
+            regions[index] = new Region(index, maxRecordBytes);
+        }
+    }
+
+    /**
+     * 创建日志文件，文件已经存在时创建失败，不会覆盖已有的文件
+     *
+     * @param file           日志文件
+     * @param regionCount    区域数量
+     * @param segmentCount   每个区域的段数量
+     * @param segmentSize    段大小(字节)
+     * @param dictionarySize 字典区大小(字节)
+     * @param maxRecordBytes 单条记录的大小上限(字节)
+     * @param codec          值编解码器
+     * @return 调用记录日志
+     * @throws IOException 创建文件失败或文件已经存在
+     */
+    public static RecordJournal create(final File file,
+                                       final int regionCount,
+                                       final int segmentCount,
+                                       final int segmentSize,
+                                       final int dictionarySize,
+                                       final int maxRecordBytes,
+                                       final ValueCodec codec) throws IOException {
+        if (regionCount <= 0 || segmentCount <= 1) {
+            throw new IllegalArgumentException("region count must > 0 and segment count must > 1");
+        }
+        if (maxRecordBytes <= 0
+                || maxRecordBytes > segmentSize - SEGMENT_HEADER_SIZE - 4) {
+            throw new IllegalArgumentException(String.format("max record bytes must in (0,%d]", segmentSize - SEGMENT_HEADER_SIZE - 4));
+        }
+        final long length = FILE_HEADER_SIZE + (long) dictionarySize
+                + (long) regionCount * (REGION_HEADER_SIZE + (long) segmentCount * segmentSize);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("journal file size must <= 2G, current=" + length);
+        }
+
+        if (!file.createNewFile()) {
+            throw new IOException("journal file already exists: " + file);
+        }
+
+        final RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+        } catch (IOException cause) {
+            deleteQuietly(file);
+            throw cause;
+        }
+        try {
+            preallocate(raf.getChannel(), length);
+            final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            mapped.putInt(HEADER_MAGIC, FILE_MAGIC);
+            mapped.putInt(HEADER_VERSION, VERSION);
+            mapped.putInt(HEADER_REGION_COUNT, regionCount);
+            mapped.putInt(HEADER_SEGMENT_COUNT, segmentCount);
+            mapped.putInt(HEADER_SEGMENT_SIZE, segmentSize);
+            mapped.putInt(HEADER_DICTIONARY_SIZE, dictionarySize);
+            mapped.putInt(HEADER_DICTIONARY_USED, 0);
+            return new RecordJournal(file, raf, mapped, false,
+                    regionCount, segmentCount, segmentSize, dictionarySize, maxRecordBytes, codec);
+        } catch (IOException cause) {
+            raf.close();
+            deleteQuietly(file);
+            throw cause;
+        } catch (RuntimeException cause) {
+            raf.close();
+            deleteQuietly(file);
+            throw cause;
+        }
+    }
+
+    // 创建失败时删除本次新建的文件，文件只由本次创建，删除不会影响其他日志
+    private static void deleteQuietly(final File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    // 真实写入0来分配磁盘空间，避免稀疏文件在写映射内存时因磁盘空间不足而导致进程崩溃
+    private static void preallocate(final FileChannel channel, final long length) throws IOException {
+        final ByteBuffer zero = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while (position < length) {
+            zero.clear();
+            zero.limit((int) Math.min(zero.capacity(), length - position));
+            position += channel.write(zero, position);
+        }
+    }
+
+    /**
+     * 以只读方式打开已有的日志文件
+     *
+     * @param file 日志文件
+     * @return 调用记录日志
+     * @throws IOException 打开文件失败或文件不是调用记录日志
+     */
+    public static RecordJournal open(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (mapped.getInt(HEADER_MAGIC) != FILE_MAGIC
+                    || mapped.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException("illegal journal file: " + file);
+            }
+            final RecordJournal journal = new RecordJournal(file, raf, mapped, true,
+                    mapped.getInt(HEADER_REGION_COUNT),
+                    mapped.getInt(HEADER_SEGMENT_COUNT),
+                    mapped.getInt(HEADER_SEGMENT_SIZE),
+                    mapped.getInt(HEADER_DICTIONARY_SIZE),
+                    1,
+                    null
+            );
+            journal.dictionaryUsed = mapped.getInt(HEADER_DICTIONARY_USED);
+            return journal;
+        } catch (IOException cause) {
+            raf.close();
+            throw cause;
+        }
+    }
+
+    /**
+     * 登记行为，返回字典ID
+     *
+     * @param behaviorId     行为ID
+     * @param javaClassName  类名
+     * @param javaMethodName 方法名
+     * @param javaMethodDesc 方法签名
+     * @return 字典ID，字典区已满时返回{@link #UNKNOWN_DICTIONARY_ID}
+     */
+    public int intern(final int behaviorId,
+                      final String javaClassName,
+                      final String javaMethodName,
+                      final String javaMethodDesc) {
+        final int[] ids = dictionaryIds;
+        if (behaviorId >= 0
+                && behaviorId < ids.length
+                && ids[behaviorId] != UNKNOWN_DICTIONARY_ID) {
+            return ids[behaviorId];
+        }
+        return internSlowly(behaviorId, javaClassName, javaMethodName, javaMethodDesc);
+    }
+
+    private synchronized int internSlowly(final int behaviorId,
+                                          final String javaClassName,
+                                          final String javaMethodName,
+                                          final String javaMethodDesc) {
+        if (behaviorId < 0
+                || isClosed) {
+            return UNKNOWN_DICTIONARY_ID;
+        }
+        if (behaviorId < dictionaryIds.length
+                && dictionaryIds[behaviorId] != UNKNOWN_DICTIONARY_ID) {
+            return dictionaryIds[behaviorId];
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = (javaClassName + "#" + javaMethodName + javaMethodDesc).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException cause) {
+            throw new IllegalStateException(cause);
+        }
+        final int entrySize = 4 + 2 + bytes.length;
+        if (bytes.length > Short.MAX_VALUE
+                || dictionaryUsed + entrySize > dictionarySize) {
+            dictionaryOverflowCount.incrementAndGet();
+            return UNKNOWN_DICTIONARY_ID;
+        }
+
+        final int dictionaryId = nextDictionaryId++;
+        final ByteBuffer dictionary = mapped.duplicate();
+        dictionary.position(FILE_HEADER_SIZE + dictionaryUsed);
+        dictionary.putInt(dictionaryId).putShort((short) bytes.length).put(bytes);
+        dictionaryUsed += entrySize;
+        mapped.putInt(HEADER_DICTIONARY_USED, dictionaryUsed);
+
+        int[] ids = dictionaryIds;
+        if (behaviorId >= ids.length) {
+            final int[] newIds = new int[Math.max(ids.length << 1, behaviorId + 1)];
+            System.arraycopy(ids, 0, newIds, 0, ids.length);
+            ids = newIds;
+        }
+        ids[behaviorId] = dictionaryId;
+        dictionaryIds = ids;
+        return dictionaryId;
+    }
+
+    /**
+     * 追加一条调用开始记录
+     *
+     * @param processId     调用过程ID
+     * @param invokeId      调用ID
+     * @param dictionaryId  行为的字典ID
+     * @param argumentArray 入参
+     */
+    public void appendBefore(final long processId,
+                             final long invokeId,
+                             final int dictionaryId,
+                             final Object[] argumentArray) {
+        final Region region = acquireRegion();
+        if (null == region) {
+            return;
+        }
+        try {
+            final ByteBuffer record = region.beginRecord();
+            record.put(RECORD_BEFORE)
+                    .putLong(System.nanoTime())
+                    .putLong(System.currentTimeMillis())
+                    .putLong(Thread.currentThread().getId())
+                    .putLong(processId)
+                    .putLong(invokeId)
+                    .putInt(dictionaryId)
+                    .put((byte) Math.min(argumentArray.length, Byte.MAX_VALUE));
+            for (int index = 0; index < argumentArray.length && index < Byte.MAX_VALUE; index++) {
+                if (!region.putValue(argumentArray[index])) {
+                    break;
+                }
+            }
+            region.commitRecord();
+        } finally {
+            region.release();
+        }
+    }
+
+    /**
+     * 追加一条调用结束记录
+     *
+     * @param isThrows  是否异常结束
+     * @param processId 调用过程ID
+     * @param invokeId  调用ID
+     * @param value     返回值或抛出的异常
+     */
+    public void appendEnd(final boolean isThrows,
+                          final long processId,
+                          final long invokeId,
+                          final Object value) {
+        final Region region = acquireRegion();
+        if (null == region) {
+            return;
+        }
+        try {
+            final ByteBuffer record = region.beginRecord();
+            record.put(isThrows ? RECORD_THROWS : RECORD_RETURN)
+                    .putLong(System.nanoTime())
+                    .putLong(processId)
+                    .putLong(invokeId);
+            region.putValue(value);
+            region.commitRecord();
+        } finally {
+            region.release();
+        }
+    }
+
+    // 从线程对应的区域开始，独占第一个空闲的区域，最多探测两轮
+    private Region acquireRegion() {
+        if (isReadOnly) {
+            throw new IllegalStateException("journal is read only.");
+        }
+        if (isClosed) {
+            droppedCount.incrementAndGet();
+            return null;
+        }
+        final int start = (int) (Thread.currentThread().getId() % regionCount);
+        for (int offset = 0; offset < regionCount * MAX_PROBE_ROUNDS; offset++) {
+            final Region region = regions[(start + offset) % regionCount];
+            if (region.busy.compareAndSet(false, true)) {
+                return region;
+            }
+        }
+        droppedCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 导出所有有效的段
+     * <p>
+     * 段流格式：魔数、版本、字典区，之后是若干个[区域编号,段序号,长度,段内容]，以区域编号-1结束。
+     * 导出时不阻塞写入，复制完每个段后重新读取区域的提交位置，复制期间可能已被覆盖的段会被丢弃；
+     * 读取时再按段头中的序号校验一次
+     * </p>
+     *
+     * @param output 输出流
+     * @throws IOException 输出失败
+     */
+    public void transferSegments(final OutputStream output) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(output);
+        final ByteBuffer view = mapped.duplicate();
+
+        final int used = mapped.getInt(HEADER_DICTIONARY_USED);
+        final byte[] dictionary = new byte[used];
+        view.position(FILE_HEADER_SIZE);
+        view.get(dictionary);
+        dos.writeInt(STREAM_MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(used);
+        dos.write(dictionary);
+
+        final byte[] segment = new byte[segmentSize];
+        for (int regionIndex = 0; regionIndex < regionCount; regionIndex++) {
+            final int regionBase = getRegionBase(regionIndex);
+            final long committed = mapped.getLong(regionBase);
+            if (committed <= 0) {
+                continue;
+            }
+            final long lastSequence = (committed - 1) / segmentSize;
+
+            // 最早的段和写入方下一个要写的段是同一个位置，随时可能被覆盖，不导出
+            final long firstSequence = Math.max(0, lastSequence - segmentCount + 2);
+            for (long sequence = firstSequence; sequence <= lastSequence; sequence++) {
+                final int length = sequence == lastSequence
+                        ? (int) (committed - sequence * segmentSize)
+                        : segmentSize;
+                view.position(getSegmentBase(regionBase, sequence));
+                view.get(segment, 0, length);
+                if (isOverwritten(regionBase, sequence)) {
+                    continue;
+                }
+                dos.writeInt(regionIndex);
+                dos.writeLong(sequence);
+                dos.writeInt(length);
+                dos.write(segment, 0, length);
+            }
+        }
+        dos.writeInt(-1);
+        dos.flush();
+    }
+
+    // 段在复制期间是否可能已被覆盖：写入方正在写的段(提交位置所在段的下一个)已经和它落在同一个位置上
+    private boolean isOverwritten(final int regionBase, final long sequence) {
+        final long committed = mapped.getLong(regionBase);
+        final long writingSequence = (committed - 1) / segmentSize + 1;
+        return writingSequence - sequence >= segmentCount;
+    }
+
+    private int getRegionBase(final int regionIndex) {
+        return FILE_HEADER_SIZE + dictionarySize + regionIndex * regionSize;
+    }
+
+    private int getSegmentBase(final int regionBase, final long sequence) {
+        return regionBase + REGION_HEADER_SIZE + (int) (sequence % segmentCount) * segmentSize;
+    }
+
+    /**
+     * 获取已写入的记录数
+     *
+     * @return 已写入的记录数
+     */
+    public long getRecordCount() {
+        long total = 0;
+        for (final Region region : regions) {
+            total += region.recordCount;
+        }
+        return total;
+    }
+
+    /**
+     * 获取被截断的记录数
+     *
+     * @return 被截断的记录数
+     */
+    public long getTruncatedCount() {
+        long total = 0;
+        for (final Region region : regions) {
+            total += region.truncatedCount;
+        }
+        return total;
+    }
+
+    /**
+     * 获取因所有区域都被占用而丢弃的记录数
+     *
+     * @return 丢弃的记录数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 获取因字典区已满而无法登记的行为数
+     *
+     * @return 无法登记的行为数
+     */
+    public long getDictionaryOverflowCount() {
+        return dictionaryOverflowCount.get();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 关闭日志，等待正在写入的线程写完后把内容刷到磁盘
+     * <p>关闭后的写入会被丢弃并计数</p>
+     *
+     * @throws IOException 关闭失败
+     */
+    public void close() throws IOException {
+        try {
+            if (!isReadOnly) {
+                isClosed = true;
+                awaitWriters();
+                mapped.force();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    // 逐个独占所有区域且不再释放，之后的写入拿不到区域；一条记录的写入很短，这里只需要短暂自旋
+    private void awaitWriters() {
+        for (final Region region : regions) {
+            while (!region.busy.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * 区域，同一时刻只会被一个线程独占写入
+     */
+    private class Region {
+
+        private final int index;
+        private final int regionBase;
+
+        // 区域独占的映射视图和记录编码缓冲区，只在独占期间访问
+        private final ByteBuffer view;
+        private final ByteBuffer scratch;
+
+        final AtomicBoolean busy = new AtomicBoolean(false);
+
+        // 区域内已写入的字节数，只增不减，对段数量取模得到写入位置
+        private long position;
+
+        // 统计数据只在独占期间修改，读取时允许看到稍旧的值
+        private volatile long recordCount;
+        private volatile long truncatedCount;
+
+        Region(final int index, final int maxRecordBytes) {
+            this.index = index;
+            this.regionBase = getRegionBase(index);
+            this.view = mapped.duplicate();
+            this.scratch = ByteBuffer.allocate(maxRecordBytes);
+        }
+
+        void release() {
+            busy.set(false);
+        }
+
+        ByteBuffer beginRecord() {
+            scratch.clear();
+            // 预留一个字节，保证截断时一定能写下截断标记
+            scratch.limit(scratch.capacity() - 1);
+            return scratch;
+        }
+
+        // 写入一个值，空间不足时写入截断标记并返回false
+        boolean putValue(final Object value) {
+            final int mark = scratch.position();
+            try {
+                scratch.put(VALUE_PRESENT);
+                codec.encode(value, scratch);
+                return true;
+            } catch (BufferOverflowException cause) {
+                return truncate(mark);
+            } catch (RuntimeException cause) {
+                return truncate(mark);
+            }
+        }
+
+        private boolean truncate(final int mark) {
+            scratch.limit(scratch.capacity());
+            scratch.position(mark);
+            scratch.put(VALUE_TRUNCATED);
+            truncatedCount++;
+            return false;
+        }
+
+        void commitRecord() {
+            scratch.flip();
+            final int length = scratch.remaining();
+
+            int offset = (int) (position % segmentSize);
+            if (offset + 4 + length > segmentSize) {
+                // 当前段剩余空间不足，写入段结束标记后换到下一个段
+                if (segmentSize - offset >= 4) {
+                    view.putInt(getSegmentBase(regionBase, position / segmentSize) + offset, 0);
+                }
+                position += segmentSize - offset;
+                offset = 0;
+            }
+            final long sequence = position / segmentSize;
+            final int segmentBase = getSegmentBase(regionBase, sequence);
+            if (offset == 0) {
+                view.putInt(segmentBase, SEGMENT_MAGIC);
+                view.putInt(segmentBase + 4, index);
+                view.putLong(segmentBase + 8, sequence);
+                position += SEGMENT_HEADER_SIZE;
+                offset = SEGMENT_HEADER_SIZE;
+            }
+
+            view.putInt(segmentBase + offset, length);
+            view.position(segmentBase + offset + 4);
+            view.put(scratch);
+            position += 4 + length;
+
+            // 最后更新区域的提交位置，读取方以此为准
+            view.putLong(regionBase, position);
+            recordCount++;
+        }
+
+    }
+
+}
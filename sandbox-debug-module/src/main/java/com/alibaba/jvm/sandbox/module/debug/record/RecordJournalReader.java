@@ -0,0 +1,255 @@
+package com.alibaba.jvm.sandbox.module.debug.record;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.alibaba.jvm.sandbox.module.debug.record.RecordJournal.*;
+
+/**
+ * 调用记录读取工具
+ * <p>
+ * 读取调用记录日志文件，或者通过{@code debug-record/segments}命令导出的段流，
+ * 把调用开始和调用结束的记录按调用ID配对后输出
+ * </p>
+ * <pre>
+ * java -cp sandbox-debug-module.jar com.alibaba.jvm.sandbox.module.debug.record.RecordJournalReader &lt;file&gt; [codec-class]
+ * </pre>
+ */
+public class RecordJournalReader {
+
+    private final ValueCodec codec;
+
+    // 字典ID:行为
+    private final Map<Integer, String> dictionary = new HashMap<Integer, String>();
+
+    private final List<Record> records = new ArrayList<Record>();
+
+    // 因段被覆盖或内容不完整而忽略的段数
+    private int skippedSegmentCount;
+
+    public RecordJournalReader(final ValueCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * 读取段流
+     *
+     * @param input 段流
+     * @throws IOException 读取失败或格式错误
+     */
+    public void read(final InputStream input) throws IOException {
+        final DataInputStream dis = new DataInputStream(input);
+        if (dis.readInt() != STREAM_MAGIC
+                || dis.readInt() != VERSION) {
+            throw new IOException("illegal segment stream.");
+        }
+
+        final byte[] dictionaryBytes = new byte[dis.readInt()];
+        dis.readFully(dictionaryBytes);
+        readDictionary(ByteBuffer.wrap(dictionaryBytes));
+
+        int regionIndex;
+        while ((regionIndex = dis.readInt()) >= 0) {
+            final long sequence = dis.readLong();
+            final byte[] segment = new byte[dis.readInt()];
+            dis.readFully(segment);
+            readSegment(regionIndex, sequence, ByteBuffer.wrap(segment));
+        }
+    }
+
+    private void readDictionary(final ByteBuffer buffer) throws IOException {
+        while (buffer.remaining() > 6) {
+            final int id = buffer.getInt();
+            final byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            dictionary.put(id, new String(bytes, "UTF-8"));
+        }
+    }
+
+    // 段头中的区域编号和段序号必须和导出时期望的一致，否则说明段已经被覆盖
+    private void readSegment(final int regionIndex, final long sequence, final ByteBuffer segment) {
+        if (segment.remaining() < SEGMENT_HEADER_SIZE
+                || segment.getInt() != SEGMENT_MAGIC
+                || segment.getInt() != regionIndex
+                || segment.getLong() != sequence) {
+            skippedSegmentCount++;
+            return;
+        }
+        while (segment.remaining() >= 4) {
+            final int length = segment.getInt();
+            if (length <= 0
+                    || length > segment.remaining()) {
+                break;
+            }
+            final ByteBuffer payload = segment.slice();
+            payload.limit(length);
+            segment.position(segment.position() + length);
+            try {
+                records.add(readRecord(payload));
+            } catch (RuntimeException cause) {
+                // 段在导出期间被覆盖，之后的记录不再可信
+                skippedSegmentCount++;
+                return;
+            }
+        }
+    }
+
+    private Record readRecord(final ByteBuffer payload) {
+        final Record record = new Record();
+        record.type = payload.get();
+        record.nanoTime = payload.getLong();
+        if (record.type == RECORD_BEFORE) {
+            record.timestamp = payload.getLong();
+            record.threadId = payload.getLong();
+            record.processId = payload.getLong();
+            record.invokeId = payload.getLong();
+            record.dictionaryId = payload.getInt();
+            final int argumentCount = payload.get();
+            record.values = new ArrayList<String>(argumentCount);
+            for (int index = 0; index < argumentCount; index++) {
+                if (!readValue(payload, record.values)) {
+                    break;
+                }
+            }
+        } else if (record.type == RECORD_RETURN
+                || record.type == RECORD_THROWS) {
+            record.processId = payload.getLong();
+            record.invokeId = payload.getLong();
+            record.values = new ArrayList<String>(1);
+            readValue(payload, record.values);
+        } else {
+            throw new IllegalStateException("illegal record type: " + record.type);
+        }
+        return record;
+    }
+
+    private boolean readValue(final ByteBuffer payload, final List<String> values) {
+        if (payload.get() == VALUE_TRUNCATED) {
+            values.add("...");
+            return false;
+        }
+        values.add(codec.decode(payload));
+        return true;
+    }
+
+    /**
+     * 按时间顺序输出所有调用
+     *
+     * @param out 输出
+     */
+    public void print(final PrintStream out) {
+        final List<Record> sorted = new ArrayList<Record>(records);
+        Collections.sort(sorted, new Comparator<Record>() {
+            @Override
+            public int compare(Record o1, Record o2) {
+                return o1.nanoTime < o2.nanoTime
+                        ? -1
+                        : (o1.nanoTime == o2.nanoTime ? 0 : 1);
+            }
+        });
+
+        final Map<Long, Record> endRecordMap = new HashMap<Long, Record>();
+        for (final Record record : sorted) {
+            if (record.type != RECORD_BEFORE) {
+                endRecordMap.put(record.invokeId, record);
+            }
+        }
+
+        int invokeCount = 0;
+        for (final Record before : sorted) {
+            if (before.type != RECORD_BEFORE) {
+                continue;
+            }
+            invokeCount++;
+            final Record end = endRecordMap.get(before.invokeId);
+            final String behavior = dictionary.get(before.dictionaryId);
+            out.println(String.format("%tF %<tT.%<tL [thread=%d] process=%d invoke=%d %s",
+                    before.timestamp,
+                    before.threadId,
+                    before.processId,
+                    before.invokeId,
+                    null == behavior ? "<unknown>" : behavior
+            ));
+            out.println("    args   : " + before.values);
+            if (null == end) {
+                out.println("    result : <not finished>");
+            } else {
+                out.println(String.format("    %s : %s, cost=%.3fms",
+                        end.type == RECORD_THROWS ? "throws" : "return",
+                        end.values.isEmpty() ? "" : end.values.get(0),
+                        (end.nanoTime - before.nanoTime) / 1000000.0
+                ));
+            }
+        }
+        out.println(String.format("total: invokes=%d, records=%d, skipped-segments=%d",
+                invokeCount, records.size(), skippedSegmentCount));
+    }
+
+    public static void main(String... args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: RecordJournalReader <file> [codec-class]");
+            System.exit(1);
+        }
+
+        final File file = new File(args[0]);
+        final ValueCodec codec = args.length > 1
+                ? (ValueCodec) Class.forName(args[1]).newInstance()
+                : new DefaultValueCodec();
+        final RecordJournalReader reader = new RecordJournalReader(codec);
+
+        final int magic;
+        final DataInputStream dis = new DataInputStream(new FileInputStream(file));
+        try {
+            magic = dis.readInt();
+        } finally {
+            dis.close();
+        }
+
+        if (magic == FILE_MAGIC) {
+            final RecordJournal journal = RecordJournal.open(file);
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                journal.transferSegments(baos);
+            } finally {
+                journal.close();
+            }
+            reader.read(new ByteArrayInputStream(baos.toByteArray()));
+        } else {
+            final InputStream input = new FileInputStream(file);
+            try {
+                reader.read(input);
+            } finally {
+                input.close();
+            }
+        }
+        reader.print(System.out);
+    }
+
+    /**
+     * 解码后的记录
+     */
+    private static class Record {
+        byte type;
+        long nanoTime;
+        long timestamp;
+        long threadId;
+        long processId;
+        long invokeId;
+        int dictionaryId;
+        List<String> values;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.alibaba.jvm.sandbox.module.debug.record;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 值编解码器
+ * <p>
+ * 负责把调用的入参、返回值和异常编码进记录中。编码发生在业务线程上，实现必须足够轻量，
+ * 不能调用业务对象上可能产生副作用的方法，也不能持有传入的对象
+ * </p>
+ * <p>
+ * 实现类需要提供无参构造函数，读取记录时需要使用和写入时相同的编解码器
+ * </p>
+ */
+public interface ValueCodec {
+
+    /**
+     * 编码一个值
+     * <p>缓冲区空间不足时直接抛出{@link java.nio.BufferOverflowException}，由调用方截断记录</p>
+     *
+     * @param value  待编码的值
+     * @param buffer 写入的缓冲区
+     */
+    void encode(Object value, ByteBuffer buffer);
+
+    /**
+     * 解码一个值，转换为可以阅读的文本
+     *
+     * @param buffer 读取的缓冲区
+     * @return 值的文本
+     */
+    String decode(ByteBuffer buffer);
+
+}
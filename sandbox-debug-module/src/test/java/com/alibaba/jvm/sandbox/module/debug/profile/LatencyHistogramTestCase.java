@@ -0,0 +1,148 @@
+package com.alibaba.jvm.sandbox.module.debug.profile;
+
+import org.junit.Test;
+
+import static com.alibaba.jvm.sandbox.module.debug.profile.LatencyHistogram.*;
+import static org.junit.Assert.*;
+
+/**
+ * 耗时直方图：分桶边界和百分位计算
+ * <p>分桶函数是包可见的，所以测试和直方图放在同一个包中</p>
+ */
+public class LatencyHistogramTestCase {
+
+    private static final long MAX_MICROS = (1L << 32) - 1;
+
+    // 耗时落在桶的范围内：不超过桶的上界，且超过前一个桶的上界
+    private static void assertInBucket(final long micros) {
+        final int index = getBucketIndex(micros);
+        assertTrue("micros=" + micros, index >= 0 && index < BUCKET_COUNT);
+        assertTrue("micros=" + micros, getBucketUpperBound(index) >= micros);
+        if (index > 0) {
+            assertTrue("micros=" + micros, getBucketUpperBound(index - 1) < micros);
+        }
+    }
+
+    @Test
+    public void bucket$linear() {
+        for (int micros = 0; micros < SUB_BUCKET_COUNT; micros++) {
+            assertEquals(micros, getBucketIndex(micros));
+            assertEquals(micros, getBucketUpperBound(micros));
+        }
+        assertEquals(0, getBucketIndex(0));
+        assertEquals(7, getBucketIndex(7));
+    }
+
+    @Test
+    public void bucket$boundaries() {
+        // 8是第一个对数区间的起点，区间[8,16)内每个桶只容纳一个值
+        assertEquals(8, getBucketIndex(8));
+        assertEquals(8, getBucketUpperBound(8));
+        assertEquals(15, getBucketIndex(15));
+        assertEquals(15, getBucketUpperBound(15));
+
+        // 区间[16,32)内每个桶容纳两个值
+        assertEquals(16, getBucketIndex(16));
+        assertEquals(16, getBucketIndex(17));
+        assertEquals(17, getBucketUpperBound(16));
+        assertEquals(17, getBucketIndex(18));
+
+        for (int bits = 0; bits <= 32; bits++) {
+            final long power = 1L << bits;
+            if (power <= MAX_MICROS) {
+                assertInBucket(power);
+            }
+            assertInBucket(power - 1);
+            if (power + 1 <= MAX_MICROS) {
+                assertInBucket(power + 1);
+            }
+            // 2的幂总是落在区间的第一个桶上
+            if (power >= SUB_BUCKET_COUNT && power <= MAX_MICROS) {
+                assertEquals(0, getBucketIndex(power) % SUB_BUCKET_COUNT);
+                assertEquals(power - 1, getBucketUpperBound(getBucketIndex(power) - 1));
+            }
+        }
+    }
+
+    @Test
+    public void bucket$maxValue() {
+        assertEquals(BUCKET_COUNT - 1, getBucketIndex(MAX_MICROS));
+        assertEquals(MAX_MICROS, getBucketUpperBound(BUCKET_COUNT - 1));
+        assertEquals(BUCKET_COUNT - 2, getBucketIndex(MAX_MICROS - (1L << 28)));
+    }
+
+    @Test
+    public void bucket$monotonicAndRelativeError() {
+        for (int index = SUB_BUCKET_COUNT; index < BUCKET_COUNT; index++) {
+            final long lower = getBucketUpperBound(index - 1) + 1;
+            final long upper = getBucketUpperBound(index);
+            assertTrue(upper >= lower);
+            assertEquals(index, getBucketIndex(lower));
+            assertEquals(index, getBucketIndex(upper));
+            // 桶内的相对误差不超过1/SUB_BUCKET_COUNT
+            assertTrue("index=" + index, upper - lower < lower / SUB_BUCKET_COUNT + 1);
+        }
+    }
+
+    @Test
+    public void record$clamped() {
+        final LatencyHistogram histogram = new LatencyHistogram("test", 1);
+        histogram.record(-1000, false);
+        histogram.record(999, false);
+        histogram.record(Long.MAX_VALUE, true);
+        final Snapshot snapshot = histogram.snapshot(false);
+        assertEquals(3, snapshot.getCount());
+        assertEquals(1, snapshot.getErrors());
+        assertEquals(0, snapshot.getPercentile(50));
+        assertEquals(MAX_MICROS, snapshot.getMax());
+    }
+
+    @Test
+    public void percentile$empty() {
+        final Snapshot snapshot = new LatencyHistogram("test", 1).snapshot(false);
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMean());
+        assertEquals(0, snapshot.getPercentile(99));
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void percentile$uniform() {
+        final LatencyHistogram histogram = new LatencyHistogram("test", 4);
+        for (int micros = 1; micros <= 100; micros++) {
+            histogram.record(micros * 1000L, micros % 10 == 0);
+        }
+        final Snapshot snapshot = histogram.snapshot(true);
+        assertEquals(100, snapshot.getCount());
+        assertEquals(10, snapshot.getErrors());
+        assertEquals(50, snapshot.getMean());
+
+        // 百分位返回所在桶的上界：不小于准确值，且误差在桶的精度之内
+        for (final int percentile : new int[]{1, 8, 50, 90, 99, 100}) {
+            final long value = snapshot.getPercentile(percentile);
+            assertTrue("p" + percentile + "=" + value, value >= percentile);
+            assertTrue("p" + percentile + "=" + value, value <= percentile + percentile / SUB_BUCKET_COUNT);
+        }
+        assertEquals(1, snapshot.getPercentile(1));
+        assertEquals(51, snapshot.getPercentile(50));
+        assertEquals(103, snapshot.getMax());
+        assertEquals(1, snapshot.getPercentile(0.001));
+
+        // 读取时清零
+        assertEquals(0, histogram.snapshot(false).getCount());
+    }
+
+    @Test
+    public void percentile$singleOutlier() {
+        final LatencyHistogram histogram = new LatencyHistogram("test", 1);
+        for (int index = 0; index < 999; index++) {
+            histogram.record(5000, false);
+        }
+        histogram.record(1000000000L, false);
+        final Snapshot snapshot = histogram.snapshot(false);
+        assertEquals(5, snapshot.getPercentile(99.9));
+        assertEquals(getBucketUpperBound(getBucketIndex(1000000)), snapshot.getPercentile(99.91));
+        assertEquals(getBucketUpperBound(getBucketIndex(1000000)), snapshot.getMax());
+    }
+
+}
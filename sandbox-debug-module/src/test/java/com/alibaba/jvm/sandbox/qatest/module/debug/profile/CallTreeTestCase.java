@@ -0,0 +1,130 @@
+package com.alibaba.jvm.sandbox.qatest.module.debug.profile;
+
+import com.alibaba.jvm.sandbox.module.debug.profile.CallTree;
+import com.alibaba.jvm.sandbox.module.debug.profile.FrameTable;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.alibaba.jvm.sandbox.module.debug.profile.CallTree.ROOT;
+import static org.junit.Assert.*;
+
+public class CallTreeTestCase {
+
+    // 截断节点的编号，超过节点数上限后的调用路径都合并到这个节点上
+    private static final int TRUNCATED = 1;
+
+    @Test
+    public void callTree$child() {
+        final FrameTable frameTable = new FrameTable();
+        final int a = frameTable.intern("A", "a");
+        final int b = frameTable.intern("B", "b");
+
+        final CallTree callTree = new CallTree(1024);
+        final int nodeA = callTree.child(ROOT, a);
+        final int nodeB = callTree.child(ROOT, b);
+        final int nodeAB = callTree.child(nodeA, b);
+        final int nodeBA = callTree.child(nodeB, a);
+
+        assertEquals(4, new HashSet<Integer>(Arrays.asList(nodeA, nodeB, nodeAB, nodeBA)).size());
+        assertFalse(new HashSet<Integer>(Arrays.asList(nodeA, nodeB, nodeAB, nodeBA)).contains(ROOT));
+        assertFalse(new HashSet<Integer>(Arrays.asList(nodeA, nodeB, nodeAB, nodeBA)).contains(TRUNCATED));
+
+        // 相同的(父节点,帧ID)总是得到同一个节点
+        assertEquals(nodeA, callTree.child(ROOT, a));
+        assertEquals(nodeB, callTree.child(ROOT, b));
+        assertEquals(nodeAB, callTree.child(nodeA, b));
+        assertEquals(nodeBA, callTree.child(nodeB, a));
+    }
+
+    @Test
+    public void callTree$child$rehash() {
+        final FrameTable frameTable = new FrameTable();
+        final CallTree callTree = new CallTree(100000);
+
+        // 远超初始容量，触发多次节点数组扩容和子节点索引的重新哈希
+        final int[] nodes = new int[1000];
+        final Set<Integer> distinct = new HashSet<Integer>();
+        for (int index = 0; index < nodes.length; index++) {
+            final int frameId = frameTable.intern("C", "m" + index);
+            final int parent = index == 0 ? ROOT : nodes[index / 2];
+            nodes[index] = callTree.child(parent, frameId);
+            assertTrue(distinct.add(nodes[index]));
+        }
+        for (int index = 0; index < nodes.length; index++) {
+            final int parent = index == 0 ? ROOT : nodes[index / 2];
+            assertEquals(nodes[index], callTree.child(parent, frameTable.intern("C", "m" + index)));
+        }
+    }
+
+    @Test
+    public void callTree$child$truncated() {
+        final FrameTable frameTable = new FrameTable();
+        final int a = frameTable.intern("A", "a");
+        final int b = frameTable.intern("B", "b");
+        final int c = frameTable.intern("C", "c");
+
+        // 根节点和截断节点之外只能再容纳两个节点
+        final CallTree callTree = new CallTree(4);
+        final int nodeA = callTree.child(ROOT, a);
+        final int nodeAB = callTree.child(nodeA, b);
+        assertEquals(TRUNCATED, callTree.child(nodeAB, c));
+        assertEquals(TRUNCATED, callTree.child(ROOT, c));
+
+        // 已有的节点仍然可以找到，截断节点的子节点还是截断节点
+        assertEquals(nodeA, callTree.child(ROOT, a));
+        assertEquals(nodeAB, callTree.child(nodeA, b));
+        assertEquals(TRUNCATED, callTree.child(TRUNCATED, a));
+
+        callTree.exit(TRUNCATED, 10, 10);
+        callTree.exit(TRUNCATED, 20, 5);
+        final Map<String, long[]> collapsed = new TreeMap<String, long[]>();
+        callTree.drainTo(frameTable, collapsed);
+        assertEquals(1, collapsed.size());
+        assertArrayEquals(new long[]{2, 30, 15}, collapsed.get("[truncated]"));
+    }
+
+    @Test
+    public void callTree$drainTo() {
+        final FrameTable frameTable = new FrameTable();
+        final int a = frameTable.intern("A", "a");
+        final int b = frameTable.intern("B", "b");
+        final int c = frameTable.intern("C", "c");
+
+        final CallTree callTree = new CallTree(1024);
+        final int nodeA = callTree.child(ROOT, a);
+        final int nodeAB = callTree.child(nodeA, b);
+        final int nodeABC = callTree.child(nodeAB, c);
+        final int nodeAC = callTree.child(nodeA, c);
+        callTree.child(ROOT, b);
+
+        callTree.exit(nodeABC, 5, 5);
+        callTree.exit(nodeAB, 15, 10);
+        callTree.exit(nodeAC, 7, 7);
+        callTree.exit(nodeAC, 3, 3);
+        callTree.exit(nodeA, 40, 15);
+
+        final Map<String, long[]> collapsed = new TreeMap<String, long[]>();
+        callTree.drainTo(frameTable, collapsed);
+        assertEquals(4, collapsed.size());
+        assertArrayEquals(new long[]{1, 40, 15}, collapsed.get("A.a"));
+        assertArrayEquals(new long[]{1, 15, 10}, collapsed.get("A.a;B.b"));
+        assertArrayEquals(new long[]{1, 5, 5}, collapsed.get("A.a;B.b;C.c"));
+        assertArrayEquals(new long[]{2, 10, 10}, collapsed.get("A.a;C.c"));
+
+        // 输出后计数清零，没有新调用的节点不再输出；节点结构保留，合并到已有的结果上
+        final Map<String, long[]> drained = new TreeMap<String, long[]>();
+        callTree.drainTo(frameTable, drained);
+        assertTrue(drained.isEmpty());
+
+        assertEquals(nodeAC, callTree.child(nodeA, c));
+        callTree.exit(nodeAC, 1, 1);
+        callTree.drainTo(frameTable, collapsed);
+        assertArrayEquals(new long[]{3, 11, 11}, collapsed.get("A.a;C.c"));
+    }
+
+}
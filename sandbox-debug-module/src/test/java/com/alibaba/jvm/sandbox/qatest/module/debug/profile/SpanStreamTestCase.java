@@ -0,0 +1,131 @@
+package com.alibaba.jvm.sandbox.qatest.module.debug.profile;
+
+import com.alibaba.jvm.sandbox.module.debug.profile.CallTree;
+import com.alibaba.jvm.sandbox.module.debug.profile.FrameStack;
+import com.alibaba.jvm.sandbox.module.debug.profile.FrameTable;
+import com.alibaba.jvm.sandbox.module.debug.profile.SpanStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.alibaba.jvm.sandbox.module.debug.profile.SpanStream.*;
+import static org.junit.Assert.*;
+
+public class SpanStreamTestCase {
+
+    // 超出32位的ID，验证跨度记录中写入的是完整的64位ID
+    private static final long PROCESS_ID = Integer.MAX_VALUE + 1000L;
+    private static final long INVOKE_ID = Integer.MAX_VALUE + 1001L;
+
+    // 输出第一个批次后中断输出线程，让transferTo()返回
+    private static byte[] transferOnce(final SpanStream spanStream) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                if (size() > 12) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            spanStream.transferTo(output, 1000L);
+        } finally {
+            Thread.interrupted();
+        }
+        return output.toByteArray();
+    }
+
+    @Test
+    public void span$layout() throws IOException {
+        final FrameTable frameTable = new FrameTable();
+        final int a = frameTable.intern("A", "a");
+        final int b = frameTable.intern("B", "b");
+        final SpanStream spanStream = new SpanStream(frameTable, 4);
+
+        final FrameStack stack = new FrameStack();
+        stack.enter(a, CallTree.ROOT, -1);
+        stack.enter(b, CallTree.ROOT, 42);
+        assertFalse(stack.exit());
+        ByteBuffer batch = spanStream.append(null, stack, (byte) (FLAG_CALL | FLAG_THROWS), PROCESS_ID, INVOKE_ID);
+        assertEquals(SPAN_RECORD_SIZE, batch.position());
+        assertTrue(stack.exit());
+        batch = spanStream.append(batch, stack, (byte) 0, PROCESS_ID, PROCESS_ID);
+        assertEquals(SPAN_RECORD_SIZE * 2, batch.position());
+        spanStream.commit(batch);
+
+        final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(transferOnce(spanStream)));
+        assertEquals(MAGIC, dis.readInt());
+        assertEquals(VERSION, dis.readInt());
+        assertEquals(SPAN_RECORD_SIZE, dis.readInt());
+
+        // 帧定义先于跨度输出
+        assertEquals(TYPE_FRAME, dis.readByte());
+        assertEquals(a, dis.readInt());
+        assertEquals("A.a", readName(dis));
+        assertEquals(TYPE_FRAME, dis.readByte());
+        assertEquals(b, dis.readInt());
+        assertEquals("B.b", readName(dis));
+
+        final long callCostNanos = assertSpan(dis, (byte) (FLAG_CALL | FLAG_THROWS), 1, b, 42, INVOKE_ID);
+        final long costNanos = assertSpan(dis, (byte) 0, 0, a, -1, PROCESS_ID);
+        assertTrue(costNanos >= callCostNanos);
+        assertEquals(-1, dis.read());
+        assertEquals(0, spanStream.getDroppedSpanCount());
+    }
+
+    private static String readName(final DataInputStream dis) throws IOException {
+        final byte[] name = new byte[dis.readShort()];
+        dis.readFully(name);
+        return new String(name, "UTF-8");
+    }
+
+    // 按记录格式逐个字段读取一条跨度记录，返回跨度耗时
+    private static long assertSpan(final DataInputStream dis,
+                                   final byte flags,
+                                   final int depth,
+                                   final int frameId,
+                                   final int lineNum,
+                                   final long invokeId) throws IOException {
+        final byte[] record = new byte[SPAN_RECORD_SIZE];
+        dis.readFully(record);
+        final ByteBuffer span = ByteBuffer.wrap(record);
+        assertEquals(TYPE_SPAN, span.get());
+        assertEquals(flags, span.get());
+        assertEquals(depth, span.getShort());
+        assertEquals(frameId, span.getInt());
+        assertEquals(lineNum, span.getInt());
+        assertEquals(PROCESS_ID, span.getLong());
+        assertEquals(invokeId, span.getLong());
+        assertEquals(Thread.currentThread().getId(), span.getLong());
+        assertTrue(span.getLong() != 0);
+        final long costNanos = span.getLong();
+        assertTrue(costNanos >= 0);
+        assertFalse(span.hasRemaining());
+        return costNanos;
+    }
+
+    @Test
+    public void span$dropped() {
+        final FrameTable frameTable = new FrameTable();
+        final int a = frameTable.intern("A", "a");
+        final SpanStream spanStream = new SpanStream(frameTable, 1);
+        final FrameStack stack = new FrameStack();
+
+        // 唯一的批次写满后提交，之后没有可用的批次
+        ByteBuffer batch = null;
+        int appended = 0;
+        do {
+            stack.enter(a, CallTree.ROOT, -1);
+            stack.exit();
+            batch = spanStream.append(batch, stack, (byte) 0, PROCESS_ID, INVOKE_ID);
+            appended++;
+        } while (null != batch);
+        assertEquals(1, spanStream.getDroppedSpanCount());
+        assertEquals(128, appended - 1);
+    }
+
+}
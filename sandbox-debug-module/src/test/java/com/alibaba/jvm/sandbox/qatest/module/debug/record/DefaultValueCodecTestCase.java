@@ -0,0 +1,77 @@
+package com.alibaba.jvm.sandbox.qatest.module.debug.record;
+
+import com.alibaba.jvm.sandbox.module.debug.record.DefaultValueCodec;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultValueCodecTestCase {
+
+    private static String roundTrip(final DefaultValueCodec codec, final Object value) {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.encode(value, buffer);
+        buffer.flip();
+        final String text = codec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        return text;
+    }
+
+    private static String roundTrip(final Object value) {
+        return roundTrip(new DefaultValueCodec(), value);
+    }
+
+    @Test
+    public void codec$primitives() {
+        assertEquals("null", roundTrip(null));
+        assertEquals("true", roundTrip(true));
+        assertEquals("-1", roundTrip((byte) -1));
+        assertEquals("-2", roundTrip((short) -2));
+        assertEquals("'c'", roundTrip('c'));
+        assertEquals(String.valueOf(Integer.MIN_VALUE), roundTrip(Integer.MIN_VALUE));
+        assertEquals(Long.MAX_VALUE + "L", roundTrip(Long.MAX_VALUE));
+        assertEquals("1.5F", roundTrip(1.5f));
+        assertEquals("2.5", roundTrip(2.5d));
+    }
+
+    @Test
+    public void codec$objects() {
+        assertEquals("java.util.concurrent.TimeUnit.SECONDS", roundTrip(TimeUnit.SECONDS));
+        assertEquals("java.lang.RuntimeException: null", roundTrip(new RuntimeException()));
+        assertEquals("[I[length=3]", roundTrip(new int[3]));
+        final Object object = new Object();
+        assertEquals("java.lang.Object@" + Integer.toHexString(System.identityHashCode(object)), roundTrip(object));
+    }
+
+    @Test
+    public void codec$string() {
+        assertEquals("\"\"", roundTrip(""));
+        assertEquals("\"a\u0000b中文é\"", roundTrip("a\u0000b中文é"));
+    }
+
+    @Test
+    public void codec$string$truncated() {
+        final DefaultValueCodec codec = new DefaultValueCodec(4);
+        assertEquals("\"abcd\"", roundTrip(codec, "abcdefg"));
+        assertEquals("\"中文中文\"", roundTrip(codec, "中文中文中文"));
+        assertEquals("\"abc\"", roundTrip(codec, "abc"));
+    }
+
+    @Test
+    public void codec$bufferOverflow() {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        try {
+            new DefaultValueCodec().encode("abcdefghijklmn", buffer);
+        } catch (BufferOverflowException cause) {
+            assertTrue(buffer.position() <= buffer.limit());
+            return;
+        }
+        throw new AssertionError("expect BufferOverflowException");
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.alibaba.jvm.sandbox.qatest.module.debug.record;
+
+import com.alibaba.jvm.sandbox.module.debug.record.DefaultValueCodec;
+import com.alibaba.jvm.sandbox.module.debug.record.RecordJournal;
+import com.alibaba.jvm.sandbox.module.debug.record.RecordJournalReader;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static java.io.File.createTempFile;
+import static org.junit.Assert.*;
+
+/**
+ * 调用记录日志：写入、导出段流、读取的完整链路
+ */
+public class RecordJournalTestCase {
+
+    private static final String BEHAVIOR = "com.example.Foo#bar(ILjava/lang/String;)Ljava/lang/String;";
+
+    private File file;
+    private RecordJournal journal;
+
+    // 创建只有一个区域的日志，保证所有记录都写入同一个区域
+    private RecordJournal createJournal(final int segmentCount,
+                                        final int segmentSize,
+                                        final int maxRecordBytes) throws IOException {
+        file = createTempFile("record-", ".journal");
+        assertTrue(file.delete());
+        journal = RecordJournal.create(file, 1, segmentCount, segmentSize, 4096, maxRecordBytes, new DefaultValueCodec());
+        return journal;
+    }
+
+    private static String transferAndPrint(final RecordJournal journal) throws IOException {
+        final ByteArrayOutputStream segments = new ByteArrayOutputStream();
+        journal.transferSegments(segments);
+
+        final RecordJournalReader reader = new RecordJournalReader(new DefaultValueCodec());
+        reader.read(new ByteArrayInputStream(segments.toByteArray()));
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        reader.print(new PrintStream(text, true, "UTF-8"));
+        return text.toString("UTF-8");
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        if (null != journal) {
+            journal.close();
+        }
+        if (null != file) {
+            assertTrue(!file.exists() || file.delete());
+        }
+    }
+
+    @Test
+    public void journal$roundTrip() throws IOException {
+        final RecordJournal journal = createJournal(4, 4096, 1024);
+        final int dictionaryId = journal.intern(1, "com.example.Foo", "bar", "(ILjava/lang/String;)Ljava/lang/String;");
+        assertEquals(dictionaryId, journal.intern(1, "com.example.Foo", "bar", "(ILjava/lang/String;)Ljava/lang/String;"));
+
+        journal.appendBefore(1, 10, dictionaryId, new Object[]{1, "中文"});
+        journal.appendEnd(false, 1, 10, "ok");
+        journal.appendBefore(1, 11, dictionaryId, new Object[]{2, null});
+        journal.appendEnd(true, 1, 11, new IllegalStateException("boom"));
+        journal.appendBefore(2, 12, dictionaryId, new Object[]{3, "unfinished"});
+        assertEquals(5, journal.getRecordCount());
+        assertEquals(0, journal.getTruncatedCount());
+
+        final String text = transferAndPrint(journal);
+        assertTrue(text, text.contains("process=1 invoke=10 " + BEHAVIOR));
+        assertTrue(text, text.contains("args   : [1, \"中文\"]"));
+        assertTrue(text, text.contains("return : \"ok\""));
+        assertTrue(text, text.contains("process=1 invoke=11 " + BEHAVIOR));
+        assertTrue(text, text.contains("args   : [2, null]"));
+        assertTrue(text, text.contains("throws : java.lang.IllegalStateException: boom"));
+        assertTrue(text, text.contains("process=2 invoke=12 " + BEHAVIOR));
+        assertTrue(text, text.contains("result : <not finished>"));
+        assertTrue(text, text.contains("total: invokes=3, records=5, skipped-segments=0"));
+    }
+
+    @Test
+    public void journal$roundTrip$reopen() throws IOException {
+        final RecordJournal journal = createJournal(4, 4096, 1024);
+        final int dictionaryId = journal.intern(1, "com.example.Foo", "bar", "(ILjava/lang/String;)Ljava/lang/String;");
+        journal.appendBefore(1, 10, dictionaryId, new Object[]{1, "a"});
+        journal.appendEnd(false, 1, 10, "ok");
+        journal.close();
+        this.journal = null;
+
+        // 关闭后的写入被丢弃
+        journal.appendEnd(false, 1, 11, "dropped");
+        assertEquals(1, journal.getDroppedCount());
+
+        final RecordJournal reopened = RecordJournal.open(file);
+        try {
+            final String text = transferAndPrint(reopened);
+            assertTrue(text, text.contains("process=1 invoke=10 " + BEHAVIOR));
+            assertTrue(text, text.contains("return : \"ok\""));
+            assertTrue(text, text.contains("total: invokes=1, records=2, skipped-segments=0"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void journal$wrapAround() throws IOException {
+        final RecordJournal journal = createJournal(4, 256, 128);
+        final int dictionaryId = journal.intern(1, "com.example.Foo", "bar", "(ILjava/lang/String;)Ljava/lang/String;");
+        final int invokeCount = 200;
+        for (int invokeId = 0; invokeId < invokeCount; invokeId++) {
+            journal.appendBefore(1, invokeId, dictionaryId, new Object[]{invokeId});
+            journal.appendEnd(false, 1, invokeId, invokeId);
+        }
+        assertEquals(invokeCount * 2, journal.getRecordCount());
+
+        // 最早的段已经被覆盖，只有最近的记录能被导出
+        final String text = transferAndPrint(journal);
+        assertFalse(text, text.contains("invoke=0 "));
+        assertTrue(text, text.contains("invoke=" + (invokeCount - 1) + " " + BEHAVIOR));
+        assertTrue(text, text.contains("args   : [" + (invokeCount - 1) + "]"));
+        assertTrue(text, text.contains("return : " + (invokeCount - 1)));
+        assertTrue(text, text.contains("skipped-segments=0"));
+
+        // 导出的调用是连续的一段
+        final int printedInvokeCount = StringUtils.countMatches(text, BEHAVIOR);
+        assertTrue(text, printedInvokeCount > 0 && printedInvokeCount < invokeCount);
+        for (int invokeId = invokeCount - printedInvokeCount; invokeId < invokeCount; invokeId++) {
+            assertTrue(text, text.contains("invoke=" + invokeId + " "));
+        }
+    }
+
+    @Test
+    public void journal$truncatedValues() throws IOException {
+        final RecordJournal journal = createJournal(4, 4096, 128);
+        final int dictionaryId = journal.intern(1, "com.example.Foo", "bar", "(ILjava/lang/String;)Ljava/lang/String;");
+        final String large = StringUtils.repeat('x', 200);
+        journal.appendBefore(1, 10, dictionaryId, new Object[]{1, large, 3});
+        journal.appendEnd(false, 1, 10, large);
+        assertEquals(2, journal.getRecordCount());
+        assertEquals(2, journal.getTruncatedCount());
+
+        final String text = transferAndPrint(journal);
+        assertTrue(text, text.contains("args   : [1, ...]"));
+        assertTrue(text, text.contains("return : ..."));
+        assertTrue(text, text.contains("total: invokes=1, records=2, skipped-segments=0"));
+    }
+
+    @Test
+    public void journal$unknownBehavior() throws IOException {
+        final RecordJournal journal = createJournal(4, 4096, 1024);
+        journal.appendBefore(1, 10, 0, new Object[0]);
+        final String text = transferAndPrint(journal);
+        assertTrue(text, text.contains("process=1 invoke=10 <unknown>"));
+        assertTrue(text, text.contains("args   : []"));
+    }
+
+    @Test(expected = IOException.class)
+    public void journal$create$existingFile() throws IOException {
+        file = createTempFile("record-", ".journal");
+        RecordJournal.create(file, 1, 4, 4096, 4096, 1024, new DefaultValueCodec());
+    }
+
+    @Test
+    public void journal$create$existingFileUntouched() throws IOException {
+        createJournal(4, 4096, 1024);
+        final long length = file.length();
+        try {
+            RecordJournal.create(file, 1, 2, 256, 256, 128, new DefaultValueCodec());
+            fail();
+        } catch (IOException cause) {
+            // 已有的日志文件不会被截断
+            assertEquals(length, file.length());
+        }
+    }
+
+}
@@ -4,12 +4,16 @@ import com.alibaba.jvm.sandbox.api.Information;
 import com.alibaba.jvm.sandbox.api.Module;
 import com.alibaba.jvm.sandbox.api.annotation.Command;
 import com.alibaba.jvm.sandbox.api.event.Event;
+import com.alibaba.jvm.sandbox.api.listener.ext.BehaviorCache;
 import com.alibaba.jvm.sandbox.api.resource.ConfigInfo;
+import com.alibaba.jvm.sandbox.api.resource.ListenerMonitor;
+import com.alibaba.jvm.sandbox.api.resource.ListenerMonitor.ListenerMetrics;
 import org.kohsuke.MetaInfServices;
 
 import javax.annotation.Resource;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.List;
 
 /**
  * 沙箱信息模块
@@ -23,6 +27,9 @@ public class InfoModule implements Module {
     @Resource
     private ConfigInfo configInfo;
 
+    @Resource
+    private ListenerMonitor listenerMonitor;
+
 //    @Resource
 //    private EventMonitor eventMonitor;
 
@@ -69,4 +76,43 @@ public class InfoModule implements Module {
 
     }
 
+    //@Http("/metrics")
+    @Command("metrics")
+    public void metrics(final PrintWriter writer) throws IOException {
+
+        final List<ListenerMetrics> listenerMetricsList = listenerMonitor.listListenerMetrics();
+        for (final ListenerMetrics listenerMetrics : listenerMetricsList) {
+            writer.println(String.format("%s#%d (%s)",
+                    listenerMetrics.getUniqueId(),
+                    listenerMetrics.getListenerId(),
+                    listenerMetrics.getListenerClassName()
+            ));
+            for (Event.Type type : Event.Type.values()) {
+                final long dispatched = listenerMetrics.getDispatchedCount(type);
+                final long ignored = listenerMetrics.getIgnoredCount(type);
+                if (dispatched > 0 || ignored > 0) {
+                    writer.println(String.format("%18s : dispatched=%d ignored=%d", type, dispatched, ignored));
+                }
+            }
+            writer.println(String.format("%18s : %d", "PROCESS_CONTROL", listenerMetrics.getProcessControlCount()));
+            writer.println(String.format("%18s : %d", "ERROR", listenerMetrics.getErrorCount()));
+            writer.println(String.format("%18s : p50<=%dns p99<=%dns",
+                    "LISTENER_NANOS",
+                    listenerMetrics.getPercentileNanos(50),
+                    listenerMetrics.getPercentileNanos(99)
+            ));
+        }
+        writer.println(String.format("total %d listener.", listenerMetricsList.size()));
+
+        final BehaviorCache behaviorCache = BehaviorCache.getSingleton();
+        writer.println(String.format("%18s : hit=%d miss=%d classes=%d",
+                "BEHAVIOR_CACHE",
+                behaviorCache.getHitCount(),
+                behaviorCache.getMissCount(),
+                behaviorCache.size()
+        ));
+        writer.flush();
+
+    }
+
 }
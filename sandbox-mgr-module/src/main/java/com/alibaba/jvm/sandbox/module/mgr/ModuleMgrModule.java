@@ -185,6 +185,27 @@ public class ModuleMgrModule implements Module {
         output(writer, "total %s module frozen.", total);
     }
 
+    // @Http("/tripped")
+    @Command("tripped")
+    public void tripped(final PrintWriter writer) {
+        int total = 0;
+        for (final Module module : moduleManager.list()) {
+            final Information info = module.getClass().getAnnotation(Information.class);
+            try {
+                final int trippedCnt = moduleManager.trippedCnt(info.id());
+                if (trippedCnt <= 0) {
+                    continue;
+                }
+                total += trippedCnt;
+                output(writer, "%-20s\t%-8s\ttripped=%s", info.id(), moduleManager.isActivated(info.id()) ? "ACTIVE" : "FROZEN", trippedCnt);
+            } catch (ModuleException me) {
+                logger.warn("get module info occur error when list tripped modules, module[id={};class={};], error={}, ignore this module.",
+                        me.getUniqueId(), module.getClass(), me.getErrorCode(), me);
+            }
+        }
+        output(writer, "total %s watch tripped, frozen and active the module to re-arm.", total);
+    }
+
     // @Http("/detail")
     @Command("detail")
     public void detail(final Map<String, String> param,
@@ -206,6 +227,7 @@ public class ModuleMgrModule implements Module {
         final boolean isActivated = moduleManager.isActivated(info.id());
         final int cCnt = moduleManager.cCnt(info.id());
         final int mCnt = moduleManager.mCnt(info.id());
+        final int trippedCnt = moduleManager.trippedCnt(info.id());
         final File jarFile = moduleManager.getJarFile(info.id());
         String sb = "" +
                 "      ID : " + info.id() + "\n" +
@@ -218,6 +240,7 @@ public class ModuleMgrModule implements Module {
                 "  LOADER : " + module.getClass().getClassLoader() + "\n" +
                 "    cCnt : " + cCnt + "\n" +
                 "    mCnt : " + mCnt + "\n" +
+                " TRIPPED : " + trippedCnt + "\n" +
                 "COMMANDS : " + joinString(getCommandsByModuleClz(module.getClass()));
 
         output(writer, sb);
@@ -2,7 +2,6 @@ package java.com.alibaba.jvm.sandbox.spy;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 间谍类，藏匿在各个ClassLoader中
@@ -25,8 +24,42 @@ public class Spy {
      */
     public static volatile boolean isSpyThrowException = false;
 
-    private static final ConcurrentHashMap<String, SpyHandler> namespaceSpyHandlerMap
-            = new ConcurrentHashMap<String, SpyHandler>();
+    /**
+     * 命名空间:槽位映射
+     * <p>
+     * 槽位一经分配便不再回收，已植入字节码中的槽位常量在命名空间被清理后依旧指向同一个命名空间
+     * </p>
+     */
+    private static final ConcurrentHashMap<String, Integer> namespaceIndexMap
+            = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * 槽位:间谍处理器数组
+     * <p>
+     * 采用写时复制，事件发生时只需要一次数组读取即可完成间谍处理器的查找
+     * </p>
+     */
+    private static volatile SpyHandler[] spyHandlerArray = new SpyHandler[0];
+
+    /**
+     * 获取命名空间所对应的槽位，若命名空间尚未分配过槽位则为其分配
+     *
+     * @param namespace 命名空间
+     * @return 命名空间槽位
+     * @since {@code sandbox-spy:1.4.0}
+     */
+    public synchronized static int getNamespaceIndex(final String namespace) {
+        final Integer index = namespaceIndexMap.get(namespace);
+        if (null != index) {
+            return index;
+        }
+        final SpyHandler[] oldSpyHandlerArray = spyHandlerArray;
+        final SpyHandler[] newSpyHandlerArray = new SpyHandler[oldSpyHandlerArray.length + 1];
+        System.arraycopy(oldSpyHandlerArray, 0, newSpyHandlerArray, 0, oldSpyHandlerArray.length);
+        spyHandlerArray = newSpyHandlerArray;
+        namespaceIndexMap.put(namespace, oldSpyHandlerArray.length);
+        return oldSpyHandlerArray.length;
+    }
 
     /**
      * 判断间谍类是否已经完成初始化
@@ -35,7 +68,9 @@ public class Spy {
      * @return TRUE:已完成初始化;FALSE:未完成初始化;
      */
     public static boolean isInit(final String namespace) {
-        return namespaceSpyHandlerMap.containsKey(namespace);
+        final Integer index = namespaceIndexMap.get(namespace);
+        return null != index
+                && null != spyHandlerArray[index];
     }
 
     /**
@@ -45,9 +80,12 @@ public class Spy {
      * @param spyHandler 间谍处理器
      * @since {@code sandbox-spy:1.3.0}
      */
-    public static void init(final String namespace,
-                            final SpyHandler spyHandler) {
-        namespaceSpyHandlerMap.putIfAbsent(namespace, spyHandler);
+    public synchronized static void init(final String namespace,
+                                         final SpyHandler spyHandler) {
+        final int index = getNamespaceIndex(namespace);
+        if (null == spyHandlerArray[index]) {
+            setSpyHandler(index, spyHandler);
+        }
     }
 
     /**
@@ -56,13 +94,39 @@ public class Spy {
      * @param namespace 命名空间
      */
     public synchronized static void clean(final String namespace) {
-        namespaceSpyHandlerMap.remove(namespace);
-        // 如果是最后的一个命名空间，则需要重新清理Node中所持有的Thread
-        if (namespaceSpyHandlerMap.isEmpty()) {
+        final Integer index = namespaceIndexMap.get(namespace);
+        if (null != index) {
+            setSpyHandler(index, null);
+        }
+        // 如果是最后的一个命名空间，则需要重新清理各线程所持有的屏障节点
+        if (isAllClean()) {
             selfCallBarrier.cleanAndInit();
         }
     }
 
+    // 替换槽位上的间谍处理器，必须在持有Spy.class锁时调用
+    private static void setSpyHandler(final int index,
+                                      final SpyHandler spyHandler) {
+        final SpyHandler[] newSpyHandlerArray = spyHandlerArray.clone();
+        newSpyHandlerArray[index] = spyHandler;
+        spyHandlerArray = newSpyHandlerArray;
+    }
+
+    // 所有命名空间是否都已经被清理
+    private static boolean isAllClean() {
+        for (final SpyHandler spyHandler : spyHandlerArray) {
+            if (null != spyHandler) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 根据命名空间槽位获取间谍处理器
+    private static SpyHandler getSpyHandler(final int namespaceIndex) {
+        return spyHandlerArray[namespaceIndex];
+    }
+
 
     // 全局序列
     private static final AtomicInteger sequenceRef = new AtomicInteger(1000);
@@ -93,10 +157,10 @@ public class Spy {
                                              final String owner,
                                              final String name,
                                              final String desc,
-                                             final String namespace,
+                                             final int namespaceIndex,
                                              final int listenerId) throws Throwable {
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
             if (null != spyHandler) {
                 spyHandler.handleOnCallBefore(listenerId, lineNumber, owner, name, desc);
             }
@@ -105,10 +169,10 @@ public class Spy {
         }
     }
 
-    public static void spyMethodOnCallReturn(final String namespace,
+    public static void spyMethodOnCallReturn(final int namespaceIndex,
                                              final int listenerId) throws Throwable {
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
             if (null != spyHandler) {
                 spyHandler.handleOnCallReturn(listenerId);
             }
@@ -118,10 +182,10 @@ public class Spy {
     }
 
     public static void spyMethodOnCallThrows(final String throwException,
-                                             final String namespace,
+                                             final int namespaceIndex,
                                              final int listenerId) throws Throwable {
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
             if (null != spyHandler) {
                 spyHandler.handleOnCallThrows(listenerId, throwException);
             }
@@ -130,98 +194,151 @@ public class Spy {
         }
     }
 
+    // 一次性行探针的命中标记按页分配，页一经分配便不再移动，读取时不需要加锁
+    private static final int LINE_PROBE_PAGE_SHIFT = 12;
+    private static final int LINE_PROBE_PAGE_SIZE = 1 << LINE_PROBE_PAGE_SHIFT;
+    private static final int LINE_PROBE_PAGE_MASK = LINE_PROBE_PAGE_SIZE - 1;
+    private static final boolean[][] lineProbeHitPages = new boolean[4096][];
+    private static int lineProbeCount = 0;
+
+    /**
+     * 分配一次性行探针ID
+     *
+     * @return 一次性行探针ID，行探针的数量超出上限时返回-1
+     * @since {@code sandbox-spy:1.4.0}
+     */
+    public synchronized static int newLineProbeId() {
+        final int lineProbeId = lineProbeCount;
+        final int page = lineProbeId >>> LINE_PROBE_PAGE_SHIFT;
+        if (page >= lineProbeHitPages.length) {
+            return -1;
+        }
+        if (null == lineProbeHitPages[page]) {
+            lineProbeHitPages[page] = new boolean[LINE_PROBE_PAGE_SIZE];
+        }
+        lineProbeCount++;
+        return lineProbeId;
+    }
+
+    /**
+     * 一次性行探针，只有第一次通知到事件监听器时才会产生LINE事件，之后只剩一次数组读取的开销
+     * <p>
+     * 事件没有通知到监听器(监听器未激活、处于守护区中或调用过程被忽略等)时不标记探针，下一次执行会再次尝试；
+     * 并发下第一次执行可能会产生多个LINE事件
+     * </p>
+     *
+     * @param lineProbeId    一次性行探针ID
+     * @param lineNumber     行号
+     * @param namespaceIndex 命名空间槽位
+     * @param listenerId     监听器槽位
+     * @throws Throwable 处理异常
+     * @since {@code sandbox-spy:1.4.0}
+     */
+    public static void spyMethodOnLineOnce(final int lineProbeId,
+                                           final int lineNumber,
+                                           final int namespaceIndex,
+                                           final int listenerId) throws Throwable {
+        final boolean[] lineProbeHits = lineProbeHitPages[lineProbeId >>> LINE_PROBE_PAGE_SHIFT];
+        final int index = lineProbeId & LINE_PROBE_PAGE_MASK;
+        if (lineProbeHits[index]) {
+            return;
+        }
+        if (dispatchOnLine(lineNumber, namespaceIndex, listenerId)) {
+            lineProbeHits[index] = true;
+        }
+    }
+
     public static void spyMethodOnLine(final int lineNumber,
-                                       final String namespace,
+                                       final int namespaceIndex,
                                        final int listenerId) throws Throwable {
+        dispatchOnLine(lineNumber, namespaceIndex, listenerId);
+    }
+
+    // 返回事件是否已经通知到了事件监听器
+    private static boolean dispatchOnLine(final int lineNumber,
+                                          final int namespaceIndex,
+                                          final int listenerId) throws Throwable {
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
-            if (null != spyHandler) {
-                spyHandler.handleOnLine(listenerId, lineNumber);
-            }
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
+            return null != spyHandler
+                    && spyHandler.handleOnLine(listenerId, lineNumber);
         } catch (Throwable cause) {
             handleException(cause);
+            return false;
         }
     }
 
     public static Ret spyMethodOnBefore(final Object[] argumentArray,
-                                        final String namespace,
+                                        final int namespaceIndex,
                                         final int listenerId,
-                                        final int targetClassLoaderObjectID,
-                                        final String javaClassName,
-                                        final String javaMethodName,
-                                        final String javaMethodDesc,
+                                        final int behaviorId,
                                         final Object target) throws Throwable {
-        final Thread thread = Thread.currentThread();
-        if (selfCallBarrier.isEnter(thread)) {
+        final SelfCallBarrier.Node node = selfCallBarrier.enter();
+        if (null == node) {
             return Ret.RET_NONE;
         }
-        final SelfCallBarrier.Node node = selfCallBarrier.enter(thread);
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
             if (null == spyHandler) {
                 return Ret.RET_NONE;
             }
-            return spyHandler.handleOnBefore(
-                    listenerId, targetClassLoaderObjectID, argumentArray,
-                    javaClassName,
-                    javaMethodName,
-                    javaMethodDesc,
-                    target
-            );
+            return node.settle(spyHandler.handleOnBefore(listenerId, behaviorId, argumentArray, target));
         } catch (Throwable cause) {
             handleException(cause);
-            return Ret.RET_NONE;
+            return node.settle(Ret.RET_NONE);
         } finally {
-            selfCallBarrier.exit(thread, node);
+            selfCallBarrier.exit(node);
         }
     }
 
     public static Ret spyMethodOnReturn(final Object object,
-                                        final String namespace,
+                                        final int namespaceIndex,
                                         final int listenerId) throws Throwable {
-        final Thread thread = Thread.currentThread();
-        if (selfCallBarrier.isEnter(thread)) {
+        final SelfCallBarrier.Node node = selfCallBarrier.enter();
+        if (null == node) {
             return Ret.RET_NONE;
         }
-        final SelfCallBarrier.Node node = selfCallBarrier.enter(thread);
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
             if (null == spyHandler) {
                 return Ret.RET_NONE;
             }
-            return spyHandler.handleOnReturn(listenerId, object);
+            return node.settle(spyHandler.handleOnReturn(listenerId, object));
         } catch (Throwable cause) {
             handleException(cause);
-            return Ret.RET_NONE;
+            return node.settle(Ret.RET_NONE);
         } finally {
-            selfCallBarrier.exit(thread, node);
+            selfCallBarrier.exit(node);
         }
     }
 
     public static Ret spyMethodOnThrows(final Throwable throwable,
-                                        final String namespace,
+                                        final int namespaceIndex,
                                         final int listenerId) throws Throwable {
-        final Thread thread = Thread.currentThread();
-        if (selfCallBarrier.isEnter(thread)) {
+        final SelfCallBarrier.Node node = selfCallBarrier.enter();
+        if (null == node) {
             return Ret.RET_NONE;
         }
-        final SelfCallBarrier.Node node = selfCallBarrier.enter(thread);
         try {
-            final SpyHandler spyHandler = namespaceSpyHandlerMap.get(namespace);
+            final SpyHandler spyHandler = getSpyHandler(namespaceIndex);
             if (null == spyHandler) {
                 return Ret.RET_NONE;
             }
-            return spyHandler.handleOnThrows(listenerId, throwable);
+            return node.settle(spyHandler.handleOnThrows(listenerId, throwable));
         } catch (Throwable cause) {
             handleException(cause);
-            return Ret.RET_NONE;
+            return node.settle(Ret.RET_NONE);
         } finally {
-            selfCallBarrier.exit(thread, node);
+            selfCallBarrier.exit(node);
         }
     }
 
     /**
      * 返回结果
+     * <p>
+     * 织入代码通过{@link #getState()}和{@link #consumeRespond()}读取返回结果，
+     * 线程复用的返回结果只能通过方法读取，见{@link #reuseInstanceForReturn(Object)}
+     * </p>
      */
     public static class Ret {
 
@@ -249,6 +366,36 @@ public class Spy {
             this.respond = respond;
         }
 
+        /**
+         * 获取返回状态
+         *
+         * @return 返回状态(0:NONE;1:RETURN;2:THROWS)
+         * @since {@code sandbox-spy:1.4.0}
+         */
+        public int getState() {
+            return state;
+        }
+
+        /**
+         * 获取应答对象
+         *
+         * @return 应答对象
+         * @since {@code sandbox-spy:1.4.0}
+         */
+        public Object getRespond() {
+            return respond;
+        }
+
+        /**
+         * 织入代码读取应答对象，线程复用的返回结果在读取后立即释放应答对象
+         *
+         * @return 应答对象
+         * @since {@code sandbox-spy:1.4.0}
+         */
+        public Object consumeRespond() {
+            return respond;
+        }
+
         public static Ret newInstanceForNone() {
             return RET_NONE;
         }
@@ -261,116 +408,168 @@ public class Spy {
             return new Ret(RET_STATE_THROWS, throwable);
         }
 
+        /**
+         * 获取立即返回的结果，不产生新的对象
+         * <p>
+         * 在Spy的BEFORE/RETURN/THROWS处理过程中调用时，将复用当前线程的返回结果，
+         * 该结果只在被织入的代码读取之前有效，处理器不得持有它，也不能通过{@link #state}和{@link #respond}字段读取；
+         * 在处理过程之外调用时退化为{@link #newInstanceForReturn(Object)}
+         * </p>
+         *
+         * @param object 返回对象
+         * @return 返回结果
+         * @since {@code sandbox-spy:1.4.0}
+         */
+        public static Ret reuseInstanceForReturn(Object object) {
+            final ReusableRet ret = selfCallBarrier.getReusableRet();
+            return null == ret
+                    ? newInstanceForReturn(object)
+                    : ret.reset(RET_STATE_RETURN, object);
+        }
+
+        /**
+         * 获取立即抛出异常的结果，不产生新的对象
+         * <p>
+         * 复用规则同{@link #reuseInstanceForReturn(Object)}
+         * </p>
+         *
+         * @param throwable 抛出异常
+         * @return 返回结果
+         * @since {@code sandbox-spy:1.4.0}
+         */
+        public static Ret reuseInstanceForThrows(Throwable throwable) {
+            final ReusableRet ret = selfCallBarrier.getReusableRet();
+            return null == ret
+                    ? newInstanceForThrows(throwable)
+                    : ret.reset(RET_STATE_THROWS, throwable);
+        }
+
     }
 
     /**
-     * 本地线程
+     * 线程复用的返回结果，只会被所属线程访问
      */
-    public static class SelfCallBarrier {
-
-        public static class Node {
-            private final Thread thread;
-            private final ReentrantLock lock;
-            private Node pre;
-            private Node next;
+    private static class ReusableRet extends Ret {
 
-//            Node() {
-//                this(null);
-//            }
+        private int reusableState;
+        private Object reusableRespond;
 
-            Node(final Thread thread) {
-                this(thread, null);
-            }
-
-            Node(final Thread thread, final ReentrantLock lock) {
-                this.thread = thread;
-                this.lock = lock;
-            }
+        private ReusableRet() {
+            super(RET_STATE_NONE, null);
+        }
 
+        private Ret reset(int state, Object respond) {
+            this.reusableState = state;
+            this.reusableRespond = respond;
+            return this;
         }
 
-        // 删除节点
-        void delete(final Node node) {
-            node.pre.next = node.next;
-            if (null != node.next) {
-                node.next.pre = node.pre;
-            }
-            // help gc
-            node.pre = (node.next = null);
+        @Override
+        public int getState() {
+            return reusableState;
         }
 
-        // 插入节点
-        void insert(final Node top, final Node node) {
-            if (null != top.next) {
-                top.next.pre = node;
-            }
-            node.next = top.next;
-            node.pre = top;
-            top.next = node;
+        @Override
+        public Object getRespond() {
+            return reusableRespond;
         }
 
-        static final int THREAD_LOCAL_ARRAY_LENGTH = 512;
+        @Override
+        public Object consumeRespond() {
+            final Object respond = reusableRespond;
+            reset(RET_STATE_NONE, null);
+            return respond;
+        }
 
-        final Node[] nodeArray = new Node[THREAD_LOCAL_ARRAY_LENGTH];
+    }
 
-        SelfCallBarrier() {
-            cleanAndInit();
-        }
+    /**
+     * 自调用屏障
+     * <p>
+     * 每个线程独占一个节点，进入和退出屏障只需要翻转本线程节点上的标记，
+     * 不再需要争抢任何共享锁，也不会在进入/退出时产生新的对象
+     * </p>
+     */
+    public static class SelfCallBarrier {
 
-        Node createTopNode() {
-            return new Node(null, new ReentrantLock());
-        }
+        public static class Node {
 
-        void cleanAndInit() {
-            for (int i = 0; i < THREAD_LOCAL_ARRAY_LENGTH; i++) {
-                nodeArray[i] = createTopNode();
+            // 当前线程是否已经进入屏障
+            private boolean isEnter;
+
+            // 当前线程复用的返回结果，被织入代码读取后清空
+            private final ReusableRet ret = new ReusableRet();
+
+            /**
+             * 处理器最终返回的不是复用的结果时，复用结果不会再被织入代码读取，需要立即释放其中的应答对象
+             *
+             * @param result 处理器最终返回的结果
+             * @return 处理器最终返回的结果
+             */
+            Ret settle(final Ret result) {
+                if (result != ret
+                        && null != ret.reusableRespond) {
+                    ret.reset(Ret.RET_STATE_NONE, null);
+                }
+                return result;
             }
-        }
 
-        int abs(int val) {
-            return val < 0
-                    ? val * -1
-                    : val;
         }
 
-        boolean isEnter(Thread thread) {
-            final Node top = nodeArray[abs(thread.hashCode()) % THREAD_LOCAL_ARRAY_LENGTH];
-            Node node = top;
-            try {
-                // spin for lock
-                while (!top.lock.tryLock()) ;
-                while (null != node.next) {
-                    node = node.next;
-                    if (thread == node.thread) {
-                        return true;
-                    }
+        private volatile ThreadLocal<Node> nodeRef = createNodeRef();
+
+        ThreadLocal<Node> createNodeRef() {
+            return new ThreadLocal<Node>() {
+                @Override
+                protected Node initialValue() {
+                    return new Node();
                 }
-                return false;
-            } finally {
-                top.lock.unlock();
-            }
+            };
         }
 
-        Node enter(Thread thread) {
-            final Node top = nodeArray[abs(thread.hashCode()) % THREAD_LOCAL_ARRAY_LENGTH];
-            final Node node = new Node(thread);
-            try {
-                while (!top.lock.tryLock()) ;
-                insert(top, node);
-            } finally {
-                top.lock.unlock();
+        /**
+         * 清理所有线程所持有的节点
+         * <p>
+         * 直接替换掉旧的ThreadLocal，各线程中残留的节点会随旧ThreadLocal被回收后一并清理
+         * </p>
+         */
+        void cleanAndInit() {
+            nodeRef = createNodeRef();
+        }
+
+        /**
+         * 当前线程进入屏障
+         *
+         * @return 当前线程的节点；若当前线程已在屏障中则返回null
+         */
+        Node enter() {
+            final Node node = nodeRef.get();
+            if (node.isEnter) {
+                return null;
             }
+            node.isEnter = true;
             return node;
         }
 
-        void exit(Thread thread, Node node) {
-            final Node top = nodeArray[abs(thread.hashCode()) % THREAD_LOCAL_ARRAY_LENGTH];
-            try {
-                while (!top.lock.tryLock()) ;
-                delete(node);
-            } finally {
-                top.lock.unlock();
-            }
+        /**
+         * 获取当前线程可复用的返回结果
+         *
+         * @return 当前线程可复用的返回结果；若当前线程不在屏障中则返回null
+         */
+        ReusableRet getReusableRet() {
+            final Node node = nodeRef.get();
+            return node.isEnter
+                    ? node.ret
+                    : null;
+        }
+
+        /**
+         * 当前线程离开屏障
+         *
+         * @param node 进入屏障时获得的节点
+         */
+        void exit(final Node node) {
+            node.isEnter = false;
         }
 
     }
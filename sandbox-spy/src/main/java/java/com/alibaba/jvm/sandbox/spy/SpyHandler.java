@@ -45,25 +45,23 @@ public interface SpyHandler {
      *
      * @param listenerId 事件监听器ID
      * @param lineNumber 代码执行行号
+     * @return 事件是否已经通知到了事件监听器，监听器未激活、处于守护区中或调用过程被忽略时返回false
      * @throws Throwable 处理代码执行行失败
      */
-    void handleOnLine(int listenerId, int lineNumber) throws Throwable;
+    boolean handleOnLine(int listenerId, int lineNumber) throws Throwable;
 
     /**
      * 处理方法调用:调用之前
      * <p>BEFORE</p>
      *
-     * @param listenerId                事件监听器ID
-     * @param targetClassLoaderObjectID 类所在ClassLoader
-     * @param argumentArray             参数数组
-     * @param javaClassName             类名
-     * @param javaMethodName            方法名
-     * @param javaMethodDesc            方法签名
-     * @param target                    目标对象实例
+     * @param listenerId    事件监听器ID
+     * @param behaviorId    行为ID，代码增强时分配，可据此查到行为所在的ClassLoader、类名、方法名和方法签名
+     * @param argumentArray 参数数组
+     * @param target        目标对象实例
      * @return Spy流程控制结果
      * @throws Throwable 处理{方法调用:调用之前}失败
      */
-    Spy.Ret handleOnBefore(int listenerId, int targetClassLoaderObjectID, Object[] argumentArray, String javaClassName, String javaMethodName, String javaMethodDesc, Object target) throws Throwable;
+    Spy.Ret handleOnBefore(int listenerId, int behaviorId, Object[] argumentArray, Object target) throws Throwable;
 
     /**
      * 处理方法调用:异常返回